@@ -0,0 +1,230 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * Java Flight Recorder events for the expander. Requires Java 11 or later; built from src-jfr
+ * and loaded by ExpanderTrace only when jdk.jfr is present. Event and field names are part of
+ * the plugin's interface and should not be changed. No event object is created while its
+ * event type is disabled, so the cost without a recording is one check per call.
+ *
+ * Record with e.g. -XX:StartFlightRecording=filename=badrex.jfr, then
+ * jfr print --events org.philgooch.Match badrex.jfr
+ *
+ * @author philipgooch
+ */
+public class JfrExpanderTrace extends ExpanderTrace {
+
+    @Name("org.philgooch.Execute")
+    @Label("BADREX Execute")
+    @Category("BADREX")
+    @Description("One execution of the expander over a document")
+    @StackTrace(false)
+    static class ExecuteEvent extends Event {
+        @Label("Document")
+        String documentName;
+        @Label("Document Length")
+        long documentLength;
+        @Label("Sentences")
+        int sentences;
+        @Label("Pairs")
+        int pairs;
+        @Label("Max Outer")
+        int maxOuter;
+        @Label("Max Inner")
+        int maxInner;
+        @Label("Threshold")
+        float threshold;
+        @Label("Bidirectional")
+        boolean bidirectional;
+        @Label("Lookup Mode")
+        String lookupMode;
+        @Label("Expand All")
+        boolean expandAll;
+    }
+
+    @Name("org.philgooch.Sentence")
+    @Label("BADREX Sentence")
+    @Category("BADREX")
+    @Description("Candidate matching for a sentence that has candidates")
+    @StackTrace(false)
+    static class SentenceEvent extends Event {
+        @Label("Document")
+        String documentName;
+        @Label("Start")
+        int start;
+        @Label("End")
+        int end;
+        @Label("Candidates")
+        int candidates;
+        @Label("Accepted")
+        int accepted;
+        @Label("Cached")
+        boolean cached;
+    }
+
+    @Name("org.philgooch.Match")
+    @Label("BADREX Match")
+    @Category("BADREX")
+    @Description("Constraint and alignment checks for one candidate pair")
+    @StackTrace(false)
+    static class MatchEvent extends Event {
+        @Label("Short Form")
+        String shortForm;
+        @Label("Long Form")
+        String longForm;
+        @Label("Bidirectional")
+        boolean bidirectional;
+        @Label("Outcome")
+        @Description("accepted, constraint, threshold or known")
+        String outcome;
+        @Label("Score")
+        @Description("Proportion of short form characters aligned, -1 if not computed")
+        float score;
+    }
+
+    @Name("org.philgooch.Gazetteer")
+    @Label("BADREX Gazetteer")
+    @Category("BADREX")
+    @Description("Full gazetteer run over a document")
+    @StackTrace(false)
+    static class GazetteerEvent extends Event {
+        @Label("Document")
+        String documentName;
+        @Label("Document Length")
+        long documentLength;
+    }
+
+    private static final EventType EXECUTE_TYPE = EventType.getEventType(ExecuteEvent.class);
+    private static final EventType SENTENCE_TYPE = EventType.getEventType(SentenceEvent.class);
+    private static final EventType MATCH_TYPE = EventType.getEventType(MatchEvent.class);
+    private static final EventType GAZETTEER_TYPE = EventType.getEventType(GazetteerEvent.class);
+
+    @Override
+    public Object beginExecute() {
+        if (!EXECUTE_TYPE.isEnabled()) {
+            return null;
+        }
+        ExecuteEvent event = new ExecuteEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endExecute(Object token, String documentName, long documentLength, int sentences, int pairs,
+            int maxOuter, int maxInner, float threshold, boolean bidirectional, String lookupMode, boolean expandAll) {
+        if (token == null) {
+            return;
+        }
+        ExecuteEvent event = (ExecuteEvent) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.documentName = documentName;
+            event.documentLength = documentLength;
+            event.sentences = sentences;
+            event.pairs = pairs;
+            event.maxOuter = maxOuter;
+            event.maxInner = maxInner;
+            event.threshold = threshold;
+            event.bidirectional = bidirectional;
+            event.lookupMode = lookupMode;
+            event.expandAll = expandAll;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginSentence() {
+        if (!SENTENCE_TYPE.isEnabled()) {
+            return null;
+        }
+        SentenceEvent event = new SentenceEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endSentence(Object token, String documentName, int start, int end, int candidates, int accepted, boolean cached) {
+        // Only sentences that have candidates are of interest
+        if (token == null || (candidates == 0 && accepted == 0)) {
+            return;
+        }
+        SentenceEvent event = (SentenceEvent) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.documentName = documentName;
+            event.start = start;
+            event.end = end;
+            event.candidates = candidates;
+            event.accepted = accepted;
+            event.cached = cached;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginMatch() {
+        if (!MATCH_TYPE.isEnabled()) {
+            return null;
+        }
+        MatchEvent event = new MatchEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endMatch(Object token, String shortForm, String longForm, boolean bidirectional, String outcome, float score) {
+        if (token == null) {
+            return;
+        }
+        MatchEvent event = (MatchEvent) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.shortForm = shortForm;
+            event.longForm = longForm;
+            event.bidirectional = bidirectional;
+            event.outcome = outcome;
+            event.score = score;
+            event.commit();
+        }
+    }
+
+    @Override
+    public Object beginGazetteer() {
+        if (!GAZETTEER_TYPE.isEnabled()) {
+            return null;
+        }
+        GazetteerEvent event = new GazetteerEvent();
+        event.begin();
+        return event;
+    }
+
+    @Override
+    public void endGazetteer(Object token, String documentName, long documentLength) {
+        if (token == null) {
+            return;
+        }
+        GazetteerEvent event = (GazetteerEvent) token;
+        event.end();
+        if (event.shouldCommit()) {
+            event.documentName = documentName;
+            event.documentLength = documentLength;
+            event.commit();
+        }
+    }
+}
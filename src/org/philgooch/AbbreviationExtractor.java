@@ -0,0 +1,258 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import gate.*;
+import gate.creole.*;
+import gate.util.*;
+
+import java.util.*;
+import java.io.*;
+import java.net.*;
+
+/**
+ * Wraps an initialised BiomedicalAbbreviationExpander, and a sentence splitter for documents
+ * that arrive without sentence offsets, so that plain text can be run through the expander
+ * outside a GATE corpus pipeline. Requires Gate.init() and the ANNIE plugin to be loaded.
+ * An instance processes one document at a time.
+ *
+ * @author philipgooch
+ */
+public class AbbreviationExtractor {
+    public static final String SENTENCE_SPLITTER_CLASS = "gate.creole.splitter.RegexSentenceSplitter";
+
+    private BiomedicalAbbreviationExpander expander;
+    private LanguageAnalyser sentenceSplitter;      // created on first use
+    private PairCollector collector;
+
+    public AbbreviationExtractor(BiomedicalAbbreviationExpander expander) {
+        this.expander = expander;
+        this.collector = new PairCollector();
+    }
+
+    /**
+     * Create and initialise an expander from a map of parameter name to value.
+     * Parameters that are not given take the same defaults as the CREOLE parameters.
+     * @param settings          parameter values, e.g. maxInner=5
+     * @param sharedConfig      already loaded configuration to share, or null to load it from configFileURL
+     * @return initialised expander
+     * @throws ResourceInstantiationException
+     */
+    public static BiomedicalAbbreviationExpander createExpander(Map<String, String> settings, ExpanderConfig sharedConfig) throws ResourceInstantiationException {
+        BiomedicalAbbreviationExpander expander = new BiomedicalAbbreviationExpander();
+        try {
+            expander.setConfigFileURL(toURL(getSetting(settings, "configFileURL", "resources/config.txt")));
+            expander.setGazetteerListsURL(toURL(getSetting(settings, "gazetteerListsURL", "resources/lookup/abbrevs.def")));
+            String learnedPairs = getSetting(settings, "learnedPairsURL", null);
+            if (learnedPairs != null) {
+                expander.setLearnedPairsURL(toURL(learnedPairs));
+            }
+        } catch (MalformedURLException me) {
+            throw new ResourceInstantiationException(me);
+        }
+        expander.setInputASName(getSetting(settings, "inputASName", null));
+        expander.setOutputASName(getSetting(settings, "outputASName", null));
+        expander.setSentenceType(getSetting(settings, "sentenceType", "Sentence"));
+        expander.setLongType(getSetting(settings, "longType", "Term"));
+        expander.setLongTypeFeature(getSetting(settings, "longTypeFeature", "longForm"));
+        expander.setShortType(getSetting(settings, "shortType", "Abbrev"));
+        expander.setShortTypeFeature(getSetting(settings, "shortTypeFeature", "shortForm"));
+        expander.setExpandAllShortFormInstances(Boolean.valueOf(getSetting(settings, "expandAllShortFormInstances", "false")));
+        expander.setMentionMode(MentionMode.valueOf(getSetting(settings, "mentionMode", "ANNOTATIONS")));
+        expander.setMaxInner(Integer.valueOf(getSetting(settings, "maxInner", "10")));
+        expander.setMaxOuter(Integer.valueOf(getSetting(settings, "maxOuter", "10")));
+        expander.setThreshold(Float.valueOf(getSetting(settings, "threshold", "0.80")));
+        expander.setSwapShortest(Boolean.valueOf(getSetting(settings, "swapShortest", "true")));
+        expander.setUseLookups(Boolean.valueOf(getSetting(settings, "useLookups", "false")));
+        expander.setLookupMode(LookupMode.valueOf(getSetting(settings, "lookupMode", "FULL")));
+        expander.setUseKnownPairs(Boolean.valueOf(getSetting(settings, "useKnownPairs", "false")));
+        expander.setConcurrentLookups(Boolean.valueOf(getSetting(settings, "concurrentLookups", "true")));
+        expander.setUseBidirectionMatch(Boolean.valueOf(getSetting(settings, "useBidirectionMatch", "false")));
+        expander.setCreateAnnotations(Boolean.valueOf(getSetting(settings, "createAnnotations", "true")));
+        expander.setPairSinkFormat(PairFormat.valueOf(getSetting(settings, "pairSinkFormat", "TSV")));
+        expander.setScopeType(getSetting(settings, "scopeType", null));
+        expander.setScopeSentences(Integer.valueOf(getSetting(settings, "scopeSentences", "0")));
+        expander.setTokenType(getSetting(settings, "tokenType", null));
+        expander.setAdaptiveWindows(Boolean.valueOf(getSetting(settings, "adaptiveWindows", "false")));
+        expander.setDictionaryMode(Boolean.valueOf(getSetting(settings, "dictionaryMode", "false")));
+        expander.setSentenceCacheSize(Integer.valueOf(getSetting(settings, "sentenceCacheSize", "0")));
+        String underlying = getSetting(settings, "underlyingAnnots", "AnatomicalSite;DiseaseOrSyndrome;Procedure;Test;Cell;Protein;Chemical");
+        ArrayList<String> underlyingAnnots = new ArrayList<String>();
+        for (String annType : underlying.split(";")) {
+            if (annType.trim().length() > 0) {
+                underlyingAnnots.add(annType.trim());
+            }
+        }
+        expander.setUnderlyingAnnots(underlyingAnnots);
+        expander.setRegexCheck(RegexCheck.valueOf(getSetting(settings, "regexCheck", "WARN")));
+        expander.setOptimiseAlternations(Boolean.valueOf(getSetting(settings, "optimiseAlternations", "false")));
+        if (sharedConfig != null) {
+            expander.setExpanderConfig(sharedConfig);
+        }
+        expander.init();
+        return expander;
+    }
+
+    private static String getSetting(Map<String, String> settings, String name, String defaultValue) {
+        String value = settings.get(name);
+        return (value == null) ? defaultValue : value;
+    }
+
+    /* Accept either a URL or a file path */
+    private static URL toURL(String location) throws MalformedURLException {
+        if (location.indexOf(":/") > 1) {
+            return new URL(location);
+        }
+        return new File(location).toURI().toURL();
+    }
+
+    /**
+     * Run the expander over plain text
+     * @param documentId    name given to the document, reported on each pair
+     * @param text          document text
+     * @param sentences     list of {start, end} sentence offsets, or null to run the sentence splitter
+     * @return pairs found in the document
+     * @throws ResourceInstantiationException
+     * @throws ExecutionException
+     */
+    public List<AbbreviationPair> extract(String documentId, String text, List<int[]> sentences) throws ResourceInstantiationException, ExecutionException {
+        Document doc = Factory.newDocument(text);
+        try {
+            if (documentId != null) {
+                doc.setName(documentId);
+            }
+            if (sentences != null) {
+                addSentences(doc, sentences);
+            }
+            return extract(doc);
+        } finally {
+            Factory.deleteResource(doc);
+        }
+    }
+
+    /**
+     * Run the expander over many small plain text documents in one batch, see
+     * BiomedicalAbbreviationExpander.executeBatch()
+     * @param documentIds   name given to each document, reported on its pairs
+     * @param texts         text of each document
+     * @param sentences     list of {start, end} sentence offsets for each document, or null to run the sentence splitter on all of them.
+     *                      A null entry runs the splitter on that document only
+     * @return pairs found in each document
+     * @throws ResourceInstantiationException
+     * @throws ExecutionException
+     */
+    public List<List<AbbreviationPair>> extractBatch(List<String> documentIds, List<String> texts, List<List<int[]>> sentences) throws ResourceInstantiationException, ExecutionException {
+        List<Document> docs = new ArrayList<Document>(texts.size());
+        List<PairCollector> collectors = new ArrayList<PairCollector>(texts.size());
+        try {
+            for (int i = 0; i < texts.size(); i++) {
+                Document doc = Factory.newDocument(texts.get(i));
+                docs.add(doc);
+                if (documentIds.get(i) != null) {
+                    doc.setName(documentIds.get(i));
+                }
+                List<int[]> docSentences = (sentences == null) ? null : sentences.get(i);
+                if (docSentences != null) {
+                    addSentences(doc, docSentences);
+                } else if (getInputAS(doc).get(expander.getSentenceType()).isEmpty()) {
+                    splitSentences(doc);
+                }
+                collectors.add(new PairCollector());
+            }
+            expander.executeBatch(docs, expander.getParameters(), collectors);
+        } finally {
+            for (Document doc : docs) {
+                Factory.deleteResource(doc);
+            }
+        }
+        List<List<AbbreviationPair>> pairs = new ArrayList<List<AbbreviationPair>>(collectors.size());
+        for (PairCollector docCollector : collectors) {
+            pairs.add(new ArrayList<AbbreviationPair>(docCollector.getPairs()));
+        }
+        return pairs;
+    }
+
+    private void addSentences(Document doc, List<int[]> sentences) throws ExecutionException {
+        AnnotationSet inputAS = getInputAS(doc);
+        for (int[] sentence : sentences) {
+            try {
+                inputAS.add(Long.valueOf(sentence[0]), Long.valueOf(sentence[1]), expander.getSentenceType(), Factory.newFeatureMap());
+            } catch (InvalidOffsetException ie) {
+                throw new ExecutionException("Invalid sentence offsets " + sentence[0] + "-" + sentence[1] + " in " + doc.getName());
+            }
+        }
+    }
+
+    /**
+     * Run the expander over a GATE document, splitting it into sentences first if required
+     * @param doc
+     * @return pairs found in the document
+     * @throws ResourceInstantiationException
+     * @throws ExecutionException
+     */
+    public List<AbbreviationPair> extract(Document doc) throws ResourceInstantiationException, ExecutionException {
+        collector.clear();
+        process(doc, collector);
+        List<AbbreviationPair> pairs = new ArrayList<AbbreviationPair>(collector.getPairs());
+        collector.clear();
+        return pairs;
+    }
+
+    /**
+     * Run the expander over a GATE document, splitting it into sentences first if required
+     * @param doc
+     * @param sink  receives the pairs and mentions found in the document
+     * @throws ResourceInstantiationException
+     * @throws ExecutionException
+     */
+    public void process(Document doc, PairSink sink) throws ResourceInstantiationException, ExecutionException {
+        if (getInputAS(doc).get(expander.getSentenceType()).isEmpty()) {
+            splitSentences(doc);
+        }
+        ExpanderParameters params = expander.getParameters();
+        params.setPairSink(sink);
+        expander.execute(doc, params);
+    }
+
+    private void splitSentences(Document doc) throws ResourceInstantiationException, ExecutionException {
+        if (sentenceSplitter == null) {
+            FeatureMap features = Factory.newFeatureMap();
+            Gate.setHiddenAttribute(features, true);
+            sentenceSplitter = (LanguageAnalyser) Factory.createResource(SENTENCE_SPLITTER_CLASS, Factory.newFeatureMap(), features);
+            String inputASName = expander.getInputASName();
+            if (inputASName != null && inputASName.trim().length() > 0) {
+                sentenceSplitter.setParameterValue("outputASName", inputASName);
+            }
+        }
+        sentenceSplitter.setDocument(doc);
+        try {
+            sentenceSplitter.execute();
+        } finally {
+            sentenceSplitter.setDocument(null);
+        }
+    }
+
+    private AnnotationSet getInputAS(Document doc) {
+        String inputASName = expander.getInputASName();
+        return (inputASName == null || inputASName.trim().length() == 0) ? doc.getAnnotations() : doc.getAnnotations(inputASName);
+    }
+
+    public BiomedicalAbbreviationExpander getExpander() {
+        return expander;
+    }
+
+    public void cleanup() {
+        if (sentenceSplitter != null) {
+            Factory.deleteResource(sentenceSplitter);
+            sentenceSplitter = null;
+        }
+        Factory.deleteResource(expander);
+    }
+}
@@ -0,0 +1,78 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.io.*;
+
+/**
+ * A term-abbreviation pair accepted by the expander. Offsets are document offsets.
+ *
+ * @author philipgooch
+ */
+public class AbbreviationPair implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private String documentId;
+    private String shortForm;
+    private String longForm;
+    private int shortStart;
+    private int shortEnd;
+    private int longStart;
+    private int longEnd;
+    private String semanticType;       // underlying annotation type of the long form, if any
+
+    public AbbreviationPair(String documentId, String shortForm, String longForm, int shortStart, int shortEnd, int longStart, int longEnd, String semanticType) {
+        this.documentId = documentId;
+        this.shortForm = shortForm;
+        this.longForm = longForm;
+        this.shortStart = shortStart;
+        this.shortEnd = shortEnd;
+        this.longStart = longStart;
+        this.longEnd = longEnd;
+        this.semanticType = semanticType;
+    }
+
+    public String getDocumentId() {
+        return documentId;
+    }
+
+    public String getShortForm() {
+        return shortForm;
+    }
+
+    public String getLongForm() {
+        return longForm;
+    }
+
+    public int getShortStart() {
+        return shortStart;
+    }
+
+    public int getShortEnd() {
+        return shortEnd;
+    }
+
+    public int getLongStart() {
+        return longStart;
+    }
+
+    public int getLongEnd() {
+        return longEnd;
+    }
+
+    public String getSemanticType() {
+        return semanticType;
+    }
+
+    @Override
+    public String toString() {
+        return shortForm + " [" + shortStart + "," + shortEnd + "] = " + longForm + " [" + longStart + "," + longEnd + "]";
+    }
+}
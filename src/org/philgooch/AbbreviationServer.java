@@ -0,0 +1,339 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import gate.*;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpHandler;
+import com.sun.net.httpserver.HttpServer;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
+import java.io.*;
+import java.net.*;
+
+/**
+ * Local HTTP service mode. Initialises GATE once, keeps a pool of warmed-up extractors
+ * and serves term-abbreviation pairs as JSON on the loopback interface only.
+ *
+ * POST /extract    {"id": "doc1", "text": "...", "sentences": [[0, 64], ...]}
+ *                  or {"documents": [{...}, {...}]}; sentences are optional
+ * GET  /health     pool status
+ * GET  /metrics    request, document, pair and latency counters
+ *
+ * Usage: AbbreviationServer [-port 8090] [-pool 4] [name=value ...]
+ * where name=value sets an expander parameter, e.g. configFileURL=resources/config.txt maxInner=5
+ * Run with -Dgate.home pointing to a GATE installation.
+ *
+ * @author philipgooch
+ */
+public class AbbreviationServer {
+    public static final int DEFAULT_PORT = 8090;
+    private static final String JSON_TYPE = "application/json; charset=UTF-8";
+
+    private ExtractorPool pool;
+    private HttpServer server;
+    private ExecutorService executor;
+
+    // Metrics
+    private AtomicLong requests = new AtomicLong();
+    private AtomicLong documents = new AtomicLong();
+    private AtomicLong pairs = new AtomicLong();
+    private AtomicLong errors = new AtomicLong();
+    private AtomicLong totalNanos = new AtomicLong();
+    private AtomicLong maxNanos = new AtomicLong();
+    private long startTime;
+
+    public AbbreviationServer(ExtractorPool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Bind to localhost and start serving requests
+     * @param port
+     * @throws IOException
+     */
+    public void start(int port) throws IOException {
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getByName("127.0.0.1"), port), 0);
+        server.createContext("/extract", new ExtractHandler());
+        server.createContext("/health", new HealthHandler());
+        server.createContext("/metrics", new MetricsHandler());
+        // One worker thread per pooled extractor, so requests wait on the socket rather than on the pool
+        executor = Executors.newFixedThreadPool(pool.getSize());
+        server.setExecutor(executor);
+        startTime = System.currentTimeMillis();
+        server.start();
+    }
+
+    public void stop() {
+        if (server != null) {
+            server.stop(1);
+        }
+        if (executor != null) {
+            executor.shutdown();
+        }
+    }
+
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    /**
+     *
+     * @param docObj    document object from the request
+     * @param extractor
+     * @return JSON for the document's pairs
+     */
+    private String extractDocument(Map<String, Object> docObj, AbbreviationExtractor extractor) throws Exception {
+        String id = getId(docObj);
+        String text = getText(docObj);
+        List<AbbreviationPair> found = extractor.extract(id, text, getSentences(docObj, text));
+        documents.incrementAndGet();
+        pairs.addAndGet(found.size());
+        return toJson(id, found);
+    }
+
+    /**
+     * Run the documents of a request through the extractor in one batch
+     * @param docObjs   document objects from the request
+     * @param extractor
+     * @return JSON for the pairs of each document
+     */
+    @SuppressWarnings("unchecked")
+    private String extractDocuments(List<Object> docObjs, AbbreviationExtractor extractor) throws Exception {
+        List<String> ids = new ArrayList<String>(docObjs.size());
+        List<String> texts = new ArrayList<String>(docObjs.size());
+        List<List<int[]>> sentences = new ArrayList<List<int[]>>(docObjs.size());
+        for (Object docObj : docObjs) {
+            String text = getText((Map<String, Object>) docObj);
+            ids.add(getId((Map<String, Object>) docObj));
+            texts.add(text);
+            sentences.add(getSentences((Map<String, Object>) docObj, text));
+        }
+        List<List<AbbreviationPair>> found = extractor.extractBatch(ids, texts, sentences);
+        StringBuilder sb = new StringBuilder("{\"documents\":[");
+        for (int i = 0; i < found.size(); i++) {
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append(toJson(ids.get(i), found.get(i)));
+            documents.incrementAndGet();
+            pairs.addAndGet(found.get(i).size());
+        }
+        return sb.append("]}").toString();
+    }
+
+    private static String getId(Map<String, Object> docObj) {
+        return (docObj.get("id") == null) ? null : String.valueOf(docObj.get("id"));
+    }
+
+    private static String getText(Map<String, Object> docObj) {
+        Object text = docObj.get("text");
+        if (!(text instanceof String)) {
+            throw new IllegalArgumentException("Missing document text");
+        }
+        return (String) text;
+    }
+
+    /**
+     * @param docObj    document object from the request
+     * @param text      document text, which the offsets must lie within
+     * @return the sentence offsets given in the document object, or null if there are none
+     */
+    private static List<int[]> getSentences(Map<String, Object> docObj, String text) {
+        List<int[]> sentences = null;
+        Object sentObj = docObj.get("sentences");
+        if (sentObj instanceof List) {
+            sentences = new ArrayList<int[]>();
+            for (Object offsets : (List<?>) sentObj) {
+                List<?> pair = (List<?>) offsets;
+                if (pair.size() != 2) {
+                    throw new IllegalArgumentException("Sentence offsets must be [start, end]");
+                }
+                int start = ((Number) pair.get(0)).intValue();
+                int end = ((Number) pair.get(1)).intValue();
+                if (start < 0 || end < start || end > text.length()) {
+                    throw new IllegalArgumentException("Invalid sentence offsets " + start + "-" + end + " for text of length " + text.length());
+                }
+                sentences.add(new int[]{start, end});
+            }
+        }
+        return sentences;
+    }
+
+    private static String toJson(String id, List<AbbreviationPair> found) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\"id\":").append(Json.quote(id)).append(",\"pairs\":[");
+        for (int i = 0; i < found.size(); i++) {
+            AbbreviationPair pair = found.get(i);
+            if (i > 0) {
+                sb.append(',');
+            }
+            sb.append("{\"shortForm\":").append(Json.quote(pair.getShortForm()));
+            sb.append(",\"longForm\":").append(Json.quote(pair.getLongForm()));
+            sb.append(",\"shortStart\":").append(pair.getShortStart());
+            sb.append(",\"shortEnd\":").append(pair.getShortEnd());
+            sb.append(",\"longStart\":").append(pair.getLongStart());
+            sb.append(",\"longEnd\":").append(pair.getLongEnd());
+            sb.append(",\"type\":").append(Json.quote(pair.getSemanticType()));
+            sb.append('}');
+        }
+        sb.append("]}");
+        return sb.toString();
+    }
+
+    private class ExtractHandler implements HttpHandler {
+
+        @SuppressWarnings("unchecked")
+        public void handle(HttpExchange exchange) throws IOException {
+            long start = System.nanoTime();
+            requests.incrementAndGet();
+            if (!"POST".equals(exchange.getRequestMethod())) {
+                send(exchange, 405, "{\"error\":\"POST required\"}");
+                return;
+            }
+            AbbreviationExtractor extractor = null;
+            try {
+                Object request = Json.parse(readBody(exchange));
+                if (!(request instanceof Map)) {
+                    throw new IllegalArgumentException("Expected a JSON object");
+                }
+                Map<String, Object> requestObj = (Map<String, Object>) request;
+                extractor = pool.borrow();
+                String response;
+                Object docs = requestObj.get("documents");
+                if (docs instanceof List) {
+                    response = extractDocuments((List<Object>) docs, extractor);
+                } else {
+                    response = extractDocument(requestObj, extractor);
+                }
+                send(exchange, 200, response);
+            } catch (IllegalArgumentException ie) {
+                errors.incrementAndGet();
+                send(exchange, 400, "{\"error\":" + Json.quote(ie.getMessage()) + "}");
+            } catch (ClassCastException ce) {
+                errors.incrementAndGet();
+                send(exchange, 400, "{\"error\":\"Malformed request\"}");
+            } catch (Exception e) {
+                errors.incrementAndGet();
+                gate.util.Err.println(e);
+                send(exchange, 500, "{\"error\":" + Json.quote(e.toString()) + "}");
+            } finally {
+                pool.release(extractor);
+                long elapsed = System.nanoTime() - start;
+                totalNanos.addAndGet(elapsed);
+                long max = maxNanos.get();
+                while (elapsed > max && !maxNanos.compareAndSet(max, elapsed)) {
+                    max = maxNanos.get();
+                }
+            }
+        }
+    }
+
+    private class HealthHandler implements HttpHandler {
+
+        public void handle(HttpExchange exchange) throws IOException {
+            send(exchange, 200, "{\"status\":\"ok\",\"poolSize\":" + pool.getSize() + ",\"idle\":" + pool.getIdleCount() + "}");
+        }
+    }
+
+    private class MetricsHandler implements HttpHandler {
+
+        public void handle(HttpExchange exchange) throws IOException {
+            long numRequests = requests.get();
+            StringBuilder sb = new StringBuilder("{");
+            sb.append("\"uptimeMillis\":").append(System.currentTimeMillis() - startTime);
+            sb.append(",\"requests\":").append(numRequests);
+            sb.append(",\"documents\":").append(documents.get());
+            sb.append(",\"pairs\":").append(pairs.get());
+            sb.append(",\"errors\":").append(errors.get());
+            sb.append(",\"meanMillis\":").append(numRequests == 0 ? 0 : totalNanos.get() / numRequests / 1000000.0);
+            sb.append(",\"maxMillis\":").append(maxNanos.get() / 1000000.0);
+            sb.append(",\"poolSize\":").append(pool.getSize());
+            sb.append(",\"idle\":").append(pool.getIdleCount());
+            SentenceCache cache = pool.getCache();
+            if (cache != null) {
+                sb.append(",\"cacheSize\":").append(cache.size());
+                sb.append(",\"cacheHits\":").append(cache.getHits());
+                sb.append(",\"cacheMisses\":").append(cache.getMisses());
+            }
+            sb.append("}");
+            send(exchange, 200, sb.toString());
+        }
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        InputStream in = exchange.getRequestBody();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            out.write(buf, 0, n);
+        }
+        in.close();
+        return out.toString("UTF-8");
+    }
+
+    private static void send(HttpExchange exchange, int status, String body) throws IOException {
+        byte[] bytes = body.getBytes("UTF-8");
+        exchange.getResponseHeaders().set("Content-Type", JSON_TYPE);
+        exchange.sendResponseHeaders(status, bytes.length);
+        OutputStream out = exchange.getResponseBody();
+        out.write(bytes);
+        out.close();
+    }
+
+    public static void main(String[] args) throws Exception {
+        int port = DEFAULT_PORT;
+        int poolSize = Runtime.getRuntime().availableProcessors();
+        Map<String, String> settings = new HashMap<String, String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-port") && i + 1 < args.length) {
+                port = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-pool") && i + 1 < args.length) {
+                poolSize = Integer.parseInt(args[++i]);
+            } else if (args[i].indexOf('=') > 0) {
+                int idx = args[i].indexOf('=');
+                settings.put(args[i].substring(0, idx), args[i].substring(idx + 1));
+            } else {
+                System.err.println("Usage: AbbreviationServer [-port " + DEFAULT_PORT + "] [-pool n] [name=value ...]");
+                System.exit(1);
+            }
+        }
+
+        StartupProfile profile = new StartupProfile();
+        long start = System.nanoTime();
+        Gate.init();
+        profile.record("Gate.init", start);
+        start = System.nanoTime();
+        Gate.getCreoleRegister().registerDirectories(new File(Gate.getPluginsHome(), "ANNIE").toURI().toURL());
+        profile.record("ANNIE plugin", start);
+
+        start = System.nanoTime();
+        final ExtractorPool pool = new ExtractorPool(poolSize, settings);
+        profile.record("extractor pool", start);
+        final AbbreviationServer server = new AbbreviationServer(pool);
+        server.start(port);
+        Runtime.getRuntime().addShutdownHook(new Thread() {
+
+            @Override
+            public void run() {
+                server.stop();
+                pool.cleanup();
+            }
+        });
+        AbbreviationExtractor extractor = pool.borrow();
+        gate.util.Out.print("Startup profile:\n" + profile + "Expander init (per instance):\n" + extractor.getExpander().getStartupProfile());
+        pool.release(extractor);
+        gate.util.Out.println("BADREX service listening on http://127.0.0.1:" + server.getPort() + "/ with " + pool.getSize() + " extractors");
+    }
+}
@@ -0,0 +1,209 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+
+/**
+ * Running statistics of the candidates accepted as pairs, used to scan for pattern 1 candidates
+ * with a tight window first. Most long forms are only a few words, and a wide window costs the
+ * regex more work at every word of every sentence with brackets in it. Once minSamples pairs have
+ * been accepted, sentences are scanned with the smallest window that covers the given fraction of
+ * their outers and inners, and rescanned with the full window only where the first letter and
+ * length check in CandidateScanner.needsWiderWindow() finds something the tight window could miss.
+ * The candidates are the same as with the full window; only the work done to find them changes.
+ *
+ * Only used with the bundled primary pattern, which the check is written for. Safe to share between
+ * expanders running on different threads.
+ *
+ * @author philipgooch
+ */
+public class AdaptiveWindow {
+    public static final int DEFAULT_MIN_SAMPLES = 50;
+    public static final float DEFAULT_COVERAGE = 0.95f;
+
+    // Longest outer, in words, and inner, in characters, counted separately
+    private static final int MAX_WORDS = 64;
+    private static final int MAX_CHARS = 256;
+
+    private final int minSamples;
+    private final float coverage;
+
+    private int[] outerWords = new int[MAX_WORDS + 1];
+    private int[] innerChars = new int[MAX_CHARS + 1];
+    private long numPairs;
+    private long numLetters;            // letters in the inners
+    private long numWords;              // words in the outers
+    private long numScanned;            // sentences scanned with a tight window
+    private long numWidened;            // of those, sentences that had to be rescanned with the full window
+    private CandidateScanner tight;
+
+    public AdaptiveWindow() {
+        this(DEFAULT_MIN_SAMPLES, DEFAULT_COVERAGE);
+    }
+
+    /**
+     *
+     * @param minSamples    number of pairs to accept with the full window before tightening it
+     * @param coverage      fraction of the accepted outers and inners the tight window should cover
+     */
+    public AdaptiveWindow(int minSamples, float coverage) {
+        this.minSamples = Math.max(1, minSamples);
+        this.coverage = Math.min(1.0f, Math.max(0.0f, coverage));
+    }
+
+    /**
+     * Add the window sizes of a candidate that was accepted as a pair
+     * @param candidate
+     */
+    public synchronized void record(Candidate candidate) {
+        int words = countWords(candidate.getOuter());
+        // The first character of the inner is matched separately from the rest
+        int chars = Math.max(0, candidate.getInner().length() - 1);
+        outerWords[Math.min(words, MAX_WORDS)]++;
+        innerChars[Math.min(chars, MAX_CHARS)]++;
+        numWords += words;
+        String inner = candidate.getInner();
+        for (int i = 0; i < inner.length(); i++) {
+            if (Character.isLetter(inner.charAt(i))) {
+                numLetters++;
+            }
+        }
+        numPairs++;
+    }
+
+    /**
+     * Find all candidates in a sentence, with the tight window where that gives the same result
+     * @param wide                  scanner with the full window
+     * @param sentenceContent       sentence text, with white space normalised to single spaces
+     * @param useBidirectionMatch   also take candidates from the bidirectional pattern
+     * @return the same candidates as wide.scan(sentenceContent, useBidirectionMatch)
+     */
+    public List<Candidate> scan(CandidateScanner wide, String sentenceContent, boolean useBidirectionMatch) {
+        CandidateScanner scanner = getTightScanner(wide);
+        if (scanner == null) {
+            return wide.scan(sentenceContent, useBidirectionMatch);
+        }
+        List<Candidate> candidates = wide.scanWithin(sentenceContent, useBidirectionMatch, scanner);
+        boolean widened = (candidates == null);
+        if (widened) {
+            candidates = wide.scan(sentenceContent, useBidirectionMatch);
+        }
+        synchronized (this) {
+            numScanned++;
+            if (widened) {
+                numWidened++;
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * @param wide
+     * @return scanner for the tight window, or null if the full window should be used
+     */
+    private synchronized CandidateScanner getTightScanner(CandidateScanner wide) {
+        if (numPairs < minSamples || !CandidateScanner.isStockPattern(wide.getConfig())) {
+            return null;
+        }
+        int tightOuter = Math.max(1, quantile(outerWords));
+        int tightInner = Math.max(1, (quantile(innerChars) + 3) / 4);
+        if (tightOuter >= wide.getMaxOuter() && tightInner >= wide.getMaxInner()) {
+            return null;
+        }
+        tightOuter = Math.min(tightOuter, wide.getMaxOuter());
+        tightInner = Math.min(tightInner, wide.getMaxInner());
+        if (tight == null || !tight.isCompiledFor(wide.getConfig(), tightOuter, tightInner)) {
+            tight = new CandidateScanner(wide.getConfig(), tightOuter, tightInner);
+        }
+        return tight;
+    }
+
+    /**
+     * @param counts    number of samples of each size
+     * @return the smallest size at least coverage of the samples are no larger than
+     */
+    private int quantile(int[] counts) {
+        long needed = (long) Math.ceil(numPairs * (double) coverage);
+        long total = 0;
+        for (int i = 0; i < counts.length; i++) {
+            total += counts[i];
+            if (total >= needed) {
+                return i;
+            }
+        }
+        return counts.length - 1;
+    }
+
+    /**
+     * Words as the outer window counts them: runs of word characters
+     * @param text
+     * @return number of words
+     */
+    static int countWords(String text) {
+        int words = 0;
+        boolean inWord = false;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            boolean wordChar = (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+            if (wordChar && !inWord) {
+                words++;
+            }
+            inWord = wordChar;
+        }
+        return words;
+    }
+
+    /**
+     * @return number of pairs the window sizes have been taken from
+     */
+    public synchronized long getNumPairs() {
+        return numPairs;
+    }
+
+    /**
+     * @return number of sentences scanned with a tight window
+     */
+    public synchronized long getNumScanned() {
+        return numScanned;
+    }
+
+    /**
+     * @return number of sentences that had to be rescanned with the full window
+     */
+    public synchronized long getNumWidened() {
+        return numWidened;
+    }
+
+    /**
+     * @return the tight window, as outer words and inner fours of characters, or null if the full window is used
+     */
+    public synchronized int[] getTightWindow() {
+        return (tight == null || numPairs < minSamples) ? null : new int[] {tight.getMaxOuter(), tight.getMaxInner()};
+    }
+
+    @Override
+    public synchronized String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append(numPairs).append(" pairs");
+        if (numPairs > 0) {
+            sb.append(", outer ").append(String.format("%.1f", numWords / (double) numPairs)).append(" words on average")
+                    .append(", ").append(String.format("%.2f", numLetters / (double) Math.max(1, numWords))).append(" inner letters per outer word");
+        }
+        int[] window = getTightWindow();
+        if (window != null) {
+            sb.append(", tight window ").append(window[0]).append('/').append(window[1]);
+        }
+        if (numScanned > 0) {
+            sb.append(", ").append(numWidened).append(" of ").append(numScanned).append(" sentences widened");
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,223 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Progress of a batch run over documents taken in sorted id order: how many documents have been
+ * processed, the id of the last one, the documents that were quarantined, and the pair statistics
+ * for everything processed so far. The statistics only ever include whole documents, so a run
+ * resumed from a checkpoint skips exactly the documents it has already counted.
+ *
+ * A document is quarantined when it fails, or when a worker stops twice while processing it, so
+ * that one bad document does not block the rest of the run. Quarantined documents are not
+ * counted in the statistics; fix or remove them and process them separately.
+ *
+ * The checkpoint file holds the progress lines followed by the statistics in PairStatistics
+ * format, and is replaced atomically on each write.
+ *
+ * @author philipgooch
+ */
+public class BatchCheckpoint {
+    public static final String HEADER = "#BADREX checkpoint 1";
+
+    private int documents;
+    private String lastDocument;
+    private String suspect;             // document a worker stopped on once
+    private Map<String, String> quarantined;
+    private PairStatistics statistics;
+
+    public BatchCheckpoint() {
+        this.quarantined = new LinkedHashMap<String, String>();
+        this.statistics = new PairStatistics();
+    }
+
+    /**
+     *
+     * @param documentId
+     * @return true if the document was processed or quarantined before this checkpoint
+     */
+    public boolean isDone(String documentId) {
+        return quarantined.containsKey(documentId) || (lastDocument != null && documentId.compareTo(lastDocument) <= 0);
+    }
+
+    /**
+     * Record a document as processed, adding the statistics for that document alone
+     * @param documentId    must come after any document already recorded
+     * @param documentStats pairs found in the document, or null if it was quarantined
+     */
+    public void advance(String documentId, PairStatistics documentStats) {
+        if (lastDocument != null && documentId.compareTo(lastDocument) <= 0) {
+            throw new IllegalArgumentException("Document " + documentId + " is not after " + lastDocument);
+        }
+        if (documentStats != null) {
+            statistics.merge(documentStats);
+        }
+        documents++;
+        lastDocument = documentId;
+        if (documentId.equals(suspect)) {
+            suspect = null;
+        }
+    }
+
+    /**
+     * Record that a worker stopped while processing a document. The first time, the document is
+     * only suspected, since the worker may have been stopped for some other reason; the second
+     * time it is quarantined.
+     * @param documentId
+     * @return true if the document has been quarantined
+     */
+    public boolean stoppedOn(String documentId) {
+        if (documentId.equals(suspect)) {
+            quarantine(documentId, "worker stopped twice while processing this document");
+            suspect = null;
+            return true;
+        }
+        suspect = documentId;
+        return false;
+    }
+
+    /**
+     *
+     * @param documentId
+     * @param reason    why the document was quarantined
+     */
+    public void quarantine(String documentId, String reason) {
+        quarantined.put(documentId, clean(reason));
+    }
+
+    /**
+     * @return number of documents processed, including those quarantined
+     */
+    public int getDocuments() {
+        return documents;
+    }
+
+    /**
+     * @return id of the last document processed, or null if none
+     */
+    public String getLastDocument() {
+        return lastDocument;
+    }
+
+    /**
+     * @return quarantined document ids, with the reason for each
+     */
+    public Map<String, String> getQuarantined() {
+        return Collections.unmodifiableMap(quarantined);
+    }
+
+    /**
+     * @return pair statistics for the documents processed
+     */
+    public PairStatistics getStatistics() {
+        return statistics;
+    }
+
+    /**
+     * Write the checkpoint to a temporary file that is then renamed over the previous one
+     * @param file
+     * @throws IOException
+     */
+    public void write(File file) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8"));
+        try {
+            out.write(HEADER);
+            out.write('\n');
+            out.write("documents\t" + documents + '\n');
+            if (lastDocument != null) {
+                out.write("last\t" + lastDocument + '\n');
+            }
+            if (suspect != null) {
+                out.write("suspect\t" + suspect + '\n');
+            }
+            for (Map.Entry<String, String> entry : quarantined.entrySet()) {
+                out.write("quarantined\t" + entry.getKey() + '\t' + entry.getValue() + '\n');
+            }
+            statistics.write(out);
+        } finally {
+            out.close();
+        }
+        PairStatistics.replace(tmpFile, file);
+    }
+
+    /**
+     * Write the quarantined documents, one per line with the reason after a tab
+     * @param file
+     * @throws IOException
+     */
+    public void writeQuarantined(File file) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8"));
+        try {
+            for (Map.Entry<String, String> entry : quarantined.entrySet()) {
+                out.write(entry.getKey() + '\t' + entry.getValue() + '\n');
+            }
+        } finally {
+            out.close();
+        }
+        PairStatistics.replace(tmpFile, file);
+    }
+
+    /**
+     * Read a checkpoint written by write()
+     * @param file
+     * @return the checkpoint, or an empty one if the file does not exist
+     * @throws IOException
+     */
+    public static BatchCheckpoint read(File file) throws IOException {
+        BatchCheckpoint checkpoint = new BatchCheckpoint();
+        if (!file.exists()) {
+            return checkpoint;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line = in.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException(file + " is not a checkpoint file");
+            }
+            int lineNo = 1;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                if (line.equals(PairStatistics.HEADER)) {
+                    checkpoint.statistics = PairStatistics.read(in, file.getPath(), lineNo);
+                    return checkpoint;
+                }
+                String[] fields = line.split("\t", -1);
+                if (fields[0].equals("documents") && fields.length == 2) {
+                    try {
+                        checkpoint.documents = Integer.parseInt(fields[1]);
+                    } catch (NumberFormatException ne) {
+                        throw new IOException("Malformed line " + lineNo + " in " + file);
+                    }
+                } else if (fields[0].equals("last") && fields.length == 2) {
+                    checkpoint.lastDocument = fields[1];
+                } else if (fields[0].equals("suspect") && fields.length == 2) {
+                    checkpoint.suspect = fields[1];
+                } else if (fields[0].equals("quarantined") && fields.length == 3) {
+                    checkpoint.quarantined.put(fields[1], fields[2]);
+                } else {
+                    throw new IOException("Malformed line " + lineNo + " in " + file);
+                }
+            }
+        } finally {
+            in.close();
+        }
+        // A checkpoint without its statistics has been cut short
+        throw new IOException(file + " is incomplete");
+    }
+
+    private static String clean(String value) {
+        return (value == null) ? "" : value.replaceAll("[\\t\\r\\n]", " ");
+    }
+}
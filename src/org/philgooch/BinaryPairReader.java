@@ -0,0 +1,96 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Reads a stream written by BinaryPairWriter and replays its pairs and mentions into a PairSink
+ *
+ * @author philipgooch
+ */
+public class BinaryPairReader {
+    private DataInputStream in;
+
+    public BinaryPairReader(InputStream in) throws IOException {
+        this.in = new DataInputStream(new BufferedInputStream(in, 65536));
+        if (this.in.readInt() != BinaryPairWriter.MAGIC) {
+            throw new IOException("Not a pair file");
+        }
+        int version = this.in.readUnsignedByte();
+        if (version != BinaryPairWriter.VERSION) {
+            throw new IOException("Unsupported pair file version " + version);
+        }
+    }
+
+    /**
+     * Read to the end of the stream
+     * @param sink  receives each pair and mention in the order written
+     * @return number of pairs read
+     * @throws IOException
+     */
+    public int readAll(PairSink sink) throws IOException {
+        String documentId = null;
+        List<AbbreviationPair> docPairs = new ArrayList<AbbreviationPair>();
+        int numPairs = 0;
+        int type;
+        while ((type = in.read()) != -1) {
+            if (type == BinaryPairWriter.DOCUMENT_RECORD) {
+                documentId = in.readUTF();
+                docPairs.clear();
+            } else if (type == BinaryPairWriter.PAIR_RECORD) {
+                String shortForm = in.readUTF();
+                String longForm = in.readUTF();
+                String semanticType = in.readUTF();
+                int shortStart = readVarInt();
+                int shortEnd = shortStart + readVarInt();
+                int longStart = shortStart + readSignedVarInt();
+                int longEnd = longStart + readVarInt();
+                AbbreviationPair pair = new AbbreviationPair(documentId, shortForm, longForm, shortStart, shortEnd, longStart, longEnd, semanticType.length() == 0 ? null : semanticType);
+                docPairs.add(pair);
+                sink.pairFound(pair);
+                numPairs++;
+            } else if (type == BinaryPairWriter.MENTION_RECORD) {
+                int pairIndex = readVarInt();
+                int start = readVarInt();
+                int end = start + readVarInt();
+                if (pairIndex >= docPairs.size()) {
+                    throw new IOException("Mention refers to unknown pair " + pairIndex + " in " + documentId);
+                }
+                sink.mentionFound(docPairs.get(pairIndex), start, end);
+            } else {
+                throw new IOException("Unknown record type " + type);
+            }
+        }
+        return numPairs;
+    }
+
+    private int readVarInt() throws IOException {
+        int value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private int readSignedVarInt() throws IOException {
+        int value = readVarInt();
+        return (value >>> 1) ^ -(value & 1);
+    }
+
+    public void close() throws IOException {
+        in.close();
+    }
+}
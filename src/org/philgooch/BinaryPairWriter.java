@@ -0,0 +1,117 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Writes pairs and mentions as compact binary records, readable with BinaryPairReader.
+ * The stream starts with MAGIC and VERSION, followed by records that each begin with a type byte:
+ *
+ * 'D' documentId                   written whenever the document changes
+ * 'P' shortForm longForm semanticType shortStart shortEnd longStart longEnd
+ * 'M' pairIndex start end          pairIndex counts the P records since the last D record
+ *
+ * Strings are modified UTF-8 (DataOutput.writeUTF), with an empty string for a missing value.
+ * Offsets and indexes are unsigned variable-length integers; each long form offset is written
+ * relative to its short form start, so that most records take a few bytes beyond their text.
+ *
+ * @author philipgooch
+ */
+public class BinaryPairWriter implements PairSink {
+    public static final int MAGIC = 0x42445258;     // "BDRX"
+    public static final int VERSION = 1;
+
+    public static final byte DOCUMENT_RECORD = 'D';
+    public static final byte PAIR_RECORD = 'P';
+    public static final byte MENTION_RECORD = 'M';
+
+    private DataOutputStream out;
+    private String currentDocument;
+    private Map<AbbreviationPair, Integer> pairIndexes;     // index of each pair written for the current document
+
+    public BinaryPairWriter(OutputStream out) throws IOException {
+        this.out = new DataOutputStream(new BufferedOutputStream(out, 65536));
+        this.pairIndexes = new IdentityHashMap<AbbreviationPair, Integer>();
+        this.out.writeInt(MAGIC);
+        this.out.writeByte(VERSION);
+    }
+
+    public synchronized void pairFound(AbbreviationPair pair) {
+        try {
+            startDocument(pair.getDocumentId());
+            pairIndexes.put(pair, pairIndexes.size());
+            out.writeByte(PAIR_RECORD);
+            out.writeUTF(pair.getShortForm());
+            out.writeUTF(pair.getLongForm());
+            out.writeUTF(nullToEmpty(pair.getSemanticType()));
+            writeVarInt(pair.getShortStart());
+            writeVarInt(pair.getShortEnd() - pair.getShortStart());
+            writeSignedVarInt(pair.getLongStart() - pair.getShortStart());
+            writeVarInt(pair.getLongEnd() - pair.getLongStart());
+        } catch (IOException ie) {
+            throw new IllegalStateException("Unable to write pair " + pair + ": " + ie);
+        }
+    }
+
+    public synchronized void mentionFound(AbbreviationPair pair, int start, int end) {
+        try {
+            startDocument(pair.getDocumentId());
+            Integer pairIndex = pairIndexes.get(pair);
+            if (pairIndex == null) {
+                // Mention of a pair that was not written through this writer
+                pairFound(pair);
+                pairIndex = pairIndexes.get(pair);
+            }
+            out.writeByte(MENTION_RECORD);
+            writeVarInt(pairIndex);
+            writeVarInt(start);
+            writeVarInt(end - start);
+        } catch (IOException ie) {
+            throw new IllegalStateException("Unable to write mention of " + pair + ": " + ie);
+        }
+    }
+
+    private void startDocument(String documentId) throws IOException {
+        String docId = nullToEmpty(documentId);
+        if (!docId.equals(currentDocument)) {
+            currentDocument = docId;
+            pairIndexes.clear();
+            out.writeByte(DOCUMENT_RECORD);
+            out.writeUTF(docId);
+        }
+    }
+
+    private void writeVarInt(int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    /* Zig-zag encode so that small negative values stay short */
+    private void writeSignedVarInt(int value) throws IOException {
+        writeVarInt((value << 1) ^ (value >> 31));
+    }
+
+    private static String nullToEmpty(String value) {
+        return (value == null) ? "" : value;
+    }
+
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
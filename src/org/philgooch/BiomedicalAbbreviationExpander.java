@@ -30,6 +30,11 @@ import gate.event.StatusListener;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.*;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
 import java.io.*;
 import java.net.*;
 
@@ -47,6 +52,9 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
     // Init-time parameters
     private URL configFileURL;      // URL to configuration file that defines suffixes and key words
     private URL gazetteerListsURL;      // URL to gazetteer def file
+    private RegexCheck regexCheck;      // what to do about configured patterns that do not compile or can backtrack catastrophically
+    private Boolean optimiseAlternations;       // rewrite the stopword lists into tries when the configuration is loaded
+    private URL learnedPairsURL;        // pair sink file of pairs found in a corpus, to add to the lookup lists in dictionaryMode
 
     // Run-time parameters
     private String inputASName;     //  Input AnnotationSet name
@@ -57,110 +65,427 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
     private String shortType;        // annotation type to mark short form, or leave empty to inherit the type of any annotation that wraps the full text of the abbreviation found
     private String shortTypeFeature;	// feature name to contain abbreviation
     private Boolean expandAllShortFormInstances;      // once a term-abbreviation pair has been identified, should all instances of that abbreviation be expanded?
+    private MentionMode mentionMode;        // annotate each expanded mention, or record their offsets on the defining long form
     private Integer maxInner;               // maximum length of outer string (text before parens)
     private Integer maxOuter;               // maximum length of inner string (text inside parens)
     private Float threshold;                // fraction of abbrev chars that must match the term
     private Boolean swapShortest;           // swap inner with outer if outer is shorter than inner
     private Boolean useLookups;         // flag to determine whether to run gazetteer
+    private Boolean concurrentLookups;  // run the gazetteer on a separate thread while candidate pairs are matched
+    private LookupMode lookupMode;      // run the gazetteer over the whole document, or only match lookups around candidate pairs
+    private Boolean useKnownPairs;      // accept candidates that are known pairs in the lookup lists without the matching heuristics
     private Boolean useBidirectionMatch;      // flag to determine whether an additional pattern should be used for bidirectional matching
     private ArrayList<String> underlyingAnnots;     // list of annotations that may be contained in or contain the outer term that should be copied over to the short form
+    private Boolean createAnnotations;      // set to false to only send pairs to the pair sink, without annotating the document
+    private URL pairSinkURL;                // file to stream pairs and mentions to, if no pair sink has been set
+    private PairFormat pairSinkFormat;      // format of the pair sink file
+    private Integer sentenceCacheSize;      // number of sentences to cache matches for, or 0 for no cache
+    private String scopeType;               // annotation type, e.g. Section, beyond which learned short forms are not expanded
+    private Integer scopeSentences;         // number of sentences after its last definition or mention that a short form is still expanded, or 0 for no limit
+    private String tokenType;               // annotation type of existing tokens, e.g. Token, to take words from instead of tokenising with regexes
+    private Boolean adaptiveWindows;        // scan with a window fitted to the pairs found so far, widening only where needed
+    private Boolean dictionaryMode;         // annotate known short forms wherever they occur instead of finding pairs
+    private String profiles;                // named profiles to run in a single pass, each with its own output set
+
+    // Compiled configuration, either loaded on init() or shared with other instances
+    private ExpanderConfig expanderConfig;
+    private ExpanderConfig sharedConfig;
+
+    // Compiled candidate patterns for the window sizes used most recently
+    private volatile List<CandidateScanner> candidateScanners = Collections.emptyList();
+    private static final int MAX_SCANNERS = 8;
+
+    // Matches of recently seen sentences, either owned by this instance or shared with other instances
+    private SentenceCache sentenceCache;
+    private SentenceCache sharedCache;
+
+    // Window sizes of the pairs found so far, for adaptiveWindows
+    private AdaptiveWindow adaptiveWindow = new AdaptiveWindow();
+
+    // Receives accepted term-abbreviation pairs, if set
+    private PairSink pairSink;
+    // Writer opened on pairSinkURL, kept open across documents until cleanup()
+    private PairSink fileSink;
+    private URL fileSinkURL;
+    private PairFormat fileSinkFormat;
+
+    volatile DefaultGazetteer gazetteer;         // gazetteer instance, loaded on first use
+    volatile LookupIndex lookupIndex;       // lookup lists for targeted matching, loaded on first use
+    volatile KnownPairIndex knownPairIndex;     // pairs in the lookup lists, loaded on first use
+    volatile ShortFormDictionary shortFormDictionary;   // short forms in the lookup lists and learned pairs, loaded on first use
+    private final Object gazetteerLock = new Object();
+    private int activeCalls;        // calls to process() in progress, which may be using the resources above; guarded by gazetteerLock
+    private ExecutorService lookupExecutor;     // thread for running the gazetteer concurrently, created on first use
+
+    // Contexts of the current execute(), one per profile, so that interrupt() can reach them. Calls made through
+    // execute(Document, ExpanderParameters) have their own contexts and are interrupted through their threads
+    private volatile List<ExecutionContext> gateContexts;
+
+    private static final ExpanderTrace TRACE = ExpanderTrace.getInstance();
+    private volatile ExpanderTrace trace = TRACE;
+
+    // Feature of the defining long form annotation that holds the mention offsets in COMPACT mention mode, as "start-end;start-end"
+    public static final String MENTIONS_FEATURE = "mentions";
+
+    // Feature that holds the name of the profile on annotations added for a profile
+    public static final String PROFILE_FEATURE = "profile";
 
-    // 
-    private Map<String, Pattern> constraintsPatternMap;          // patterns that validate ALICE algorithm constraints
-    private String posConstraints;      // regex fragment for truncating candidate terms after prepositions, determiners etc
-    private String outer_pre;           // regex fragments for matching candidate term-abbrev pairs
-    private String inner_pre;
-    private String inner_post;
-    private String outer_pre_2;
-    private String inner_pre_2;
-    private String inner_post_2;
+    /**
+     * Long form of a learned short form, shared by all of its mentions
+     */
+    private static class Expansion {
+        final String longForm;
+        final String corefId;           // id of the defining long form annotation
+        final MentionOffsets mentions;  // offsets of later mentions in COMPACT mode, else null
+
+        Expansion(String longForm, int termId, MentionOffsets mentions) {
+            this.longForm = longForm;
+            this.corefId = String.valueOf(termId);
+            this.mentions = mentions;
+        }
+    }
+
+    /**
+     * What process() needs that depends only on the run-time parameters, worked out once per call,
+     * or once for a whole batch
+     */
+    private static class Setup {
+        CandidateScanner widest;            // scanner for the widest window of any profile
+        AdaptiveWindow adaptive;            // statistics to scan with a tighter window first, or null
+        boolean widestBidirection;          // whether any profile uses the bidirectional pattern
+        CandidateScanner[] scanners;        // scanner for each profile
+        Map<String, Pattern> constraintsPatternMap;
+        KnownPairIndex knownPairs;
+        ShortFormDictionary dictionary;     // short forms to annotate in dictionaryMode, or null
+        SentenceCache cache;
+        long[] paramsHashes;                // cache key of each profile's matching parameters
+        boolean lookupsDone;                // the gazetteer has already been run over the batch
+        boolean fireEvents = true;          // fire progress and status events
+    }
+
+    // Tokens that may look like abbreviations; TextPrefilter.isShortFormLike() picks out those with a capital after the first character
+    private static final Pattern SHORT_FORM_TOKEN_PATTERN = Pattern.compile("[\\p{L}\\p{N}]+(?:[&/\\-\\.][\\p{L}\\p{N}]+)*");
+
+    // White space characters, each replaced with a single space for matching
+    private static final Pattern WHITESPACE_PATTERN = Pattern.compile("[\\s\\xA0\\u2007\\u202F]");
+
+    // Put between the texts of a batch when the gazetteer is run over them as one document. No lookup contains the pilcrow,
+    // so none can span two texts, and the line breaks on each side make each text start and end at a word boundary
+    private static final String PACKED_SEPARATOR = "\n\n\u00B6\n\n";
 
-    DefaultGazetteer gazetteer;         // gazetteer instance
+    // Time spent in each phase of init() and of loading lookup resources
+    private StartupProfile startupProfile = new StartupProfile();
 
     // Exit gracefully if exception caught on init()
     private boolean gracefulExit;
 
+    @Override
+    public Resource init() throws ResourceInstantiationException {
+        gracefulExit = false;
+        startupProfile.clear();
+        long start = System.nanoTime();
+
+
+        if (configFileURL == null) {
+            gracefulExit = true;
+            gate.util.Err.println("No configuration file provided!");
+        }
+
+        if (gazetteerListsURL == null) {
+            gracefulExit = true;
+            gate.util.Err.println("No gazetteer definition file provided!");
+        }
+
+        // Reuse a shared configuration if one has been provided for the same config file
+        boolean optimise = Boolean.TRUE.equals(optimiseAlternations);
+        if (sharedConfig != null && sharedConfig.getConfigURL().equals(configFileURL) && sharedConfig.isOptimiseAlternations() == optimise) {
+            expanderConfig = sharedConfig;
+            gracefulExit = !sharedConfig.isLoaded();
+        } else {
+            expanderConfig = new ExpanderConfig(configFileURL);
+            expanderConfig.setOptimiseAlternations(optimise);
+            gracefulExit = expanderConfig.load();
+        }
+        startupProfile.record("configuration", start);
+
+        // Catch patterns that would fail or backtrack catastrophically at deploy time rather than under load
+        if (!gracefulExit && regexCheck != RegexCheck.IGNORE) {
+            long checkStart = System.nanoTime();
+            List<String> problems = expanderConfig.checkPatterns((maxOuter == null) ? 10 : maxOuter, (maxInner == null) ? 10 : maxInner);
+            startupProfile.record("regex check", checkStart);
+            for (String problem : problems) {
+                gate.util.Err.println("Warning: " + problem);
+            }
+            if (!problems.isEmpty() && regexCheck == RegexCheck.REFUSE) {
+                throw new ResourceInstantiationException(problems.size() + " unsafe regular expression(s) built from " + configFileURL + ", first: " + problems.get(0));
+            }
+        }
+
+        // The gazetteer is loaded on the first execute() with useLookups set. Drop any instance
+        // loaded before a re-init so that it is reloaded from the current gazetteerListsURL
+        releaseGazetteer();
+        releaseLookupIndex();
+        releaseKnownPairs();
+        releaseDictionary();
+
+        return this;
+    } // end init()
+
     /**
-     * Pattern for matching text that contains one of a given list of words or regexes
-     * @param key
-     * @param options
+     * Load the gazetteer if it is not already loaded. Safe to call from several threads.
+     * @return the gazetteer
+     * @throws ExecutionException
      */
-    private void addContainsPattern(String key, HashMap<String, String> options) {
-        String option = options.get(key);
-        if (option != null) {
-            constraintsPatternMap.put(key, Pattern.compile("^.+\\b(" + option + ")\\b.+$"));
+    private DefaultGazetteer ensureGazetteer() throws ExecutionException {
+        DefaultGazetteer gaz = gazetteer;
+        if (gaz == null) {
+            synchronized (gazetteerLock) {
+                if (gazetteer == null) {
+                    long start = System.nanoTime();
+                    try {
+                        initGaz();
+                    } catch (ResourceInstantiationException re) {
+                        throw new ExecutionException(re);
+                    }
+                    startupProfile.record("gazetteer (on demand)", start);
+                }
+                gaz = gazetteer;
+            }
         }
+        return gaz;
     }
 
-    /*
-     * Pattern for matching text that starts with one of a given list of words or regexes
-     * @param key
-     * @param options
+    /**
+     * Load the lookup lists for targeted matching if they are not already loaded. Safe to call from several threads.
+     * @throws ExecutionException
      */
-    private void addStartsWithPattern(String key, HashMap<String, String> options) {
-        String option = options.get(key);
-        if (option != null) {
-            constraintsPatternMap.put(key, Pattern.compile("^\\b(" + option + ")\\b.+$"));
+    private void ensureLookupIndex() throws ExecutionException {
+        if (lookupIndex == null) {
+            synchronized (gazetteerLock) {
+                if (lookupIndex == null) {
+                    long start = System.nanoTime();
+                    LookupIndex index = new LookupIndex(gazetteerListsURL, "UTF-8", ";");
+                    try {
+                        index.load();
+                    } catch (IOException ie) {
+                        throw new ExecutionException("Unable to read lookup lists from " + gazetteerListsURL + ": " + ie);
+                    }
+                    lookupIndex = index;
+                    startupProfile.record("lookup index (on demand)", start);
+                }
+            }
+        }
+    }
+
+    private void releaseLookupIndex() {
+        synchronized (gazetteerLock) {
+            lookupIndex = null;
         }
     }
 
     /**
-     * Pattern for matching text that exactly matches one of a given list of words or regexes
-     * @param key
-     * @param options
+     * Index the term-abbreviation pairs in the lookup lists if not already done, reusing the
+     * lookup index if it is loaded. Safe to call from several threads.
+     * @return the index
+     * @throws ExecutionException
      */
-    private void addCompleteMatchPattern(String key, HashMap<String, String> options) {
-        String option = options.get(key);
-        if (option != null) {
-            constraintsPatternMap.put(key, Pattern.compile("^(" + option + ")$"));
+    private KnownPairIndex ensureKnownPairs() throws ExecutionException {
+        KnownPairIndex index = knownPairIndex;
+        if (index == null) {
+            synchronized (gazetteerLock) {
+                index = knownPairIndex;
+                if (index == null) {
+                    long start = System.nanoTime();
+                    LookupIndex lists = lookupIndex;
+                    if (lists == null) {
+                        lists = new LookupIndex(gazetteerListsURL, "UTF-8", ";");
+                        try {
+                            lists.load();
+                        } catch (IOException ie) {
+                            throw new ExecutionException("Unable to read lookup lists from " + gazetteerListsURL + ": " + ie);
+                        }
+                    }
+                    index = new KnownPairIndex(lists);
+                    knownPairIndex = index;
+                    startupProfile.record("known pairs (on demand)", start);
+                }
+            }
         }
+        return index;
     }
 
-    @Override
-    public Resource init() throws ResourceInstantiationException {
-        gracefulExit = false;
+    private void releaseKnownPairs() {
+        synchronized (gazetteerLock) {
+            knownPairIndex = null;
+        }
+    }
 
+    /**
+     * Compile the short forms in the lookup lists, and in learnedPairsURL if set, into a dictionary if
+     * not already done, reusing the lookup index if it is loaded. Safe to call from several threads.
+     * @return the dictionary
+     * @throws ExecutionException
+     */
+    private ShortFormDictionary ensureDictionary() throws ExecutionException {
+        ShortFormDictionary dictionary = shortFormDictionary;
+        if (dictionary == null) {
+            synchronized (gazetteerLock) {
+                dictionary = shortFormDictionary;
+                if (dictionary == null) {
+                    long start = System.nanoTime();
+                    LookupIndex lists = lookupIndex;
+                    if (lists == null) {
+                        lists = new LookupIndex(gazetteerListsURL, "UTF-8", ";");
+                        try {
+                            lists.load();
+                        } catch (IOException ie) {
+                            throw new ExecutionException("Unable to read lookup lists from " + gazetteerListsURL + ": " + ie);
+                        }
+                    }
+                    dictionary = new ShortFormDictionary();
+                    dictionary.addEntries(lists);
+                    if (learnedPairsURL != null) {
+                        try {
+                            InputStream in = learnedPairsURL.openStream();
+                            try {
+                                dictionary.addPairs(in);
+                            } finally {
+                                in.close();
+                            }
+                        } catch (IOException ie) {
+                            throw new ExecutionException("Unable to read learned pairs from " + learnedPairsURL + ": " + ie);
+                        }
+                    }
+                    dictionary.compile();
+                    shortFormDictionary = dictionary;
+                    startupProfile.record("short form dictionary (on demand)", start);
+                }
+            }
+        }
+        return dictionary;
+    }
 
-        if (configFileURL == null) {
-            gracefulExit = true;
-            gate.util.Err.println("No configuration file provided!");
+    private void releaseDictionary() {
+        synchronized (gazetteerLock) {
+            shortFormDictionary = null;
         }
+    }
 
-        if (gazetteerListsURL == null) {
-            gracefulExit = true;
-            gate.util.Err.println("No gazetteer definition file provided!");
+    /**
+     * Annotate lookup list entries found between start and end, skipping spans that have already been matched
+     * @param inputAS       annotation set for the Lookup annotations, as for the gazetteer
+     * @param text          text to match
+     * @param start         start of the region in text
+     * @param end           end of the region in text
+     * @param offset        document offset of text
+     * @param matchedSpans  start and end document offsets of spans already annotated
+     */
+    private void annotateLookups(AnnotationSet inputAS, String text, int start, int end, int offset, Set<Long> matchedSpans) {
+        addLookupMatches(inputAS, lookupIndex.findMatches(text, start, end), offset, matchedSpans);
+    }
+
+    /**
+     * Annotate lookup list entries that begin on abbreviation-like tokens within a sentence
+     * @param inputAS
+     * @param sentenceContent
+     * @param sentStartOffset
+     * @param matchedSpans
+     */
+    private void annotateShortFormLookups(AnnotationSet inputAS, String sentenceContent, int sentStartOffset, Set<Long> matchedSpans) {
+        if (!TextPrefilter.hasInnerCapital(sentenceContent)) {
+            return;
         }
+        List<LookupIndex.Match> matches = new ArrayList<LookupIndex.Match>();
+        Matcher tokenMatcher = SHORT_FORM_TOKEN_PATTERN.matcher(sentenceContent);
+        while (tokenMatcher.find()) {
+            if (TextPrefilter.isShortFormLike(sentenceContent, tokenMatcher.start(), tokenMatcher.end())) {
+                // Entries may also start inside the token after a digit or punctuation, e.g. CD in 3CD
+                for (int i = tokenMatcher.start(); i < tokenMatcher.end(); i++) {
+                    if (LookupIndex.isWordStart(sentenceContent, i)) {
+                        lookupIndex.findMatchesAt(sentenceContent, i, sentenceContent.length(), matches);
+                    }
+                }
+            }
+        }
+        addLookupMatches(inputAS, matches, sentStartOffset, matchedSpans);
+    }
 
-        ConfigReader config = new ConfigReader(configFileURL);
-        gracefulExit = config.config();
+    private void addLookupMatches(AnnotationSet inputAS, List<LookupIndex.Match> matches, int offset, Set<Long> matchedSpans) {
+        for (LookupIndex.Match match : matches) {
+            int start = match.getStart() + offset;
+            int end = match.getEnd() + offset;
+            if (!matchedSpans.add(((long) start << 32) | end)) {
+                continue;
+            }
+            for (LookupIndex.Entry entry : match.getEntries()) {
+                FeatureMap fm = Factory.newFeatureMap();
+                fm.putAll(entry.getFeatures());
+                try {
+                    inputAS.add(Long.valueOf(start), Long.valueOf(end), entry.getAnnotationType(), fm);
+                } catch (InvalidOffsetException ie) {
+                    // shouldn't happen
+                    gate.util.Err.println(ie);
+                }
+            }
+        }
+    }
 
-        try {
-            HashMap<String, String> options = config.getOptions();
-
-            constraintsPatternMap = new HashMap<String, Pattern>();
-            addContainsPattern("to_be", options);
-            addStartsWithPattern("prepositions", options);
-            addStartsWithPattern("wh_adverbs", options);
-            addCompleteMatchPattern("special", options);
-
-            posConstraints = options.get("pos_constraints");
-            outer_pre = options.get("outer_pre");
-            inner_pre = options.get("inner_pre");
-            inner_post = options.get("inner_post");
-            outer_pre_2 = options.get("outer_pre_2");
-            inner_pre_2 = options.get("inner_pre_2");
-            inner_post_2 = options.get("inner_post_2");
-        } catch (NullPointerException ne) {
-            gracefulExit = true;
-            gate.util.Err.println("Missing or unset configuration options. Please check configuration file.");
+    /**
+     * Unload the gazetteer, if loaded, to free its memory
+     */
+    private void releaseGazetteer() {
+        synchronized (gazetteerLock) {
+            DefaultGazetteer gaz = gazetteer;
+            if (gaz != null) {
+                gazetteer = null;
+                // Wait for any run still in progress
+                synchronized (gaz) {
+                    Factory.deleteResource(gaz);
+                }
+            }
         }
+    }
 
-        // Initialize Gazetteer
-        initGaz();
+    /**
+     * Record the start of a call to process(), so that the lookup resources it loads are not
+     * released by execute() on another thread until it ends
+     */
+    private void beginCall() {
+        synchronized (gazetteerLock) {
+            activeCalls++;
+        }
+    }
 
+    private void endCall() {
+        synchronized (gazetteerLock) {
+            activeCalls--;
+        }
+    }
 
-        return this;
-    } // end init()
+    /**
+     * Free the gazetteer and lookup lists if the context does not use them, unless calls on other
+     * threads are in progress that may be using them
+     * @param context
+     */
+    private void releaseUnused(ExecutionContext context) {
+        synchronized (gazetteerLock) {
+            if (activeCalls > 0) {
+                return;
+            }
+            if (gazetteer != null && (!context.useLookups || context.isTargetedLookups())) {
+                releaseGazetteer();
+            }
+            if (lookupIndex != null && !context.isTargetedLookups()) {
+                releaseLookupIndex();
+            }
+            if (knownPairIndex != null && !context.useKnownPairs) {
+                releaseKnownPairs();
+            }
+            if (shortFormDictionary != null && !context.dictionaryMode) {
+                releaseDictionary();
+            }
+        }
+    }
 
     /**
      * 
@@ -186,41 +511,160 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
     }
 
     /**
-     * 
-     * @param inputASName
+     * Run the gazetteer over the context's document. Runs on a shared gazetteer are serialised.
+     * @param context
      * @throws ExecutionException
      */
-    private void runGaz(String inputASName) throws ExecutionException {
-        FeatureMap params;
-        params = Factory.newFeatureMap();
-        params.put(DefaultGazetteer.DEF_GAZ_DOCUMENT_PARAMETER_NAME, document);
-        params.put(DefaultGazetteer.DEF_GAZ_ANNOT_SET_PARAMETER_NAME, inputASName);
-        params.put(DefaultGazetteer.DEF_GAZ_CASE_SENSITIVE_PARAMETER_NAME, "true");
+    private void runGaz(ExecutionContext context) throws ExecutionException {
+        Object traceEvent = trace.beginGazetteer();
+        DefaultGazetteer gaz = ensureGazetteer();
+        synchronized (gaz) {
+            FeatureMap params;
+            params = Factory.newFeatureMap();
+            params.put(DefaultGazetteer.DEF_GAZ_DOCUMENT_PARAMETER_NAME, context.document);
+            params.put(DefaultGazetteer.DEF_GAZ_ANNOT_SET_PARAMETER_NAME, context.inputASName);
+            params.put(DefaultGazetteer.DEF_GAZ_CASE_SENSITIVE_PARAMETER_NAME, "true");
+            try {
+                gaz.setParameterValues(params);
+            } catch (ResourceInstantiationException re) {
+                throw new ExecutionException(re);
+            }
+
+            ProgressListener pListener = null;
+            StatusListener sListener = null;
+            fireProgressChanged(5);
+            if (context.isInterrupted()) {
+                throw new ExecutionInterruptedException(
+                        "The execution of the abbreviations expander has been abruptly interrupted!");
+            }
+            pListener = new IntervalProgressListener(5, 10);
+            sListener = new StatusListener() {
+
+                public void statusChanged(String text) {
+                    fireStatusChanged(text);
+                }
+            };
+            gaz.addProgressListener(pListener);
+            gaz.addStatusListener(sListener);
+            try {
+                gaz.execute();
+            } finally {
+                gaz.removeProgressListener(pListener);
+                gaz.removeStatusListener(sListener);
+                gaz.setDocument(null);
+            }
+        }
+        trace.endGazetteer(traceEvent, context.documentName, context.document.getContent().size());
+    }
+
+    /**
+     * Run the gazetteer once over the texts of a batch, packed into one document, and copy the
+     * lookups it finds to the input set of each document
+     * @param contexts  one for each document in the batch
+     * @param params    run-time parameters of the batch
+     * @throws ExecutionException
+     */
+    private void runPackedGaz(List<ExecutionContext> contexts, ExpanderParameters params) throws ExecutionException {
+        int numDocs = contexts.size();
+        int[] starts = new int[numDocs];
+        int[] ends = new int[numDocs];
+        StringBuilder packed = new StringBuilder();
+        for (int i = 0; i < numDocs; i++) {
+            if (i > 0) {
+                packed.append(PACKED_SEPARATOR);
+            }
+            starts[i] = packed.length();
+            packed.append(contexts.get(i).document.getContent().toString());
+            ends[i] = packed.length();
+        }
+
+        Document packedDoc;
         try {
-            gazetteer.setParameterValues(params);
+            packedDoc = Factory.newDocument(packed.toString());
         } catch (ResourceInstantiationException re) {
             throw new ExecutionException(re);
         }
+        try {
+            ExecutionContext packedContext = new ExecutionContext(packedDoc, params, null);
+            runGaz(packedContext);
+            int doc = 0;
+            for (Annotation lookup : gate.Utils.inDocumentOrder(packedContext.inputAS)) {
+                int start = lookup.getStartNode().getOffset().intValue();
+                int end = lookup.getEndNode().getOffset().intValue();
+                while (doc + 1 < numDocs && start >= starts[doc + 1]) {
+                    doc++;
+                }
+                if (start < starts[doc] || end > ends[doc]) {
+                    continue;
+                }
+                FeatureMap features = Factory.newFeatureMap();
+                features.putAll(lookup.getFeatures());
+                try {
+                    contexts.get(doc).inputAS.add(Long.valueOf(start - starts[doc]), Long.valueOf(end - starts[doc]), lookup.getType(), features);
+                } catch (InvalidOffsetException ie) {
+                    // offsets are within the document's own text
+                    throw new ExecutionException(ie);
+                }
+            }
+        } finally {
+            Factory.deleteResource(packedDoc);
+        }
+    }
 
-        ProgressListener pListener = null;
-        StatusListener sListener = null;
-        fireProgressChanged(5);
-        if (isInterrupted()) {
-            throw new ExecutionInterruptedException(
-                    "The execution of the abbreviations expander has been abruptly interrupted!");
+    /**
+     * Run the gazetteer on the lookup thread
+     * @param context
+     * @return task to pass to awaitGaz()
+     */
+    private Future<?> startGaz(final ExecutionContext context) {
+        ExecutorService executor;
+        synchronized (gazetteerLock) {
+            if (lookupExecutor == null) {
+                lookupExecutor = Executors.newSingleThreadExecutor(new ThreadFactory() {
+
+                    public Thread newThread(Runnable r) {
+                        Thread thread = new Thread(r, "BADREX lookups");
+                        thread.setDaemon(true);
+                        return thread;
+                    }
+                });
+            }
+            executor = lookupExecutor;
         }
-        pListener = new IntervalProgressListener(5, 10);
-        sListener = new StatusListener() {
+        return executor.submit(new Callable<Object>() {
+
+            public Object call() throws ExecutionException {
+                runGaz(context);
+                return null;
+            }
+        });
+    }
 
-            public void statusChanged(String text) {
-                fireStatusChanged(text);
+    /**
+     * Wait for the gazetteer started by startGaz() to finish
+     * @param lookupTask
+     * @param rethrow       false to only report a gazetteer failure, e.g. when execute() is already failing
+     * @throws ExecutionException
+     */
+    private void awaitGaz(Future<?> lookupTask, boolean rethrow) throws ExecutionException {
+        try {
+            lookupTask.get();
+        } catch (InterruptedException ie) {
+            if (gazetteer != null) {
+                gazetteer.interrupt();
             }
-        };
-        gazetteer.addProgressListener(pListener);
-        gazetteer.addStatusListener(sListener);
-        gazetteer.execute();
-        gazetteer.removeProgressListener(pListener);
-        gazetteer.removeStatusListener(sListener);
+            Thread.currentThread().interrupt();
+            throw new ExecutionInterruptedException("Interrupted while waiting for the abbreviations gazetteer");
+        } catch (java.util.concurrent.ExecutionException ee) {
+            Throwable cause = ee.getCause();
+            if (!rethrow) {
+                gate.util.Err.println(cause);
+            } else if (cause instanceof ExecutionException) {
+                throw (ExecutionException) cause;
+            } else {
+                throw new ExecutionException(cause);
+            }
+        }
     }
 
     @Override
@@ -233,58 +677,366 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
             return;
         }
 
-        AnnotationSet inputAS = (inputASName == null || inputASName.trim().length() == 0) ? document.getAnnotations() : document.getAnnotations(inputASName);
-        AnnotationSet outputAS = (outputASName == null || outputASName.trim().length() == 0) ? document.getAnnotations() : document.getAnnotations(outputASName);
+        // Pairs go to a sink set by the caller, or to the file given by pairSinkURL
+        List<ExecutionContext> contexts;
+        if (profiles == null || profiles.trim().length() == 0) {
+            contexts = Collections.singletonList(new ExecutionContext(document, getParameters(), getActiveSink()));
+        } else {
+            // Profiles only annotate, as pairs from different profiles would be mixed in the one sink
+            if (getActiveSink() != null) {
+                gate.util.Err.println("Pairs are not sent to the pair sink when profiles are set");
+            }
+            ExpanderParameters params = getParameters();
+            params.setPairSink(null);
+            try {
+                contexts = createContexts(document, ExpanderParameters.parseProfiles(profiles, params));
+            } catch (IllegalArgumentException ie) {
+                throw new ExecutionException("Invalid profiles: " + ie.getMessage());
+            }
+        }
+        ExecutionContext context = contexts.get(0);
+
+        // Free the gazetteer and lookup lists once they are no longer used
+        releaseUnused(context);
+
+        gateContexts = contexts;
+        try {
+            if (!process(contexts)) {
+                gracefulExit("No sentences to process!");
+            }
+        } finally {
+            gateContexts = null;
+        }
+        if (context.sink != null && context.sink == fileSink) {
+            try {
+                fileSink.flush();
+            } catch (IOException ie) {
+                throw new ExecutionException("Unable to write pairs to " + fileSinkURL + ": " + ie);
+            }
+        }
+        fireProcessFinished();
+    } // end execute()
+
+    /**
+     * Run the expander over a document with the given run-time parameters, without changing the
+     * parameters, document or pair sink of this instance. May be called from any number of threads
+     * at once on the same initialised instance, as long as each call has its own document. Runs of
+     * the full lookups gazetteer are serialised; targeted lookups are not. Interrupt the calling
+     * thread to abandon a call.
+     * @param document
+     * @param params    run-time parameters, e.g. from getParameters(); pairs and mentions go to its pair sink, if set
+     * @throws ExecutionException
+     */
+    public void execute(Document document, ExpanderParameters params) throws ExecutionException {
+        if (gracefulExit) {
+            throw new ExecutionException("Plugin was not initialised correctly");
+        }
+        if (!process(new ExecutionContext(document, params, params.getPairSink()))) {
+            gate.util.Err.println("No sentences to process in " + document.getName());
+        }
+    }
+
+    /**
+     * Run the expander over a batch of documents with the same run-time parameters, as
+     * execute(Document, ExpanderParameters) does for each. Meant for many small documents, such as
+     * titles or snippets, where the fixed cost of a call outweighs the matching: the candidate
+     * scanners, constraints and cache keys are worked out once for the batch, no progress or status
+     * events are fired, and in FULL lookup mode the gazetteer is run once over the texts packed into
+     * a single document, with the lookups it finds copied back to each document. Gives the same
+     * annotations and pairs as calling execute(Document, ExpanderParameters) on each document in turn.
+     * @param documents
+     * @param params    run-time parameters, e.g. from getParameters()
+     * @param sinks     pair sink for each document, or null to send the pairs of all documents to the sink of params, if set
+     * @throws ExecutionException
+     */
+    public void executeBatch(List<Document> documents, ExpanderParameters params, List<? extends PairSink> sinks) throws ExecutionException {
+        if (gracefulExit) {
+            throw new ExecutionException("Plugin was not initialised correctly");
+        }
+        if (sinks != null && sinks.size() != documents.size()) {
+            throw new ExecutionException("Expected a pair sink for each of the " + documents.size() + " documents, not " + sinks.size());
+        }
+        if (documents.isEmpty()) {
+            return;
+        }
+        List<ExecutionContext> contexts = new ArrayList<ExecutionContext>(documents.size());
+        for (int i = 0; i < documents.size(); i++) {
+            contexts.add(new ExecutionContext(documents.get(i), params, (sinks == null) ? params.getPairSink() : sinks.get(i)));
+        }
+        ExecutionContext first = contexts.get(0);
+        beginCall();
+        try {
+            Setup setup = prepare(Collections.singletonList(first));
+            setup.fireEvents = false;
+            if (first.useLookups && !first.dictionaryMode && !first.isTargetedLookups() && first.sentenceType != null && !first.sentenceType.isEmpty()) {
+                runPackedGaz(contexts, params);
+                setup.lookupsDone = true;
+            }
+            for (ExecutionContext context : contexts) {
+                if (!process(Collections.singletonList(context), setup)) {
+                    gate.util.Err.println("No sentences to process in batch");
+                    return;
+                }
+            }
+        } finally {
+            endCall();
+        }
+    }
+
+    /**
+     * Run the expander over a document for several named profiles in a single pass, as
+     * execute(Document, ExpanderParameters) does for one. Candidates are found once with the widest
+     * window of any profile and each is scored once, so this costs little more than the most
+     * expensive profile on its own, and gives the same pairs for each profile as a separate call.
+     * Each profile writes to its own output set, named after the profile unless its parameters give
+     * one, and to its own pair sink, if set; its annotations have the profile name in the profile
+     * feature. The profiles must share the input set, sentence type, lookups and known pairs settings.
+     * @param document
+     * @param profiles  run-time parameters by profile name, e.g. from ExpanderParameters.parseProfiles()
+     * @throws ExecutionException
+     */
+    public void execute(Document document, Map<String, ExpanderParameters> profiles) throws ExecutionException {
+        if (gracefulExit) {
+            throw new ExecutionException("Plugin was not initialised correctly");
+        }
+        if (!process(createContexts(document, profiles))) {
+            gate.util.Err.println("No sentences to process in " + document.getName());
+        }
+    }
+
+    /**
+     *
+     * @param document
+     * @param profiles  run-time parameters by profile name
+     * @return a context for each profile
+     * @throws ExecutionException if there are no profiles, or they differ in what must be shared
+     */
+    private List<ExecutionContext> createContexts(Document document, Map<String, ExpanderParameters> profiles) throws ExecutionException {
+        if (profiles.isEmpty()) {
+            throw new ExecutionException("No profiles given");
+        }
+        List<ExecutionContext> contexts = new ArrayList<ExecutionContext>(profiles.size());
+        for (Map.Entry<String, ExpanderParameters> entry : profiles.entrySet()) {
+            ExpanderParameters params = entry.getValue();
+            ExecutionContext context = new ExecutionContext(document, params, params.getPairSink(), entry.getKey());
+            if (!contexts.isEmpty()) {
+                ExecutionContext first = contexts.get(0);
+                if (context.inputAS != first.inputAS || !equal(context.sentenceType, first.sentenceType) || context.useLookups != first.useLookups
+                        || (context.useLookups && context.lookupMode != first.lookupMode) || context.useKnownPairs != first.useKnownPairs || !equal(context.tokenType, first.tokenType) || context.dictionaryMode != first.dictionaryMode) {
+                    throw new ExecutionException("Profile " + context.profile + " does not have the same input set, sentence type, token type, lookups, known pairs and dictionary mode settings as profile " + first.profile);
+                }
+            }
+            contexts.add(context);
+        }
+        return contexts;
+    }
+
+    private static boolean equal(String a, String b) {
+        return (a == null) ? b == null : a.equals(b);
+    }
 
-        // Run the medical abbreviations gazetteer
-        if (useLookups) {
-            runGaz(inputASName);
+    /**
+     * @return a copy of the current run-time parameters, which can be changed and passed to execute(Document, ExpanderParameters)
+     */
+    public ExpanderParameters getParameters() {
+        ExpanderParameters params = new ExpanderParameters();
+        params.setInputASName(inputASName);
+        params.setOutputASName(outputASName);
+        params.setSentenceType(sentenceType);
+        params.setLongType(longType);
+        params.setLongTypeFeature(longTypeFeature);
+        params.setShortType(shortType);
+        params.setShortTypeFeature(shortTypeFeature);
+        params.setExpandAllShortFormInstances(expandAllShortFormInstances);
+        params.setMentionMode(mentionMode);
+        params.setMaxInner(maxInner);
+        params.setMaxOuter(maxOuter);
+        params.setThreshold(threshold);
+        params.setSwapShortest(swapShortest);
+        params.setUseLookups(useLookups);
+        params.setConcurrentLookups(concurrentLookups);
+        params.setLookupMode(lookupMode);
+        params.setUseKnownPairs(useKnownPairs);
+        params.setUseBidirectionMatch(useBidirectionMatch);
+        if (underlyingAnnots != null) {
+            params.setUnderlyingAnnots(new ArrayList<String>(underlyingAnnots));
         }
+        params.setCreateAnnotations(createAnnotations);
+        params.setScopeType(scopeType);
+        params.setScopeSentences(scopeSentences);
+        params.setTokenType(tokenType);
+        params.setAdaptiveWindows(adaptiveWindows);
+        params.setDictionaryMode(dictionaryMode);
+        params.setPairSink(pairSink);
+        return params;
+    }
+
+    /**
+     * Find, annotate and report the term-abbreviation pairs in the context's document.
+     * Reads only the context and state that is safe to share between calls.
+     * @param context
+     * @return false if the document could not be processed because there is no sentence type
+     * @throws ExecutionException
+     */
+    private boolean process(ExecutionContext context) throws ExecutionException {
+        return process(Collections.singletonList(context));
+    }
 
-        if (maxOuter < 1) {
-            maxOuter = 1;
+    private boolean process(List<ExecutionContext> profiles) throws ExecutionException {
+        beginCall();
+        try {
+            return process(profiles, prepare(profiles));
+        } finally {
+            endCall();
         }
-        if (maxInner < 1) {
-            maxInner = 1;
+    }
+
+    /**
+     * Work out what process() needs from the parameters of each profile
+     * @param profiles  contexts that differ only in parameters checked by createContexts()
+     * @return setup for any document processed with the same parameters
+     * @throws ExecutionException
+     */
+    private Setup prepare(List<ExecutionContext> profiles) throws ExecutionException {
+        int numProfiles = profiles.size();
+        ExecutionContext context = profiles.get(0);
+        Setup setup = new Setup();
+
+        for (ExecutionContext profile : profiles) {
+            if (!profile.annotate && profile.sink == null) {
+                gate.util.Err.println("createAnnotations is false and no pair sink has been set: no output will be produced for " + profile.documentName
+                        + (profile.profile == null ? "" : " in profile " + profile.profile));
+            }
         }
-        int maxInnerChars = maxInner * 4;
-        int maxOuterChars = maxOuter * 4;
-        // Default maximum window of ten words in outer (text before parentheses) and 20 characters (approx 5 words) in inner (text inside parentheses)
-        // Pattern matches a phrases where the first character in the outer matches the first abbrev character in the inner
-        // Pattern abbrevExpansionPairPattern = Pattern.compile("\\b((\\w)\\W{0,2}(\\w+[\\&'/\\-\\+\\s]{1,2}){1," + maxOuter + "})\\s*[\\(\\[](\\2[\\w\\&'\\./\\-\\+\\s]{1," + maxInnerChars + "})([,;:]\\s*\\w+)?[\\)\\]]", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
-        Pattern abbrevExpansionPairPattern = Pattern.compile(outer_pre + maxOuter + inner_pre + maxInnerChars + inner_post, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
 
-        // if we replace ['\\-\\+\\s]{1,2} with ['\\-\\+\\s]{0,2} we can allow for no space before the left parens but this has a big negative impact on performance
+        // No candidates are looked for in dictionary mode
+        if (context.dictionaryMode) {
+            setup.dictionary = ensureDictionary();
+            return setup;
+        }
 
-        // Pattern that matches phrases where the first character of the last word in the outer matches the last abbrev character in the inner
-        // Pattern abbrevExpansionPairPattern2 = Pattern.compile("\\b(.{1," + maxOuterChars + "}\\b(\\w)(\\w+['/\\-\\+\\s]{1,2}))\\s*[\\(\\[](.{1," + maxInnerChars + "}\\2([,;:]\\s*\\w+)?)[\\)\\]]", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
-        Pattern abbrevExpansionPairPattern2 = Pattern.compile(outer_pre_2 + maxOuterChars + inner_pre_2 + maxInnerChars + inner_post_2, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        // Candidates are found once with the widest window, and with the bidirectional pattern if any
+        // profile uses it; narrower windows only rescan sentences where the widest found candidates
+        int widestOuter = 0;
+        int widestInner = 0;
+        for (ExecutionContext profile : profiles) {
+            widestOuter = Math.max(widestOuter, profile.maxOuter);
+            widestInner = Math.max(widestInner, profile.maxInner);
+            setup.widestBidirection |= profile.useBidirectionMatch;
+        }
+        setup.widest = getScanner(widestOuter, widestInner);
+        setup.adaptive = context.adaptiveWindows ? adaptiveWindow : null;
+        setup.scanners = new CandidateScanner[numProfiles];
+        for (int i = 0; i < numProfiles; i++) {
+            setup.scanners[i] = getScanner(profiles.get(i).maxOuter, profiles.get(i).maxInner);
+        }
 
-        // Map to hold abbreviations and their corresponding expansions
-        Map<String, String> expansionMap = new HashMap<String, String>();
-        // Map to hold sentences that have already been matched for the given abbreviation in the first matching phase
-        Map<String, Annotation> alreadyMatchedMap = new HashMap<String, Annotation>();
-        // Map to hold mappings between abbreviation and its underlying semantic type
-        Map<String, String> abbrevTypeMap = new HashMap<String, String>();
-        
+        setup.constraintsPatternMap = expanderConfig.getConstraintsPatternMap();
+        setup.knownPairs = context.useKnownPairs ? ensureKnownPairs() : null;
+
+        // Identical sentences give identical matches for the same matching parameters and configuration
+        setup.cache = getActiveCache();
+        setup.paramsHashes = new long[numProfiles];
+        if (setup.cache != null) {
+            for (int i = 0; i < numProfiles; i++) {
+                ExecutionContext profile = profiles.get(i);
+                setup.paramsHashes[i] = SentenceCache.hash(profile.maxInner + "|" + profile.maxOuter + "|" + profile.threshold + "|" + profile.swapShortest + "|" + profile.useBidirectionMatch + "|" + expanderConfig.getVersion()
+                        + (profile.useKnownPairs ? "|" + gazetteerListsURL : "") + (profile.tokenType == null ? "" : "|" + profile.tokenType));
+            }
+        }
+        return setup;
+    }
+
+    /**
+     * Find, annotate and report the term-abbreviation pairs in a document for one or more profiles
+     * in a single pass. The profiles share the sentences, the lookups and the candidates found with
+     * the widest window; each candidate is scored once for all profiles that find it, and each
+     * profile then applies its own threshold and writes to its own output set and sink.
+     * @param profiles  contexts for the same document that differ only in parameters checked by createContexts()
+     * @param setup     from prepare(), for the same parameters
+     * @return false if the document could not be processed because there is no sentence type
+     * @throws ExecutionException
+     */
+    private boolean process(List<ExecutionContext> profiles, Setup setup) throws ExecutionException {
+        int numProfiles = profiles.size();
+        Object[] traceEvents = new Object[numProfiles];
+        for (int i = 0; i < numProfiles; i++) {
+            traceEvents[i] = trace.beginExecute();
+        }
+        ExecutionContext context = profiles.get(0);
+        AnnotationSet inputAS = context.inputAS;
+
+        if (setup.dictionary != null) {
+            expandFromDictionary(profiles, setup.dictionary, traceEvents);
+            return true;
+        }
 
-        AnnotationSet sentenceAS = null;
-        if (sentenceType != null && !sentenceType.isEmpty()) {
-            sentenceAS = inputAS.get(sentenceType);
+        String sentenceType = context.sentenceType;
+        if (sentenceType == null || sentenceType.isEmpty()) {
+            return false;
         }
+        List<Annotation> sentenceList = gate.Utils.inDocumentOrder(inputAS.get(sentenceType));
 
         // Document content
-        String docContent = document.getContent().toString();
+        String docContent = context.document.getContent().toString();
         int docLen = docContent.length();
 
         // For matching purposes replace all whitespace characters with a single space
-        docContent = docContent.replaceAll("[\\s\\xA0\\u2007\\u202F]", " ");
+        docContent = WHITESPACE_PATTERN.matcher(docContent).replaceAll(" ");
+
+        // Words from the existing token annotations, if any. Read before the gazetteer starts, as it may write to the input set concurrently
+        TokenOffsets docWords = null;
+        if (context.tokenType != null) {
+            docWords = getWords(inputAS, context.tokenType, docContent);
+            if (docWords.size() == 0) {
+                gate.util.Err.println("No " + context.tokenType + " annotations in " + context.documentName + ", tokenising with regular expressions");
+                docWords = null;
+            }
+        }
 
-        fireStatusChanged("Locating abbreviations in " + document.getName());
-        fireProgressChanged(0);
+        // Run the medical abbreviations gazetteer, loading it on first use.
+        // The gazetteer only writes Lookup annotations, which are not needed until semantic types are resolved, so
+        // it can run alongside candidate matching; the input set must not be read again until it has finished
+        boolean targetedLookups = context.isTargetedLookups();
+        Future<?> lookupTask = null;
+        if (context.useLookups && !targetedLookups && !setup.lookupsDone) {
+            ensureGazetteer();
+            if (context.concurrentLookups) {
+                lookupTask = startGaz(context);
+            } else {
+                runGaz(context);
+            }
+        }
+        // In targeted mode, lookups are matched only around candidate pairs and abbreviation-like tokens
+        Set<Long> lookupSpans = null;
+        if (targetedLookups) {
+            ensureLookupIndex();
+            lookupSpans = new HashSet<Long>();
+        }
+
+        CandidateScanner widest = setup.widest;
+        AdaptiveWindow adaptive = setup.adaptive;
+        boolean widestBidirection = setup.widestBidirection;
+        CandidateScanner[] scanners = setup.scanners;
+        Map<String, Pattern> constraintsPatternMap = setup.constraintsPatternMap;
+        KnownPairIndex knownPairs = setup.knownPairs;
+        // Matches found with the document's own tokens depend on more than the sentence text, so are not cached
+        SentenceCache cache = (docWords == null) ? setup.cache : null;
+        long[] paramsHashes = setup.paramsHashes;
+        boolean fireEvents = setup.fireEvents;
+
+        if (fireEvents) {
+            fireStatusChanged("Locating abbreviations in " + context.documentName);
+            fireProgressChanged(0);
+        }
 
-        if (sentenceAS != null) {
-            List<Annotation> sentenceList = gate.Utils.inDocumentOrder(sentenceAS);
+        // First phase - find the candidate pairs in each sentence for each profile. Reads only the document text
+        List<List<List<CandidateMatch>>> profileMatches = new ArrayList<List<List<CandidateMatch>>>(numProfiles);
+        for (int i = 0; i < numProfiles; i++) {
+            profileMatches.add(new ArrayList<List<CandidateMatch>>(sentenceList.size()));
+        }
+        boolean matched = false;
+        try {
             for (Annotation sentence : sentenceList) {
                 int sentStartOffset = sentence.getStartNode().getOffset().intValue();
                 int sentEndOffset = sentence.getEndNode().getOffset().intValue();
@@ -293,80 +1045,337 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
 
                 int progress = 0;
 
-                Matcher m1 = abbrevExpansionPairPattern.matcher(sentenceContent);
-                // Extra matching pass - can lead to increased recall but reduced precision
-                if (useBidirectionMatch) {
-                    Matcher m2 = abbrevExpansionPairPattern2.matcher(sentenceContent);
-                    boolean m1Found;
-                    boolean m2Found;
-                    int startPoint = 0;
-                    do {
-                        m1Found = false;
-                        m2Found = false;
-                        m1Found = m1.find(startPoint);
-                        if (!m1Found) {
-                            m2Found = m2.find(startPoint);
+                Object sentenceEvent = trace.beginSentence();
+                boolean cached = true;
+                int numCandidates = 0;
+                int numAccepted = 0;
+                List<Candidate> widestCandidates = null;
+                TokenOffsets words = null;
+                // Scores by candidate, for candidates found by more than one profile
+                Map<String, CandidateMatch> scored = (numProfiles > 1) ? new HashMap<String, CandidateMatch>() : null;
+                for (int i = 0; i < numProfiles; i++) {
+                    ExecutionContext profile = profiles.get(i);
+                    List<CandidateMatch> matches = (cache == null) ? null : cache.get(paramsHashes[i], sentenceContent);
+                    if (matches == null) {
+                        cached = false;
+                        if (widestCandidates == null) {
+                            widestCandidates = (adaptive == null) ? widest.scan(sentenceContent, widestBidirection) : adaptive.scan(widest, sentenceContent, widestBidirection);
+                            numCandidates = widestCandidates.size();
+                        }
+                        List<Candidate> candidates = widestCandidates;
+                        if (scanners[i] != widest || profile.useBidirectionMatch != widestBidirection) {
+                            candidates = scanners[i].scan(sentenceContent, profile.useBidirectionMatch, widestCandidates);
+                        }
+                        if (docWords != null && !candidates.isEmpty()) {
+                            if (words == null) {
+                                words = docWords.slice(sentStartOffset, sentEndOffset);
+                            }
+                            candidates = limitWindows(candidates, sentenceContent, words, profile.maxOuter);
                         }
-                        if (m1Found) {
-                            doMatch(inputAS, outputAS, sentence, sentStartOffset, false, m1, constraintsPatternMap, expansionMap, alreadyMatchedMap, abbrevTypeMap, sentenceContent);
-                            startPoint = m1.end();
+                        matches = new ArrayList<CandidateMatch>();
+                        for (Candidate candidate : candidates) {
+                            CandidateMatch match;
+                            if (scored == null) {
+                                match = doMatch(profile, candidate, constraintsPatternMap, knownPairs, words);
+                            } else {
+                                String key = scoreKey(candidate, profile.maxOuter);
+                                if (scored.containsKey(key)) {
+                                    match = scored.get(key);
+                                } else {
+                                    match = doMatch(profile, candidate, constraintsPatternMap, knownPairs, words);
+                                    scored.put(key, match);
+                                }
+                            }
+                            if (match != null && match.isAccepted(profile.threshold)) {
+                                matches.add(match);
+                                if (adaptive != null) {
+                                    adaptive.record(candidate);
+                                }
+                            }
+                            // Progress bar
+                            progress++;
+                            if (fireEvents) {
+                                fireProgressChanged(progress / docLen);
+                            }
                         }
-                        if (m2Found) {
-                            doMatch(inputAS, outputAS, sentence, sentStartOffset, true, m2, constraintsPatternMap, expansionMap, alreadyMatchedMap, abbrevTypeMap, sentenceContent);
-                            startPoint = m2.end();
+                        if (cache != null) {
+                            cache.put(paramsHashes[i], sentenceContent, matches);
                         }
+                    }
+                    numAccepted += matches.size();
+                    profileMatches.get(i).add(matches);
+                }
+                trace.endSentence(sentenceEvent, context.documentName, sentStartOffset, sentEndOffset, numCandidates, numAccepted, cached);
+            }
+            matched = true;
+        } finally {
+            if (lookupTask != null) {
+                awaitGaz(lookupTask, matched);
+            }
+        }
 
-                        // Progress bar
-                        progress++;
-                        fireProgressChanged(progress / docLen);
-                    } while (m1Found || m2Found);
-                } else {
-                    while (m1.find()) {
-                        doMatch(inputAS, outputAS, sentence, sentStartOffset, false, m1, constraintsPatternMap, expansionMap, alreadyMatchedMap, abbrevTypeMap, sentenceContent);
-                        // Progress bar
-                        progress++;
-                        fireProgressChanged(progress / docLen);
-                    } // end while m1.find()
-                } // end if
-
-                // now find others instances of the abbreviations that we matched earlier
-                if (expandAllShortFormInstances) {
-                    for (Iterator<Map.Entry<String, String>> itr = expansionMap.entrySet().iterator(); itr.hasNext();) {
-                        Map.Entry<String, String> entry = itr.next();
-                        String abbrevKey = entry.getKey();
-                        String termEntry = entry.getValue();
-                        String termId = "";
-                        int termIdIdx = termEntry.lastIndexOf("~~");
-                        if (termIdIdx > 0) {
-                        	termId = termEntry.substring(termIdIdx+2);
-                        	termEntry = termEntry.substring(0, termIdIdx);
+        // Second phase - resolve semantic types, annotate and expand, in document order, for each profile in turn
+        for (int i = 0; i < numProfiles; i++) {
+            ExecutionContext profile = profiles.get(i);
+            int numPairs = annotate(profile, sentenceList, profileMatches.get(i), docContent, lookupSpans);
+            trace.endExecute(traceEvents[i], profile.documentName, docLen, sentenceList.size(), numPairs, profile.maxOuter, profile.maxInner, profile.threshold, profile.useBidirectionMatch,
+                    profile.useLookups ? String.valueOf(profile.lookupMode) : null, profile.expandAll);
+        }
+        return true;
+    }
+
+    /**
+     * Annotate and report the pairs accepted in each sentence for one profile, and expand later mentions
+     * @param context
+     * @param sentenceList
+     * @param sentenceMatches   accepted pairs in each sentence
+     * @param docContent        document text, with white space normalised to single spaces
+     * @param lookupSpans       spans already matched against the lookup lists, or null if lookups are not targeted
+     * @return number of pairs accepted
+     */
+    private int annotate(ExecutionContext context, List<Annotation> sentenceList, List<List<CandidateMatch>> sentenceMatches, String docContent, Set<Long> lookupSpans) {
+        AnnotationSet inputAS = context.inputAS;
+        AnnotationSet outputAS = context.outputAS;
+
+        // Optionally forget definitions outside their section or paragraph, or not seen for a number of sentences
+        ShortFormScope scope = null;
+        boolean scopeByType = (context.scopeType != null && context.scopeType.trim().length() > 0);
+        if (scopeByType || context.scopeSentences > 0) {
+            scope = new ShortFormScope(scopeByType ? inputAS.get(context.scopeType.trim()) : null, context.scopeSentences);
+        }
+
+        // Map to hold abbreviations and their corresponding expansions
+        Map<String, Expansion> expansionMap = new HashMap<String, Expansion>();
+        // Map to hold sentences that have already been matched for the given abbreviation in the first matching phase
+        Map<String, Annotation> alreadyMatchedMap = new HashMap<String, Annotation>();
+        // Map to hold mappings between abbreviation and its underlying semantic type
+        Map<String, String> abbrevTypeMap = new HashMap<String, String>();
+        // Map to hold the pair reported to the sink for each abbreviation, so that later mentions can refer to it
+        Map<String, AbbreviationPair> pairMap = new HashMap<String, AbbreviationPair>();
+        // Map to hold the mention offsets recorded against each long form annotation in COMPACT mode
+        Map<Annotation, MentionOffsets> mentionsMap = new LinkedHashMap<Annotation, MentionOffsets>();
+        // Compiled patterns for finding later mentions of each abbreviation
+        Map<String, Pattern> mentionPatternMap = new HashMap<String, Pattern>();
+        Map<String, String> mentionLiteralMap = new HashMap<String, String>();
+
+        int numPairs = 0;
+        int sentenceIndex = 0;
+        for (Annotation sentence : sentenceList) {
+            int sentStartOffset = sentence.getStartNode().getOffset().intValue();
+            int sentEndOffset = sentence.getEndNode().getOffset().intValue();
+            List<CandidateMatch> matches = sentenceMatches.get(sentenceIndex);
+            sentenceIndex++;
+
+            if (scope != null) {
+                for (Map.Entry<String, String> expired : scope.expire(sentenceIndex, sentStartOffset).entrySet()) {
+                    expansionMap.remove(expired.getKey());
+                    pairMap.remove(expired.getKey());
+                    mentionPatternMap.remove(expired.getKey());
+                    mentionLiteralMap.remove(expired.getKey());
+                    alreadyMatchedMap.remove(expired.getValue());
+                    abbrevTypeMap.remove(expired.getValue());
+                }
+            }
+
+            String sentenceContent = docContent.substring(sentStartOffset, sentEndOffset);
+
+            if (lookupSpans != null) {
+                annotateShortFormLookups(inputAS, sentenceContent, sentStartOffset, lookupSpans);
+            }
+
+            numPairs += matches.size();
+            for (CandidateMatch match : matches) {
+                acceptMatch(context, sentence, sentStartOffset, match, expansionMap, alreadyMatchedMap, abbrevTypeMap, sentenceContent, lookupSpans, pairMap, mentionsMap);
+                if (scope != null) {
+                    scope.defined(match.getAbbrev(), match.getAbbrevNorm(), sentenceIndex, sentStartOffset + match.getAbbrevStart());
+                }
+            }
+
+            // now find others instances of the abbreviations that we matched earlier
+            if (context.expandAll) {
+                for (Iterator<Map.Entry<String, Expansion>> itr = expansionMap.entrySet().iterator(); itr.hasNext();) {
+                    Map.Entry<String, Expansion> entry = itr.next();
+                    String abbrevKey = entry.getKey();
+                    Expansion expansion = entry.getValue();
+                    Annotation matchedSentence = alreadyMatchedMap.get(abbrevKey);
+                    if (matchedSentence != null && !matchedSentence.equals(sentence)) {
+                        String literal = mentionLiteralMap.get(abbrevKey);
+                        if (literal == null) {
+                            literal = TextPrefilter.mentionLiteral(abbrevKey);
+                            mentionLiteralMap.put(abbrevKey, literal);
                         }
-                        Annotation matchedSentence = alreadyMatchedMap.get(abbrevKey);
-                        if (matchedSentence != null && !matchedSentence.equals(sentence)) {
-                        	String abbrevNorm = getNormalizedAbbrev(abbrevKey);
-                        	Pattern patt = Pattern.compile("\\b(" + abbrevNorm + ")s?\\b");
-                            Matcher abbrevMatcher = patt.matcher(sentenceContent);
-                            String underlyingShortType = abbrevTypeMap.get(abbrevKey);
-                            if (underlyingShortType == null ) {
-                                underlyingShortType = shortType;
-                            }
-                            while (abbrevMatcher.find()) {
-                                int start = abbrevMatcher.start(1) + sentStartOffset;
-                                int end = abbrevMatcher.end(1) + sentStartOffset;
-                                int tempId = addLookup(inputAS, outputAS, longTypeFeature, termEntry, underlyingShortType, start, end);
+                        // Every mention contains the literal, so most sentences need no matcher
+                        if (sentenceContent.indexOf(literal) < 0) {
+                            continue;
+                        }
+                        Pattern patt = mentionPatternMap.get(abbrevKey);
+                        if (patt == null) {
+                            patt = Pattern.compile("\\b(" + getNormalizedAbbrev(abbrevKey) + ")s?\\b");
+                            mentionPatternMap.put(abbrevKey, patt);
+                        }
+                        Matcher abbrevMatcher = patt.matcher(sentenceContent);
+                        String underlyingShortType = abbrevTypeMap.get(abbrevKey);
+                        if (underlyingShortType == null ) {
+                            underlyingShortType = context.shortType;
+                        }
+                        AbbreviationPair pair = pairMap.get(abbrevKey);
+                        while (abbrevMatcher.find()) {
+                            int start = abbrevMatcher.start(1) + sentStartOffset;
+                            int end = abbrevMatcher.end(1) + sentStartOffset;
+                            if (expansion.mentions != null) {
+                                expansion.mentions.add(start, end);
+                            } else if (context.annotate) {
+                                int tempId = addLookup(context, context.longTypeFeature, expansion.longForm, underlyingShortType, start, end);
                                 Annotation newAnn = outputAS.get(tempId);
-                                newAnn.getFeatures().put("corefId", termId);
+                                newAnn.getFeatures().put("corefId", expansion.corefId);
+                            }
+                            if (pair != null) {
+                                context.sink.mentionFound(pair, start, end);
+                            }
+                            if (scope != null) {
+                                scope.mentioned(abbrevKey, sentenceIndex);
                             }
                         }
-                    } // end for
+                    }
+                } // end for
+            }
+        } // end sentenceAS iterator
+
+        // Offsets are stored as a string so that the document still serialises without custom converters
+        for (Map.Entry<Annotation, MentionOffsets> entry : mentionsMap.entrySet()) {
+            entry.getKey().getFeatures().put(MENTIONS_FEATURE, entry.getValue().toString());
+        }
+
+        return numPairs;
+    }
+
+    /**
+     * Annotate each short form in the dictionary wherever it occurs in the document, with its long
+     * form, as later mentions of a learned short form are annotated, without looking for pairs. The
+     * first mention of each short form is sent to the sink as a pair, with no long form offsets, and
+     * the rest as its mentions.
+     * @param profiles      contexts for the same document
+     * @param dictionary    compiled short forms
+     * @param traceEvents   trace event of each profile
+     * @throws ExecutionException
+     */
+    private void expandFromDictionary(List<ExecutionContext> profiles, ShortFormDictionary dictionary, Object[] traceEvents) throws ExecutionException {
+        ExecutionContext context = profiles.get(0);
+        String docContent = context.document.getContent().toString();
+        List<ShortFormDictionary.Match> found = dictionary.findMatches(docContent);
+
+        for (int i = 0; i < profiles.size(); i++) {
+            ExecutionContext profile = profiles.get(i);
+            Map<String, AbbreviationPair> pairMap = new HashMap<String, AbbreviationPair>();
+            for (ShortFormDictionary.Match match : found) {
+                if (profile.isInterrupted()) {
+                    throw new ExecutionInterruptedException("Execution of Biomedical Abbreviation Expander was interrupted.");
+                }
+                ShortFormDictionary.Expansion expansion = match.getExpansion();
+                String category = expansion.getCategory();
+                if (profile.annotate) {
+                    String shortType = (category != null && profile.underlyingAnnots != null && profile.underlyingAnnots.contains(category)) ? category : profile.shortType;
+                    addLookup(profile, profile.longTypeFeature, expansion.getLongForm(), shortType, match.getStart(), match.getEnd());
+                }
+                if (profile.sink != null) {
+                    AbbreviationPair pair = pairMap.get(expansion.getShortForm());
+                    if (pair == null) {
+                        pair = new AbbreviationPair(profile.documentName, expansion.getShortForm(), expansion.getLongForm(), match.getStart(), match.getEnd(), -1, -1, category);
+                        pairMap.put(expansion.getShortForm(), pair);
+                        profile.sink.pairFound(pair);
+                    } else {
+                        profile.sink.mentionFound(pair, match.getStart(), match.getEnd());
+                    }
                 }
-            } // end sentenceAS iterator
+            }
+            trace.endExecute(traceEvents[i], profile.documentName, docContent.length(), 0, found.size(), profile.maxOuter, profile.maxInner, profile.threshold, profile.useBidirectionMatch,
+                    null, profile.expandAll);
+        }
+    }
+
+    /**
+     * Candidate patterns are only recompiled when the window size or configuration changes
+     * @param maxOuter
+     * @param maxInner
+     * @return scanner for the window, compiled for the current configuration
+     */
+    private CandidateScanner getScanner(int maxOuter, int maxInner) {
+        List<CandidateScanner> scanners = candidateScanners;
+        for (CandidateScanner scanner : scanners) {
+            if (scanner.isCompiledFor(expanderConfig, maxOuter, maxInner)) {
+                return scanner;
+            }
+        }
+        CandidateScanner scanner = new CandidateScanner(expanderConfig, maxOuter, maxInner);
+        List<CandidateScanner> updated = new ArrayList<CandidateScanner>();
+        updated.add(scanner);
+        for (CandidateScanner old : scanners) {
+            if (updated.size() < MAX_SCANNERS && old.isCompiledFor(expanderConfig, old.getMaxOuter(), old.getMaxInner())) {
+                updated.add(old);
+            }
+        }
+        candidateScanners = updated;
+        return scanner;
+    }
+
+    /**
+     * @return the cache set with setSentenceCache(), else a cache of sentenceCacheSize sentences, else null
+     */
+    private synchronized SentenceCache getActiveCache() {
+        if (sharedCache != null) {
+            return sharedCache;
+        }
+        if (sentenceCacheSize == null || sentenceCacheSize < 1) {
+            sentenceCache = null;
+        } else if (sentenceCache == null || sentenceCache.getMaxEntries() != sentenceCacheSize) {
+            sentenceCache = new SentenceCache(sentenceCacheSize);
+        }
+        return sentenceCache;
+    }
+
+    /**
+     * @return the sink set with setPairSink(), else a writer on pairSinkURL, else null
+     * @throws ExecutionException
+     */
+    private PairSink getActiveSink() throws ExecutionException {
+        if (pairSink != null) {
+            return pairSink;
+        }
+        if (pairSinkURL == null) {
+            closeFileSink();
+            return null;
+        }
+        PairFormat format = (pairSinkFormat == null) ? PairFormat.TSV : pairSinkFormat;
+        if (fileSink == null || !pairSinkURL.equals(fileSinkURL) || format != fileSinkFormat) {
+            closeFileSink();
+            try {
+                File file = new File(pairSinkURL.toURI());
+                fileSink = format.createWriter(file);
+            } catch (URISyntaxException ue) {
+                throw new ExecutionException("Pair sink must be a file URL: " + pairSinkURL);
+            } catch (IllegalArgumentException ie) {
+                throw new ExecutionException("Pair sink must be a file URL: " + pairSinkURL);
+            } catch (IOException ie) {
+                throw new ExecutionException("Unable to open pair sink " + pairSinkURL + ": " + ie);
+            }
+            fileSinkURL = pairSinkURL;
+            fileSinkFormat = format;
+        }
+        return fileSink;
+    }
 
-        } else {
-            gracefulExit("No sentences to process!");
+    private void closeFileSink() {
+        if (fileSink != null) {
+            try {
+                fileSink.close();
+            } catch (IOException ie) {
+                gate.util.Err.println("Unable to close pair sink " + fileSinkURL + ": " + ie);
+            }
+            fileSink = null;
+            fileSinkURL = null;
+            fileSinkFormat = null;
         }
-        fireProcessFinished();
-    } // end execute()
+    }
 
 
 	/**
@@ -388,35 +1397,36 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
 	}
 	
     /**
-     *
-     * @param inputAS
-     * @param outputAS
-     * @param sentence
-     * @param sentStartOffset
-     * @param secondPass
-     * @param m1
-     * @param constraintsPatternMap
-     * @param expansionMap
-     * @param alreadyMatchedMap
-     * @param abbrevTypeMap
-     * @param sentenceContent
+     * Apply the constraint, truncation and character alignment checks to a candidate pair.
+     * Depends only on the sentence text and the matching parameters other than the threshold,
+     * which the caller applies to the score of the pair.
+     * @param context
+     * @param candidate
+     * @param patternMap
+     * @param knownPairs    pairs to accept without the checks, or null
+     * @param words         words of the sentence, from the token annotations, or null to tokenise with regexes
+     * @return the scored pair, or null if the candidate is discarded by the constraints
      * @throws ExecutionInterruptedException
      */
-    private void doMatch(AnnotationSet inputAS, AnnotationSet outputAS, Annotation sentence, int sentStartOffset, boolean secondPass, Matcher m1, Map<String, Pattern> patternMap, Map<String, String> expansionMap, Map<String, Annotation> alreadyMatchedMap, Map<String, String> abbrevTypeMap, String sentenceContent) throws ExecutionInterruptedException {
+    private CandidateMatch doMatch(ExecutionContext context, Candidate candidate, Map<String, Pattern> patternMap, KnownPairIndex knownPairs, TokenOffsets words) throws ExecutionInterruptedException {
         int numMatches = 0;
         boolean isPlural = false;
         boolean isCandidateMatch = true;
         boolean swapped = false;        // flag to determine if abbrev and term have switched places
-        if (isInterrupted()) {
+        if (context.isInterrupted()) {
             throw new ExecutionInterruptedException("Execution of Biomedical Abbreviation Expander was interrupted.");
         }
-
-        String term = m1.group(1);
-        String abbrev = m1.group(4);
-        int termStart = m1.start(1);
-        int termEnd = m1.end(1);
-        int abbrevStart = m1.start(4);
-        int abbrevEnd = m1.end(4);
+        Object traceEvent = trace.beginMatch();
+
+        boolean secondPass = candidate.isSecondPass();
+        int windowStart = candidate.getStart();
+        int windowEnd = candidate.getEnd();
+        String term = candidate.getOuter();
+        String abbrev = candidate.getInner();
+        int termStart = candidate.getOuterStart();
+        int termEnd = candidate.getOuterEnd();
+        int abbrevStart = candidate.getInnerStart();
+        int abbrevEnd = candidate.getInnerEnd();
         int abbrevLen = abbrev.length();
         int termLen = term.length();
         if (term.matches(".+\\s$")) {
@@ -446,6 +1456,15 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
             abbrev = abbrev.substring(0, abbrevLen);
         }
 
+        // Pairs already in the lookup lists need none of the checks below
+        if (knownPairs != null) {
+            CandidateMatch known = matchKnownPair(knownPairs, abbrev, abbrevStart, abbrevEnd, term, termStart, termEnd, isPlural, windowStart, windowEnd);
+            if (known != null) {
+                trace.endMatch(traceEvent, known.getAbbrev(), known.getTermNorm(), secondPass, ExpanderTrace.OUTCOME_KNOWN, 1.0f);
+                return known;
+            }
+        }
+
         // Value judgement phase - check abbreviation does not meet discard conditions
         for (Iterator<Map.Entry<String, Pattern>> patternItr = patternMap.entrySet().iterator(); patternItr.hasNext();) {
             Map.Entry<String, Pattern> entry = patternItr.next();
@@ -456,7 +1475,8 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
             }
         }
         if (!isCandidateMatch) {
-            return;
+            trace.endMatch(traceEvent, abbrev, term, secondPass, ExpanderTrace.OUTCOME_CONSTRAINT, -1);
+            return null;
         }
 
         // Get first char of term, this will match the first char of the abbrev from our original regex
@@ -466,24 +1486,34 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
         String termFirstChar = term.substring(0, 1);
         String termLastChar = term.substring(termLen - 1, termLen);
         
+        int maxOuter = context.maxOuter;
         int upperBound = (maxOuter >= 2) ? maxOuter - 1 : maxOuter;
 
-        Pattern containsPrep = Pattern.compile("^(" + termFirstChar + ".+\\b)?((" + posConstraints + ")\\s+){1," + upperBound + "}(\\b[^" + termFirstChar + "][^\\s]+\\s+){0,3}\\b" + termFirstChar, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
-        Pattern containsPrep2 = Pattern.compile("^.+" + termLastChar + "\\b((" + posConstraints + ")\\s+){1," + upperBound + "}\\b(.+" + termLastChar + "\\b)", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
-        Matcher prepMatch;
-        if (secondPass) {
-            prepMatch = containsPrep2.matcher(term);
-        } else {
-            prepMatch = containsPrep.matcher(term);
-        }
-
-        if (prepMatch.find()) {
-            int tmpTermStart;
+        if (words == null) {
+            String posConstraints = expanderConfig.getPosConstraints();
+            Pattern containsPrep = Pattern.compile("^(" + termFirstChar + ".+\\b)?((" + posConstraints + ")\\s+){1," + upperBound + "}(\\b[^" + termFirstChar + "][^\\s]+\\s+){0,3}\\b" + termFirstChar, Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            Pattern containsPrep2 = Pattern.compile("^.+" + termLastChar + "\\b((" + posConstraints + ")\\s+){1," + upperBound + "}\\b(.+" + termLastChar + "\\b)", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            Matcher prepMatch;
             if (secondPass) {
-                tmpTermStart = prepMatch.start(3);
+                prepMatch = containsPrep2.matcher(term);
             } else {
-                tmpTermStart = prepMatch.end() - 1;
+                prepMatch = containsPrep.matcher(term);
+            }
+
+            if (prepMatch.find()) {
+                int tmpTermStart;
+                if (secondPass) {
+                    tmpTermStart = prepMatch.start(3);
+                } else {
+                    tmpTermStart = prepMatch.end() - 1;
+                }
+                if (tmpTermStart > -1) {
+                    term = term.substring(tmpTermStart);
+                    termStart = termStart + tmpTermStart;
+                }
             }
+        } else {
+            int tmpTermStart = truncateAtPrepositions(term, termStart, words, secondPass, upperBound);
             if (tmpTermStart > -1) {
                 term = term.substring(tmpTermStart);
                 termStart = termStart + tmpTermStart;
@@ -494,33 +1524,49 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
         String termClean = term.replaceAll("[\\d\\p{Punct}]", "").trim();
         String abbrevClean = abbrev.replaceAll("[\\d\\p{Punct}]", "").trim();
 
-        // Tokenize the term - if it's more than one word and the last word is all caps, grab the last word
-        String[] termTokens = termClean.split("\\s+");
-        if (termTokens.length > 2) {
-            String tmpTermClean = termTokens[termTokens.length - 1];
-            String firstChar = term.substring(0, 1);
-            String firstCharLastWord = tmpTermClean.substring(0, 1);
-            if (tmpTermClean.matches("^[A-Z]{2,}$") && firstChar.equalsIgnoreCase(firstCharLastWord)) {
-                termClean = termTokens[termTokens.length - 1];
-                String[] termArr = term.split("\\s+");
-                String tmpTerm = termArr[termArr.length - 1];
-                termStart = termStart + term.lastIndexOf(tmpTerm);
-                term = tmpTerm;
+        if (words != null) {
+            // If the term or abbrev is more than two words and the last word is all caps, grab the last word
+            int lastStart = lastCapitalisedWord(term, termStart, words);
+            if (lastStart > -1) {
+                term = term.substring(lastStart);
+                termStart = termStart + lastStart;
+                termClean = term.replaceAll("[\\d\\p{Punct}]", "").trim();
+            }
+            lastStart = lastCapitalisedWord(abbrev, abbrevStart, words);
+            if (lastStart > -1) {
+                abbrev = abbrev.substring(lastStart);
+                abbrevStart = abbrevStart + lastStart;
+                abbrevClean = abbrev.replaceAll("[\\d\\p{Punct}]", "").trim();
+            }
+        } else {
+            // Tokenize the term - if it's more than one word and the last word is all caps, grab the last word
+            String[] termTokens = termClean.split("\\s+");
+            if (termTokens.length > 2) {
+                String tmpTermClean = termTokens[termTokens.length - 1];
+                String firstChar = term.substring(0, 1);
+                String firstCharLastWord = tmpTermClean.substring(0, 1);
+                if (tmpTermClean.matches("^[A-Z]{2,}$") && firstChar.equalsIgnoreCase(firstCharLastWord)) {
+                    termClean = termTokens[termTokens.length - 1];
+                    String[] termArr = term.split("\\s+");
+                    String tmpTerm = termArr[termArr.length - 1];
+                    termStart = termStart + term.lastIndexOf(tmpTerm);
+                    term = tmpTerm;
+                }
             }
-        }
 
-        // Tokenize the abbrev - if it's more than one word and the last word is all caps, grab the last word
-        String[] abbrevTokens = abbrevClean.split("\\s+");
-        if (abbrevTokens.length > 2) {
-            String tmpAbbrevClean = abbrevTokens[abbrevTokens.length - 1];
-            String firstChar = abbrev.substring(0, 1);
-            String firstCharLastWord = tmpAbbrevClean.substring(0, 1);
-            if (tmpAbbrevClean.matches("^[A-Z]{2,}$") && firstChar.equalsIgnoreCase(firstCharLastWord)) {
-                abbrevClean = abbrevTokens[abbrevTokens.length - 1];
-                String[] abbrevArr = abbrev.split("\\s+");
-                String tmpAbbrev = abbrevArr[abbrevArr.length - 1];
-                abbrevStart = abbrevStart + abbrev.lastIndexOf(tmpAbbrev);
-                abbrev = tmpAbbrev;
+            // Tokenize the abbrev - if it's more than one word and the last word is all caps, grab the last word
+            String[] abbrevTokens = abbrevClean.split("\\s+");
+            if (abbrevTokens.length > 2) {
+                String tmpAbbrevClean = abbrevTokens[abbrevTokens.length - 1];
+                String firstChar = abbrev.substring(0, 1);
+                String firstCharLastWord = tmpAbbrevClean.substring(0, 1);
+                if (tmpAbbrevClean.matches("^[A-Z]{2,}$") && firstChar.equalsIgnoreCase(firstCharLastWord)) {
+                    abbrevClean = abbrevTokens[abbrevTokens.length - 1];
+                    String[] abbrevArr = abbrev.split("\\s+");
+                    String tmpAbbrev = abbrevArr[abbrevArr.length - 1];
+                    abbrevStart = abbrevStart + abbrev.lastIndexOf(tmpAbbrev);
+                    abbrev = tmpAbbrev;
+                }
             }
         }
 
@@ -547,7 +1593,6 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
         termClean = termClean.toUpperCase();
         abbrevClean = abbrevClean.toUpperCase();
 
-        int numTermTokens = termTokens.length;
         int numAbbrevChars = abbrevClean.length();
 
         int startPos = 0;
@@ -575,67 +1620,329 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
         
         // Have we matched the minimum number of abbrev chars?
         float thresh = (float) numMatches / (float) numAbbrevChars;
-        if (thresh >= threshold) {
-            int termId = -1;
-            // Copy over any existing semantic type that covers this term, rather than create a new annot
-            String underlyingLongType = getUnderlyingAnnType(inputAS, termStart + sentStartOffset, termEnd + sentStartOffset);
-            String underlyingShortType = shortType;
-            if (underlyingLongType != null) {
-                abbrevTypeMap.put(abbrevNorm, underlyingLongType);
-                underlyingShortType = underlyingLongType;
-            }
-            if (swapped && !swapShortest) {
-                if (underlyingLongType == null) { underlyingLongType = shortType ; underlyingShortType = longType ;}
-                termId = addLookup(inputAS, outputAS, longTypeFeature, abbrevNorm, underlyingLongType, termStart + sentStartOffset, termEnd + sentStartOffset);
-                addLookup(inputAS, outputAS, shortTypeFeature, termNorm, underlyingShortType, abbrevStart + sentStartOffset, abbrevEnd + sentStartOffset);
-            } else {
-                if (underlyingLongType == null) { underlyingLongType = longType ; }
-                termId = addLookup(inputAS, outputAS, shortTypeFeature, abbrevNorm, underlyingLongType, termStart + sentStartOffset, termEnd + sentStartOffset);
-                addLookup(inputAS, outputAS, longTypeFeature, termNorm, underlyingShortType, abbrevStart + sentStartOffset, abbrevEnd + sentStartOffset);
-            }
-            // Add id of first encountered long form to the expansionMap for coreference
-            expansionMap.put(abbrev, termNorm + "~~" + termId);
-            alreadyMatchedMap.put(abbrevNorm, sentence);
-
-            if (expandAllShortFormInstances) {
-                // now match any additional instances of this abbreviation in the same sentence
-                abbrevNorm = getNormalizedAbbrev(abbrev);
-                Pattern patt = Pattern.compile("\\b(" + abbrevNorm + ")s?\\b");
-                Matcher abbrevMatcher = patt.matcher(sentenceContent);
-                int startFrom = abbrevEnd;
-                while (abbrevMatcher.find(startFrom)) {
-                    int start = abbrevMatcher.start(1);
-                    int end = abbrevMatcher.end(1);
-                    int tempId = addLookup(inputAS, outputAS, longTypeFeature, termNorm, underlyingShortType, start + sentStartOffset, end + sentStartOffset);
+        trace.endMatch(traceEvent, abbrev, term, secondPass, (thresh >= context.threshold) ? ExpanderTrace.OUTCOME_ACCEPTED : ExpanderTrace.OUTCOME_THRESHOLD, thresh);
+        return new CandidateMatch(abbrev, abbrevNorm, termNorm, abbrevStart, abbrevEnd, termStart, termEnd, swapped, windowStart, windowEnd, null, thresh);
+    }
+
+    /**
+     * doMatch() depends on maxOuter only through the number of prepositions it allows in a row, and
+     * no more can occur than there are white space characters in the outer, so candidates with the
+     * same key score the same
+     * @param candidate
+     * @param maxOuter
+     * @return key identifying the candidate and how it is scored
+     */
+    private static String scoreKey(Candidate candidate, int maxOuter) {
+        int upperBound = (maxOuter >= 2) ? maxOuter - 1 : maxOuter;
+        String outer = candidate.getOuter();
+        int spaces = 0;
+        for (int i = 0; i < outer.length() && spaces < upperBound; i++) {
+            if (Character.isWhitespace(outer.charAt(i))) {
+                spaces++;
+            }
+        }
+        return candidate.getStart() + ":" + candidate.getEnd() + ":" + candidate.getOuterStart() + ":" + candidate.getOuterEnd() + ":"
+                + candidate.getInnerStart() + ":" + candidate.getInnerEnd() + ":" + candidate.isSecondPass() + ":" + Math.min(spaces, upperBound);
+    }
+
+    /**
+     * @return the words of the document: the annotations of the given type that contain a letter or digit
+     */
+    private static TokenOffsets getWords(AnnotationSet inputAS, String tokenType, String docContent) {
+        TokenOffsets words = new TokenOffsets();
+        for (Annotation token : gate.Utils.inDocumentOrder(inputAS.get(tokenType))) {
+            int start = token.getStartNode().getOffset().intValue();
+            int end = token.getEndNode().getOffset().intValue();
+            for (int i = start; i < end; i++) {
+                if (Character.isLetterOrDigit(docContent.charAt(i))) {
+                    words.add(start, end);
+                    break;
+                }
+            }
+        }
+        return words;
+    }
+
+    /**
+     * The scanner's outer window is only an estimate of maxOuter words; with tokenType set it is made
+     * exact. An outer of more than maxOuter words is cut to the last maxOuter, starting, for the primary
+     * pattern, at the first of those that begins with the first character of the inner. The inner is
+     * already limited in characters by the scanner
+     * @param candidates
+     * @param sentenceContent
+     * @param words         words of the sentence
+     * @param maxOuter
+     * @return the candidates that fit
+     */
+    private static List<Candidate> limitWindows(List<Candidate> candidates, String sentenceContent, TokenOffsets words, int maxOuter) {
+        List<Candidate> limited = new ArrayList<Candidate>(candidates.size());
+        for (Candidate candidate : candidates) {
+            int first = words.indexAtOrAfter(candidate.getOuterStart());
+            int after = words.indexAfter(candidate.getOuterStart(), candidate.getOuterEnd());
+            if (after - first <= maxOuter) {
+                limited.add(candidate);
+                continue;
+            }
+            int from = after - maxOuter;
+            if (!candidate.isSecondPass()) {
+                char innerFirst = Character.toLowerCase(candidate.getInner().charAt(0));
+                while (from < after && Character.toLowerCase(sentenceContent.charAt(words.getStart(from))) != innerFirst) {
+                    from++;
+                }
+                if (from == after) {
+                    continue;
+                }
+            }
+            int outerStart = words.getStart(from);
+            limited.add(new Candidate(outerStart, candidate.getEnd(), sentenceContent.substring(outerStart, candidate.getOuterEnd()), outerStart, candidate.getOuterEnd(),
+                    candidate.getInner(), candidate.getInnerStart(), candidate.getInnerEnd(), candidate.isSecondPass()));
+        }
+        return limited;
+    }
+
+    /**
+     * Word by word form of the preposition check in doMatch(). For the primary pattern, find the last
+     * word starting with the first character of the term that follows a run of 1 to upperBound pos
+     * constraint words, with up to three words in between that do not start with that character; for
+     * the bidirectional pattern, find the last run of 1 to upperBound pos constraint words that follows
+     * a word ending with the last character of the term
+     * @param term
+     * @param termStart     sentence offset of the term
+     * @param words         words of the sentence
+     * @param secondPass
+     * @param upperBound
+     * @return offset within the term of the word the term should start at, or -1 to leave it as it is
+     */
+    private int truncateAtPrepositions(String term, int termStart, TokenOffsets words, boolean secondPass, int upperBound) {
+        int first = words.indexAtOrAfter(termStart);
+        int numWords = words.indexAfter(termStart, termStart + term.length()) - first;
+        if (numWords < 2) {
+            return -1;
+        }
+        Pattern posConstraintsPattern = expanderConfig.getPosConstraintsPattern();
+        String[] text = new String[numWords];
+        int[] starts = new int[numWords];
+        boolean[] isPrep = new boolean[numWords];
+        for (int i = 0; i < numWords; i++) {
+            starts[i] = words.getStart(first + i) - termStart;
+            int end = words.getEnd(first + i) - termStart;
+            text[i] = term.substring(starts[i], end);
+            // As in the regex, a pos constraint word counts only if white space follows it
+            isPrep[i] = end < term.length() && Character.isWhitespace(term.charAt(end)) && posConstraintsPattern.matcher(text[i]).matches();
+        }
+        char termFirstChar = Character.toLowerCase(term.charAt(0));
+        char termLastChar = Character.toLowerCase(term.charAt(term.length() - 1));
+        for (int j = numWords - 1; j > 0; j--) {
+            int i = j - 1;
+            if (!secondPass) {
+                if (Character.toLowerCase(text[j].charAt(0)) != termFirstChar) {
+                    continue;
+                }
+                int skipped = 0;
+                while (i >= 0 && skipped < 3 && !isPrep[i] && Character.toLowerCase(text[i].charAt(0)) != termFirstChar) {
+                    i--;
+                    skipped++;
+                }
+            }
+            int run = 0;
+            while (i >= 0 && run < upperBound && isPrep[i]) {
+                i--;
+                run++;
+            }
+            if (run > 0 && (!secondPass || (i >= 0 && Character.toLowerCase(text[i].charAt(text[i].length() - 1)) == termLastChar))) {
+                return starts[j];
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Word by word form of the last word check in doMatch()
+     * @param text          term or abbrev
+     * @param textStart     sentence offset of the text
+     * @param words         words of the sentence
+     * @return offset within the text of its last word, if it has more than two words and the last is all capitals starting with the first character of the text, otherwise -1
+     */
+    private static int lastCapitalisedWord(String text, int textStart, TokenOffsets words) {
+        int first = words.indexAtOrAfter(textStart);
+        int after = words.indexAfter(textStart, textStart + text.length());
+        if (after - first <= 2) {
+            return -1;
+        }
+        int lastStart = words.getStart(after - 1) - textStart;
+        String lastClean = text.substring(lastStart, words.getEnd(after - 1) - textStart).replaceAll("[\\d\\p{Punct}]", "");
+        if (lastClean.matches("^[A-Z]{2,}$") && text.substring(0, 1).equalsIgnoreCase(lastClean.substring(0, 1))) {
+            return lastStart;
+        }
+        return -1;
+    }
+
+    /**
+     * Match a trimmed candidate against the known pairs: either the inner text is a known short
+     * form and the outer text ends with one of its long forms, or the inner text is a whole long
+     * form of the last word of the outer text
+     * @return the pair, with the category of its list as the semantic type, or null if it is not known
+     */
+    private CandidateMatch matchKnownPair(KnownPairIndex knownPairs, String abbrev, int abbrevStart, int abbrevEnd, String term, int termStart, int termEnd, boolean isPlural, int windowStart, int windowEnd) {
+        String outer = term;
+        KnownPairIndex.KnownPair known = knownPairs.find(abbrev, outer);
+        if (known == null && isPlural && outer.endsWith("s")) {
+            outer = outer.substring(0, outer.length() - 1);
+            known = knownPairs.find(abbrev, outer);
+        }
+        if (known != null) {
+            int longStart = KnownPairIndex.suffixStart(outer, known.getLongForm());
+            String longForm = term.substring(longStart);
+            String termNorm = isPlural ? longForm.replaceAll("([^aeious])s\\b", "$1") : longForm;
+            return new CandidateMatch(abbrev, abbrev, termNorm, abbrevStart, abbrevEnd, termStart + longStart, termEnd, false, windowStart, windowEnd, known.getCategory());
+        }
+        if (isPlural) {
+            return null;
+        }
+        // Short form outside the brackets, as in AAA (abdominal aortic aneurysm)
+        int lastSpace = term.lastIndexOf(' ');
+        String shortForm = term.substring(lastSpace + 1);
+        known = knownPairs.find(shortForm, abbrev);
+        if (known != null && KnownPairIndex.suffixStart(abbrev, known.getLongForm()) == 0) {
+            return new CandidateMatch(shortForm, shortForm, abbrev, termStart + lastSpace + 1, termEnd, abbrevStart, abbrevEnd, true, windowStart, windowEnd, known.getCategory());
+        }
+        return null;
+    }
+
+    /**
+     * Annotate an accepted pair, report it to the sink, and record it for later mentions
+     * @param context
+     * @param sentence
+     * @param sentStartOffset
+     * @param match
+     * @param expansionMap
+     * @param alreadyMatchedMap
+     * @param abbrevTypeMap
+     * @param sentenceContent
+     * @param lookupSpans       spans already matched against the lookup lists, or null if lookups are not targeted
+     * @param pairMap           pairs sent to the sink, by abbreviation
+     * @param mentionsMap       mention offsets by long form annotation, used in COMPACT mode
+     */
+    private void acceptMatch(ExecutionContext context, Annotation sentence, int sentStartOffset, CandidateMatch match, Map<String, Expansion> expansionMap, Map<String, Annotation> alreadyMatchedMap, Map<String, String> abbrevTypeMap, String sentenceContent, Set<Long> lookupSpans, Map<String, AbbreviationPair> pairMap, Map<Annotation, MentionOffsets> mentionsMap) {
+        AnnotationSet inputAS = context.inputAS;
+        AnnotationSet outputAS = context.outputAS;
+        String shortType = context.shortType;
+        String longType = context.longType;
+        PairSink sink = context.sink;
+        String abbrev = match.getAbbrev();
+        String abbrevNorm = match.getAbbrevNorm();
+        String termNorm = match.getTermNorm();
+        int abbrevStart = match.getAbbrevStart();
+        int abbrevEnd = match.getAbbrevEnd();
+        int termStart = match.getTermStart();
+        int termEnd = match.getTermEnd();
+        boolean swapped = match.isSwapped();
+        int termId = -1;
+        // Targeted lookups - match the lists against the candidate window so that semantic types are available below
+        if (lookupSpans != null) {
+            annotateLookups(inputAS, sentenceContent, match.getWindowStart(), match.getWindowEnd(), sentStartOffset, lookupSpans);
+        }
+        // Copy over any existing semantic type that covers this term, rather than create a new annot
+        String underlyingLongType = getUnderlyingAnnType(inputAS, context.underlyingAnnots, termStart + sentStartOffset, termEnd + sentStartOffset);
+        // Otherwise a known pair takes the category of its list, if that is one of the underlying types
+        String knownType = match.getSemanticType();
+        if (underlyingLongType == null && knownType != null && context.underlyingAnnots != null && context.underlyingAnnots.contains(knownType)) {
+            underlyingLongType = knownType;
+        }
+        String underlyingShortType = shortType;
+        String semanticType = underlyingLongType;
+        if (underlyingLongType != null) {
+            abbrevTypeMap.put(abbrevNorm, underlyingLongType);
+            underlyingShortType = underlyingLongType;
+        } else {
+            // A redefinition without a semantic type must not inherit the type of an earlier definition
+            abbrevTypeMap.remove(abbrevNorm);
+        }
+        if (swapped && !context.swapShortest) {
+            if (underlyingLongType == null) { underlyingLongType = shortType ; underlyingShortType = longType ;}
+            if (context.annotate) {
+                termId = addLookup(context, context.longTypeFeature, abbrevNorm, underlyingLongType, termStart + sentStartOffset, termEnd + sentStartOffset);
+                addLookup(context, context.shortTypeFeature, termNorm, underlyingShortType, abbrevStart + sentStartOffset, abbrevEnd + sentStartOffset);
+            }
+        } else {
+            if (underlyingLongType == null) { underlyingLongType = longType ; }
+            if (context.annotate) {
+                termId = addLookup(context, context.shortTypeFeature, abbrevNorm, underlyingLongType, termStart + sentStartOffset, termEnd + sentStartOffset);
+                addLookup(context, context.longTypeFeature, termNorm, underlyingShortType, abbrevStart + sentStartOffset, abbrevEnd + sentStartOffset);
+            }
+        }
+        AbbreviationPair pair = null;
+        if (sink != null) {
+            pair = new AbbreviationPair(context.documentName, abbrevNorm, termNorm, abbrevStart + sentStartOffset, abbrevEnd + sentStartOffset, termStart + sentStartOffset, termEnd + sentStartOffset, semanticType);
+            sink.pairFound(pair);
+            pairMap.put(abbrev, pair);
+        }
+        // In COMPACT mode, mentions are recorded on the long form annotation rather than annotated
+        MentionOffsets mentions = null;
+        if (context.expandAll && context.compactMentions && context.annotate) {
+            Annotation termAnn = outputAS.get(termId);
+            if (termAnn == null) {
+                termAnn = inputAS.get(termId);
+            }
+            if (termAnn != null) {
+                mentions = mentionsMap.get(termAnn);
+                if (mentions == null) {
+                    mentions = new MentionOffsets();
+                    mentionsMap.put(termAnn, mentions);
+                }
+            }
+        }
+        // Add id of first encountered long form to the expansionMap for coreference
+        expansionMap.put(abbrev, new Expansion(termNorm, termId, mentions));
+        alreadyMatchedMap.put(abbrevNorm, sentence);
+
+        if (context.expandAll) {
+            // now match any additional instances of this abbreviation in the same sentence
+            abbrevNorm = getNormalizedAbbrev(abbrev);
+            Pattern patt = Pattern.compile("\\b(" + abbrevNorm + ")s?\\b");
+            Matcher abbrevMatcher = patt.matcher(sentenceContent);
+            int startFrom = abbrevEnd;
+            while (abbrevMatcher.find(startFrom)) {
+                int start = abbrevMatcher.start(1);
+                int end = abbrevMatcher.end(1);
+                if (mentions != null) {
+                    mentions.add(start + sentStartOffset, end + sentStartOffset);
+                } else if (context.annotate) {
+                    int tempId = addLookup(context, context.longTypeFeature, termNorm, underlyingShortType, start + sentStartOffset, end + sentStartOffset);
                     Annotation newAnn = outputAS.get(tempId);
                     newAnn.getFeatures().put("corefId", termId);
-                    startFrom = end;
                 }
-            } // end if
+                if (pair != null) {
+                    sink.mentionFound(pair, start + sentStartOffset, end + sentStartOffset);
+                }
+                startFrom = end;
+            }
         } // end if
 
     }
 
     /**
      *
-     * @param inputAS           input annotation set
-     * @param outputAS          output annotation set
+     * @param context           input and output annotation sets, and the profile, if any
      * @param featureName       output annotation feature name
      * @param featureValue      output annotation feature value
      * @param outputASType      output annotation type
      * @param start             start offset (int)
      * @param end               end offset (int)
      */
-    private int addLookup(AnnotationSet inputAS, AnnotationSet outputAS, String featureName, String featureValue, String outputASType, int start, int end) {
+    private int addLookup(ExecutionContext context, String featureName, String featureValue, String outputASType, int start, int end) {
         Long startOffset = new Long(start);
         Long endOffset = new Long(end);
         int id = -1;
         try {
-            AnnotationSet currSectionAS = ((gate.annotation.AnnotationSetImpl) inputAS).getStrict(startOffset, endOffset).get(outputASType);
+            AnnotationSet currSectionAS = ((gate.annotation.AnnotationSetImpl) context.inputAS).getStrict(startOffset, endOffset).get(outputASType);
             if (currSectionAS.isEmpty()) {
                 FeatureMap fm = Factory.newFeatureMap();
                 fm.put(featureName, featureValue);
-                id = outputAS.add(startOffset, endOffset, outputASType, fm);
+                if (context.profile != null) {
+                    fm.put(PROFILE_FEATURE, context.profile);
+                }
+                id = context.outputAS.add(startOffset, endOffset, outputASType, fm);
             } else {
                 Annotation curr = currSectionAS.iterator().next();
                 id = curr.getId();
@@ -653,12 +1960,12 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
     /**
      *
      * @param inputAS
-     * @param outputAS
+     * @param underlyingAnnots  annotation types to look for
      * @param start
      * @param end
      * @return
      */
-    private String getUnderlyingAnnType(AnnotationSet inputAS, int start, int end) {
+    private String getUnderlyingAnnType(AnnotationSet inputAS, List<String> underlyingAnnots, int start, int end) {
         Long startOffset = new Long(start);
         Long endOffset = new Long(end);
         String underlyingAnnType = null;
@@ -679,22 +1986,40 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
     }
 
     
-    /* Set gracefulExit flag and clean up */
+    /* Set gracefulExit flag and clean up. The pair sink file stays open for the remaining documents */
     private void gracefulExit(String msg) {
         gate.util.Err.println(msg);
-        cleanup();
+        synchronized (gazetteerLock) {
+            if (activeCalls == 0) {
+                releaseGazetteer();
+            }
+        }
         fireProcessFinished();
     }
 
     @Override
     public void cleanup() {
-        Factory.deleteResource(gazetteer);
+        releaseGazetteer();
+        closeFileSink();
+        if (lookupExecutor != null) {
+            lookupExecutor.shutdown();
+            lookupExecutor = null;
+        }
     }
 
     @Override
     public synchronized void interrupt() {
         super.interrupt();
-        gazetteer.interrupt();
+        List<ExecutionContext> contexts = gateContexts;
+        if (contexts != null) {
+            for (ExecutionContext context : contexts) {
+                context.interrupt();
+            }
+        }
+        DefaultGazetteer gaz = gazetteer;
+        if (gaz != null) {
+            gaz.interrupt();
+        }
     }
 
     @Override
@@ -792,6 +2117,38 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
         return gazetteerListsURL;
     }
 
+    @Optional
+    @CreoleParameter(defaultValue = "WARN",
+    comment = "What to do on init about patterns built from the configuration that do not compile or can backtrack catastrophically: IGNORE, WARN or REFUSE to initialise")
+    public void setRegexCheck(RegexCheck regexCheck) {
+        this.regexCheck = regexCheck;
+    }
+
+    public RegexCheck getRegexCheck() {
+        return regexCheck;
+    }
+
+    @Optional
+    @CreoleParameter(defaultValue = "false",
+    comment = "Rewrite the stopword lists into tries, which match the same words with less backtracking")
+    public void setOptimiseAlternations(Boolean optimiseAlternations) {
+        this.optimiseAlternations = optimiseAlternations;
+    }
+
+    public Boolean getOptimiseAlternations() {
+        return optimiseAlternations;
+    }
+
+    @Optional
+    @CreoleParameter(comment = "Pair sink file, in TSV or BINARY format, of pairs found in a corpus, whose short forms are annotated along with those in the lookup lists when dictionaryMode is set")
+    public void setLearnedPairsURL(URL learnedPairsURL) {
+        this.learnedPairsURL = learnedPairsURL;
+    }
+
+    public URL getLearnedPairsURL() {
+        return learnedPairsURL;
+    }
+
     @Optional
     @RunTime
     @CreoleParameter(defaultValue = ANNIEConstants.SENTENCE_ANNOTATION_TYPE,
@@ -815,6 +2172,17 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
         return expandAllShortFormInstances;
     }
 
+    @RunTime
+    @CreoleParameter(defaultValue = "ANNOTATIONS",
+    comment = "ANNOTATIONS annotates each expanded short form mention; COMPACT records their offsets in a mentions feature on the defining long form annotation")
+    public void setMentionMode(MentionMode mentionMode) {
+        this.mentionMode = mentionMode;
+    }
+
+    public MentionMode getMentionMode() {
+        return mentionMode;
+    }
+
     @RunTime
     @CreoleParameter(defaultValue = "10",
     comment = "Maximum number of words for candidate abbreviation")
@@ -870,6 +2238,39 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
         return useLookups;
     }
 
+    @RunTime
+    @CreoleParameter(defaultValue = "false",
+    comment = "Accept candidates that are pairs in the lookup lists, e.g. AAA;term=abdominal aortic aneurysm, without the constraint and alignment checks, taking the list category as their semantic type")
+    public void setUseKnownPairs(Boolean useKnownPairs) {
+        this.useKnownPairs = useKnownPairs;
+    }
+
+    public Boolean getUseKnownPairs() {
+        return useKnownPairs;
+    }
+
+    @RunTime
+    @CreoleParameter(defaultValue = "true",
+    comment = "Run the lookups gazetteer on a separate thread while candidate pairs are matched (FULL lookup mode only)")
+    public void setConcurrentLookups(Boolean concurrentLookups) {
+        this.concurrentLookups = concurrentLookups;
+    }
+
+    public Boolean getConcurrentLookups() {
+        return concurrentLookups;
+    }
+
+    @RunTime
+    @CreoleParameter(defaultValue = "FULL",
+    comment = "FULL runs the lookups gazetteer over the whole document; TARGETED only matches lookups within candidate pairs and on abbreviation-like tokens")
+    public void setLookupMode(LookupMode lookupMode) {
+        this.lookupMode = lookupMode;
+    }
+
+    public LookupMode getLookupMode() {
+        return lookupMode;
+    }
+
     @RunTime
     @CreoleParameter(defaultValue = "false",
     comment = "Makes use of an additional regex pattern for bidirectional matching")
@@ -891,4 +2292,179 @@ public class BiomedicalAbbreviationExpander extends AbstractLanguageAnalyser imp
     public ArrayList<String> getUnderlyingAnnots() {
         return underlyingAnnots;
     }
+
+    @RunTime
+    @CreoleParameter(defaultValue = "true",
+    comment = "Annotate pairs and mentions in the document? Set to false to only send them to the pair sink")
+    public void setCreateAnnotations(Boolean createAnnotations) {
+        this.createAnnotations = createAnnotations;
+    }
+
+    public Boolean getCreateAnnotations() {
+        return createAnnotations;
+    }
+
+    @Optional
+    @RunTime
+    @CreoleParameter(comment = "File to write term-abbreviation pairs, and mentions if expandAllShortFormInstances is set, to")
+    public void setPairSinkURL(URL pairSinkURL) {
+        this.pairSinkURL = pairSinkURL;
+    }
+
+    public URL getPairSinkURL() {
+        return pairSinkURL;
+    }
+
+    @RunTime
+    @CreoleParameter(defaultValue = "TSV",
+    comment = "Format of the pair sink file: TSV, BINARY, or INDEX to build an inverted index in the pair sink directory")
+    public void setPairSinkFormat(PairFormat pairSinkFormat) {
+        this.pairSinkFormat = pairSinkFormat;
+    }
+
+    public PairFormat getPairSinkFormat() {
+        return pairSinkFormat;
+    }
+
+    @RunTime
+    @CreoleParameter(defaultValue = "0",
+    comment = "Number of distinct sentences to cache matches for, so that repeated sentences are not matched again. 0 disables the cache")
+    public void setSentenceCacheSize(Integer sentenceCacheSize) {
+        this.sentenceCacheSize = sentenceCacheSize;
+    }
+
+    public Integer getSentenceCacheSize() {
+        return sentenceCacheSize;
+    }
+
+    @Optional
+    @RunTime
+    @CreoleParameter(comment = "Annotation type, e.g. Section or Paragraph, that limits where a learned short form is expanded. Leave empty to expand throughout the document")
+    public void setScopeType(String scopeType) {
+        this.scopeType = scopeType;
+    }
+
+    public String getScopeType() {
+        return scopeType;
+    }
+
+    @RunTime
+    @CreoleParameter(defaultValue = "0",
+    comment = "Number of sentences after its last definition or mention that a learned short form is still expanded. 0 for no limit")
+    public void setScopeSentences(Integer scopeSentences) {
+        this.scopeSentences = scopeSentences;
+    }
+
+    public Integer getScopeSentences() {
+        return scopeSentences;
+    }
+
+    @Optional
+    @RunTime
+    @CreoleParameter(comment = "Annotation type of tokens already in the input set, e.g. Token, to measure candidate windows in words and find the words of a candidate without tokenising again. Leave empty to tokenise with regexes")
+    public void setTokenType(String tokenType) {
+        this.tokenType = tokenType;
+    }
+
+    public String getTokenType() {
+        return tokenType;
+    }
+
+    @RunTime
+    @CreoleParameter(defaultValue = "false",
+    comment = "Scan for candidates with a window fitted to the pairs found so far, and with the full maxOuter and maxInner window only where a cheap check shows it could find more. Gives the same pairs")
+    public void setAdaptiveWindows(Boolean adaptiveWindows) {
+        this.adaptiveWindows = adaptiveWindows;
+    }
+
+    public Boolean getAdaptiveWindows() {
+        return adaptiveWindows;
+    }
+
+    @RunTime
+    @CreoleParameter(defaultValue = "false",
+    comment = "Annotate the short forms in the lookup lists, and in learnedPairsURL if set, with their long forms wherever they occur, instead of finding term-abbreviation pairs")
+    public void setDictionaryMode(Boolean dictionaryMode) {
+        this.dictionaryMode = dictionaryMode;
+    }
+
+    public Boolean getDictionaryMode() {
+        return dictionaryMode;
+    }
+
+    /**
+     * @return window sizes of the pairs found so far with adaptiveWindows set, and how often the window had to be widened
+     */
+    public AdaptiveWindow getAdaptiveWindow() {
+        return adaptiveWindow;
+    }
+
+    @Optional
+    @RunTime
+    @CreoleParameter(comment = "Named profiles to run in a single pass, each annotating the set named after it, e.g. precision: maxInner=5, maxOuter=5, threshold=1.0; recall: maxInner=10, maxOuter=10, threshold=0.75. Leave empty for one run with the parameters above")
+    public void setProfiles(String profiles) {
+        this.profiles = profiles;
+    }
+
+    public String getProfiles() {
+        return profiles;
+    }
+
+    /**
+     * Share a sentence cache with other instances. Takes precedence over sentenceCacheSize.
+     * @param sentenceCache     cache, or null to use sentenceCacheSize
+     */
+    public void setSentenceCache(SentenceCache sentenceCache) {
+        this.sharedCache = sentenceCache;
+    }
+
+    /**
+     * @return the shared sentence cache if set, else this instance's own cache, which is created on the first execute() with sentenceCacheSize > 0
+     */
+    public SentenceCache getSentenceCache() {
+        return (sharedCache != null) ? sharedCache : sentenceCache;
+    }
+
+    /**
+     * Share an already loaded configuration with this instance, rather than reading the configuration file again on init()
+     * @param expanderConfig
+     */
+    public void setExpanderConfig(ExpanderConfig expanderConfig) {
+        this.sharedConfig = expanderConfig;
+    }
+
+    public ExpanderConfig getExpanderConfig() {
+        return expanderConfig;
+    }
+
+    /**
+     * @return time spent in each phase of init(), and in loading lookup resources on demand
+     */
+    public StartupProfile getStartupProfile() {
+        return startupProfile;
+    }
+
+    /**
+     * Send pairs and mentions to a sink, such as a collector or callback. Takes precedence over pairSinkURL.
+     * @param pairSink  sink, or null to use pairSinkURL if set
+     */
+    public void setPairSink(PairSink pairSink) {
+        this.pairSink = pairSink;
+    }
+
+    public PairSink getPairSink() {
+        return pairSink;
+    }
+
+    /**
+     * Send trace events to the given trace instead of the default one, e.g. to time sentences
+     * @param trace trace, or null for ExpanderTrace.getInstance()
+     */
+    public void setTrace(ExpanderTrace trace) {
+        this.trace = (trace == null) ? TRACE : trace;
+    }
+
+    public ExpanderTrace getTrace() {
+        return trace;
+    }
 }
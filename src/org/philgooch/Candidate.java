@@ -0,0 +1,76 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+/**
+ * A candidate term-abbreviation pair: the outer text before the parentheses and the
+ * inner text within them. Offsets are relative to the sentence.
+ *
+ * @author philipgooch
+ */
+public class Candidate {
+    private int start;          // start and end of the whole candidate, including parentheses
+    private int end;
+    private String outer;
+    private int outerStart;
+    private int outerEnd;
+    private String inner;
+    private int innerStart;
+    private int innerEnd;
+    private boolean secondPass;     // true if found by the bidirectional (last character) pattern
+
+    public Candidate(int start, int end, String outer, int outerStart, int outerEnd, String inner, int innerStart, int innerEnd, boolean secondPass) {
+        this.start = start;
+        this.end = end;
+        this.outer = outer;
+        this.outerStart = outerStart;
+        this.outerEnd = outerEnd;
+        this.inner = inner;
+        this.innerStart = innerStart;
+        this.innerEnd = innerEnd;
+        this.secondPass = secondPass;
+    }
+
+    public int getStart() {
+        return start;
+    }
+
+    public int getEnd() {
+        return end;
+    }
+
+    public String getOuter() {
+        return outer;
+    }
+
+    public int getOuterStart() {
+        return outerStart;
+    }
+
+    public int getOuterEnd() {
+        return outerEnd;
+    }
+
+    public String getInner() {
+        return inner;
+    }
+
+    public int getInnerStart() {
+        return innerStart;
+    }
+
+    public int getInnerEnd() {
+        return innerEnd;
+    }
+
+    public boolean isSecondPass() {
+        return secondPass;
+    }
+}
@@ -0,0 +1,122 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+/**
+ * A candidate pair that has passed the constraint and character alignment checks.
+ * Depends only on the sentence text and the matching parameters, so it can be cached
+ * and replayed for identical sentences. Offsets are relative to the start of the sentence.
+ * The alignment score is kept so that the same match can be tested against several thresholds.
+ *
+ * @author philipgooch
+ */
+public class CandidateMatch {
+    private String abbrev;          // short form as found
+    private String abbrevNorm;      // short form with any plural s removed
+    private String termNorm;        // long form with any plurals removed
+    private int abbrevStart;
+    private int abbrevEnd;
+    private int termStart;
+    private int termEnd;
+    private boolean swapped;        // inner and outer swapped places
+    private int windowStart;        // span of the whole candidate match
+    private int windowEnd;
+    private String semanticType;    // category of the lookup list for a known pair, else null
+    private float score;            // proportion of short form characters aligned, or UNSCORED
+
+    /** Score of a pair accepted without the alignment check, such as a known pair */
+    public static final float UNSCORED = -1;
+
+    public CandidateMatch(String abbrev, String abbrevNorm, String termNorm, int abbrevStart, int abbrevEnd, int termStart, int termEnd, boolean swapped, int windowStart, int windowEnd) {
+        this(abbrev, abbrevNorm, termNorm, abbrevStart, abbrevEnd, termStart, termEnd, swapped, windowStart, windowEnd, null);
+    }
+
+    public CandidateMatch(String abbrev, String abbrevNorm, String termNorm, int abbrevStart, int abbrevEnd, int termStart, int termEnd, boolean swapped, int windowStart, int windowEnd, String semanticType) {
+        this(abbrev, abbrevNorm, termNorm, abbrevStart, abbrevEnd, termStart, termEnd, swapped, windowStart, windowEnd, semanticType, UNSCORED);
+    }
+
+    public CandidateMatch(String abbrev, String abbrevNorm, String termNorm, int abbrevStart, int abbrevEnd, int termStart, int termEnd, boolean swapped, int windowStart, int windowEnd, String semanticType, float score) {
+        this.abbrev = abbrev;
+        this.abbrevNorm = abbrevNorm;
+        this.termNorm = termNorm;
+        this.abbrevStart = abbrevStart;
+        this.abbrevEnd = abbrevEnd;
+        this.termStart = termStart;
+        this.termEnd = termEnd;
+        this.swapped = swapped;
+        this.windowStart = windowStart;
+        this.windowEnd = windowEnd;
+        this.semanticType = semanticType;
+        this.score = score;
+    }
+
+    public String getAbbrev() {
+        return abbrev;
+    }
+
+    public String getAbbrevNorm() {
+        return abbrevNorm;
+    }
+
+    public String getTermNorm() {
+        return termNorm;
+    }
+
+    public int getAbbrevStart() {
+        return abbrevStart;
+    }
+
+    public int getAbbrevEnd() {
+        return abbrevEnd;
+    }
+
+    public int getTermStart() {
+        return termStart;
+    }
+
+    public int getTermEnd() {
+        return termEnd;
+    }
+
+    public boolean isSwapped() {
+        return swapped;
+    }
+
+    public int getWindowStart() {
+        return windowStart;
+    }
+
+    public int getWindowEnd() {
+        return windowEnd;
+    }
+
+    /**
+     * @return category of the lookup list if the pair was accepted as a known pair, else null
+     */
+    public String getSemanticType() {
+        return semanticType;
+    }
+
+    /**
+     * @return proportion of short form characters aligned with the long form, or UNSCORED
+     */
+    public float getScore() {
+        return score;
+    }
+
+    /**
+     *
+     * @param threshold minimum proportion of short form characters aligned
+     * @return true if the pair is accepted at the threshold
+     */
+    public boolean isAccepted(float threshold) {
+        return score == UNSCORED || score >= threshold;
+    }
+}
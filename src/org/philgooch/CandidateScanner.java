@@ -0,0 +1,359 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.Matcher;
+
+/**
+ * Finds candidate term-abbreviation pairs in a sentence using the primary pattern, where the
+ * first character of the outer matches the first character of the inner, and optionally the
+ * bidirectional pattern, where the first character of the last outer word matches the last
+ * character of the inner.
+ *
+ * Pattern 1 takes priority: bidirectional candidates are only taken after the last pattern 1
+ * candidate in the sentence. Once pattern 1 has failed from a given point it cannot succeed
+ * from any later point, so each sentence is walked once by each pattern instead of retrying
+ * pattern 1 after every bidirectional candidate. Text without an opening bracket followed by
+ * a closing one cannot contain a candidate and is not scanned at all.
+ *
+ * Compiled for a given window size; instances are immutable and may be shared between threads.
+ *
+ * @author philipgooch
+ */
+public class CandidateScanner {
+    private ExpanderConfig config;
+    private int maxOuter;
+    private int maxInner;
+
+    private Pattern abbrevExpansionPairPattern;
+    private Pattern abbrevExpansionPairPattern2;
+    private boolean bracketsRequired;       // both patterns are the bundled ones, so TextPrefilter.hasBracketPair() applies
+
+    /**
+     *
+     * @param config        configuration providing the regex fragments
+     * @param maxOuter      maximum number of words in the outer
+     * @param maxInner      maximum number of words in the inner
+     */
+    public CandidateScanner(ExpanderConfig config, int maxOuter, int maxInner) {
+        this.config = config;
+        this.maxOuter = maxOuter;
+        this.maxInner = maxInner;
+
+        abbrevExpansionPairPattern = Pattern.compile(pairPattern(config, maxOuter, maxInner), PAIR_FLAGS);
+        abbrevExpansionPairPattern2 = Pattern.compile(pairPattern2(config, maxOuter, maxInner), PAIR_FLAGS);
+        bracketsRequired = isStockPattern(config) && isStockPattern2(config);
+    }
+
+    // Flags the candidate pair patterns are compiled with
+    static final int PAIR_FLAGS = Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE;
+
+    // Fragments of the bundled primary pattern, which needsWiderWindow() is written for
+    static final String STOCK_OUTER_PRE = "\\b((\\w)\\W{0,2}(\\w+[\\-\\&'\\/\\+\\s]{1,2}){1,";
+    static final String STOCK_INNER_PRE = "})\\s*[\\(\\[](\\2[\\w\\-\\&'\\.\\/\\+\\s]{1,";
+    static final String STOCK_INNER_POST = "})([,;:]\\s*\\w+)?[\\)\\]]";
+
+    // Fragments of the bundled bidirectional pattern
+    static final String STOCK_OUTER_PRE_2 = "\\b(.{1,";
+    static final String STOCK_INNER_PRE_2 = "}\\b(\\w)(\\w+[\\-'\\/\\+\\s]{1,2}))\\s*[\\(\\[](.{1,";
+    static final String STOCK_INNER_POST_2 = "}\\2([,;:]\\s*\\w+)?)[\\)\\]]";
+
+    /**
+     * Default maximum window of ten words in outer (text before parentheses) and 20 characters (approx 5 words) in inner (text inside parentheses)
+     * Pattern matches a phrases where the first character in the outer matches the first abbrev character in the inner
+     * @return source of the primary candidate pattern for the given window
+     */
+    static String pairPattern(ExpanderConfig config, int maxOuter, int maxInner) {
+        // Pattern abbrevExpansionPairPattern = Pattern.compile("\\b((\\w)\\W{0,2}(\\w+[\\&'/\\-\\+\\s]{1,2}){1," + maxOuter + "})\\s*[\\(\\[](\\2[\\w\\&'\\./\\-\\+\\s]{1," + maxInnerChars + "})([,;:]\\s*\\w+)?[\\)\\]]", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        // if we replace ['\\-\\+\\s]{1,2} with ['\\-\\+\\s]{0,2} we can allow for no space before the left parens but this has a big negative impact on performance
+        return config.getOuterPre() + maxOuter + config.getInnerPre() + (maxInner * 4) + config.getInnerPost();
+    }
+
+    /**
+     * Pattern that matches phrases where the first character of the last word in the outer matches the last abbrev character in the inner
+     * @return source of the bidirectional candidate pattern for the given window
+     */
+    static String pairPattern2(ExpanderConfig config, int maxOuter, int maxInner) {
+        // Pattern abbrevExpansionPairPattern2 = Pattern.compile("\\b(.{1," + maxOuterChars + "}\\b(\\w)(\\w+['/\\-\\+\\s]{1,2}))\\s*[\\(\\[](.{1," + maxInnerChars + "}\\2([,;:]\\s*\\w+)?)[\\)\\]]", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        return config.getOuterPre2() + (maxOuter * 4) + config.getInnerPre2() + (maxInner * 4) + config.getInnerPost2();
+    }
+
+    /**
+     *
+     * @param config
+     * @param maxOuter
+     * @param maxInner
+     * @return true if this scanner was compiled for the given configuration and window
+     */
+    public boolean isCompiledFor(ExpanderConfig config, int maxOuter, int maxInner) {
+        return this.config == config && this.maxOuter == maxOuter && this.maxInner == maxInner;
+    }
+
+    /**
+     * Find all candidates in a sentence, in the order they should be evaluated
+     * @param sentenceContent       sentence text, with white space normalised to single spaces
+     * @param useBidirectionMatch   also take candidates from the bidirectional pattern
+     * @return candidates
+     */
+    public List<Candidate> scan(String sentenceContent, boolean useBidirectionMatch) {
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        if (!mayMatch(sentenceContent, 0)) {
+            return candidates;
+        }
+
+        Matcher m1 = abbrevExpansionPairPattern.matcher(sentenceContent);
+        while (m1.find()) {
+            candidates.add(toCandidate(m1, false));
+        }
+        scanBidirectional(sentenceContent, useBidirectionMatch, candidates);
+        return candidates;
+    }
+
+    /**
+     * Find all candidates in a sentence, taking the pattern 1 candidates from a scanner with a
+     * narrower window where that gives the same result. This is the case when needsWiderWindow()
+     * finds nothing that only this scanner's window could match; the bidirectional candidates are
+     * always found with this scanner's window.
+     * @param sentenceContent       sentence text, with white space normalised to single spaces
+     * @param useBidirectionMatch   also take candidates from the bidirectional pattern
+     * @param tight                 scanner with a narrower window, for the same configuration
+     * @return the same candidates as scan(sentenceContent, useBidirectionMatch), or null if the sentence must be scanned with this scanner's window
+     */
+    public List<Candidate> scanWithin(String sentenceContent, boolean useBidirectionMatch, CandidateScanner tight) {
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        if (!mayMatch(sentenceContent, 0)) {
+            return candidates;
+        }
+        if (needsWiderWindow(sentenceContent, tight.maxOuter, tight.maxInner, maxOuter, maxInner)) {
+            return null;
+        }
+
+        Matcher m1 = tight.abbrevExpansionPairPattern.matcher(sentenceContent);
+        while (m1.find()) {
+            candidates.add(toCandidate(m1, false));
+        }
+        scanBidirectional(sentenceContent, useBidirectionMatch, candidates);
+        return candidates;
+    }
+
+    /**
+     * Extra matching pass - can lead to increased recall but reduced precision.
+     * Adds the bidirectional candidates after the last pattern 1 candidate
+     */
+    private void scanBidirectional(String sentenceContent, boolean useBidirectionMatch, List<Candidate> candidates) {
+        int startPoint = candidates.isEmpty() ? 0 : candidates.get(candidates.size() - 1).getEnd();
+        if (useBidirectionMatch && mayMatch(sentenceContent, startPoint)) {
+            Matcher m2 = abbrevExpansionPairPattern2.matcher(sentenceContent);
+            if (m2.find(startPoint)) {
+                do {
+                    candidates.add(toCandidate(m2, true));
+                } while (m2.find());
+            }
+        }
+    }
+
+    /**
+     * Cheap check of whether the bundled primary pattern could match with a window of maxOuter words
+     * and maxInner * 4 inner characters somewhere it cannot with the tight window. A match is fixed by
+     * where it starts: the outer is a chain of words, each followed by one or two separators, that can
+     * only end at the next bracket, and the inner is the whole run of inner characters after the first.
+     * So the windows give different matches only if some bracket has an inner run longer than the tight
+     * window allows but within the wide one, or a word starting with the first letter of the inner (the
+     * pattern's backreference) more than tightOuter words before it in the same chain. Only the first
+     * word of the outer may be a single character followed by up to two other non-word characters.
+     * Words are counted generously, so the check errs on the side of widening.
+     * @param text          sentence text
+     * @param tightOuter    outer window of the tight scan, in words
+     * @param tightInner    inner window of the tight scan, in fours of characters
+     * @param maxOuter      outer window of the wide scan
+     * @param maxInner      inner window of the wide scan
+     * @return true if the wide window could find candidates the tight window does not
+     */
+    static boolean needsWiderWindow(String text, int tightOuter, int tightInner, int maxOuter, int maxInner) {
+        int len = text.length();
+        for (int b = 0; b + 1 < len; b++) {
+            char bracket = text.charAt(b);
+            if (bracket != '(' && bracket != '[') {
+                continue;
+            }
+            char first = text.charAt(b + 1);
+            int run = 0;
+            for (int i = b + 2; i < len && isInnerChar(text.charAt(i)); i++) {
+                run++;
+            }
+            if (run > tightInner * 4 && run <= maxInner * 4) {
+                return true;
+            }
+
+            // Walk back along the chain of words before the bracket
+            int i = b;
+            while (i > 0 && Character.isWhitespace(text.charAt(i - 1))) {
+                i--;
+            }
+            int words = 0;
+            while (i > 0) {
+                char c = text.charAt(i - 1);
+                if (isWordChar(c)) {
+                    while (i > 0 && isWordChar(text.charAt(i - 1))) {
+                        i--;
+                    }
+                    words++;
+                    if (words > maxOuter + 1) {
+                        break;
+                    }
+                    if (words > tightOuter && sameLetter(text.charAt(i), first)) {
+                        return true;
+                    }
+                } else if (isSeparator(c)) {
+                    int separators = 0;
+                    while (i > 0 && isSeparator(text.charAt(i - 1))) {
+                        i--;
+                        separators++;
+                    }
+                    if (separators > 2) {
+                        break;
+                    }
+                } else {
+                    // A single character word may start the outer up to two characters before this one
+                    int start = i - 2;
+                    if (start > 0 && !isWordChar(text.charAt(start))) {
+                        start--;
+                    }
+                    if (start >= 0 && isWordChar(text.charAt(start)) && (start == 0 || !isWordChar(text.charAt(start - 1)))
+                            && words + 1 > tightOuter && sameLetter(text.charAt(start), first)) {
+                        return true;
+                    }
+                    break;
+                }
+            }
+        }
+        return false;
+    }
+
+    // \w without UNICODE_CHARACTER_CLASS
+    private static boolean isWordChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    // Separators between the words of the outer
+    private static boolean isSeparator(char c) {
+        return c == '-' || c == '&' || c == '\'' || c == '/' || c == '+' || Character.isWhitespace(c);
+    }
+
+    // Characters of the inner after the first
+    private static boolean isInnerChar(char c) {
+        return isWordChar(c) || isSeparator(c) || c == '.';
+    }
+
+    // Equal as the case-insensitive backreference compares them
+    private static boolean sameLetter(char a, char b) {
+        return Character.toLowerCase(Character.toUpperCase(a)) == Character.toLowerCase(Character.toUpperCase(b));
+    }
+
+    /**
+     *
+     * @param config
+     * @return true if the primary pattern is the bundled one, which scanWithin() depends on
+     */
+    public static boolean isStockPattern(ExpanderConfig config) {
+        return STOCK_OUTER_PRE.equals(config.getOuterPre()) && STOCK_INNER_PRE.equals(config.getInnerPre()) && STOCK_INNER_POST.equals(config.getInnerPost());
+    }
+
+    /**
+     *
+     * @param config
+     * @return true if the bidirectional pattern is the bundled one
+     */
+    static boolean isStockPattern2(ExpanderConfig config) {
+        return STOCK_OUTER_PRE_2.equals(config.getOuterPre2()) && STOCK_INNER_PRE_2.equals(config.getInnerPre2()) && STOCK_INNER_POST_2.equals(config.getInnerPost2());
+    }
+
+    /**
+     * The bundled patterns only match text with a bracket pair; configured ones may not need one
+     * @return true if the sentence could hold a candidate at or after from
+     */
+    private boolean mayMatch(String sentenceContent, int from) {
+        return !bracketsRequired || TextPrefilter.hasBracketPair(sentenceContent, from);
+    }
+
+    /**
+     * Find all candidates in a sentence that has already been scanned with a window at least as
+     * wide in both outer and inner, and with the bidirectional pattern if it is used here. The window
+     * sizes are only upper bounds in the patterns, so anything this scanner matches the wider one
+     * matches too: there is nothing to find where the wider scan found nothing, and no pattern 1
+     * candidate starts before the first one found by the wider scan.
+     * Gives the same candidates as scan(sentenceContent, useBidirectionMatch).
+     * @param sentenceContent       sentence text, with white space normalised to single spaces
+     * @param useBidirectionMatch   also take candidates from the bidirectional pattern
+     * @param widerCandidates       candidates found in the same sentence by the wider scanner
+     * @return candidates
+     */
+    public List<Candidate> scan(String sentenceContent, boolean useBidirectionMatch, List<Candidate> widerCandidates) {
+        List<Candidate> candidates = new ArrayList<Candidate>();
+        if (widerCandidates.isEmpty()) {
+            return candidates;
+        }
+        int from = -1;
+        for (Candidate wider : widerCandidates) {
+            if (!wider.isSecondPass()) {
+                from = wider.getStart();
+                break;
+            }
+        }
+
+        int startPoint = 0;
+        if (from >= 0) {
+            Matcher m1 = abbrevExpansionPairPattern.matcher(sentenceContent);
+            if (m1.find(from)) {
+                do {
+                    candidates.add(toCandidate(m1, false));
+                    startPoint = m1.end();
+                } while (m1.find());
+            }
+        }
+
+        if (useBidirectionMatch && mayMatch(sentenceContent, startPoint)) {
+            Matcher m2 = abbrevExpansionPairPattern2.matcher(sentenceContent);
+            if (m2.find(startPoint)) {
+                do {
+                    candidates.add(toCandidate(m2, true));
+                } while (m2.find());
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     *
+     * @param other
+     * @return true if this scanner's window is at least as wide as the other's in both outer and inner
+     */
+    public boolean contains(CandidateScanner other) {
+        return config == other.config && maxOuter >= other.maxOuter && maxInner >= other.maxInner;
+    }
+
+    private static Candidate toCandidate(Matcher m, boolean secondPass) {
+        return new Candidate(m.start(), m.end(), m.group(1), m.start(1), m.end(1), m.group(4), m.start(4), m.end(4), secondPass);
+    }
+
+    public ExpanderConfig getConfig() {
+        return config;
+    }
+
+    public int getMaxOuter() {
+        return maxOuter;
+    }
+
+    public int getMaxInner() {
+        return maxInner;
+    }
+}
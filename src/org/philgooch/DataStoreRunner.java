@@ -0,0 +1,350 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import gate.*;
+import gate.creole.ResourceInstantiationException;
+import gate.persist.PersistenceException;
+
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.Semaphore;
+import java.io.*;
+
+/**
+ * Runs the expander over every document in a GATE datastore, such as a SerialDataStore, with a
+ * bounded number of documents loaded at once. Loading, processing and writing back are pipelined:
+ * one thread loads documents, a pool of extractors processes them, and the calling thread syncs
+ * them back to the datastore in batches and unloads them. A document is counted as resident from
+ * the moment it starts loading until it has been unloaded, so heap use does not grow with the
+ * size of the datastore.
+ *
+ * A document that fails to load, process or sync is reported and skipped; it is unloaded without
+ * being synced, so the stored copy is left as it was.
+ *
+ * Usage: DataStoreRunner -datastore dir [-threads n] [-maxResident n] [-syncBatch n] [-output pairs.tsv] [name=value ...]
+ * where name=value sets an expander parameter, as for AbbreviationServer.
+ *
+ * @author philipgooch
+ */
+public class DataStoreRunner {
+    public static final String DOCUMENT_CLASS = "gate.corpora.DocumentImpl";
+
+    /**
+     * A document on its way through the pipeline
+     */
+    private static class Item {
+        private String lrId;
+        private Document doc;
+        private PairStatistics stats;       // pairs found in the document, or null if processing failed
+        private String failure;
+
+        private Item(String lrId, Document doc) {
+            this.lrId = lrId;
+            this.doc = doc;
+        }
+    }
+
+    // Put on the queues to mark the end of the documents
+    private static final Item END = new Item(null, null);
+
+    private DataStore dataStore;
+    private ExtractorPool pool;
+    private int maxResident;
+    private int syncBatch;
+
+    // Creating and deleting resources updates the CREOLE register, so loading and unloading are not done at the same time
+    private final Object factoryLock = new Object();
+    private Semaphore residency;
+    private int resident;
+    private int peakResident;
+
+    private int numDocs;
+    private int numFailed;
+    private PairStatistics statistics;
+
+    /**
+     *
+     * @param dataStore     open datastore, whose documents are processed
+     * @param pool          extractors to process the documents with, one thread each
+     * @param maxResident   maximum number of documents loaded at once, at least one more than the pool size to keep every extractor busy
+     * @param syncBatch     number of processed documents synced back before any is unloaded
+     */
+    public DataStoreRunner(DataStore dataStore, ExtractorPool pool, int maxResident, int syncBatch) {
+        this.dataStore = dataStore;
+        this.pool = pool;
+        this.maxResident = Math.max(1, maxResident);
+        this.syncBatch = Math.max(1, syncBatch);
+    }
+
+    /**
+     * Process every document in the datastore
+     * @return pairs found in the documents that were synced
+     * @throws PersistenceException if the documents cannot be listed
+     * @throws InterruptedException
+     */
+    public PairStatistics run() throws PersistenceException, InterruptedException {
+        final List<String> lrIds = dataStore.getLrIds(DOCUMENT_CLASS);
+        final int numThreads = pool.getSize();
+        final BlockingQueue<Item> loaded = new LinkedBlockingQueue<Item>();
+        final BlockingQueue<Item> processed = new LinkedBlockingQueue<Item>();
+        residency = new Semaphore(maxResident);
+        resident = 0;
+        peakResident = 0;
+        numDocs = 0;
+        numFailed = 0;
+        statistics = new PairStatistics();
+
+        // The queues need no bound of their own: nothing goes on them without a residency permit
+        Thread loader = new Thread("BADREX-loader") {
+            @Override
+            public void run() {
+                try {
+                    for (String lrId : lrIds) {
+                        acquire();
+                        Item item = load(lrId);
+                        if (item.doc == null) {
+                            processed.put(item);
+                        } else {
+                            loaded.put(item);
+                        }
+                    }
+                } catch (InterruptedException ie) {
+                    Thread.currentThread().interrupt();
+                } finally {
+                    for (int i = 0; i < numThreads; i++) {
+                        loaded.add(END);
+                    }
+                }
+            }
+        };
+
+        List<Thread> workers = new ArrayList<Thread>(numThreads);
+        for (int i = 0; i < numThreads; i++) {
+            Thread worker = new Thread("BADREX-worker-" + i) {
+                @Override
+                public void run() {
+                    try {
+                        AbbreviationExtractor extractor = pool.borrow();
+                        try {
+                            Item item;
+                            while ((item = loaded.take()) != END) {
+                                process(extractor, item);
+                                processed.put(item);
+                            }
+                        } finally {
+                            pool.release(extractor);
+                        }
+                    } catch (InterruptedException ie) {
+                        Thread.currentThread().interrupt();
+                    } finally {
+                        processed.add(END);
+                    }
+                }
+            };
+            workers.add(worker);
+        }
+
+        loader.start();
+        for (Thread worker : workers) {
+            worker.start();
+        }
+        try {
+            int running = numThreads;
+            List<Item> batch = new ArrayList<Item>(syncBatch);
+            while (running > 0) {
+                batch.add(processed.take());
+                processed.drainTo(batch, syncBatch - 1);
+                for (Item item : batch) {
+                    if (item == END) {
+                        running--;
+                    } else {
+                        sync(item);
+                    }
+                }
+                for (Item item : batch) {
+                    if (item != END) {
+                        unload(item);
+                    }
+                }
+                batch.clear();
+            }
+        } finally {
+            // Stop the pipeline if syncing failed or was interrupted; otherwise every thread has already finished
+            loader.interrupt();
+            for (Thread worker : workers) {
+                worker.interrupt();
+            }
+        }
+        return statistics;
+    }
+
+    private void acquire() throws InterruptedException {
+        residency.acquire();
+        synchronized (this) {
+            resident++;
+            peakResident = Math.max(peakResident, resident);
+        }
+    }
+
+    private void release() {
+        synchronized (this) {
+            resident--;
+        }
+        residency.release();
+    }
+
+    private Item load(String lrId) {
+        FeatureMap params = Factory.newFeatureMap();
+        params.put(DataStore.DATASTORE_FEATURE_NAME, dataStore);
+        params.put(DataStore.LR_ID_FEATURE_NAME, lrId);
+        Item item = new Item(lrId, null);
+        try {
+            synchronized (factoryLock) {
+                item.doc = (Document) Factory.createResource(DOCUMENT_CLASS, params);
+            }
+        } catch (ResourceInstantiationException re) {
+            item.failure = "Unable to load: " + re;
+        }
+        return item;
+    }
+
+    private void process(AbbreviationExtractor extractor, Item item) {
+        PairStatistics stats = new PairStatistics();
+        try {
+            extractor.process(item.doc, stats);
+            item.stats = stats;
+        } catch (Exception e) {
+            item.failure = e.toString();
+        } catch (StackOverflowError se) {
+            item.failure = se.toString();
+        }
+    }
+
+    private void sync(Item item) {
+        if (item.failure == null) {
+            try {
+                dataStore.sync(item.doc);
+            } catch (PersistenceException pe) {
+                item.failure = "Unable to sync: " + pe;
+            }
+        }
+        synchronized (this) {
+            numDocs++;
+            if (item.failure == null) {
+                statistics.merge(item.stats);
+            } else {
+                numFailed++;
+                gate.util.Err.println("Skipping document " + item.lrId + ": " + item.failure);
+            }
+        }
+    }
+
+    private void unload(Item item) {
+        if (item.doc != null) {
+            synchronized (factoryLock) {
+                Factory.deleteResource(item.doc);
+            }
+            item.doc = null;
+        }
+        release();
+    }
+
+    /**
+     * @return number of documents seen in the last run, including those that failed
+     */
+    public synchronized int getDocumentCount() {
+        return numDocs;
+    }
+
+    /**
+     * @return number of documents in the last run that failed to load, process or sync
+     */
+    public synchronized int getFailedCount() {
+        return numFailed;
+    }
+
+    /**
+     * @return largest number of documents loaded at once in the last run
+     */
+    public synchronized int getPeakResident() {
+        return peakResident;
+    }
+
+    private static void usage() {
+        System.err.println("Usage: DataStoreRunner -datastore dir [-threads n] [-maxResident n] [-syncBatch n] [-output pairs.tsv] [name=value ...]");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        File dataStoreDir = null;
+        File outputFile = null;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int maxResident = -1;
+        int syncBatch = 20;
+        Map<String, String> settings = new LinkedHashMap<String, String>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-datastore") && i + 1 < args.length) {
+                    dataStoreDir = new File(args[++i]);
+                } else if (args[i].equals("-threads") && i + 1 < args.length) {
+                    threads = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-maxResident") && i + 1 < args.length) {
+                    maxResident = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-syncBatch") && i + 1 < args.length) {
+                    syncBatch = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-output") && i + 1 < args.length) {
+                    outputFile = new File(args[++i]);
+                } else if (args[i].indexOf('=') > 0) {
+                    int idx = args[i].indexOf('=');
+                    settings.put(args[i].substring(0, idx), args[i].substring(idx + 1));
+                } else {
+                    usage();
+                }
+            }
+        } catch (NumberFormatException ne) {
+            usage();
+        }
+        if (dataStoreDir == null) {
+            usage();
+        }
+        if (maxResident < 0) {
+            // Enough for every extractor to have the next document ready, and a batch being synced
+            maxResident = 2 * threads + syncBatch;
+        }
+
+        Gate.init();
+        Gate.getCreoleRegister().registerDirectories(new File(Gate.getPluginsHome(), "ANNIE").toURI().toURL());
+
+        long start = System.currentTimeMillis();
+        DataStore dataStore = Factory.openDataStore("gate.persist.SerialDataStore", dataStoreDir.toURI().toURL().toString());
+        ExtractorPool pool = null;
+        try {
+            pool = new ExtractorPool(threads, settings);
+            if (!pool.getConfig().isLoaded()) {
+                throw new IllegalStateException("Unable to load configuration from " + settings.get("configFileURL"));
+            }
+            DataStoreRunner runner = new DataStoreRunner(dataStore, pool, maxResident, syncBatch);
+            PairStatistics stats = runner.run();
+            if (outputFile != null) {
+                stats.write(outputFile);
+            }
+            gate.util.Out.println(runner.getDocumentCount() + " documents, " + stats.size() + " distinct pairs in " + (System.currentTimeMillis() - start) + " ms, at most "
+                    + runner.getPeakResident() + " loaded at once" + (runner.getFailedCount() == 0 ? "" : ", " + runner.getFailedCount() + " failed"));
+        } finally {
+            if (pool != null) {
+                pool.cleanup();
+            }
+            dataStore.close();
+        }
+    }
+}
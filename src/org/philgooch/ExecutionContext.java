@@ -0,0 +1,131 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import gate.*;
+
+import java.util.*;
+
+/**
+ * State of one execution of the expander over one document, or of one profile of an execution
+ * over several profiles: the document, the run-time parameters resolved to their defaults and
+ * clamped, where output goes, and whether the call has been interrupted. Created per call, so
+ * that calls on the same expander do not share anything that changes.
+ *
+ * @author philipgooch
+ */
+final class ExecutionContext {
+    final Document document;
+    final String documentName;
+    final AnnotationSet inputAS;
+    final AnnotationSet outputAS;
+    final String inputASName;
+    final String sentenceType;
+    final String longType;
+    final String longTypeFeature;
+    final String shortType;
+    final String shortTypeFeature;
+    final boolean expandAll;
+    final boolean compactMentions;
+    final int maxInner;
+    final int maxOuter;
+    final float threshold;
+    final boolean swapShortest;
+    final boolean useLookups;
+    final boolean concurrentLookups;
+    final LookupMode lookupMode;
+    final boolean useKnownPairs;
+    final boolean useBidirectionMatch;
+    final List<String> underlyingAnnots;
+    final boolean annotate;
+    final String scopeType;
+    final int scopeSentences;
+    final String tokenType;         // type of the token annotations to take words from, or null to tokenise with regexes
+    final boolean adaptiveWindows;
+    final boolean dictionaryMode;   // annotate short forms from the lookup lists and learned pairs instead of finding pairs
+    final PairSink sink;
+    final String profile;
+
+    private volatile boolean interrupted;
+
+    /**
+     *
+     * @param document
+     * @param params    run-time parameters; null values take the CREOLE defaults
+     * @param sink      receives pairs and mentions, or null
+     */
+    ExecutionContext(Document document, ExpanderParameters params, PairSink sink) {
+        this(document, params, sink, null);
+    }
+
+    /**
+     *
+     * @param document
+     * @param params    run-time parameters; null values take the CREOLE defaults
+     * @param sink      receives pairs and mentions, or null
+     * @param profile   name of the profile the parameters belong to, or null. Also the output set, if none is given
+     */
+    ExecutionContext(Document document, ExpanderParameters params, PairSink sink, String profile) {
+        this.document = document;
+        this.documentName = document.getName();
+        this.inputASName = params.getInputASName();
+        String outputASName = params.getOutputASName();
+        if (profile != null && (outputASName == null || outputASName.trim().length() == 0)) {
+            outputASName = profile;
+        }
+        this.inputAS = (inputASName == null || inputASName.trim().length() == 0) ? document.getAnnotations() : document.getAnnotations(inputASName);
+        this.outputAS = (outputASName == null || outputASName.trim().length() == 0) ? document.getAnnotations() : document.getAnnotations(outputASName);
+        this.sentenceType = params.getSentenceType();
+        this.longType = params.getLongType();
+        this.longTypeFeature = params.getLongTypeFeature();
+        this.shortType = params.getShortType();
+        this.shortTypeFeature = params.getShortTypeFeature();
+        this.expandAll = isSet(params.getExpandAllShortFormInstances(), false);
+        this.compactMentions = (params.getMentionMode() == MentionMode.COMPACT);
+        this.maxInner = Math.max(1, (params.getMaxInner() == null) ? 10 : params.getMaxInner());
+        this.maxOuter = Math.max(1, (params.getMaxOuter() == null) ? 10 : params.getMaxOuter());
+        this.threshold = (params.getThreshold() == null) ? 0.80f : params.getThreshold();
+        this.swapShortest = isSet(params.getSwapShortest(), true);
+        this.useLookups = isSet(params.getUseLookups(), false);
+        this.concurrentLookups = isSet(params.getConcurrentLookups(), true);
+        this.lookupMode = (params.getLookupMode() == null) ? LookupMode.FULL : params.getLookupMode();
+        this.useKnownPairs = isSet(params.getUseKnownPairs(), false);
+        this.useBidirectionMatch = isSet(params.getUseBidirectionMatch(), false);
+        this.underlyingAnnots = params.getUnderlyingAnnots();
+        this.annotate = isSet(params.getCreateAnnotations(), true);
+        this.scopeType = params.getScopeType();
+        this.scopeSentences = (params.getScopeSentences() == null) ? 0 : params.getScopeSentences();
+        String tokenType = params.getTokenType();
+        this.tokenType = (tokenType == null || tokenType.trim().length() == 0) ? null : tokenType.trim();
+        this.adaptiveWindows = isSet(params.getAdaptiveWindows(), false);
+        this.dictionaryMode = isSet(params.getDictionaryMode(), false);
+        this.sink = sink;
+        this.profile = profile;
+    }
+
+    private static boolean isSet(Boolean value, boolean defaultValue) {
+        return (value == null) ? defaultValue : value;
+    }
+
+    boolean isTargetedLookups() {
+        return useLookups && lookupMode == LookupMode.TARGETED;
+    }
+
+    void interrupt() {
+        interrupted = true;
+    }
+
+    /**
+     * @return true if interrupt() has been called, or the calling thread has been interrupted
+     */
+    boolean isInterrupted() {
+        return interrupted || Thread.currentThread().isInterrupted();
+    }
+}
@@ -0,0 +1,256 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+import java.util.regex.Pattern;
+import java.util.regex.PatternSyntaxException;
+import java.net.*;
+
+/**
+ * Compiled configuration model for the expander: the ALICE constraint patterns,
+ * the POS constraint fragment and the regex fragments used to build the candidate
+ * pair patterns. Instances are immutable once loaded and can be shared between
+ * several expanders, e.g. the members of an {@link ExtractorPool}.
+ *
+ * The word lists can be rewritten into tries before they are compiled, see
+ * {@link #setOptimiseAlternations(boolean)}, and the assembled patterns can be checked for
+ * constructs that backtrack catastrophically with {@link #checkPatterns(int, int)}.
+ *
+ * @author philipgooch
+ */
+public class ExpanderConfig {
+    private URL configURL;
+
+    private Map<String, Pattern> constraintsPatternMap;          // patterns that validate ALICE algorithm constraints
+    private String posConstraints;      // regex fragment for truncating candidate terms after prepositions, determiners etc
+    private Pattern posConstraintsPattern;      // a single word matched by posConstraints
+    private String outer_pre;           // regex fragments for matching candidate term-abbrev pairs
+    private String inner_pre;
+    private String inner_post;
+    private String outer_pre_2;
+    private String inner_pre_2;
+    private String inner_post_2;
+
+    private long version;               // hash of the loaded options, see getVersion()
+
+    private boolean optimiseAlternations;       // rewrite the word lists into tries before compiling them
+
+    // Options that are lists of words or regexes, joined into one alternation by ConfigReader
+    private static final String[] WORD_LISTS = {"to_be", "prepositions", "wh_adverbs", "special", "pos_constraints"};
+
+    private boolean loaded;
+
+    public ExpanderConfig() {
+        this.constraintsPatternMap = new HashMap<String, Pattern>();
+    }
+
+    /**
+     *
+     * @param configURL - path to configuration file
+     */
+    public ExpanderConfig(URL configURL) {
+        this();
+        this.configURL = configURL;
+    }
+
+    /**
+     * Read the configuration file and compile the constraint patterns
+     * @return true if the configuration could not be loaded
+     */
+    public boolean load() {
+        boolean gracefulExit = false;
+
+        if (configURL == null) {
+            gate.util.Err.println("No configuration file provided!");
+            return true;
+        }
+
+        ConfigReader config = new ConfigReader(configURL);
+        gracefulExit = config.config();
+
+        try {
+            HashMap<String, String> options = config.getOptions();
+            if (optimiseAlternations) {
+                for (String key : WORD_LISTS) {
+                    if (options.get(key) != null) {
+                        options.put(key, PatternAnalyser.optimiseAlternation(options.get(key)));
+                    }
+                }
+            }
+
+            addContainsPattern("to_be", options);
+            addStartsWithPattern("prepositions", options);
+            addStartsWithPattern("wh_adverbs", options);
+            addCompleteMatchPattern("special", options);
+
+            posConstraints = options.get("pos_constraints");
+            posConstraintsPattern = Pattern.compile("^(" + posConstraints + ")$", Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+            outer_pre = options.get("outer_pre");
+            inner_pre = options.get("inner_pre");
+            inner_post = options.get("inner_post");
+            outer_pre_2 = options.get("outer_pre_2");
+            inner_pre_2 = options.get("inner_pre_2");
+            inner_post_2 = options.get("inner_post_2");
+
+            // Options in a fixed order, so that the same configuration always gives the same version
+            StringBuilder sb = new StringBuilder();
+            for (String key : new TreeSet<String>(options.keySet())) {
+                sb.append(key).append('=').append(options.get(key)).append('\n');
+            }
+            version = SentenceCache.hash(sb);
+        } catch (NullPointerException ne) {
+            gracefulExit = true;
+            gate.util.Err.println("Missing or unset configuration options. Please check configuration file.");
+        } catch (PatternSyntaxException pe) {
+            gracefulExit = true;
+            gate.util.Err.println("Invalid regular expression in configuration file " + configURL + ": " + pe.getMessage());
+        }
+
+        loaded = !gracefulExit;
+        return gracefulExit;
+    }
+
+    /**
+     * Pattern for matching text that contains one of a given list of words or regexes
+     * @param key
+     * @param options
+     */
+    private void addContainsPattern(String key, HashMap<String, String> options) {
+        String option = options.get(key);
+        if (option != null) {
+            constraintsPatternMap.put(key, Pattern.compile("^.+\\b(" + option + ")\\b.+$"));
+        }
+    }
+
+    /*
+     * Pattern for matching text that starts with one of a given list of words or regexes
+     * @param key
+     * @param options
+     */
+    private void addStartsWithPattern(String key, HashMap<String, String> options) {
+        String option = options.get(key);
+        if (option != null) {
+            constraintsPatternMap.put(key, Pattern.compile("^\\b(" + option + ")\\b.+$"));
+        }
+    }
+
+    /**
+     * Pattern for matching text that exactly matches one of a given list of words or regexes
+     * @param key
+     * @param options
+     */
+    private void addCompleteMatchPattern(String key, HashMap<String, String> options) {
+        String option = options.get(key);
+        if (option != null) {
+            constraintsPatternMap.put(key, Pattern.compile("^(" + option + ")$"));
+        }
+    }
+
+    /**
+     * Compile the patterns built from the configuration, including the candidate pair patterns for
+     * the given window, and check each of them with {@link PatternAnalyser}. The checks do not
+     * depend on the window, other than on whether repetitions are bounded
+     * @param maxOuter
+     * @param maxInner
+     * @return a description of each pattern that does not compile or can backtrack catastrophically, or an empty list
+     */
+    public List<String> checkPatterns(int maxOuter, int maxInner) {
+        Map<String, String> sources = new LinkedHashMap<String, String>();
+        Map<String, Integer> flags = new HashMap<String, Integer>();
+        for (String key : new TreeSet<String>(constraintsPatternMap.keySet())) {
+            sources.put(key, constraintsPatternMap.get(key).pattern());
+            flags.put(key, constraintsPatternMap.get(key).flags());
+        }
+        sources.put("pos_constraints", posConstraintsPattern.pattern());
+        flags.put("pos_constraints", posConstraintsPattern.flags());
+        sources.put("candidate pattern", CandidateScanner.pairPattern(this, maxOuter, maxInner));
+        flags.put("candidate pattern", CandidateScanner.PAIR_FLAGS);
+        sources.put("bidirectional candidate pattern", CandidateScanner.pairPattern2(this, maxOuter, maxInner));
+        flags.put("bidirectional candidate pattern", CandidateScanner.PAIR_FLAGS);
+
+        List<String> problems = new ArrayList<String>();
+        for (Map.Entry<String, String> source : sources.entrySet()) {
+            try {
+                for (String problem : PatternAnalyser.analyse(source.getValue(), flags.get(source.getKey()))) {
+                    problems.add(source.getKey() + ": " + problem);
+                }
+            } catch (PatternSyntaxException pe) {
+                problems.add(source.getKey() + " does not compile: " + pe.getMessage());
+            }
+        }
+        return problems;
+    }
+
+    public boolean isLoaded() {
+        return loaded;
+    }
+
+    /**
+     * @param optimiseAlternations  rewrite the word lists into tries when the configuration is loaded. They match the same text
+     */
+    public void setOptimiseAlternations(boolean optimiseAlternations) {
+        this.optimiseAlternations = optimiseAlternations;
+    }
+
+    public boolean isOptimiseAlternations() {
+        return optimiseAlternations;
+    }
+
+    /**
+     * @return hash of the configuration options, identical for any two loads of the same settings
+     */
+    public long getVersion() {
+        return version;
+    }
+
+    public URL getConfigURL() {
+        return configURL;
+    }
+
+    public Map<String, Pattern> getConstraintsPatternMap() {
+        return constraintsPatternMap;
+    }
+
+    public String getPosConstraints() {
+        return posConstraints;
+    }
+
+    /**
+     * @return pattern matching a whole word, e.g. a token's text, that is one of the pos constraints
+     */
+    public Pattern getPosConstraintsPattern() {
+        return posConstraintsPattern;
+    }
+
+    public String getOuterPre() {
+        return outer_pre;
+    }
+
+    public String getInnerPre() {
+        return inner_pre;
+    }
+
+    public String getInnerPost() {
+        return inner_post;
+    }
+
+    public String getOuterPre2() {
+        return outer_pre_2;
+    }
+
+    public String getInnerPre2() {
+        return inner_pre_2;
+    }
+
+    public String getInnerPost2() {
+        return inner_post_2;
+    }
+}
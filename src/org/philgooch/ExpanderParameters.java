@@ -0,0 +1,345 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+
+/**
+ * Run-time parameters for one call of BiomedicalAbbreviationExpander.execute(Document, ExpanderParameters).
+ * Take a copy of an expander's current parameters with getParameters(), change what differs for
+ * the call, and pass it in; the expander itself is not modified. A parameter left null takes the
+ * same default as the CREOLE parameter. The pair sink file, pair sink format and sentence cache
+ * size are properties of the expander instance and are not included.
+ *
+ * @author philipgooch
+ */
+public class ExpanderParameters implements Cloneable {
+    private String inputASName;
+    private String outputASName;
+    private String sentenceType;
+    private String longType;
+    private String longTypeFeature;
+    private String shortType;
+    private String shortTypeFeature;
+    private Boolean expandAllShortFormInstances;
+    private MentionMode mentionMode;
+    private Integer maxInner;
+    private Integer maxOuter;
+    private Float threshold;
+    private Boolean swapShortest;
+    private Boolean useLookups;
+    private Boolean concurrentLookups;
+    private LookupMode lookupMode;
+    private Boolean useKnownPairs;
+    private Boolean useBidirectionMatch;
+    private List<String> underlyingAnnots;
+    private Boolean createAnnotations;
+    private String scopeType;
+    private Integer scopeSentences;
+    private String tokenType;
+    private Boolean adaptiveWindows;
+    private Boolean dictionaryMode;
+    private PairSink pairSink;
+
+    public ExpanderParameters() {
+    }
+
+    /**
+     * @return a copy that can be changed without affecting this instance
+     */
+    @Override
+    public ExpanderParameters clone() {
+        try {
+            ExpanderParameters copy = (ExpanderParameters) super.clone();
+            if (underlyingAnnots != null) {
+                copy.underlyingAnnots = new ArrayList<String>(underlyingAnnots);
+            }
+            return copy;
+        } catch (CloneNotSupportedException ce) {
+            throw new IllegalStateException(ce);
+        }
+    }
+
+    public String getInputASName() {
+        return inputASName;
+    }
+
+    public void setInputASName(String inputASName) {
+        this.inputASName = inputASName;
+    }
+
+    public String getOutputASName() {
+        return outputASName;
+    }
+
+    public void setOutputASName(String outputASName) {
+        this.outputASName = outputASName;
+    }
+
+    public String getSentenceType() {
+        return sentenceType;
+    }
+
+    public void setSentenceType(String sentenceType) {
+        this.sentenceType = sentenceType;
+    }
+
+    public String getLongType() {
+        return longType;
+    }
+
+    public void setLongType(String longType) {
+        this.longType = longType;
+    }
+
+    public String getLongTypeFeature() {
+        return longTypeFeature;
+    }
+
+    public void setLongTypeFeature(String longTypeFeature) {
+        this.longTypeFeature = longTypeFeature;
+    }
+
+    public String getShortType() {
+        return shortType;
+    }
+
+    public void setShortType(String shortType) {
+        this.shortType = shortType;
+    }
+
+    public String getShortTypeFeature() {
+        return shortTypeFeature;
+    }
+
+    public void setShortTypeFeature(String shortTypeFeature) {
+        this.shortTypeFeature = shortTypeFeature;
+    }
+
+    public Boolean getExpandAllShortFormInstances() {
+        return expandAllShortFormInstances;
+    }
+
+    public void setExpandAllShortFormInstances(Boolean expandAllShortFormInstances) {
+        this.expandAllShortFormInstances = expandAllShortFormInstances;
+    }
+
+    public MentionMode getMentionMode() {
+        return mentionMode;
+    }
+
+    public void setMentionMode(MentionMode mentionMode) {
+        this.mentionMode = mentionMode;
+    }
+
+    public Integer getMaxInner() {
+        return maxInner;
+    }
+
+    public void setMaxInner(Integer maxInner) {
+        this.maxInner = maxInner;
+    }
+
+    public Integer getMaxOuter() {
+        return maxOuter;
+    }
+
+    public void setMaxOuter(Integer maxOuter) {
+        this.maxOuter = maxOuter;
+    }
+
+    public Float getThreshold() {
+        return threshold;
+    }
+
+    public void setThreshold(Float threshold) {
+        this.threshold = threshold;
+    }
+
+    public Boolean getSwapShortest() {
+        return swapShortest;
+    }
+
+    public void setSwapShortest(Boolean swapShortest) {
+        this.swapShortest = swapShortest;
+    }
+
+    public Boolean getUseLookups() {
+        return useLookups;
+    }
+
+    public void setUseLookups(Boolean useLookups) {
+        this.useLookups = useLookups;
+    }
+
+    public Boolean getConcurrentLookups() {
+        return concurrentLookups;
+    }
+
+    public void setConcurrentLookups(Boolean concurrentLookups) {
+        this.concurrentLookups = concurrentLookups;
+    }
+
+    public LookupMode getLookupMode() {
+        return lookupMode;
+    }
+
+    public void setLookupMode(LookupMode lookupMode) {
+        this.lookupMode = lookupMode;
+    }
+
+    public Boolean getUseKnownPairs() {
+        return useKnownPairs;
+    }
+
+    public void setUseKnownPairs(Boolean useKnownPairs) {
+        this.useKnownPairs = useKnownPairs;
+    }
+
+    public Boolean getUseBidirectionMatch() {
+        return useBidirectionMatch;
+    }
+
+    public void setUseBidirectionMatch(Boolean useBidirectionMatch) {
+        this.useBidirectionMatch = useBidirectionMatch;
+    }
+
+    public List<String> getUnderlyingAnnots() {
+        return underlyingAnnots;
+    }
+
+    public void setUnderlyingAnnots(List<String> underlyingAnnots) {
+        this.underlyingAnnots = underlyingAnnots;
+    }
+
+    public Boolean getCreateAnnotations() {
+        return createAnnotations;
+    }
+
+    public void setCreateAnnotations(Boolean createAnnotations) {
+        this.createAnnotations = createAnnotations;
+    }
+
+    public String getScopeType() {
+        return scopeType;
+    }
+
+    public void setScopeType(String scopeType) {
+        this.scopeType = scopeType;
+    }
+
+    public Integer getScopeSentences() {
+        return scopeSentences;
+    }
+
+    public void setScopeSentences(Integer scopeSentences) {
+        this.scopeSentences = scopeSentences;
+    }
+
+    public String getTokenType() {
+        return tokenType;
+    }
+
+    public void setTokenType(String tokenType) {
+        this.tokenType = tokenType;
+    }
+
+    public Boolean getAdaptiveWindows() {
+        return adaptiveWindows;
+    }
+
+    public void setAdaptiveWindows(Boolean adaptiveWindows) {
+        this.adaptiveWindows = adaptiveWindows;
+    }
+
+    public Boolean getDictionaryMode() {
+        return dictionaryMode;
+    }
+
+    public void setDictionaryMode(Boolean dictionaryMode) {
+        this.dictionaryMode = dictionaryMode;
+    }
+
+    /**
+     * @return sink for the pairs and mentions found in the call, or null
+     */
+    public PairSink getPairSink() {
+        return pairSink;
+    }
+
+    public void setPairSink(PairSink pairSink) {
+        this.pairSink = pairSink;
+    }
+
+    /**
+     * Parse named profiles, each a copy of the base parameters with some matching parameters changed,
+     * e.g. "precision: maxInner=5, maxOuter=5, threshold=1.0; recall: maxInner=10, maxOuter=10, threshold=0.75".
+     * The parameters that may be given are maxInner, maxOuter, threshold, swapShortest,
+     * useBidirectionMatch and outputASName.
+     * @param spec
+     * @param base  parameters shared by all profiles
+     * @return profiles by name, in the order given
+     * @throws IllegalArgumentException if the profiles cannot be parsed
+     */
+    public static Map<String, ExpanderParameters> parseProfiles(String spec, ExpanderParameters base) {
+        Map<String, ExpanderParameters> profiles = new LinkedHashMap<String, ExpanderParameters>();
+        for (String profileSpec : spec.split(";")) {
+            if (profileSpec.trim().length() == 0) {
+                continue;
+            }
+            int colon = profileSpec.indexOf(':');
+            String name = (colon < 0) ? "" : profileSpec.substring(0, colon).trim();
+            if (name.length() == 0) {
+                throw new IllegalArgumentException("Profile has no name: " + profileSpec.trim());
+            }
+            if (profiles.containsKey(name)) {
+                throw new IllegalArgumentException("Profile " + name + " is given more than once");
+            }
+            ExpanderParameters params = base.clone();
+            for (String setting : profileSpec.substring(colon + 1).split(",")) {
+                if (setting.trim().length() == 0) {
+                    continue;
+                }
+                int equals = setting.indexOf('=');
+                if (equals < 0) {
+                    throw new IllegalArgumentException("Expected name=value in profile " + name + ": " + setting.trim());
+                }
+                params.setProfileValue(name, setting.substring(0, equals).trim(), setting.substring(equals + 1).trim());
+            }
+            profiles.put(name, params);
+        }
+        if (profiles.isEmpty()) {
+            throw new IllegalArgumentException("No profiles given");
+        }
+        return profiles;
+    }
+
+    private void setProfileValue(String profile, String name, String value) {
+        try {
+            if (name.equals("maxInner")) {
+                maxInner = Integer.valueOf(value);
+            } else if (name.equals("maxOuter")) {
+                maxOuter = Integer.valueOf(value);
+            } else if (name.equals("threshold")) {
+                threshold = Float.valueOf(value);
+            } else if (name.equals("swapShortest")) {
+                swapShortest = Boolean.valueOf(value);
+            } else if (name.equals("useBidirectionMatch")) {
+                useBidirectionMatch = Boolean.valueOf(value);
+            } else if (name.equals("outputASName")) {
+                outputASName = value;
+            } else {
+                throw new IllegalArgumentException("Parameter " + name + " cannot be set in profile " + profile);
+            }
+        } catch (NumberFormatException ne) {
+            throw new IllegalArgumentException("Invalid value for " + name + " in profile " + profile + ": " + value);
+        }
+    }
+}
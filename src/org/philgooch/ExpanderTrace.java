@@ -0,0 +1,141 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.lang.reflect.InvocationTargetException;
+
+/**
+ * Hooks called from the expander's hot paths so that executions, sentences, candidate matches
+ * and gazetteer runs can be traced. Each begin method returns a token that is passed back to
+ * the matching end method; a null token means the event is not being recorded.
+ *
+ * The default instance records Java Flight Recorder events when running on a JVM that has
+ * jdk.jfr and the plugin was built with the optional src-jfr classes, and does nothing otherwise.
+ * Set -Dbadrex.trace=false to switch tracing off altogether. To collect other measurements,
+ * subclass this and pass the instance to BiomedicalAbbreviationExpander.setTrace().
+ *
+ * @author philipgooch
+ */
+public class ExpanderTrace {
+    public static final String OUTCOME_ACCEPTED = "accepted";
+    public static final String OUTCOME_CONSTRAINT = "constraint";
+    public static final String OUTCOME_THRESHOLD = "threshold";
+    public static final String OUTCOME_KNOWN = "known";
+
+    public static final String JFR_TRACE_CLASS = "org.philgooch.JfrExpanderTrace";
+
+    /** Records nothing */
+    public static final ExpanderTrace NONE = new ExpanderTrace();
+
+    private static final ExpanderTrace instance = load();
+
+    protected ExpanderTrace() {
+    }
+
+    /**
+     * @return the JFR trace if it is available, else NONE
+     */
+    public static ExpanderTrace getInstance() {
+        return instance;
+    }
+
+    private static ExpanderTrace load() {
+        if ("false".equalsIgnoreCase(System.getProperty("badrex.trace"))) {
+            return NONE;
+        }
+        try {
+            Class.forName("jdk.jfr.Event");
+            return (ExpanderTrace) Class.forName(JFR_TRACE_CLASS).getDeclaredConstructor().newInstance();
+        } catch (ClassNotFoundException ce) {
+            // Older JVM, or built without the JFR classes
+            return NONE;
+        } catch (LinkageError le) {
+            // JFR classes built for a newer JVM
+            return NONE;
+        } catch (NoSuchMethodException ne) {
+            gate.util.Err.println("Unable to create " + JFR_TRACE_CLASS + ": " + ne);
+        } catch (InstantiationException ie) {
+            gate.util.Err.println("Unable to create " + JFR_TRACE_CLASS + ": " + ie);
+        } catch (IllegalAccessException ae) {
+            gate.util.Err.println("Unable to create " + JFR_TRACE_CLASS + ": " + ae);
+        } catch (InvocationTargetException te) {
+            gate.util.Err.println("Unable to create " + JFR_TRACE_CLASS + ": " + te.getCause());
+        }
+        return NONE;
+    }
+
+    public Object beginExecute() {
+        return null;
+    }
+
+    /**
+     *
+     * @param token             from beginExecute()
+     * @param documentName
+     * @param documentLength    characters
+     * @param sentences         number of sentences processed
+     * @param pairs             number of pairs accepted
+     * @param maxOuter
+     * @param maxInner
+     * @param threshold
+     * @param bidirectional     whether the bidirectional pattern was used
+     * @param lookupMode        FULL, TARGETED, or null if lookups were off
+     * @param expandAll         whether later mentions were expanded
+     */
+    public void endExecute(Object token, String documentName, long documentLength, int sentences, int pairs,
+            int maxOuter, int maxInner, float threshold, boolean bidirectional, String lookupMode, boolean expandAll) {
+    }
+
+    public Object beginSentence() {
+        return null;
+    }
+
+    /**
+     * Called for every sentence, whether or not it has candidates
+     * @param token         from beginSentence()
+     * @param documentName
+     * @param start         sentence start offset
+     * @param end           sentence end offset
+     * @param candidates    candidates found by the scanner, 0 if the matches came from the cache
+     * @param accepted      candidates accepted
+     * @param cached        whether the matches came from the sentence cache
+     */
+    public void endSentence(Object token, String documentName, int start, int end, int candidates, int accepted, boolean cached) {
+    }
+
+    public Object beginMatch() {
+        return null;
+    }
+
+    /**
+     *
+     * @param token         from beginMatch()
+     * @param shortForm     inner text of the candidate
+     * @param longForm      outer text of the candidate
+     * @param bidirectional whether the candidate came from the bidirectional pattern
+     * @param outcome       OUTCOME_ACCEPTED, OUTCOME_CONSTRAINT, OUTCOME_THRESHOLD or OUTCOME_KNOWN
+     * @param score         proportion of short form characters aligned, or -1 if not computed
+     */
+    public void endMatch(Object token, String shortForm, String longForm, boolean bidirectional, String outcome, float score) {
+    }
+
+    public Object beginGazetteer() {
+        return null;
+    }
+
+    /**
+     *
+     * @param token             from beginGazetteer()
+     * @param documentName
+     * @param documentLength    characters
+     */
+    public void endGazetteer(Object token, String documentName, long documentLength) {
+    }
+}
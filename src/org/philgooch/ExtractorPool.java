@@ -0,0 +1,111 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import gate.creole.ExecutionException;
+import gate.creole.ResourceInstantiationException;
+
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Fixed-size pool of initialised, warmed-up extractors that share a single
+ * configuration model and, if sentenceCacheSize is set, a single sentence cache. Callers borrow an extractor for the duration of one
+ * document or batch and must release it afterwards.
+ *
+ * @author philipgooch
+ */
+public class ExtractorPool {
+    // Small document run through each extractor on creation, so that the first real request does not pay for class loading and JIT warm-up
+    private static final String WARM_UP_TEXT = "Wiskott-Aldrich syndrome (WAS) is an X-linked recessive disorder.";
+
+    private List<AbbreviationExtractor> extractors;
+    private BlockingQueue<AbbreviationExtractor> idle;
+    private ExpanderConfig config;
+    private SentenceCache cache;
+
+    /**
+     *
+     * @param size          number of extractors
+     * @param settings      expander parameter values, see AbbreviationExtractor.createExpander()
+     * @throws ResourceInstantiationException
+     */
+    public ExtractorPool(int size, Map<String, String> settings) throws ResourceInstantiationException {
+        if (size < 1) {
+            size = 1;
+        }
+        extractors = new ArrayList<AbbreviationExtractor>(size);
+        idle = new ArrayBlockingQueue<AbbreviationExtractor>(size);
+        for (int i = 0; i < size; i++) {
+            BiomedicalAbbreviationExpander expander = AbbreviationExtractor.createExpander(settings, config);
+            if (config == null) {
+                config = expander.getExpanderConfig();
+            }
+            if (cache != null) {
+                expander.setSentenceCache(cache);
+            }
+            AbbreviationExtractor extractor = new AbbreviationExtractor(expander);
+            try {
+                extractor.extract("warm-up", WARM_UP_TEXT, null);
+            } catch (ExecutionException ee) {
+                throw new ResourceInstantiationException(ee);
+            }
+            if (cache == null && expander.getSentenceCache() != null) {
+                // The first extractor creates its cache on warm-up, the others share it
+                cache = expander.getSentenceCache();
+            }
+            extractors.add(extractor);
+            idle.add(extractor);
+        }
+    }
+
+    /**
+     * Wait for an idle extractor
+     * @return extractor, which must be given back with release()
+     * @throws InterruptedException
+     */
+    public AbbreviationExtractor borrow() throws InterruptedException {
+        return idle.take();
+    }
+
+    public void release(AbbreviationExtractor extractor) {
+        if (extractor != null) {
+            idle.offer(extractor);
+        }
+    }
+
+    public int getSize() {
+        return extractors.size();
+    }
+
+    public int getIdleCount() {
+        return idle.size();
+    }
+
+    public ExpanderConfig getConfig() {
+        return config;
+    }
+
+    /**
+     * @return sentence cache shared by the extractors, or null if not enabled
+     */
+    public SentenceCache getCache() {
+        return cache;
+    }
+
+    public void cleanup() {
+        for (AbbreviationExtractor extractor : extractors) {
+            extractor.cleanup();
+        }
+        extractors.clear();
+        idle.clear();
+    }
+}
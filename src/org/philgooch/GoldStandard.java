@@ -0,0 +1,163 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Documents with their known term-abbreviation pairs, for measuring accuracy, read from a file
+ * in the Medstract style: documents are separated by blank lines, the first line of each is its
+ * id, and the following lines are its text, except for lines that are indented and contain a |,
+ * which give the pairs as short form|long form. Anything after a second | is ignored.
+ *
+ * 	9074236
+ * 	Magnetic resonance imaging (MRI) was performed.
+ * 	  MRI|Magnetic resonance imaging
+ *
+ * Pairs are compared ignoring case and differences in white space.
+ *
+ * @author philipgooch
+ */
+public class GoldStandard {
+
+    /**
+     * A document and the pairs it defines
+     */
+    public static class GoldDocument {
+        private String id;
+        private String text;
+        private Set<String> pairs;      // pair keys
+
+        public GoldDocument(String id, String text, Set<String> pairs) {
+            this.id = id;
+            this.text = text;
+            this.pairs = pairs;
+        }
+
+        public String getId() {
+            return id;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        /**
+         * @return keys of the pairs in the document, see pairKey()
+         */
+        public Set<String> getPairs() {
+            return Collections.unmodifiableSet(pairs);
+        }
+    }
+
+    private List<GoldDocument> documents;
+
+    public GoldStandard(List<GoldDocument> documents) {
+        this.documents = documents;
+    }
+
+    /**
+     *
+     * @param shortForm
+     * @param longForm
+     * @return key under which the pair is compared
+     */
+    public static String pairKey(String shortForm, String longForm) {
+        return normalise(shortForm) + "|" + normalise(longForm);
+    }
+
+    private static String normalise(String value) {
+        return value.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ENGLISH);
+    }
+
+    /**
+     * Compare the pairs found in a document with its gold pairs
+     * @param document
+     * @param found     pairs found in the document
+     * @return {true positives, false positives, false negatives}, counting each distinct pair once
+     */
+    public static int[] score(GoldDocument document, Collection<AbbreviationPair> found) {
+        Set<String> foundKeys = new HashSet<String>();
+        for (AbbreviationPair pair : found) {
+            foundKeys.add(pairKey(pair.getShortForm(), pair.getLongForm()));
+        }
+        int truePositives = 0;
+        for (String key : foundKeys) {
+            if (document.pairs.contains(key)) {
+                truePositives++;
+            }
+        }
+        return new int[] {truePositives, foundKeys.size() - truePositives, document.pairs.size() - truePositives};
+    }
+
+    public List<GoldDocument> getDocuments() {
+        return Collections.unmodifiableList(documents);
+    }
+
+    /**
+     * @return number of distinct pairs over all documents
+     */
+    public int getPairCount() {
+        int count = 0;
+        for (GoldDocument document : documents) {
+            count += document.pairs.size();
+        }
+        return count;
+    }
+
+    /**
+     *
+     * @param file
+     * @return the documents in the file
+     * @throws IOException if the file cannot be read, or a pair line has no long form
+     */
+    public static GoldStandard read(File file) throws IOException {
+        List<GoldDocument> documents = new ArrayList<GoldDocument>();
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String id = null;
+            StringBuilder text = new StringBuilder();
+            Set<String> pairs = new LinkedHashSet<String>();
+            String line;
+            int lineNo = 0;
+            while ((line = in.readLine()) != null) {
+                lineNo++;
+                if (line.trim().length() == 0) {
+                    if (id != null) {
+                        documents.add(new GoldDocument(id, text.toString(), pairs));
+                        id = null;
+                        text = new StringBuilder();
+                        pairs = new LinkedHashSet<String>();
+                    }
+                } else if (id == null) {
+                    id = line.trim();
+                } else if (Character.isWhitespace(line.charAt(0)) && line.indexOf('|') > 0) {
+                    String[] fields = line.trim().split("\\|");
+                    if (fields.length < 2 || fields[0].trim().length() == 0 || fields[1].trim().length() == 0) {
+                        throw new IOException("Malformed pair on line " + lineNo + " of " + file);
+                    }
+                    pairs.add(pairKey(fields[0], fields[1]));
+                } else {
+                    if (text.length() > 0) {
+                        text.append('\n');
+                    }
+                    text.append(line);
+                }
+            }
+            if (id != null) {
+                documents.add(new GoldDocument(id, text.toString(), pairs));
+            }
+        } finally {
+            in.close();
+        }
+        return new GoldStandard(documents);
+    }
+}
@@ -0,0 +1,184 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+
+/**
+ * Term-abbreviation pairs that are already known from the lookup lists, e.g.
+ * AAA;term=abdominal aortic aneurysm, hashed by short form. Lets the expander accept a candidate
+ * whose long form is a known expansion of its short form without the constraint and alignment
+ * checks. Short forms are matched exactly; long forms ignoring case and treating any run of
+ * white space as a single space.
+ *
+ * @author philipgooch
+ */
+public class KnownPairIndex {
+    // Feature of a lookup list entry that holds its long form
+    public static final String LONG_FORM_FEATURE = "term";
+
+    /**
+     * A known pair and the category of the list it came from
+     */
+    public static class KnownPair {
+        private String shortForm;
+        private String longForm;
+        private String category;
+
+        public KnownPair(String shortForm, String longForm, String category) {
+            this.shortForm = shortForm;
+            this.longForm = longForm;
+            this.category = category;
+        }
+
+        public String getShortForm() {
+            return shortForm;
+        }
+
+        /**
+         * @return long form in lower case, with white space normalised
+         */
+        public String getLongForm() {
+            return longForm;
+        }
+
+        /**
+         * @return annotation type of the list, e.g. DiseaseOrSyndrome
+         */
+        public String getCategory() {
+            return category;
+        }
+    }
+
+    private Map<String, List<KnownPair>> pairs;
+    private int numPairs;
+
+    public KnownPairIndex() {
+        this.pairs = new HashMap<String, List<KnownPair>>();
+    }
+
+    /**
+     * Index the entries of a loaded lookup index that have a long form
+     * @param lookupIndex
+     */
+    public KnownPairIndex(LookupIndex lookupIndex) {
+        this();
+        List<LookupIndex.Entry> entries = lookupIndex.getEntries();
+        // The trie returns entries in no fixed order; sort them so that duplicates resolve the same way every time
+        Collections.sort(entries, new Comparator<LookupIndex.Entry>() {
+
+            public int compare(LookupIndex.Entry e1, LookupIndex.Entry e2) {
+                int cmp = e1.getText().compareTo(e2.getText());
+                return (cmp != 0) ? cmp : e1.getAnnotationType().compareTo(e2.getAnnotationType());
+            }
+        });
+        for (LookupIndex.Entry entry : entries) {
+            String longForm = entry.getFeatures().get(LONG_FORM_FEATURE);
+            if (longForm != null) {
+                add(entry.getText(), longForm, entry.getAnnotationType());
+            }
+        }
+    }
+
+    /**
+     * Add a pair; a pair that is already known keeps its first category
+     * @param shortForm
+     * @param longForm
+     * @param category
+     */
+    public void add(String shortForm, String longForm, String category) {
+        String norm = normalize(longForm);
+        if (shortForm.length() == 0 || norm.length() == 0) {
+            return;
+        }
+        List<KnownPair> known = pairs.get(shortForm);
+        if (known == null) {
+            known = new ArrayList<KnownPair>(1);
+            pairs.put(shortForm, known);
+        }
+        for (KnownPair pair : known) {
+            if (pair.longForm.equals(norm)) {
+                return;
+            }
+        }
+        known.add(new KnownPair(shortForm, norm, category));
+        numPairs++;
+    }
+
+    /**
+     *
+     * @param shortForm
+     * @param text      text that may end with a long form of shortForm, e.g. the words before a bracket
+     * @return the known pair with the longest long form that ends text and starts on a word boundary, or null
+     */
+    public KnownPair find(String shortForm, String text) {
+        List<KnownPair> known = pairs.get(shortForm);
+        if (known == null) {
+            return null;
+        }
+        KnownPair longest = null;
+        for (KnownPair pair : known) {
+            if ((longest == null || pair.longForm.length() > longest.longForm.length()) && suffixStart(text, pair.longForm) >= 0) {
+                longest = pair;
+            }
+        }
+        return longest;
+    }
+
+    /**
+     *
+     * @param text
+     * @param longForm  normalised long form
+     * @return start of longForm where it ends text, on a word boundary, or -1 if text does not end with it
+     */
+    public static int suffixStart(String text, String longForm) {
+        int i = text.length();
+        while (i > 0 && Character.isWhitespace(text.charAt(i - 1))) {
+            i--;
+        }
+        int j = longForm.length();
+        while (j > 0) {
+            if (i == 0) {
+                return -1;
+            }
+            char c = longForm.charAt(j - 1);
+            if (c == ' ') {
+                if (!Character.isWhitespace(text.charAt(i - 1))) {
+                    return -1;
+                }
+                while (i > 0 && Character.isWhitespace(text.charAt(i - 1))) {
+                    i--;
+                }
+            } else {
+                if (Character.toLowerCase(text.charAt(i - 1)) != c) {
+                    return -1;
+                }
+                i--;
+            }
+            j--;
+        }
+        if (i > 0 && Character.isLetterOrDigit(text.charAt(i - 1)) && Character.isLetterOrDigit(text.charAt(i))) {
+            return -1;
+        }
+        return i;
+    }
+
+    /**
+     * @return number of distinct pairs
+     */
+    public int size() {
+        return numPairs;
+    }
+
+    /* Lower case, trim and reduce runs of white space to a single space */
+    private static String normalize(String text) {
+        return text.trim().replaceAll("\\s+", " ").toLowerCase(Locale.ENGLISH);
+    }
+}
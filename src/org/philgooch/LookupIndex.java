@@ -0,0 +1,319 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+import java.io.*;
+import java.net.*;
+
+/**
+ * In-memory index of the abbreviation lookup lists, read from the same gazetteer definition
+ * file as the DefaultGazetteer (list:majorType:minorType:language:annotationType). Entries are
+ * held in a character trie so that arbitrary spans of text can be matched against all lists
+ * at once. Matching is case sensitive and treats any run of white space as a single space,
+ * as the gazetteer does. As with the gazetteer's wholeWordsOnly, a match may not be preceded
+ * or followed by a word-internal character, that is a letter or a combining mark; digits and
+ * punctuation are boundaries, so CD matches in CD3 but not in CDs.
+ *
+ * @author philipgooch
+ */
+public class LookupIndex {
+    public static final String DEFAULT_ANNOTATION_TYPE = "Lookup";
+
+    private URL defURL;
+    private String encoding;
+    private String featureSeparator;
+
+    private Node root;
+    private int numEntries;
+
+    /**
+     * A list entry, with the annotation type and features that a match should be given
+     */
+    public static class Entry {
+        private String text;
+        private String annotationType;
+        private Map<String, String> features;
+
+        public Entry(String text, String annotationType, Map<String, String> features) {
+            this.text = text;
+            this.annotationType = annotationType;
+            this.features = features;
+        }
+
+        public String getText() {
+            return text;
+        }
+
+        public String getAnnotationType() {
+            return annotationType;
+        }
+
+        public Map<String, String> getFeatures() {
+            return features;
+        }
+    }
+
+    /**
+     * A span of text that matches one or more list entries
+     */
+    public static class Match {
+        private int start;
+        private int end;
+        private List<Entry> entries;
+
+        public Match(int start, int end, List<Entry> entries) {
+            this.start = start;
+            this.end = end;
+            this.entries = entries;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        public List<Entry> getEntries() {
+            return entries;
+        }
+    }
+
+    private static class Node {
+        Map<Character, Node> children;
+        List<Entry> entries;        // non-null if an entry ends here
+
+        Node child(char c) {
+            return (children == null) ? null : children.get(c);
+        }
+
+        Node addChild(char c) {
+            if (children == null) {
+                children = new HashMap<Character, Node>(4);
+            }
+            Node node = children.get(c);
+            if (node == null) {
+                node = new Node();
+                children.put(c, node);
+            }
+            return node;
+        }
+    }
+
+    /**
+     *
+     * @param defURL            gazetteer definition file
+     * @param encoding          encoding of the list files
+     * @param featureSeparator  separator between an entry and its features, e.g. ;
+     */
+    public LookupIndex(URL defURL, String encoding, String featureSeparator) {
+        this.defURL = defURL;
+        this.encoding = encoding;
+        this.featureSeparator = featureSeparator;
+        this.root = new Node();
+    }
+
+    /**
+     * Read the definition file and every list it refers to
+     * @throws IOException
+     */
+    public void load() throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(defURL.openStream(), encoding));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(":");
+                String majorType = (fields.length > 1) ? fields[1] : null;
+                String minorType = (fields.length > 2) ? fields[2] : null;
+                String language = (fields.length > 3) ? fields[3] : null;
+                String annotationType = (fields.length > 4 && fields[4].length() > 0) ? fields[4] : DEFAULT_ANNOTATION_TYPE;
+                loadList(new URL(defURL, fields[0]), majorType, minorType, language, annotationType);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    private void loadList(URL listURL, String majorType, String minorType, String language, String annotationType) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(listURL.openStream(), encoding));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String[] fields = line.split(java.util.regex.Pattern.quote(featureSeparator));
+                String text = normalize(fields[0]);
+                if (text.length() == 0) {
+                    continue;
+                }
+                Map<String, String> features = new HashMap<String, String>();
+                if (majorType != null && majorType.length() > 0) {
+                    features.put("majorType", majorType);
+                }
+                if (minorType != null && minorType.length() > 0) {
+                    features.put("minorType", minorType);
+                }
+                if (language != null && language.length() > 0) {
+                    features.put("language", language);
+                }
+                for (int i = 1; i < fields.length; i++) {
+                    int idx = fields[i].indexOf('=');
+                    if (idx > 0) {
+                        features.put(fields[i].substring(0, idx), fields[i].substring(idx + 1));
+                    }
+                }
+                add(new Entry(text, annotationType, features));
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Add an entry to the index
+     * @param entry
+     */
+    public void add(Entry entry) {
+        Node node = root;
+        String text = entry.getText();
+        for (int i = 0; i < text.length(); i++) {
+            node = node.addChild(text.charAt(i));
+        }
+        if (node.entries == null) {
+            node.entries = new ArrayList<Entry>(1);
+        }
+        node.entries.add(entry);
+        numEntries++;
+    }
+
+    /**
+     *
+     * @param text
+     * @return list entries whose text is exactly text, or null
+     */
+    public List<Entry> lookup(String text) {
+        Node node = root;
+        String norm = normalize(text);
+        for (int i = 0; i < norm.length() && node != null; i++) {
+            node = node.child(norm.charAt(i));
+        }
+        return (node == null) ? null : node.entries;
+    }
+
+    /**
+     * Find the longest entry at each word boundary within [start, end)
+     * @param text
+     * @param start
+     * @param end
+     * @return matches in order of start offset
+     */
+    public List<Match> findMatches(CharSequence text, int start, int end) {
+        List<Match> matches = new ArrayList<Match>();
+        for (int i = start; i < end; i++) {
+            if (isWordStart(text, i)) {
+                findMatchesAt(text, i, end, matches);
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * Find the longest entry that starts at pos and ends on a word boundary before limit
+     * @param text
+     * @param pos
+     * @param limit
+     * @param matches   list to add the match to
+     */
+    public void findMatchesAt(CharSequence text, int pos, int limit, List<Match> matches) {
+        Node node = root;
+        Match longest = null;
+        int i = pos;
+        while (i < limit && node != null) {
+            char c = text.charAt(i);
+            if (Character.isWhitespace(c)) {
+                node = node.child(' ');
+                while (i < limit && Character.isWhitespace(text.charAt(i))) {
+                    i++;
+                }
+            } else {
+                node = node.child(c);
+                i++;
+            }
+            if (node != null && node.entries != null && isWordEnd(text, i)) {
+                longest = new Match(pos, i, node.entries);
+            }
+        }
+        if (longest != null) {
+            matches.add(longest);
+        }
+    }
+
+    public int size() {
+        return numEntries;
+    }
+
+    /**
+     * @return all entries in the index, in no particular order
+     */
+    public List<Entry> getEntries() {
+        List<Entry> entries = new ArrayList<Entry>(numEntries);
+        collectEntries(root, entries);
+        return entries;
+    }
+
+    private static void collectEntries(Node node, List<Entry> entries) {
+        if (node.entries != null) {
+            entries.addAll(node.entries);
+        }
+        if (node.children != null) {
+            for (Node child : node.children.values()) {
+                collectEntries(child, entries);
+            }
+        }
+    }
+
+    /**
+     * @param c
+     * @return true if c is a letter or combining mark, which the gazetteer does not match across
+     */
+    static boolean isWordInternal(char c) {
+        int type = Character.getType(c);
+        return Character.isLetter(c) || type == Character.COMBINING_SPACING_MARK || type == Character.NON_SPACING_MARK;
+    }
+
+    /**
+     * @return true if a match may start at i: the character there is not white space, and the one before is not word-internal
+     */
+    static boolean isWordStart(CharSequence text, int i) {
+        if (Character.isWhitespace(text.charAt(i))) {
+            return false;
+        }
+        return i == 0 || !isWordInternal(text.charAt(i - 1));
+    }
+
+    /**
+     * @return true if a match may end at i: the character before is not white space, and the one at i is not word-internal
+     */
+    static boolean isWordEnd(CharSequence text, int i) {
+        if (Character.isWhitespace(text.charAt(i - 1))) {
+            return false;
+        }
+        return i == text.length() || !isWordInternal(text.charAt(i));
+    }
+
+    /* Trim and reduce runs of white space to a single space */
+    static String normalize(String text) {
+        return (text == null) ? "" : text.trim().replaceAll("\\s+", " ");
+    }
+}
@@ -0,0 +1,22 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+/**
+ * How the lookup lists of common medical abbreviations are matched when useLookups is set
+ *
+ * @author philipgooch
+ */
+public enum LookupMode {
+    /** Run the gazetteer over the whole document, annotating every list entry found */
+    FULL,
+    /** Only match list entries within candidate term-abbreviation pairs and on abbreviation-like tokens */
+    TARGETED
+}
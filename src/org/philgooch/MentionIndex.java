@@ -0,0 +1,425 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Reads an inverted index of short form mentions written by MentionIndexWriter: for a short form,
+ * the documents that mention it, the offsets of each mention, and the long form it expands to there.
+ *
+ * An index is a directory holding a SEGMENTS file, which lists the live segment files one per line,
+ * and the segment files themselves. Each segment starts with MAGIC and VERSION, followed by the
+ * postings of each short form, and ends with its dictionary and the offset the dictionary starts at:
+ *
+ * postings     numDocs, then for each document: docDelta count, then for each mention: code startDelta length
+ * dictionary   numDocs documentId*, numLongForms longForm*, numShortForms, then for each: shortForm offset length
+ * footer       dictionary offset, as a long
+ *
+ * Documents are numbered within their segment, in the order they were first seen, and appear in
+ * increasing order in each posting list; docDelta is the difference from the previous document.
+ * Mentions are in document order, and startDelta is the difference from the previous mention's start
+ * in the same document. The code is the long form's number within the segment times two, plus one if
+ * the mention is the short form in the defining pair. Strings are modified UTF-8 and all other numbers
+ * are unsigned variable-length integers, so most mentions take three or four bytes.
+ *
+ * Only the dictionaries are held in memory; the postings of a short form are read when it is looked up.
+ *
+ * Usage: MentionIndex -index dir shortForm [shortForm ...]
+ *
+ * @author philipgooch
+ */
+public class MentionIndex {
+    public static final int MAGIC = 0x42584958;     // "BXIX"
+    public static final int VERSION = 1;
+    public static final String SEGMENTS = "segments";
+    public static final String SEGMENT_SUFFIX = ".seg";
+
+    /**
+     * A mention of a short form found by lookup()
+     */
+    public static class Mention {
+        private String documentId;
+        private String longForm;
+        private int start;
+        private int end;
+        private boolean definition;
+
+        public Mention(String documentId, String longForm, int start, int end, boolean definition) {
+            this.documentId = documentId;
+            this.longForm = longForm;
+            this.start = start;
+            this.end = end;
+            this.definition = definition;
+        }
+
+        public String getDocumentId() {
+            return documentId;
+        }
+
+        public String getLongForm() {
+            return longForm;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        /**
+         * @return true if this is the short form of the pair that defined it, rather than a later mention
+         */
+        public boolean isDefinition() {
+            return definition;
+        }
+
+        @Override
+        public String toString() {
+            return documentId + "\t" + longForm + "\t" + start + "\t" + end + (definition ? "\tdefinition" : "");
+        }
+    }
+
+    /**
+     * One segment file, with its dictionary loaded
+     */
+    static class Segment {
+        private File file;
+        private RandomAccessFile in;
+        private String[] documentIds;
+        private String[] longForms;
+        private Map<String, long[]> shortForms;     // offset and length of the postings of each short form
+
+        Segment(File file) throws IOException {
+            this.file = file;
+            this.in = new RandomAccessFile(file, "r");
+            try {
+                if (in.readInt() != MAGIC || in.readByte() != VERSION) {
+                    throw new IOException("Not a mention index segment: " + file);
+                }
+                in.seek(in.length() - 8);
+                long dictionaryOffset = in.readLong();
+                byte[] dictionary = new byte[(int) (in.length() - 8 - dictionaryOffset)];
+                in.seek(dictionaryOffset);
+                in.readFully(dictionary);
+                DataInputStream din = new DataInputStream(new ByteArrayInputStream(dictionary));
+                documentIds = new String[readVarInt(din)];
+                for (int i = 0; i < documentIds.length; i++) {
+                    documentIds[i] = din.readUTF();
+                }
+                longForms = new String[readVarInt(din)];
+                for (int i = 0; i < longForms.length; i++) {
+                    longForms[i] = din.readUTF();
+                }
+                int numShortForms = readVarInt(din);
+                shortForms = new LinkedHashMap<String, long[]>(numShortForms * 2);
+                for (int i = 0; i < numShortForms; i++) {
+                    String shortForm = din.readUTF();
+                    shortForms.put(shortForm, new long[] {readVarLong(din), readVarInt(din)});
+                }
+            } catch (IOException ie) {
+                in.close();
+                throw ie;
+            }
+        }
+
+        File getFile() {
+            return file;
+        }
+
+        String[] getDocumentIds() {
+            return documentIds;
+        }
+
+        String[] getLongForms() {
+            return longForms;
+        }
+
+        /**
+         * @return the short forms in the segment, in sorted order
+         */
+        Set<String> getShortForms() {
+            return shortForms.keySet();
+        }
+
+        /**
+         * @return the postings of a short form, as document, code, start and end for each mention, or null if it is not in the segment
+         */
+        int[] getPostings(String shortForm) throws IOException {
+            long[] location = shortForms.get(shortForm);
+            if (location == null) {
+                return null;
+            }
+            byte[] postings = new byte[(int) location[1]];
+            synchronized (this) {
+                in.seek(location[0]);
+                in.readFully(postings);
+            }
+            return decodePostings(postings);
+        }
+
+        void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private File dir;
+    private List<Segment> segments;
+
+    /**
+     * Open the index in a directory, as it is when opened; open it again to see segments written or merged since.
+     * A writer deletes the inputs of a merge as soon as it has listed the merged segment, so if a segment
+     * has gone by the time it is opened, the list is read again.
+     * @param dir
+     * @throws IOException
+     */
+    public MentionIndex(File dir) throws IOException {
+        this.dir = dir;
+        this.segments = new ArrayList<Segment>();
+        List<String> names = readSegments(dir);
+        while (true) {
+            try {
+                for (String name : names) {
+                    segments.add(new Segment(new File(dir, name)));
+                }
+                return;
+            } catch (FileNotFoundException fe) {
+                close();
+                List<String> current = readSegments(dir);
+                if (current.equals(names)) {
+                    throw fe;
+                }
+                names = current;
+            } catch (IOException ie) {
+                close();
+                throw ie;
+            }
+        }
+    }
+
+    /**
+     * @param shortForm
+     * @return every mention of the short form, grouped by segment, then by document, in document order
+     * @throws IOException
+     */
+    public List<Mention> lookup(String shortForm) throws IOException {
+        String key = normalise(shortForm);
+        List<Mention> mentions = new ArrayList<Mention>();
+        for (Segment segment : segments) {
+            int[] postings = segment.getPostings(key);
+            if (postings != null) {
+                for (int i = 0; i < postings.length; i += 4) {
+                    mentions.add(new Mention(segment.getDocumentIds()[postings[i]], segment.getLongForms()[postings[i + 1] >> 1], postings[i + 2], postings[i + 3], (postings[i + 1] & 1) != 0));
+                }
+            }
+        }
+        return mentions;
+    }
+
+    /**
+     * @param shortForm
+     * @return the long forms the short form expands to in each document that mentions it
+     * @throws IOException
+     */
+    public Map<String, Set<String>> getExpansions(String shortForm) throws IOException {
+        Map<String, Set<String>> expansions = new LinkedHashMap<String, Set<String>>();
+        for (Mention mention : lookup(shortForm)) {
+            Set<String> longForms = expansions.get(mention.getDocumentId());
+            if (longForms == null) {
+                longForms = new LinkedHashSet<String>();
+                expansions.put(mention.getDocumentId(), longForms);
+            }
+            longForms.add(mention.getLongForm());
+        }
+        return expansions;
+    }
+
+    /**
+     * @return number of segments in the index when it was opened
+     */
+    public int getSegmentCount() {
+        return segments.size();
+    }
+
+    public File getDir() {
+        return dir;
+    }
+
+    public void close() throws IOException {
+        for (Segment segment : segments) {
+            segment.close();
+        }
+        segments.clear();
+    }
+
+    /**
+     * Short forms are indexed and looked up with white space collapsed to single spaces
+     * @param shortForm
+     * @return the key the short form is indexed under
+     */
+    public static String normalise(String shortForm) {
+        return shortForm.trim().replaceAll("\\s+", " ");
+    }
+
+    /**
+     * @param dir
+     * @return the names of the live segments, oldest first, or an empty list if there is no index in the directory
+     * @throws IOException
+     */
+    static List<String> readSegments(File dir) throws IOException {
+        List<String> names = new ArrayList<String>();
+        File file = new File(dir, SEGMENTS);
+        if (!file.exists()) {
+            return names;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.trim().length() > 0) {
+                    names.add(line.trim());
+                }
+            }
+        } finally {
+            in.close();
+        }
+        return names;
+    }
+
+    /**
+     * Encode postings, sorted by document and start, in the segment format
+     * @param postings  document, code, start and end for each mention
+     * @param length    number of ints used in postings
+     * @return encoded postings
+     */
+    static byte[] encodePostings(int[] postings, int length) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(length);
+        DataOutputStream out = new DataOutputStream(bytes);
+        int numDocs = 0;
+        for (int i = 0; i < length; i += 4) {
+            if (i == 0 || postings[i] != postings[i - 4]) {
+                numDocs++;
+            }
+        }
+        writeVarInt(out, numDocs);
+        int previousDoc = 0;
+        for (int i = 0; i < length; ) {
+            int doc = postings[i];
+            int count = 0;
+            while (i + count * 4 < length && postings[i + count * 4] == doc) {
+                count++;
+            }
+            writeVarInt(out, doc - previousDoc);
+            writeVarInt(out, count);
+            previousDoc = doc;
+            int previousStart = 0;
+            for (int j = 0; j < count; j++, i += 4) {
+                writeVarInt(out, postings[i + 1]);
+                writeVarInt(out, postings[i + 2] - previousStart);
+                writeVarInt(out, postings[i + 3] - postings[i + 2]);
+                previousStart = postings[i + 2];
+            }
+        }
+        out.flush();
+        return bytes.toByteArray();
+    }
+
+    static int[] decodePostings(byte[] bytes) throws IOException {
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes));
+        int numDocs = readVarInt(in);
+        int[] postings = new int[16];
+        int length = 0;
+        int doc = 0;
+        for (int d = 0; d < numDocs; d++) {
+            doc += readVarInt(in);
+            int count = readVarInt(in);
+            int start = 0;
+            for (int j = 0; j < count; j++) {
+                if (length + 4 > postings.length) {
+                    postings = Arrays.copyOf(postings, postings.length * 2);
+                }
+                int code = readVarInt(in);
+                start += readVarInt(in);
+                postings[length++] = doc;
+                postings[length++] = code;
+                postings[length++] = start;
+                postings[length++] = start + readVarInt(in);
+            }
+        }
+        return Arrays.copyOf(postings, length);
+    }
+
+    static void writeVarInt(DataOutput out, int value) throws IOException {
+        writeVarLong(out, value & 0xFFFFFFFFL);
+    }
+
+    static void writeVarLong(DataOutput out, long value) throws IOException {
+        while ((value & ~0x7FL) != 0) {
+            out.writeByte((int) ((value & 0x7F) | 0x80));
+            value >>>= 7;
+        }
+        out.writeByte((int) value);
+    }
+
+    static int readVarInt(DataInput in) throws IOException {
+        return (int) readVarLong(in);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long value = 0;
+        int shift = 0;
+        int b;
+        do {
+            b = in.readUnsignedByte();
+            value |= (long) (b & 0x7F) << shift;
+            shift += 7;
+        } while ((b & 0x80) != 0);
+        return value;
+    }
+
+    private static void usage() {
+        System.err.println("Usage: MentionIndex -index dir shortForm [shortForm ...]");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        File dir = null;
+        List<String> shortForms = new ArrayList<String>();
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-index") && i + 1 < args.length) {
+                dir = new File(args[++i]);
+            } else {
+                shortForms.add(args[i]);
+            }
+        }
+        if (dir == null || shortForms.isEmpty()) {
+            usage();
+        }
+        MentionIndex index = new MentionIndex(dir);
+        try {
+            for (String shortForm : shortForms) {
+                long start = System.nanoTime();
+                List<Mention> mentions = index.lookup(shortForm);
+                Set<String> documentIds = new HashSet<String>();
+                for (Mention mention : mentions) {
+                    System.out.println(shortForm + "\t" + mention);
+                    documentIds.add(mention.getDocumentId());
+                }
+                System.err.println(shortForm + ": " + mentions.size() + " mentions in " + documentIds.size() + " documents, "
+                        + (System.nanoTime() - start) / 1000 + " us");
+            }
+        } finally {
+            index.close();
+        }
+    }
+}
@@ -0,0 +1,468 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.io.*;
+
+/**
+ * Builds an inverted index of short form mentions, see MentionIndex for the format, from the pairs
+ * and mentions the expander finds. Mentions are buffered in memory and written out as a new segment
+ * each time maxBuffered of them have been collected, and the rest when the writer is closed. Whenever
+ * there are mergeFactor segments of the same level, the oldest of them are merged into one segment of
+ * the next level on a background thread, so that each mention is rewritten once per level and the
+ * number of segments a lookup has to read grows only with the logarithm of the number written.
+ *
+ * Each segment is listed in the SEGMENTS file only once it is complete, and merged segments are
+ * replaced in a single rename, so a MentionIndex opened at any time sees a consistent index. The
+ * inputs of a merge are deleted once the new list is written; a MentionIndex that was opening them
+ * then reads the list again.
+ * flush() does not write a segment, since the expander flushes its sink after every document; only a
+ * full buffer or close() does. A new writer replaces any index already in its directory.
+ *
+ * @author philipgooch
+ */
+public class MentionIndexWriter implements PairSink {
+    public static final int DEFAULT_MAX_BUFFERED = 100000;
+    public static final int DEFAULT_MERGE_FACTOR = 10;
+
+    /**
+     * Mentions of one short form, as document, code, start and end for each
+     */
+    private static class PostingList {
+        private int[] postings = new int[8];
+        private int length;
+
+        private void add(int doc, int code, int start, int end) {
+            if (length + 4 > postings.length) {
+                postings = Arrays.copyOf(postings, postings.length * 2);
+            }
+            postings[length++] = doc;
+            postings[length++] = code;
+            postings[length++] = start;
+            postings[length++] = end;
+        }
+
+        /**
+         * @return the postings sorted by document, start and end
+         */
+        private int[] sorted() {
+            Integer[] order = new Integer[length / 4];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i * 4;
+            }
+            Arrays.sort(order, new Comparator<Integer>() {
+                public int compare(Integer a, Integer b) {
+                    for (int field : new int[] {0, 2, 3, 1}) {
+                        int x = postings[a + field];
+                        int y = postings[b + field];
+                        if (x != y) {
+                            return (x < y) ? -1 : 1;
+                        }
+                    }
+                    return 0;
+                }
+            });
+            int[] sorted = new int[length];
+            for (int i = 0; i < order.length; i++) {
+                System.arraycopy(postings, order[i], sorted, i * 4, 4);
+            }
+            return sorted;
+        }
+    }
+
+    /**
+     * A segment file being written: the postings of each short form in sorted order, then the dictionary
+     */
+    private static class SegmentOutput {
+        private File file;
+        private DataOutputStream out;
+        private long offset;
+        private Map<String, long[]> locations = new LinkedHashMap<String, long[]>();
+
+        private SegmentOutput(File file) throws IOException {
+            this.file = file;
+            this.out = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(file), 65536));
+            out.writeInt(MentionIndex.MAGIC);
+            out.writeByte(MentionIndex.VERSION);
+            offset = 5;
+        }
+
+        private void addPostings(String shortForm, byte[] postings) throws IOException {
+            out.write(postings);
+            locations.put(shortForm, new long[] {offset, postings.length});
+            offset += postings.length;
+        }
+
+        private void finish(List<String> documentIds, List<String> longForms) throws IOException {
+            try {
+                MentionIndex.writeVarInt(out, documentIds.size());
+                for (String documentId : documentIds) {
+                    out.writeUTF(documentId);
+                }
+                MentionIndex.writeVarInt(out, longForms.size());
+                for (String longForm : longForms) {
+                    out.writeUTF(longForm);
+                }
+                MentionIndex.writeVarInt(out, locations.size());
+                for (Map.Entry<String, long[]> location : locations.entrySet()) {
+                    out.writeUTF(location.getKey());
+                    MentionIndex.writeVarLong(out, location.getValue()[0]);
+                    MentionIndex.writeVarInt(out, (int) location.getValue()[1]);
+                }
+                out.writeLong(offset);
+            } finally {
+                out.close();
+            }
+        }
+
+        private void abandon() {
+            try {
+                out.close();
+            } catch (IOException ie) {
+                // Already failed
+            }
+            file.delete();
+        }
+    }
+
+    private File dir;
+    private int maxBuffered;
+    private int mergeFactor;
+
+    // The segment being collected
+    private Map<String, Integer> documentNumbers = new HashMap<String, Integer>();
+    private List<String> documentIds = new ArrayList<String>();
+    private Map<String, Integer> longFormNumbers = new HashMap<String, Integer>();
+    private List<String> longForms = new ArrayList<String>();
+    private Map<String, PostingList> postings = new HashMap<String, PostingList>();
+    private int numBuffered;
+
+    private List<String> segments = new ArrayList<String>();        // live segments, oldest first
+    private Map<String, Integer> levels = new HashMap<String, Integer>();   // number of merges behind each segment
+    private int nextSegment;
+    private ExecutorService merger;
+    private Future<?> merging;          // merge in progress, or null
+    private IOException mergeFailure;
+    private boolean closed;
+
+    public MentionIndexWriter(File dir) throws IOException {
+        this(dir, DEFAULT_MAX_BUFFERED, DEFAULT_MERGE_FACTOR);
+    }
+
+    /**
+     *
+     * @param dir           directory to write the index to, created if needed
+     * @param maxBuffered   number of mentions to collect in memory before writing a segment
+     * @param mergeFactor   number of segments merged into one at a time, at least 2
+     * @throws IOException
+     */
+    public MentionIndexWriter(File dir, int maxBuffered, int mergeFactor) throws IOException {
+        this.dir = dir;
+        this.maxBuffered = Math.max(1, maxBuffered);
+        this.mergeFactor = Math.max(2, mergeFactor);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("Unable to create index directory " + dir);
+        }
+        // Replace any existing index
+        for (String name : MentionIndex.readSegments(dir)) {
+            new File(dir, name).delete();
+        }
+        writeSegments();
+        merger = Executors.newSingleThreadExecutor(new ThreadFactory() {
+            public Thread newThread(Runnable r) {
+                Thread thread = new Thread(r, "BADREX index merge");
+                thread.setDaemon(true);
+                return thread;
+            }
+        });
+    }
+
+    public synchronized void pairFound(AbbreviationPair pair) {
+        add(pair, pair.getShortStart(), pair.getShortEnd(), true);
+    }
+
+    public synchronized void mentionFound(AbbreviationPair pair, int start, int end) {
+        add(pair, start, end, false);
+    }
+
+    private void add(AbbreviationPair pair, int start, int end, boolean definition) {
+        if (closed) {
+            throw new IllegalStateException("Mention index " + dir + " is closed");
+        }
+        String documentId = (pair.getDocumentId() == null) ? "" : pair.getDocumentId();
+        Integer doc = documentNumbers.get(documentId);
+        if (doc == null) {
+            doc = documentIds.size();
+            documentNumbers.put(documentId, doc);
+            documentIds.add(documentId);
+        }
+        Integer longForm = longFormNumbers.get(pair.getLongForm());
+        if (longForm == null) {
+            longForm = longForms.size();
+            longFormNumbers.put(pair.getLongForm(), longForm);
+            longForms.add(pair.getLongForm());
+        }
+        String shortForm = MentionIndex.normalise(pair.getShortForm());
+        PostingList list = postings.get(shortForm);
+        if (list == null) {
+            list = new PostingList();
+            postings.put(shortForm, list);
+        }
+        list.add(doc, (longForm << 1) | (definition ? 1 : 0), start, end);
+        numBuffered++;
+        if (numBuffered >= maxBuffered) {
+            try {
+                writeBuffered();
+            } catch (IOException ie) {
+                throw new IllegalStateException("Unable to write mention index segment to " + dir + ": " + ie);
+            }
+        }
+    }
+
+    /**
+     * Write the buffered mentions as a new segment, and start a merge if there are enough segments
+     */
+    private void writeBuffered() throws IOException {
+        if (numBuffered == 0) {
+            return;
+        }
+        String name = newSegmentName();
+        SegmentOutput output = new SegmentOutput(new File(dir, name));
+        try {
+            for (String shortForm : new TreeSet<String>(postings.keySet())) {
+                PostingList list = postings.get(shortForm);
+                output.addPostings(shortForm, MentionIndex.encodePostings(list.sorted(), list.length));
+            }
+            output.finish(documentIds, longForms);
+        } catch (IOException ie) {
+            output.abandon();
+            throw ie;
+        }
+        segments.add(name);
+        levels.put(name, 0);
+        writeSegments();
+
+        documentNumbers.clear();
+        documentIds.clear();
+        longFormNumbers.clear();
+        longForms.clear();
+        postings.clear();
+        numBuffered = 0;
+        maybeMerge();
+    }
+
+    private String newSegmentName() {
+        return "_" + (nextSegment++) + MentionIndex.SEGMENT_SUFFIX;
+    }
+
+    /* Called with the lock held. Levels never increase along the list, so the segments of a level are consecutive */
+    private void maybeMerge() {
+        if (merging != null) {
+            return;
+        }
+        int first = -1;
+        for (int i = 0; i + mergeFactor <= segments.size(); i++) {
+            if (levels.get(segments.get(i)).equals(levels.get(segments.get(i + mergeFactor - 1)))) {
+                first = i;
+                break;
+            }
+        }
+        if (first < 0) {
+            return;
+        }
+        final List<String> inputs = new ArrayList<String>(segments.subList(first, first + mergeFactor));
+        final int level = levels.get(inputs.get(0)) + 1;
+        final String name = newSegmentName();
+        merging = merger.submit(new Runnable() {
+            public void run() {
+                IOException failure = null;
+                try {
+                    merge(inputs, new File(dir, name));
+                } catch (IOException ie) {
+                    failure = ie;
+                    new File(dir, name).delete();
+                }
+                synchronized (MentionIndexWriter.this) {
+                    merging = null;
+                    if (failure != null) {
+                        mergeFailure = failure;
+                        return;
+                    }
+                    // The merged segment takes the place of its inputs
+                    int position = segments.indexOf(inputs.get(0));
+                    segments.removeAll(inputs);
+                    segments.add(position, name);
+                    levels.keySet().removeAll(inputs);
+                    levels.put(name, level);
+                    try {
+                        writeSegments();
+                        for (String input : inputs) {
+                            new File(dir, input).delete();
+                        }
+                    } catch (IOException ie) {
+                        mergeFailure = ie;
+                        return;
+                    }
+                    maybeMerge();
+                }
+            }
+        });
+    }
+
+    /**
+     * Merge segments into a new one. Documents are renumbered after those of the segments before
+     * them, and long forms are numbered afresh, so each merged posting list stays sorted
+     * @param inputs    names of the segments to merge
+     * @param file      segment to write
+     * @throws IOException
+     */
+    private void merge(List<String> inputs, File file) throws IOException {
+        List<MentionIndex.Segment> sources = new ArrayList<MentionIndex.Segment>();
+        SegmentOutput output = null;
+        try {
+            for (String input : inputs) {
+                sources.add(new MentionIndex.Segment(new File(dir, input)));
+            }
+            List<String> mergedDocumentIds = new ArrayList<String>();
+            List<String> mergedLongForms = new ArrayList<String>();
+            Map<String, Integer> mergedLongFormNumbers = new HashMap<String, Integer>();
+            int[] documentOffsets = new int[sources.size()];
+            int[][] longFormNumbering = new int[sources.size()][];
+            TreeSet<String> shortForms = new TreeSet<String>();
+            for (int i = 0; i < sources.size(); i++) {
+                MentionIndex.Segment source = sources.get(i);
+                documentOffsets[i] = mergedDocumentIds.size();
+                mergedDocumentIds.addAll(Arrays.asList(source.getDocumentIds()));
+                String[] sourceLongForms = source.getLongForms();
+                longFormNumbering[i] = new int[sourceLongForms.length];
+                for (int j = 0; j < sourceLongForms.length; j++) {
+                    Integer number = mergedLongFormNumbers.get(sourceLongForms[j]);
+                    if (number == null) {
+                        number = mergedLongForms.size();
+                        mergedLongFormNumbers.put(sourceLongForms[j], number);
+                        mergedLongForms.add(sourceLongForms[j]);
+                    }
+                    longFormNumbering[i][j] = number;
+                }
+                shortForms.addAll(source.getShortForms());
+            }
+
+            output = new SegmentOutput(file);
+            for (String shortForm : shortForms) {
+                PostingList merged = new PostingList();
+                for (int i = 0; i < sources.size(); i++) {
+                    int[] sourcePostings = sources.get(i).getPostings(shortForm);
+                    if (sourcePostings != null) {
+                        for (int j = 0; j < sourcePostings.length; j += 4) {
+                            int code = sourcePostings[j + 1];
+                            merged.add(sourcePostings[j] + documentOffsets[i], (longFormNumbering[i][code >> 1] << 1) | (code & 1), sourcePostings[j + 2], sourcePostings[j + 3]);
+                        }
+                    }
+                }
+                output.addPostings(shortForm, MentionIndex.encodePostings(merged.postings, merged.length));
+            }
+            output.finish(mergedDocumentIds, mergedLongForms);
+        } catch (IOException ie) {
+            if (output != null) {
+                output.abandon();
+            }
+            throw ie;
+        } finally {
+            for (MentionIndex.Segment source : sources) {
+                source.close();
+            }
+        }
+    }
+
+    /**
+     * List the live segments, replacing the SEGMENTS file in one rename
+     */
+    private void writeSegments() throws IOException {
+        File tmp = new File(dir, MentionIndex.SEGMENTS + ".tmp");
+        Writer out = new OutputStreamWriter(new FileOutputStream(tmp), "UTF-8");
+        try {
+            for (String segment : segments) {
+                out.write(segment);
+                out.write('\n');
+            }
+        } finally {
+            out.close();
+        }
+        File file = new File(dir, MentionIndex.SEGMENTS);
+        if (!tmp.renameTo(file)) {
+            // Some platforms do not rename over an existing file
+            file.delete();
+            if (!tmp.renameTo(file)) {
+                throw new IOException("Unable to replace " + file);
+            }
+        }
+    }
+
+    /**
+     * Segments are only written when the buffer is full or on close(); this reports a failed merge
+     * @throws IOException
+     */
+    public synchronized void flush() throws IOException {
+        if (mergeFailure != null) {
+            throw mergeFailure;
+        }
+    }
+
+    /**
+     * Write the buffered mentions and wait for merging to finish
+     * @throws IOException
+     */
+    public void close() throws IOException {
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            writeBuffered();
+            closed = true;
+        }
+        try {
+            while (true) {
+                Future<?> pending;
+                synchronized (this) {
+                    pending = merging;
+                }
+                if (pending == null) {
+                    break;
+                }
+                pending.get();
+            }
+        } catch (InterruptedException ie) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for mention index merge in " + dir);
+        } catch (ExecutionException ee) {
+            throw new IOException("Mention index merge failed in " + dir + ": " + ee.getCause());
+        } finally {
+            merger.shutdown();
+        }
+        synchronized (this) {
+            if (mergeFailure != null) {
+                throw mergeFailure;
+            }
+        }
+    }
+
+    /**
+     * @return number of live segments
+     */
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+}
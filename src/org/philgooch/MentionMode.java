@@ -0,0 +1,22 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+/**
+ * How later mentions of a short form are recorded when expandAllShortFormInstances is set
+ *
+ * @author philipgooch
+ */
+public enum MentionMode {
+    /** Annotate each mention, with the long form and the id of the defining long form annotation as features */
+    ANNOTATIONS,
+    /** Record the offsets of all mentions in a single mentions feature on the defining long form annotation, readable with MentionOffsets */
+    COMPACT
+}
@@ -0,0 +1,131 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.io.Serializable;
+import java.util.Arrays;
+
+/**
+ * Start and end offsets of the later mentions of a short form, held in a single int array.
+ * In COMPACT mention mode the expander collects these per defining long form and stores
+ * toString() as the mentions feature of its annotation, in place of one annotation and feature
+ * map per mention. Use MentionOffsets(String) to read the feature back.
+ *
+ * @author philipgooch
+ */
+public class MentionOffsets implements Serializable {
+    private static final long serialVersionUID = 1L;
+
+    private int[] offsets;
+    private int size;
+
+    public MentionOffsets() {
+        this.offsets = new int[8];
+    }
+
+    /**
+     * @param value     offsets as written by toString(), e.g. "12-15;40-43"
+     * @throws IllegalArgumentException if value is not in that form
+     */
+    public MentionOffsets(String value) {
+        this();
+        if (value == null || value.length() == 0) {
+            return;
+        }
+        for (String mention : value.split(";")) {
+            int dash = mention.indexOf('-');
+            if (dash < 0) {
+                throw new IllegalArgumentException("Not a mention offset pair: " + mention);
+            }
+            add(Integer.parseInt(mention.substring(0, dash)), Integer.parseInt(mention.substring(dash + 1)));
+        }
+    }
+
+    /**
+     * Add a mention; mentions are expected in document order
+     * @param start
+     * @param end
+     */
+    public void add(int start, int end) {
+        if (size * 2 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[size * 2] = start;
+        offsets[size * 2 + 1] = end;
+        size++;
+    }
+
+    /**
+     * @return number of mentions
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getStart(int mention) {
+        checkIndex(mention);
+        return offsets[mention * 2];
+    }
+
+    public int getEnd(int mention) {
+        checkIndex(mention);
+        return offsets[mention * 2 + 1];
+    }
+
+    private void checkIndex(int mention) {
+        if (mention < 0 || mention >= size) {
+            throw new IndexOutOfBoundsException("Mention " + mention + " of " + size);
+        }
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof MentionOffsets)) {
+            return false;
+        }
+        MentionOffsets other = (MentionOffsets) obj;
+        if (size != other.size) {
+            return false;
+        }
+        for (int i = 0; i < size * 2; i++) {
+            if (offsets[i] != other.offsets[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public int hashCode() {
+        int hash = size;
+        for (int i = 0; i < size * 2; i++) {
+            hash = 31 * hash + offsets[i];
+        }
+        return hash;
+    }
+
+    /**
+     * @return offsets as "start-end;start-end"
+     */
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder(size * 12);
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                sb.append(';');
+            }
+            sb.append(offsets[i * 2]).append('-').append(offsets[i * 2 + 1]);
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,65 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+
+/**
+ * In-memory PairSink that keeps every pair, and the offsets of every mention, it is given.
+ *
+ * @author philipgooch
+ */
+public class PairCollector implements PairSink {
+    private List<AbbreviationPair> pairs;
+    private Map<AbbreviationPair, List<int[]>> mentions;
+
+    public PairCollector() {
+        this.pairs = new ArrayList<AbbreviationPair>();
+        this.mentions = new IdentityHashMap<AbbreviationPair, List<int[]>>();
+    }
+
+    public synchronized void pairFound(AbbreviationPair pair) {
+        pairs.add(pair);
+    }
+
+    public synchronized void mentionFound(AbbreviationPair pair, int start, int end) {
+        List<int[]> offsets = mentions.get(pair);
+        if (offsets == null) {
+            offsets = new ArrayList<int[]>();
+            mentions.put(pair, offsets);
+        }
+        offsets.add(new int[]{start, end});
+    }
+
+    public void flush() {
+    }
+
+    public void close() {
+    }
+
+    public synchronized List<AbbreviationPair> getPairs() {
+        return pairs;
+    }
+
+    /**
+     *
+     * @param pair
+     * @return {start, end} offsets of the later mentions of the pair's short form
+     */
+    public synchronized List<int[]> getMentions(AbbreviationPair pair) {
+        List<int[]> offsets = mentions.get(pair);
+        return (offsets == null) ? Collections.<int[]>emptyList() : offsets;
+    }
+
+    public synchronized void clear() {
+        pairs.clear();
+        mentions.clear();
+    }
+}
@@ -0,0 +1,55 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.io.*;
+
+/**
+ * File formats for streaming pairs and mentions out of the expander
+ *
+ * @author philipgooch
+ */
+public enum PairFormat {
+    /** One tab-separated line per pair or mention, see TsvPairWriter */
+    TSV,
+    /** Compact binary records, see BinaryPairWriter */
+    BINARY,
+    /** Inverted index of short form mentions, in a directory, see MentionIndexWriter and MentionIndex */
+    INDEX;
+
+    /**
+     *
+     * @param out
+     * @return buffered writer for this format
+     * @throws IOException
+     */
+    public PairSink createWriter(OutputStream out) throws IOException {
+        if (this == INDEX) {
+            throw new IllegalArgumentException("The INDEX format is written to a directory, not a stream");
+        }
+        if (this == BINARY) {
+            return new BinaryPairWriter(out);
+        }
+        return new TsvPairWriter(out);
+    }
+
+    /**
+     *
+     * @param file  file to write, or the directory for an INDEX
+     * @return writer for this format
+     * @throws IOException
+     */
+    public PairSink createWriter(File file) throws IOException {
+        if (this == INDEX) {
+            return new MentionIndexWriter(file);
+        }
+        return createWriter(new FileOutputStream(file));
+    }
+}
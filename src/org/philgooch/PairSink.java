@@ -0,0 +1,48 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.io.*;
+
+/**
+ * Receives the term-abbreviation pairs accepted by the expander, in document order,
+ * and the later mentions of each short form if expandAllShortFormInstances is set.
+ * Implementations may be used as callbacks, collectors or writers.
+ *
+ * @author philipgooch
+ */
+public interface PairSink {
+
+    /**
+     *
+     * @param pair  accepted term-abbreviation pair
+     */
+    public void pairFound(AbbreviationPair pair);
+
+    /**
+     *
+     * @param pair  the pair that defined the short form
+     * @param start document start offset of the mention
+     * @param end   document end offset of the mention
+     */
+    public void mentionFound(AbbreviationPair pair, int start, int end);
+
+    /**
+     * Write out anything buffered so far
+     * @throws IOException
+     */
+    public void flush() throws IOException;
+
+    /**
+     * Flush and release any underlying resources
+     * @throws IOException
+     */
+    public void close() throws IOException;
+}
@@ -0,0 +1,288 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * PairSink that counts term-abbreviation pairs by (short form, long form), with the number of
+ * later mentions, the first place each pair was seen and its semantic type.
+ *
+ * Statistics from different runs can be merged in any order and grouping with the same result:
+ * counts are summed, and the first-seen location and the semantic type are each taken from the
+ * occurrence with the lowest (document id, offset). Files are written sorted by short form and
+ * long form, so the merged file for a corpus does not depend on how it was sharded.
+ *
+ * @author philipgooch
+ */
+public class PairStatistics implements PairSink {
+    public static final String HEADER = "#BADREX pair statistics 1";
+
+    /**
+     * Statistics for one (short form, long form)
+     */
+    public static class Entry {
+        private String shortForm;
+        private String longForm;
+        private long count;
+        private long mentions;
+        private String firstDocument;
+        private int firstOffset;
+        private String semanticType;
+        private String typeDocument;        // where semanticType was first seen
+        private int typeOffset;
+
+        Entry(String shortForm, String longForm) {
+            this.shortForm = shortForm;
+            this.longForm = longForm;
+        }
+
+        public String getShortForm() {
+            return shortForm;
+        }
+
+        public String getLongForm() {
+            return longForm;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getMentions() {
+            return mentions;
+        }
+
+        public String getFirstDocument() {
+            return firstDocument;
+        }
+
+        public int getFirstOffset() {
+            return firstOffset;
+        }
+
+        public String getSemanticType() {
+            return semanticType;
+        }
+
+        private void seen(String document, int offset) {
+            if (firstDocument == null || isBefore(document, offset, firstDocument, firstOffset)) {
+                firstDocument = document;
+                firstOffset = offset;
+            }
+        }
+
+        private void typed(String type, String document, int offset) {
+            if (type != null && (typeDocument == null || isBefore(document, offset, typeDocument, typeOffset))) {
+                semanticType = type;
+                typeDocument = document;
+                typeOffset = offset;
+            }
+        }
+
+        private void merge(Entry other) {
+            count += other.count;
+            mentions += other.mentions;
+            if (other.firstDocument != null) {
+                seen(other.firstDocument, other.firstOffset);
+            }
+            if (other.typeDocument != null) {
+                typed(other.semanticType, other.typeDocument, other.typeOffset);
+            }
+        }
+    }
+
+    private SortedMap<String, Entry> entries;
+
+    public PairStatistics() {
+        this.entries = new TreeMap<String, Entry>();
+    }
+
+    public synchronized void pairFound(AbbreviationPair pair) {
+        String document = clean(pair.getDocumentId());
+        // Pairs from dictionaryMode have no long form offsets
+        int offset = (pair.getLongStart() < 0) ? pair.getShortStart() : Math.min(pair.getShortStart(), pair.getLongStart());
+        Entry entry = getOrCreate(pair.getShortForm(), pair.getLongForm());
+        entry.count++;
+        entry.seen(document, offset);
+        entry.typed(pair.getSemanticType(), document, offset);
+    }
+
+    public synchronized void mentionFound(AbbreviationPair pair, int start, int end) {
+        getOrCreate(pair.getShortForm(), pair.getLongForm()).mentions++;
+    }
+
+    public void flush() {
+    }
+
+    public void close() {
+    }
+
+    private Entry getOrCreate(String shortForm, String longForm) {
+        shortForm = clean(shortForm);
+        longForm = clean(longForm);
+        String key = shortForm + '\t' + longForm;
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            entry = new Entry(shortForm, longForm);
+            entries.put(key, entry);
+        }
+        return entry;
+    }
+
+    /**
+     * Add the statistics from another run to these
+     * @param other
+     */
+    public synchronized void merge(PairStatistics other) {
+        for (Entry otherEntry : other.getEntries()) {
+            getOrCreate(otherEntry.shortForm, otherEntry.longForm).merge(otherEntry);
+        }
+    }
+
+    /**
+     *
+     * @param shortForm
+     * @param longForm
+     * @return statistics for the pair, or null if it has not been seen
+     */
+    public synchronized Entry getEntry(String shortForm, String longForm) {
+        return entries.get(clean(shortForm) + '\t' + clean(longForm));
+    }
+
+    /**
+     * @return entries sorted by short form and long form
+     */
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<Entry>(entries.values());
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    /**
+     * Write the statistics as UTF-8 tab-separated lines, to a temporary file that is then renamed,
+     * so that a partly written file is never mistaken for a complete one
+     * @param file
+     * @throws IOException
+     */
+    public synchronized void write(File file) throws IOException {
+        File tmpFile = new File(file.getPath() + ".tmp");
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8"));
+        try {
+            write(out);
+        } finally {
+            out.close();
+        }
+        replace(tmpFile, file);
+    }
+
+    /**
+     * Write the header line and the statistics
+     * @param out
+     * @throws IOException
+     */
+    synchronized void write(Writer out) throws IOException {
+        out.write(HEADER);
+        out.write('\n');
+        for (Entry entry : entries.values()) {
+            out.write(entry.shortForm + '\t' + entry.longForm + '\t' + entry.count + '\t' + entry.mentions
+                    + '\t' + nullToEmpty(entry.firstDocument) + '\t' + entry.firstOffset
+                    + '\t' + nullToEmpty(entry.semanticType) + '\t' + nullToEmpty(entry.typeDocument) + '\t' + entry.typeOffset + '\n');
+        }
+    }
+
+    /**
+     * Rename a completed temporary file over the file it replaces
+     * @param tmpFile
+     * @param file
+     * @throws IOException
+     */
+    static void replace(File tmpFile, File file) throws IOException {
+        if (file.exists() && !file.delete()) {
+            throw new IOException("Unable to replace " + file);
+        }
+        if (!tmpFile.renameTo(file)) {
+            throw new IOException("Unable to rename " + tmpFile + " to " + file);
+        }
+    }
+
+    /**
+     * Read statistics written by write()
+     * @param file
+     * @return
+     * @throws IOException
+     */
+    public static PairStatistics read(File file) throws IOException {
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line = in.readLine();
+            if (!HEADER.equals(line)) {
+                throw new IOException(file + " is not a pair statistics file");
+            }
+            return read(in, file.getPath(), 1);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Read the statistics lines that follow the header, up to the end of the input
+     * @param in
+     * @param source    name of the input, for error messages
+     * @param lineNo    number of lines already read
+     * @return
+     * @throws IOException
+     */
+    static PairStatistics read(BufferedReader in, String source, int lineNo) throws IOException {
+        PairStatistics stats = new PairStatistics();
+        String line;
+        while ((line = in.readLine()) != null) {
+            lineNo++;
+            String[] fields = line.split("\t", -1);
+            if (fields.length != 9) {
+                throw new IOException("Malformed line " + lineNo + " in " + source);
+            }
+            Entry entry = stats.getOrCreate(fields[0], fields[1]);
+            try {
+                entry.count = Long.parseLong(fields[2]);
+                entry.mentions = Long.parseLong(fields[3]);
+                if (entry.count > 0) {
+                    entry.firstDocument = fields[4];
+                    entry.firstOffset = Integer.parseInt(fields[5]);
+                }
+                if (fields[6].length() > 0) {
+                    entry.semanticType = fields[6];
+                    entry.typeDocument = fields[7];
+                    entry.typeOffset = Integer.parseInt(fields[8]);
+                }
+            } catch (NumberFormatException ne) {
+                throw new IOException("Malformed line " + lineNo + " in " + source);
+            }
+        }
+        return stats;
+    }
+
+    /* true if (doc1, offset1) comes before (doc2, offset2) */
+    private static boolean isBefore(String doc1, int offset1, String doc2, int offset2) {
+        int cmp = doc1.compareTo(doc2);
+        return cmp < 0 || (cmp == 0 && offset1 < offset2);
+    }
+
+    private static String clean(String value) {
+        return nullToEmpty(value).replaceAll("[\\t\\r\\n]", " ");
+    }
+
+    private static String nullToEmpty(String value) {
+        return (value == null) ? "" : value;
+    }
+}
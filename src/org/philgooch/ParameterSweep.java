@@ -0,0 +1,540 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import gate.*;
+import gate.creole.*;
+import gate.util.*;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Runs the expander over a gold standard with each combination of maxInner, maxOuter, threshold,
+ * swapShortest and useBidirectionMatch in a grid, and measures throughput, sentence latency and
+ * accuracy for each. The results are written to sweep.tsv in the output directory, and the
+ * settings that no other setting beats on all of documents per second, 99th percentile sentence
+ * latency and F1 are written to pareto.tsv, best F1 first.
+ *
+ * Documents are split into sentences once, before any setting is timed, and only the expander
+ * itself is timed. Each setting is run several times and the best throughput and latency kept.
+ * Sentence latency covers finding and scoring the candidates in a sentence, which is where the
+ * window size matters. The sentence cache is switched off, as repeated passes over the same
+ * documents would otherwise be served from it.
+ *
+ * Usage: ParameterSweep -gold file -output dir [-maxInner 5,10] [-maxOuter 5,10] [-threshold 0.75,0.8,0.9,1.0]
+ *        [-swapShortest true,false] [-useBidirectionMatch false,true] [-warmup 1] [-passes 3] [-minF1 0.9] [name=value ...]
+ * where name=value sets any other expander parameter, as for AbbreviationServer.
+ * Run with -Dgate.home pointing to a GATE installation.
+ *
+ * @author philipgooch
+ */
+public class ParameterSweep {
+    public static final String RESULTS_FILE_NAME = "sweep.tsv";
+    public static final String FRONTIER_FILE_NAME = "pareto.tsv";
+
+    /**
+     * Values of the swept parameters
+     */
+    public static class Setting {
+        private int maxInner;
+        private int maxOuter;
+        private float threshold;
+        private boolean swapShortest;
+        private boolean useBidirectionMatch;
+
+        public Setting(int maxInner, int maxOuter, float threshold, boolean swapShortest, boolean useBidirectionMatch) {
+            this.maxInner = maxInner;
+            this.maxOuter = maxOuter;
+            this.threshold = threshold;
+            this.swapShortest = swapShortest;
+            this.useBidirectionMatch = useBidirectionMatch;
+        }
+
+        /**
+         * Set the swept parameters on a copy of the run-time parameters
+         * @param params
+         */
+        public void apply(ExpanderParameters params) {
+            params.setMaxInner(maxInner);
+            params.setMaxOuter(maxOuter);
+            params.setThreshold(threshold);
+            params.setSwapShortest(swapShortest);
+            params.setUseBidirectionMatch(useBidirectionMatch);
+        }
+
+        public int getMaxInner() {
+            return maxInner;
+        }
+
+        public int getMaxOuter() {
+            return maxOuter;
+        }
+
+        public float getThreshold() {
+            return threshold;
+        }
+
+        public boolean getSwapShortest() {
+            return swapShortest;
+        }
+
+        public boolean getUseBidirectionMatch() {
+            return useBidirectionMatch;
+        }
+
+        @Override
+        public String toString() {
+            return "maxInner=" + maxInner + " maxOuter=" + maxOuter + " threshold=" + threshold + " swapShortest=" + swapShortest + " useBidirectionMatch=" + useBidirectionMatch;
+        }
+    }
+
+    /**
+     * Measurements for one setting
+     */
+    public static class Result {
+        private Setting setting;
+        private int documents;
+        private long nanos;                 // time spent in the expander
+        private long p99SentenceNanos;
+        private int truePositives;
+        private int falsePositives;
+        private int falseNegatives;
+
+        public Result(Setting setting, int documents, long nanos, long p99SentenceNanos, int truePositives, int falsePositives, int falseNegatives) {
+            this.setting = setting;
+            this.documents = documents;
+            this.nanos = nanos;
+            this.p99SentenceNanos = p99SentenceNanos;
+            this.truePositives = truePositives;
+            this.falsePositives = falsePositives;
+            this.falseNegatives = falseNegatives;
+        }
+
+        public Setting getSetting() {
+            return setting;
+        }
+
+        public double getDocumentsPerSecond() {
+            return (nanos == 0) ? 0 : documents * 1e9 / nanos;
+        }
+
+        public double getP99SentenceMillis() {
+            return p99SentenceNanos / 1e6;
+        }
+
+        public double getPrecision() {
+            int found = truePositives + falsePositives;
+            return (found == 0) ? 0 : (double) truePositives / found;
+        }
+
+        public double getRecall() {
+            int gold = truePositives + falseNegatives;
+            return (gold == 0) ? 0 : (double) truePositives / gold;
+        }
+
+        public double getF1() {
+            double precision = getPrecision();
+            double recall = getRecall();
+            return (precision + recall == 0) ? 0 : 2 * precision * recall / (precision + recall);
+        }
+
+        /**
+         *
+         * @param other
+         * @return true if this result is at least as good as the other on throughput, latency and F1, and better on one
+         */
+        public boolean dominates(Result other) {
+            boolean noWorse = getDocumentsPerSecond() >= other.getDocumentsPerSecond() && p99SentenceNanos <= other.p99SentenceNanos && getF1() >= other.getF1();
+            boolean better = getDocumentsPerSecond() > other.getDocumentsPerSecond() || p99SentenceNanos < other.p99SentenceNanos || getF1() > other.getF1();
+            return noWorse && better;
+        }
+    }
+
+    /**
+     * Records how long candidate matching takes for each sentence
+     */
+    static class SentenceTimer extends ExpanderTrace {
+        private long[] times = new long[1024];
+        private int count;
+
+        @Override
+        public Object beginSentence() {
+            return Long.valueOf(System.nanoTime());
+        }
+
+        @Override
+        public void endSentence(Object token, String documentName, int start, int end, int candidates, int accepted, boolean cached) {
+            if (count == times.length) {
+                times = Arrays.copyOf(times, count * 2);
+            }
+            times[count++] = System.nanoTime() - ((Long) token).longValue();
+        }
+
+        void clear() {
+            count = 0;
+        }
+
+        /**
+         *
+         * @param fraction  e.g. 0.99
+         * @return the time within which that fraction of sentences were matched, or 0 if there were none
+         */
+        long percentile(double fraction) {
+            if (count == 0) {
+                return 0;
+            }
+            long[] sorted = Arrays.copyOf(times, count);
+            Arrays.sort(sorted);
+            int index = (int) Math.ceil(fraction * count) - 1;
+            return sorted[Math.max(0, Math.min(count - 1, index))];
+        }
+    }
+
+    private BiomedicalAbbreviationExpander expander;
+    private GoldStandard gold;
+    private List<List<int[]>> sentences;        // sentence offsets of each gold document
+    private SentenceTimer timer;
+
+    /**
+     *
+     * @param expander  initialised expander, whose other parameters are kept for every setting
+     * @param gold
+     * @throws ResourceInstantiationException
+     * @throws ExecutionException
+     */
+    public ParameterSweep(BiomedicalAbbreviationExpander expander, GoldStandard gold) throws ResourceInstantiationException, ExecutionException {
+        this.expander = expander;
+        this.gold = gold;
+        this.timer = new SentenceTimer();
+        expander.setSentenceCacheSize(0);
+        expander.setTrace(timer);
+        splitSentences();
+    }
+
+    private void splitSentences() throws ResourceInstantiationException, ExecutionException {
+        sentences = new ArrayList<List<int[]>>();
+        FeatureMap features = Factory.newFeatureMap();
+        Gate.setHiddenAttribute(features, true);
+        LanguageAnalyser sentenceSplitter = (LanguageAnalyser) Factory.createResource(AbbreviationExtractor.SENTENCE_SPLITTER_CLASS, Factory.newFeatureMap(), features);
+        try {
+            for (GoldStandard.GoldDocument goldDoc : gold.getDocuments()) {
+                Document doc = Factory.newDocument(goldDoc.getText());
+                try {
+                    sentenceSplitter.setDocument(doc);
+                    sentenceSplitter.execute();
+                    List<int[]> offsets = new ArrayList<int[]>();
+                    for (Annotation sentence : gate.Utils.inDocumentOrder(doc.getAnnotations().get("Sentence"))) {
+                        offsets.add(new int[] {sentence.getStartNode().getOffset().intValue(), sentence.getEndNode().getOffset().intValue()});
+                    }
+                    sentences.add(offsets);
+                } finally {
+                    sentenceSplitter.setDocument(null);
+                    Factory.deleteResource(doc);
+                }
+            }
+        } finally {
+            Factory.deleteResource(sentenceSplitter);
+        }
+    }
+
+    /**
+     *
+     * @param maxInner
+     * @param maxOuter
+     * @param thresholds
+     * @param swapShortest
+     * @param useBidirectionMatch
+     * @return every combination of the values
+     */
+    public static List<Setting> grid(int[] maxInner, int[] maxOuter, float[] thresholds, boolean[] swapShortest, boolean[] useBidirectionMatch) {
+        List<Setting> settings = new ArrayList<Setting>();
+        for (int inner : maxInner) {
+            for (int outer : maxOuter) {
+                for (float threshold : thresholds) {
+                    for (boolean swap : swapShortest) {
+                        for (boolean bidirectional : useBidirectionMatch) {
+                            settings.add(new Setting(inner, outer, threshold, swap, bidirectional));
+                        }
+                    }
+                }
+            }
+        }
+        return settings;
+    }
+
+    /**
+     * Run the expander over the gold standard several times with one setting, keeping the best
+     * throughput and latency, which are the least disturbed by garbage collection and other processes
+     * @param setting
+     * @param passes
+     * @return measurements
+     * @throws ResourceInstantiationException
+     * @throws ExecutionException
+     */
+    public Result run(Setting setting, int passes) throws ResourceInstantiationException, ExecutionException {
+        Result best = run(setting);
+        for (int i = 1; i < passes; i++) {
+            Result result = run(setting);
+            best = new Result(setting, best.documents, Math.min(best.nanos, result.nanos), Math.min(best.p99SentenceNanos, result.p99SentenceNanos),
+                    best.truePositives, best.falsePositives, best.falseNegatives);
+        }
+        return best;
+    }
+
+    /**
+     * Run the expander over the gold standard with one setting
+     * @param setting
+     * @return measurements
+     * @throws ResourceInstantiationException
+     * @throws ExecutionException
+     */
+    public Result run(Setting setting) throws ResourceInstantiationException, ExecutionException {
+        ExpanderParameters params = expander.getParameters();
+        setting.apply(params);
+        PairCollector collector = new PairCollector();
+        params.setPairSink(collector);
+        String sentenceType = params.getSentenceType();
+        timer.clear();
+        long nanos = 0;
+        int truePositives = 0;
+        int falsePositives = 0;
+        int falseNegatives = 0;
+        List<GoldStandard.GoldDocument> documents = gold.getDocuments();
+        for (int i = 0; i < documents.size(); i++) {
+            GoldStandard.GoldDocument goldDoc = documents.get(i);
+            Document doc = Factory.newDocument(goldDoc.getText());
+            try {
+                doc.setName(goldDoc.getId());
+                String inputASName = params.getInputASName();
+                AnnotationSet inputAS = (inputASName == null || inputASName.trim().length() == 0) ? doc.getAnnotations() : doc.getAnnotations(inputASName);
+                for (int[] sentence : sentences.get(i)) {
+                    try {
+                        inputAS.add(Long.valueOf(sentence[0]), Long.valueOf(sentence[1]), sentenceType, Factory.newFeatureMap());
+                    } catch (InvalidOffsetException ie) {
+                        // offsets came from the same text
+                        throw new ExecutionException(ie);
+                    }
+                }
+                collector.clear();
+                long start = System.nanoTime();
+                expander.execute(doc, params);
+                nanos += System.nanoTime() - start;
+                int[] score = GoldStandard.score(goldDoc, collector.getPairs());
+                truePositives += score[0];
+                falsePositives += score[1];
+                falseNegatives += score[2];
+            } finally {
+                Factory.deleteResource(doc);
+            }
+        }
+        return new Result(setting, documents.size(), nanos, timer.percentile(0.99), truePositives, falsePositives, falseNegatives);
+    }
+
+    /**
+     *
+     * @param results
+     * @return the results that no other result dominates, best F1 first
+     */
+    public static List<Result> frontier(List<Result> results) {
+        List<Result> frontier = new ArrayList<Result>();
+        for (Result result : results) {
+            boolean dominated = false;
+            for (Result other : results) {
+                if (other.dominates(result)) {
+                    dominated = true;
+                    break;
+                }
+            }
+            if (!dominated) {
+                frontier.add(result);
+            }
+        }
+        Collections.sort(frontier, new Comparator<Result>() {
+
+            public int compare(Result a, Result b) {
+                int cmp = Double.compare(b.getF1(), a.getF1());
+                return (cmp != 0) ? cmp : Double.compare(b.getDocumentsPerSecond(), a.getDocumentsPerSecond());
+            }
+        });
+        return frontier;
+    }
+
+    /**
+     *
+     * @param results
+     * @param minF1
+     * @return the result with the highest throughput among those with at least the given F1, or null if none
+     */
+    public static Result fastest(List<Result> results, double minF1) {
+        Result fastest = null;
+        for (Result result : results) {
+            if (result.getF1() >= minF1 && (fastest == null || result.getDocumentsPerSecond() > fastest.getDocumentsPerSecond())) {
+                fastest = result;
+            }
+        }
+        return fastest;
+    }
+
+    /**
+     * Write results as tab separated values with a header line
+     * @param results
+     * @param file
+     * @throws IOException
+     */
+    public static void write(List<Result> results, File file) throws IOException {
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+        try {
+            out.write("maxInner\tmaxOuter\tthreshold\tswapShortest\tuseBidirectionMatch\tdocsPerSec\tp99SentenceMs\tprecision\trecall\tf1\n");
+            for (Result result : results) {
+                Setting setting = result.getSetting();
+                out.write(setting.getMaxInner() + "\t" + setting.getMaxOuter() + "\t" + setting.getThreshold() + "\t" + setting.getSwapShortest() + "\t" + setting.getUseBidirectionMatch()
+                        + "\t" + format(result.getDocumentsPerSecond(), 1) + "\t" + format(result.getP99SentenceMillis(), 3)
+                        + "\t" + format(result.getPrecision(), 4) + "\t" + format(result.getRecall(), 4) + "\t" + format(result.getF1(), 4) + "\n");
+            }
+        } finally {
+            out.close();
+        }
+    }
+
+    private static String format(double value, int decimals) {
+        return String.format(Locale.ENGLISH, "%." + decimals + "f", value);
+    }
+
+    private static int[] parseInts(String values) {
+        String[] fields = values.split(",");
+        int[] parsed = new int[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            parsed[i] = Integer.parseInt(fields[i].trim());
+        }
+        return parsed;
+    }
+
+    private static float[] parseFloats(String values) {
+        String[] fields = values.split(",");
+        float[] parsed = new float[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            parsed[i] = Float.parseFloat(fields[i].trim());
+        }
+        return parsed;
+    }
+
+    private static boolean[] parseBooleans(String values) {
+        String[] fields = values.split(",");
+        boolean[] parsed = new boolean[fields.length];
+        for (int i = 0; i < fields.length; i++) {
+            parsed[i] = Boolean.parseBoolean(fields[i].trim());
+        }
+        return parsed;
+    }
+
+    private static void usage() {
+        System.err.println("Usage: ParameterSweep -gold file -output dir [-maxInner 5,10] [-maxOuter 5,10] [-threshold 0.75,0.8,0.9,1.0] "
+                + "[-swapShortest true,false] [-useBidirectionMatch false,true] [-warmup n] [-passes n] [-minF1 f] [name=value ...]");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        File goldFile = null;
+        File outputDir = null;
+        int[] maxInner = {5, 10};
+        int[] maxOuter = {5, 10};
+        float[] thresholds = {0.75f, 0.8f, 0.9f, 1.0f};
+        boolean[] swapShortest = {true, false};
+        boolean[] useBidirectionMatch = {false, true};
+        int warmup = 1;
+        int passes = 3;
+        double minF1 = -1;
+        Map<String, String> settings = new LinkedHashMap<String, String>();
+
+        try {
+            for (int i = 0; i < args.length; i++) {
+                if (args[i].equals("-gold") && i + 1 < args.length) {
+                    goldFile = new File(args[++i]);
+                } else if (args[i].equals("-output") && i + 1 < args.length) {
+                    outputDir = new File(args[++i]);
+                } else if (args[i].equals("-maxInner") && i + 1 < args.length) {
+                    maxInner = parseInts(args[++i]);
+                } else if (args[i].equals("-maxOuter") && i + 1 < args.length) {
+                    maxOuter = parseInts(args[++i]);
+                } else if (args[i].equals("-threshold") && i + 1 < args.length) {
+                    thresholds = parseFloats(args[++i]);
+                } else if (args[i].equals("-swapShortest") && i + 1 < args.length) {
+                    swapShortest = parseBooleans(args[++i]);
+                } else if (args[i].equals("-useBidirectionMatch") && i + 1 < args.length) {
+                    useBidirectionMatch = parseBooleans(args[++i]);
+                } else if (args[i].equals("-warmup") && i + 1 < args.length) {
+                    warmup = Integer.parseInt(args[++i]);
+                } else if (args[i].equals("-passes") && i + 1 < args.length) {
+                    passes = Math.max(1, Integer.parseInt(args[++i]));
+                } else if (args[i].equals("-minF1") && i + 1 < args.length) {
+                    minF1 = Double.parseDouble(args[++i]);
+                } else if (args[i].indexOf('=') > 0) {
+                    int idx = args[i].indexOf('=');
+                    settings.put(args[i].substring(0, idx), args[i].substring(idx + 1));
+                } else {
+                    usage();
+                }
+            }
+        } catch (NumberFormatException ne) {
+            usage();
+        }
+        if (goldFile == null || outputDir == null) {
+            usage();
+        }
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Unable to create " + outputDir);
+        }
+
+        GoldStandard gold = GoldStandard.read(goldFile);
+        gate.util.Out.println(gold.getDocuments().size() + " documents, " + gold.getPairCount() + " gold pairs");
+
+        Gate.init();
+        Gate.getCreoleRegister().registerDirectories(new File(Gate.getPluginsHome(), "ANNIE").toURI().toURL());
+
+        // Only the pairs are scored, so annotating is left out unless asked for
+        if (!settings.containsKey("createAnnotations")) {
+            settings.put("createAnnotations", "false");
+        }
+        BiomedicalAbbreviationExpander expander = AbbreviationExtractor.createExpander(settings, null);
+        if (!expander.getExpanderConfig().isLoaded()) {
+            throw new IllegalStateException("Unable to load configuration from " + expander.getConfigFileURL());
+        }
+        try {
+            ParameterSweep sweep = new ParameterSweep(expander, gold);
+            List<Setting> grid = grid(maxInner, maxOuter, thresholds, swapShortest, useBidirectionMatch);
+            // Let the JIT compile the matching code before anything is timed
+            for (int i = 0; i < warmup; i++) {
+                sweep.run(grid.get(0));
+            }
+            List<Result> results = new ArrayList<Result>();
+            for (Setting setting : grid) {
+                Result result = sweep.run(setting, passes);
+                results.add(result);
+                gate.util.Out.println(setting + ": " + format(result.getDocumentsPerSecond(), 1) + " docs/s, p99 sentence " + format(result.getP99SentenceMillis(), 3)
+                        + " ms, F1 " + format(result.getF1(), 4));
+            }
+            write(results, new File(outputDir, RESULTS_FILE_NAME));
+            List<Result> frontier = frontier(results);
+            write(frontier, new File(outputDir, FRONTIER_FILE_NAME));
+            gate.util.Out.println(frontier.size() + " of " + results.size() + " settings on the Pareto frontier, written to " + new File(outputDir, FRONTIER_FILE_NAME));
+            if (minF1 >= 0) {
+                Result fastest = fastest(results, minF1);
+                if (fastest == null) {
+                    gate.util.Out.println("No setting reaches F1 " + minF1);
+                } else {
+                    gate.util.Out.println("Fastest setting with F1 >= " + minF1 + ": " + fastest.getSetting());
+                }
+            }
+        } finally {
+            Factory.deleteResource(expander);
+        }
+    }
+}
@@ -0,0 +1,814 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+import java.util.regex.Pattern;
+
+/**
+ * Static checks of the regular expressions built from the configuration, for constructs that make
+ * a backtracking matcher take exponential, or high polynomial, time on some inputs:
+ *
+ * - ambiguous nested repetition: a repeated group whose body contains a variable length repetition
+ *   and can start with a character it can also end with, or can match nothing, e.g. (\w+\s?)+ or
+ *   (a*)*, so that a run of text can be shared out between the iterations in many ways
+ * - overlapping alternatives under unbounded repetition: a repeated alternation in which two
+ *   alternatives can start with the same character, e.g. (\w|\d)+
+ *
+ * Possessive quantifiers and atomic groups never backtrack and are not checked. The checks are
+ * approximations that err on the side of reporting: characters outside ASCII are not told apart,
+ * and a back reference is taken to match whatever its group can match.
+ *
+ * Also rewrites alternations of literal words, such as the stopword lists, into an equivalent trie,
+ * e.g. a|an|and|as|at becomes a(?:nd?|s|t)?, so that the matcher tries each shared prefix once.
+ *
+ * @author philipgooch
+ */
+public class PatternAnalyser {
+    private static final int ASCII = 128;
+
+    // Characters that make a word list entry a regex rather than a literal word
+    private static final String METACHARACTERS = "\\.[]{}()*+?^$|";
+
+    /**
+     * Characters a node can match: a set of ASCII characters, and whether it may match any other
+     */
+    private static class CharSet {
+        private BitSet ascii = new BitSet(ASCII);
+        private boolean other;
+
+        private static CharSet any() {
+            CharSet set = new CharSet();
+            set.ascii.set(0, ASCII);
+            set.other = true;
+            return set;
+        }
+
+        private static CharSet of(String chars) {
+            CharSet set = new CharSet();
+            for (int i = 0; i < chars.length(); i++) {
+                set.add(chars.charAt(i));
+            }
+            return set;
+        }
+
+        private void add(int c) {
+            if (c < ASCII) {
+                ascii.set(c);
+            } else {
+                other = true;
+            }
+        }
+
+        private void addRange(int from, int to) {
+            if (from < ASCII) {
+                ascii.set(from, Math.min(to, ASCII - 1) + 1);
+            }
+            if (to >= ASCII) {
+                other = true;
+            }
+        }
+
+        private void addAll(CharSet set) {
+            ascii.or(set.ascii);
+            other |= set.other;
+        }
+
+        private CharSet complement() {
+            CharSet set = new CharSet();
+            set.ascii.or(ascii);
+            set.ascii.flip(0, ASCII);
+            set.other = true;
+            return set;
+        }
+
+        private CharSet intersection(CharSet set) {
+            CharSet result = new CharSet();
+            result.ascii.or(ascii);
+            result.ascii.and(set.ascii);
+            result.other = other && set.other;
+            return result;
+        }
+
+        private boolean intersects(CharSet set) {
+            return ascii.intersects(set.ascii) || (other && set.other);
+        }
+
+        private CharSet foldCase() {
+            CharSet set = new CharSet();
+            set.addAll(this);
+            for (int c = 'a'; c <= 'z'; c++) {
+                if (ascii.get(c) || ascii.get(Character.toUpperCase(c))) {
+                    set.ascii.set(c);
+                    set.ascii.set(Character.toUpperCase(c));
+                }
+            }
+            return set;
+        }
+    }
+
+    private static final CharSet DIGITS = new CharSet();
+    private static final CharSet WORD = new CharSet();
+    private static final CharSet SPACE = CharSet.of(" \t\n\u000B\f\r");
+    private static final CharSet PUNCT = CharSet.of("!\"#$%&'()*+,-./:;<=>?@[\\]^_`{|}~");
+    private static final CharSet LETTERS = new CharSet();
+
+    static {
+        DIGITS.addRange('0', '9');
+        LETTERS.addRange('a', 'z');
+        LETTERS.addRange('A', 'Z');
+        WORD.addAll(LETTERS);
+        WORD.addAll(DIGITS);
+        WORD.add('_');
+    }
+
+    private static final int LEAF = 0;
+    private static final int EMPTY = 1;
+    private static final int SEQUENCE = 2;
+    private static final int ALTERNATION = 3;
+    private static final int REPEAT = 4;
+
+    /**
+     * A node of the parsed pattern, with the properties the checks need, worked out as it is built
+     */
+    private static class Node {
+        private int kind;
+        private int start;              // span of the node in the pattern
+        private int end;
+        private List<Node> children = new ArrayList<Node>();
+        private int min;                // repetitions, for REPEAT; max of -1 is unbounded
+        private int max;
+        private boolean possessive;     // possessive quantifier or atomic group, which does not backtrack
+
+        private boolean nullable;       // can match the empty string
+        private CharSet first = new CharSet();      // characters a match can start with
+        private CharSet last = new CharSet();       // characters a match can end with
+        private int minLength;
+        private int maxLength;          // -1 if unbounded
+        private boolean variableRepeat; // contains a repetition, other than a possessive one, that can match different lengths
+
+        private Node(int kind, int start, int end) {
+            this.kind = kind;
+            this.start = start;
+            this.end = end;
+        }
+    }
+
+    private String regex;
+    private int pos;
+    private boolean caseInsensitive;
+    private List<Node> groups = new ArrayList<Node>();
+    private List<String> problems = new ArrayList<String>();
+
+    private PatternAnalyser(String regex, int flags) {
+        this.regex = regex;
+        this.caseInsensitive = (flags & Pattern.CASE_INSENSITIVE) != 0;
+        groups.add(null);       // group 0 is the whole match
+    }
+
+    /**
+     * @param regex     pattern source, which must compile
+     * @param flags     flags the pattern is compiled with
+     * @return description of each construct in the pattern that can backtrack catastrophically, or an empty list
+     */
+    public static List<String> analyse(String regex, int flags) {
+        Pattern.compile(regex, flags);
+        PatternAnalyser analyser = new PatternAnalyser(regex, flags);
+        Node root = analyser.parseAlternation();
+        analyser.check(root, false);
+        return analyser.problems;
+    }
+
+    private void check(Node node, boolean possessive) {
+        possessive |= node.possessive;
+        if (node.kind == REPEAT && !possessive && (node.max == -1 || node.max > 1)) {
+            Node body = node.children.get(0);
+            String growth = (node.max == -1) ? "exponentially with" : "as a power, up to " + node.max + ", of";
+            if (body.variableRepeat && (body.nullable || body.first.intersects(body.last))) {
+                problems.add("Ambiguous nested repetition " + span(node) + " at offset " + node.start
+                        + ": text can be shared between its iterations in many ways, so backtracking time can grow " + growth + " the length of the input");
+            }
+            if (node.max == -1) {
+                checkAlternatives(body);
+            }
+        }
+        for (Node child : node.children) {
+            check(child, possessive);
+        }
+    }
+
+    private void checkAlternatives(Node node) {
+        if (node.possessive || node.kind == REPEAT && node.max == -1) {
+            // An unbounded repetition inside is checked on its own
+            return;
+        }
+        if (node.kind == ALTERNATION) {
+            for (int i = 0; i < node.children.size(); i++) {
+                for (int j = i + 1; j < node.children.size(); j++) {
+                    Node a = node.children.get(i);
+                    Node b = node.children.get(j);
+                    if (a.first.intersects(b.first)) {
+                        problems.add("Overlapping alternatives " + span(a) + " and " + span(b) + " at offset " + a.start
+                                + " under unbounded repetition: each repeated character can be matched either way, so backtracking time can grow exponentially with the length of the input");
+                        return;
+                    }
+                }
+            }
+        }
+        for (Node child : node.children) {
+            checkAlternatives(child);
+        }
+    }
+
+    private String span(Node node) {
+        String text = regex.substring(node.start, node.end);
+        return (text.length() > 60) ? text.substring(0, 57) + "..." : text;
+    }
+
+    private boolean more() {
+        return pos < regex.length();
+    }
+
+    private char peek() {
+        return regex.charAt(pos);
+    }
+
+    private Node parseAlternation() {
+        int start = pos;
+        List<Node> branches = new ArrayList<Node>();
+        branches.add(parseSequence());
+        while (more() && peek() == '|') {
+            pos++;
+            branches.add(parseSequence());
+        }
+        if (branches.size() == 1) {
+            return branches.get(0);
+        }
+        Node node = new Node(ALTERNATION, start, pos);
+        node.minLength = Integer.MAX_VALUE;
+        for (Node branch : branches) {
+            node.children.add(branch);
+            node.nullable |= branch.nullable;
+            node.first.addAll(branch.first);
+            node.last.addAll(branch.last);
+            node.minLength = Math.min(node.minLength, branch.minLength);
+            node.maxLength = (node.maxLength == -1 || branch.maxLength == -1) ? -1 : Math.max(node.maxLength, branch.maxLength);
+            node.variableRepeat |= branch.variableRepeat;
+        }
+        return node;
+    }
+
+    private Node parseSequence() {
+        int start = pos;
+        Node node = new Node(SEQUENCE, start, start);
+        node.nullable = true;
+        while (more() && peek() != '|' && peek() != ')') {
+            Node item = parseQuantifier(parseAtom());
+            node.children.add(item);
+        }
+        node.end = pos;
+        // First characters up to the first item that cannot be empty, last characters back from the last
+        for (Node item : node.children) {
+            node.first.addAll(item.first);
+            if (!item.nullable) {
+                break;
+            }
+        }
+        for (int i = node.children.size() - 1; i >= 0; i--) {
+            node.last.addAll(node.children.get(i).last);
+            if (!node.children.get(i).nullable) {
+                break;
+            }
+        }
+        for (Node item : node.children) {
+            node.nullable &= item.nullable;
+            node.minLength += item.minLength;
+            node.maxLength = (node.maxLength == -1 || item.maxLength == -1) ? -1 : node.maxLength + item.maxLength;
+            node.variableRepeat |= item.variableRepeat;
+        }
+        return (node.children.size() == 1) ? node.children.get(0) : node;
+    }
+
+    private Node parseQuantifier(Node atom) {
+        if (!more()) {
+            return atom;
+        }
+        int min;
+        int max;
+        char c = peek();
+        if (c == '*') {
+            min = 0;
+            max = -1;
+            pos++;
+        } else if (c == '+') {
+            min = 1;
+            max = -1;
+            pos++;
+        } else if (c == '?') {
+            min = 0;
+            max = 1;
+            pos++;
+        } else if (c == '{') {
+            int close = regex.indexOf('}', pos);
+            String[] bounds = regex.substring(pos + 1, close).split(",", -1);
+            min = Integer.parseInt(bounds[0].trim());
+            max = (bounds.length == 1) ? min : (bounds[1].trim().length() == 0 ? -1 : Integer.parseInt(bounds[1].trim()));
+            pos = close + 1;
+        } else {
+            return atom;
+        }
+        Node node = new Node(REPEAT, atom.start, pos);
+        if (more() && peek() == '?') {
+            pos++;
+        } else if (more() && peek() == '+') {
+            pos++;
+            node.possessive = true;
+        }
+        node.end = pos;
+        node.min = min;
+        node.max = max;
+        node.children.add(atom);
+        node.nullable = (min == 0) || atom.nullable;
+        node.first.addAll(atom.first);
+        node.last.addAll(atom.last);
+        node.minLength = atom.minLength * min;
+        node.maxLength = (max == -1 || atom.maxLength == -1) ? ((atom.maxLength == 0) ? 0 : -1) : atom.maxLength * max;
+        node.variableRepeat = !node.possessive && (atom.variableRepeat || (node.minLength != node.maxLength));
+        return node;
+    }
+
+    private Node leaf(CharSet chars, int start) {
+        Node node = new Node(LEAF, start, pos);
+        CharSet set = caseInsensitive ? chars.foldCase() : chars;
+        node.first = set;
+        node.last = set;
+        node.minLength = 1;
+        node.maxLength = 1;
+        return node;
+    }
+
+    private Node empty(int start) {
+        Node node = new Node(EMPTY, start, pos);
+        node.nullable = true;
+        return node;
+    }
+
+    private Node parseAtom() {
+        int start = pos;
+        char c = regex.charAt(pos++);
+        switch (c) {
+            case '(':
+                return parseGroup(start);
+            case '[':
+                return leaf(parseClass(), start);
+            case '.':
+                return leaf(CharSet.any(), start);
+            case '^':
+            case '$':
+                return empty(start);
+            case '\\':
+                return parseEscape(start);
+            default:
+                return leaf(CharSet.of(String.valueOf(c)), start);
+        }
+    }
+
+    private Node parseGroup(int start) {
+        boolean savedCaseInsensitive = caseInsensitive;
+        boolean capturing = true;
+        boolean lookaround = false;
+        boolean atomic = false;
+        if (more() && peek() == '?') {
+            pos++;
+            char k = regex.charAt(pos++);
+            if (k == ':') {
+                capturing = false;
+            } else if (k == '=' || k == '!') {
+                lookaround = true;
+            } else if (k == '>') {
+                atomic = true;
+                capturing = false;
+            } else if (k == '<' && (peek() == '=' || peek() == '!')) {
+                pos++;
+                lookaround = true;
+            } else if (k == '<') {
+                // Named group
+                pos = regex.indexOf('>', pos) + 1;
+            } else {
+                // Inline flags, either for the rest of the enclosing group, or for this group only
+                pos--;
+                boolean on = true;
+                while (peek() != ')' && peek() != ':') {
+                    char flag = regex.charAt(pos++);
+                    if (flag == '-') {
+                        on = false;
+                    } else if (flag == 'i') {
+                        caseInsensitive = on;
+                    }
+                }
+                if (regex.charAt(pos++) == ')') {
+                    return empty(start);
+                }
+                capturing = false;
+            }
+        }
+        int groupNumber = -1;
+        if (capturing && !lookaround) {
+            groupNumber = groups.size();
+            groups.add(null);
+        }
+        Node body = parseAlternation();
+        if (more()) {
+            pos++;      // closing parenthesis
+        }
+        caseInsensitive = savedCaseInsensitive;
+        if (lookaround) {
+            return empty(start);
+        }
+        if (groupNumber > 0) {
+            groups.set(groupNumber, body);
+        }
+        if (atomic) {
+            Node node = new Node(REPEAT, start, pos);
+            node.min = 1;
+            node.max = 1;
+            node.possessive = true;
+            node.children.add(body);
+            node.nullable = body.nullable;
+            node.first = body.first;
+            node.last = body.last;
+            node.minLength = body.minLength;
+            node.maxLength = body.maxLength;
+            return node;
+        }
+        if (body.kind == EMPTY || body.kind == SEQUENCE && body.children.isEmpty()) {
+            return empty(start);
+        }
+        // Report the group with its parentheses
+        body.start = start;
+        body.end = pos;
+        return body;
+    }
+
+    private Node parseEscape(int start) {
+        char c = regex.charAt(pos);
+        if (c == 'b' || c == 'B' || c == 'A' || c == 'z' || c == 'Z' || c == 'G') {
+            pos++;
+            return empty(start);
+        }
+        if (c == 'Q') {
+            // Literal text up to \E
+            int end = regex.indexOf("\\E", pos);
+            String literal = regex.substring(pos + 1, (end < 0) ? regex.length() : end);
+            pos = (end < 0) ? regex.length() : end + 2;
+            if (literal.length() == 0) {
+                return empty(start);
+            }
+            Node node = new Node(SEQUENCE, start, pos);
+            CharSet first = CharSet.of(literal.substring(0, 1));
+            CharSet last = CharSet.of(literal.substring(literal.length() - 1));
+            node.first = caseInsensitive ? first.foldCase() : first;
+            node.last = caseInsensitive ? last.foldCase() : last;
+            node.minLength = literal.length();
+            node.maxLength = literal.length();
+            return node;
+        }
+        if (c >= '1' && c <= '9') {
+            // Back reference, taking as many digits as make an existing group
+            int number = c - '0';
+            pos++;
+            while (more() && Character.isDigit(peek()) && number * 10 + (peek() - '0') < groups.size()) {
+                number = number * 10 + (peek() - '0');
+                pos++;
+            }
+            return backReference((number < groups.size()) ? groups.get(number) : null, start);
+        }
+        if (c == 'k') {
+            pos = regex.indexOf('>', pos) + 1;
+            return backReference(null, start);
+        }
+        return leaf(parseEscapeChars(), start);
+    }
+
+    private Node backReference(Node group, int start) {
+        Node node = new Node(LEAF, start, pos);
+        if (group == null) {
+            node.first = CharSet.any();
+            node.last = CharSet.any();
+            node.nullable = true;
+            node.maxLength = -1;
+        } else {
+            node.first = group.first;
+            node.last = group.last;
+            node.nullable = group.nullable;
+            node.minLength = group.minLength;
+            node.maxLength = group.maxLength;
+        }
+        node.variableRepeat = node.minLength != node.maxLength;
+        return node;
+    }
+
+    /**
+     * Parse an escape that matches a single character, either here or in a character class
+     * @return the characters it matches
+     */
+    private CharSet parseEscapeChars() {
+        char c = regex.charAt(pos++);
+        switch (c) {
+            case 'd':
+                return DIGITS;
+            case 'D':
+                return DIGITS.complement();
+            case 'w':
+                return WORD;
+            case 'W':
+                return WORD.complement();
+            case 's':
+                return SPACE;
+            case 'S':
+                return SPACE.complement();
+            case 'p':
+            case 'P':
+                CharSet property = parseProperty();
+                return (c == 'p') ? property : property.complement();
+            case 't':
+                return CharSet.of("\t");
+            case 'n':
+                return CharSet.of("\n");
+            case 'r':
+                return CharSet.of("\r");
+            case 'f':
+                return CharSet.of("\f");
+            case 'a':
+                return CharSet.of("\u0007");
+            case 'e':
+                return CharSet.of("\u001B");
+            case 'c':
+                pos++;
+                return CharSet.any();
+            case '0':
+                while (more() && peek() >= '0' && peek() <= '7') {
+                    pos++;
+                }
+                return CharSet.any();
+            case 'x':
+                if (more() && peek() == '{') {
+                    int close = regex.indexOf('}', pos);
+                    CharSet hex = new CharSet();
+                    hex.add(Integer.parseInt(regex.substring(pos + 1, close), 16));
+                    pos = close + 1;
+                    return hex;
+                }
+                CharSet hex = new CharSet();
+                hex.add(Integer.parseInt(regex.substring(pos, pos + 2), 16));
+                pos += 2;
+                return hex;
+            case 'u':
+                CharSet unicode = new CharSet();
+                unicode.add(Integer.parseInt(regex.substring(pos, pos + 4), 16));
+                pos += 4;
+                return unicode;
+            case 'h':
+            case 'H':
+            case 'v':
+            case 'V':
+            case 'R':
+            case 'X':
+                return CharSet.any();
+            default:
+                return CharSet.of(String.valueOf(c));
+        }
+    }
+
+    private CharSet parseProperty() {
+        String name;
+        if (peek() == '{') {
+            int close = regex.indexOf('}', pos);
+            name = regex.substring(pos + 1, close);
+            pos = close + 1;
+        } else {
+            name = String.valueOf(regex.charAt(pos++));
+        }
+        name = name.replaceFirst("^(Is|In|general_category=|gc=)", "");
+        CharSet set = new CharSet();
+        if (name.equals("Punct")) {
+            set.addAll(PUNCT);
+        } else if (name.equals("Digit") || name.equals("Nd") || name.equals("N")) {
+            set.addAll(DIGITS);
+            set.other = true;
+        } else if (name.equals("L") || name.equals("Alpha") || name.equals("Alphabetic") || name.equals("Letter")) {
+            set.addAll(LETTERS);
+            set.other = true;
+        } else if (name.equals("Lu") || name.equals("Upper") || name.equals("Uppercase")) {
+            set.addRange('A', 'Z');
+            set.other = true;
+        } else if (name.equals("Ll") || name.equals("Lower") || name.equals("Lowercase")) {
+            set.addRange('a', 'z');
+            set.other = true;
+        } else if (name.equals("Alnum")) {
+            set.addAll(LETTERS);
+            set.addAll(DIGITS);
+        } else if (name.equals("Space") || name.equals("White_Space")) {
+            set.addAll(SPACE);
+        } else {
+            return CharSet.any();
+        }
+        return set;
+    }
+
+    /**
+     * Parse a character class, after its opening bracket, up to and including its closing bracket
+     */
+    private CharSet parseClass() {
+        boolean negate = false;
+        if (peek() == '^') {
+            negate = true;
+            pos++;
+        }
+        CharSet set = parseClassItems();
+        return negate ? set.complement() : set;
+    }
+
+    private CharSet parseClassItems() {
+        CharSet set = new CharSet();
+        boolean firstItem = true;
+        while (more()) {
+            char c = peek();
+            if (c == ']' && !firstItem) {
+                pos++;
+                break;
+            }
+            firstItem = false;
+            if (c == '[') {
+                pos++;
+                set.addAll(parseClass());
+                continue;
+            }
+            if (c == '&' && regex.startsWith("&&", pos)) {
+                // Intersection with the rest of the class, which also reads the closing bracket
+                pos += 2;
+                return set.intersection(parseClassItems());
+            }
+            int from;
+            pos++;
+            if (c == '\\') {
+                int escape = pos;
+                CharSet escaped = parseEscapeChars();
+                if (pos != escape + 1 || !isSingleChar(escaped)) {
+                    set.addAll(escaped);
+                    continue;
+                }
+                from = singleChar(escaped);
+            } else {
+                from = c;
+            }
+            if (pos + 1 < regex.length() && peek() == '-' && regex.charAt(pos + 1) != ']') {
+                pos++;
+                int to = regex.charAt(pos++);
+                if (to == '\\') {
+                    to = singleChar(parseEscapeChars());
+                }
+                set.addRange(from, to);
+            } else {
+                set.add(from);
+            }
+        }
+        return caseInsensitive ? set.foldCase() : set;
+    }
+
+    private static boolean isSingleChar(CharSet set) {
+        return !set.other && set.ascii.cardinality() == 1;
+    }
+
+    private static int singleChar(CharSet set) {
+        return isSingleChar(set) ? set.ascii.nextSetBit(0) : ASCII;
+    }
+
+    /**
+     * Rewrite the literal words in an alternation into a trie, with the other entries after them.
+     * The rewritten alternation matches the same strings
+     * @param alternation   words and regexes separated by |, as read by ConfigReader
+     * @return the optimised alternation
+     */
+    public static String optimiseAlternation(String alternation) {
+        TreeMap<Character, Object> trie = new TreeMap<Character, Object>();
+        List<String> others = new ArrayList<String>();
+        int numWords = 0;
+        for (String entry : splitAlternation(alternation)) {
+            if (isLiteral(entry)) {
+                addWord(trie, entry);
+                numWords++;
+            } else {
+                others.add(entry);
+            }
+        }
+        if (numWords < 2) {
+            return alternation;
+        }
+        StringBuilder sb = new StringBuilder(trieRegex(trie));
+        for (String other : others) {
+            sb.append('|').append(other);
+        }
+        return sb.toString();
+    }
+
+    private static boolean isLiteral(String entry) {
+        if (entry.length() == 0) {
+            return false;
+        }
+        for (int i = 0; i < entry.length(); i++) {
+            if (METACHARACTERS.indexOf(entry.charAt(i)) >= 0) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Split an alternation at the top level bars, leaving those inside groups and classes alone
+     */
+    private static List<String> splitAlternation(String alternation) {
+        List<String> entries = new ArrayList<String>();
+        int depth = 0;
+        boolean inClass = false;
+        int start = 0;
+        for (int i = 0; i < alternation.length(); i++) {
+            char c = alternation.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (inClass) {
+                inClass = (c != ']');
+            } else if (c == '[') {
+                inClass = true;
+            } else if (c == '(') {
+                depth++;
+            } else if (c == ')') {
+                depth--;
+            } else if (c == '|' && depth == 0) {
+                entries.add(alternation.substring(start, i));
+                start = i + 1;
+            }
+        }
+        entries.add(alternation.substring(start));
+        return entries;
+    }
+
+    // A trie node maps each next character to its child; the null key marks the end of a word
+    @SuppressWarnings("unchecked")
+    private static void addWord(TreeMap<Character, Object> trie, String word) {
+        TreeMap<Character, Object> node = trie;
+        for (int i = 0; i < word.length(); i++) {
+            Character c = Character.valueOf(word.charAt(i));
+            TreeMap<Character, Object> child = (TreeMap<Character, Object>) node.get(c);
+            if (child == null) {
+                child = new TreeMap<Character, Object>(NULL_LAST);
+                node.put(c, child);
+            }
+            node = child;
+        }
+        node.put(null, Boolean.TRUE);
+    }
+
+    private static final Comparator<Character> NULL_LAST = new Comparator<Character>() {
+        public int compare(Character a, Character b) {
+            if (a == null || b == null) {
+                return (a == null) ? ((b == null) ? 0 : 1) : -1;
+            }
+            return a.compareTo(b);
+        }
+    };
+
+    @SuppressWarnings("unchecked")
+    private static String trieRegex(TreeMap<Character, Object> node) {
+        List<String> branches = new ArrayList<String>();
+        boolean endOfWord = false;
+        for (Map.Entry<Character, Object> entry : node.entrySet()) {
+            if (entry.getKey() == null) {
+                endOfWord = true;
+            } else {
+                // Literal words have no metacharacters to escape
+                branches.add(entry.getKey() + trieRegex((TreeMap<Character, Object>) entry.getValue()));
+            }
+        }
+        if (branches.isEmpty()) {
+            return "";
+        }
+        StringBuilder sb = new StringBuilder();
+        for (String branch : branches) {
+            if (sb.length() > 0) {
+                sb.append('|');
+            }
+            sb.append(branch);
+        }
+        boolean single = branches.size() == 1 && (branches.get(0).length() == 1);
+        String body = (branches.size() == 1 && !endOfWord) ? sb.toString() : (single ? sb.toString() : "(?:" + sb + ")");
+        return endOfWord ? body + "?" : body;
+    }
+}
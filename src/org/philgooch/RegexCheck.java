@@ -0,0 +1,25 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+/**
+ * What init() does about regular expressions built from the configuration that do not compile or
+ * can backtrack catastrophically, see {@link PatternAnalyser}
+ *
+ * @author philipgooch
+ */
+public enum RegexCheck {
+    /** Do not check the patterns */
+    IGNORE,
+    /** Report each problem and carry on */
+    WARN,
+    /** Report each problem and fail to initialise */
+    REFUSE
+}
@@ -0,0 +1,128 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+
+/**
+ * Bounded cache of the candidate matches found in a sentence, keyed by a 64-bit FNV-1a hash of
+ * the sentence text and of the matching parameters. The least recently used sentence is evicted
+ * once the cache is full. Entries keep the sentence text, so a hash collision is a miss rather
+ * than a wrong result. Safe to share between expanders running on different threads.
+ *
+ * @author philipgooch
+ */
+public class SentenceCache {
+    private static final long FNV_OFFSET_BASIS = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private static class CacheEntry {
+        long paramsHash;
+        String sentence;
+        List<CandidateMatch> matches;
+
+        CacheEntry(long paramsHash, String sentence, List<CandidateMatch> matches) {
+            this.paramsHash = paramsHash;
+            this.sentence = sentence;
+            this.matches = matches;
+        }
+    }
+
+    private final int maxEntries;
+    private final LinkedHashMap<Long, CacheEntry> entries;
+    private long hits;
+    private long misses;
+
+    /**
+     *
+     * @param maxEntries    maximum number of sentences to keep
+     */
+    public SentenceCache(final int maxEntries) {
+        this.maxEntries = maxEntries;
+        this.entries = new LinkedHashMap<Long, CacheEntry>(Math.min(maxEntries, 1 << 16), 0.75f, true) {
+
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<Long, CacheEntry> eldest) {
+                return size() > maxEntries;
+            }
+        };
+    }
+
+    /**
+     * FNV-1a hash of the UTF-16 code units of text
+     * @param seed  hash of any preceding text, as returned by hash(CharSequence)
+     * @param text
+     * @return
+     */
+    public static long hash(long seed, CharSequence text) {
+        long h = seed;
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            h ^= (c & 0xff);
+            h *= FNV_PRIME;
+            h ^= (c >>> 8);
+            h *= FNV_PRIME;
+        }
+        return h;
+    }
+
+    public static long hash(CharSequence text) {
+        return hash(FNV_OFFSET_BASIS, text);
+    }
+
+    /**
+     *
+     * @param paramsHash    hash of the parameters that affect matching
+     * @param sentence      sentence text
+     * @return matches cached for the sentence, or null if not cached
+     */
+    public synchronized List<CandidateMatch> get(long paramsHash, String sentence) {
+        CacheEntry entry = entries.get(hash(paramsHash, sentence));
+        if (entry != null && entry.paramsHash == paramsHash && entry.sentence.equals(sentence)) {
+            hits++;
+            return entry.matches;
+        }
+        misses++;
+        return null;
+    }
+
+    /**
+     *
+     * @param paramsHash    hash of the parameters that affect matching
+     * @param sentence      sentence text
+     * @param matches       matches found in the sentence, possibly none
+     */
+    public synchronized void put(long paramsHash, String sentence, List<CandidateMatch> matches) {
+        List<CandidateMatch> value = matches.isEmpty() ? Collections.<CandidateMatch>emptyList() : Collections.unmodifiableList(new ArrayList<CandidateMatch>(matches));
+        entries.put(hash(paramsHash, sentence), new CacheEntry(paramsHash, sentence, value));
+    }
+
+    public int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized long getHits() {
+        return hits;
+    }
+
+    public synchronized long getMisses() {
+        return misses;
+    }
+
+    public synchronized void clear() {
+        entries.clear();
+        hits = 0;
+        misses = 0;
+    }
+}
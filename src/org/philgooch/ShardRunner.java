@@ -0,0 +1,472 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import gate.*;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Runs the expander over a directory of documents in several worker processes, each with its
+ * own heap. Documents are assigned to shards by a hash of their path relative to the input
+ * directory. Each worker writes the pair statistics for its shard, see PairStatistics, and the
+ * shard files are then merged into pairs.tsv.
+ *
+ * Each worker writes a BatchCheckpoint every few documents, and resumes from it when rerun, so
+ * that a worker that dies part way through a shard does not start the shard again. A document
+ * that fails, or that was being processed both times its worker died, is quarantined: it is left
+ * out of the statistics, listed in quarantined.tsv, and skipped from then on.
+ *
+ * A shard whose worker fails is retried; if it still fails, the remaining shards are merged and
+ * the run exits with status 2. Shard files that already exist are not recomputed, so a failed
+ * run can be resumed by running it again.
+ *
+ * Usage: ShardRunner -input dir -output dir [-shards 4] [-retries 2] [-workerHeap 1g] [-checkpointEvery 100] [name=value ...]
+ *        ShardRunner -merge merged.tsv shard.tsv ...
+ * where name=value sets an expander parameter, as for AbbreviationServer.
+ * Run with -Dgate.home pointing to a GATE installation; gate.* system properties are passed on to the workers.
+ *
+ * @author philipgooch
+ */
+public class ShardRunner {
+    public static final String MERGED_FILE_NAME = "pairs.tsv";
+    public static final String QUARANTINED_FILE_NAME = "quarantined.tsv";
+    public static final int DEFAULT_CHECKPOINT_EVERY = 100;
+    public static final long CHECKPOINT_INTERVAL_MS = 60000L;
+
+    private File inputDir;
+    private File outputDir;
+    private int shards;
+    private int retries;
+    private String workerHeap;
+    private Map<String, String> settings;
+    private int checkpointEvery = DEFAULT_CHECKPOINT_EVERY;
+
+    /**
+     *
+     * @param inputDir      directory of documents, read recursively
+     * @param outputDir     directory for shard and merged statistics
+     * @param shards        number of worker processes
+     * @param retries       number of times to rerun a failed shard
+     * @param workerHeap    maximum heap per worker, e.g. 2g, or null for the JVM default
+     * @param settings      expander parameter values, see AbbreviationExtractor.createExpander()
+     */
+    public ShardRunner(File inputDir, File outputDir, int shards, int retries, String workerHeap, Map<String, String> settings) {
+        this.inputDir = inputDir;
+        this.outputDir = outputDir;
+        this.shards = Math.max(1, shards);
+        this.retries = Math.max(0, retries);
+        this.workerHeap = workerHeap;
+        this.settings = settings;
+    }
+
+    /**
+     *
+     * @param documentId
+     * @param shards
+     * @return shard number in [0, shards)
+     */
+    public static int shardOf(String documentId, int shards) {
+        // FNV-1a rather than String.hashCode(), which spreads similar file names poorly
+        return (int) ((SentenceCache.hash(documentId) >>> 1) % shards);
+    }
+
+    /**
+     * @param checkpointEvery   number of documents between worker checkpoints; workers also checkpoint at least once a minute
+     */
+    public void setCheckpointEvery(int checkpointEvery) {
+        this.checkpointEvery = Math.max(1, checkpointEvery);
+    }
+
+    public int getCheckpointEvery() {
+        return checkpointEvery;
+    }
+
+    public File getShardFile(int shard) {
+        return new File(outputDir, "shard-" + shard + "-of-" + shards + ".tsv");
+    }
+
+    public File getCheckpointFile(int shard) {
+        return new File(outputDir, "shard-" + shard + "-of-" + shards + ".checkpoint");
+    }
+
+    public File getQuarantinedFile(int shard) {
+        return new File(outputDir, "shard-" + shard + "-of-" + shards + ".quarantined.tsv");
+    }
+
+    /* Id of the document a worker is processing, left behind if the worker dies */
+    private File getCurrentFile(int shard) {
+        return new File(outputDir, "shard-" + shard + "-of-" + shards + ".current");
+    }
+
+    /**
+     * Run the worker processes and merge their output
+     * @return shards that failed, empty if all succeeded
+     * @throws IOException
+     * @throws InterruptedException
+     */
+    public List<Integer> run() throws IOException, InterruptedException {
+        if (!outputDir.isDirectory() && !outputDir.mkdirs()) {
+            throw new IOException("Unable to create " + outputDir);
+        }
+        List<Integer> pending = new ArrayList<Integer>();
+        for (int shard = 0; shard < shards; shard++) {
+            if (getShardFile(shard).exists()) {
+                gate.util.Out.println("Shard " + shard + " already done");
+            } else {
+                pending.add(shard);
+            }
+        }
+        for (int attempt = 0; attempt <= retries && !pending.isEmpty(); attempt++) {
+            Map<Integer, Process> workers = new LinkedHashMap<Integer, Process>();
+            for (Integer shard : pending) {
+                workers.put(shard, startWorker(shard));
+            }
+            pending = new ArrayList<Integer>();
+            for (Map.Entry<Integer, Process> worker : workers.entrySet()) {
+                int status = worker.getValue().waitFor();
+                if (status != 0 || !getShardFile(worker.getKey()).exists()) {
+                    gate.util.Err.println("Shard " + worker.getKey() + " failed with status " + status);
+                    pending.add(worker.getKey());
+                }
+            }
+        }
+
+        List<File> shardFiles = new ArrayList<File>();
+        List<File> quarantinedFiles = new ArrayList<File>();
+        for (int shard = 0; shard < shards; shard++) {
+            if (getShardFile(shard).exists()) {
+                shardFiles.add(getShardFile(shard));
+                if (getQuarantinedFile(shard).exists()) {
+                    quarantinedFiles.add(getQuarantinedFile(shard));
+                }
+            }
+        }
+        PairStatistics merged = merge(shardFiles);
+        merged.write(new File(outputDir, MERGED_FILE_NAME));
+        gate.util.Out.println("Merged " + shardFiles.size() + " of " + shards + " shards: " + merged.size() + " distinct pairs");
+        int numQuarantined = concatenate(quarantinedFiles, new File(outputDir, QUARANTINED_FILE_NAME));
+        if (numQuarantined > 0) {
+            gate.util.Err.println(numQuarantined + " documents quarantined, see " + new File(outputDir, QUARANTINED_FILE_NAME));
+        }
+        return pending;
+    }
+
+    private Process startWorker(final int shard) throws IOException {
+        List<String> command = new ArrayList<String>();
+        command.add(new File(new File(System.getProperty("java.home"), "bin"), "java").getPath());
+        if (workerHeap != null) {
+            command.add("-Xmx" + workerHeap);
+        }
+        for (String name : System.getProperties().stringPropertyNames()) {
+            if (name.startsWith("gate.")) {
+                command.add("-D" + name + "=" + System.getProperty(name));
+            }
+        }
+        command.add("-cp");
+        command.add(System.getProperty("java.class.path"));
+        command.add(ShardRunner.class.getName());
+        command.add("-worker");
+        command.add(String.valueOf(shard));
+        command.add("-shards");
+        command.add(String.valueOf(shards));
+        command.add("-input");
+        command.add(inputDir.getPath());
+        command.add("-output");
+        command.add(outputDir.getPath());
+        command.add("-checkpointEvery");
+        command.add(String.valueOf(checkpointEvery));
+        for (Map.Entry<String, String> setting : settings.entrySet()) {
+            command.add(setting.getKey() + "=" + setting.getValue());
+        }
+        ProcessBuilder builder = new ProcessBuilder(command);
+        builder.redirectErrorStream(true);
+        final Process process = builder.start();
+        // Pass the worker's output through, so that its pipe never fills up
+        Thread pump = new Thread("shard-" + shard + "-output") {
+
+            @Override
+            public void run() {
+                try {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(process.getInputStream()));
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        gate.util.Out.println("[shard " + shard + "] " + line);
+                    }
+                    in.close();
+                } catch (IOException ie) {
+                    // worker has gone
+                }
+            }
+        };
+        pump.setDaemon(true);
+        pump.start();
+        return process;
+    }
+
+    /**
+     * Process the documents in one shard and write its statistics file, resuming from the
+     * shard's checkpoint if there is one
+     * @param shard
+     * @throws Exception
+     */
+    public void runWorker(int shard) throws Exception {
+        long start = System.currentTimeMillis();
+        File checkpointFile = getCheckpointFile(shard);
+        File currentFile = getCurrentFile(shard);
+        BatchCheckpoint checkpoint = BatchCheckpoint.read(checkpointFile);
+        if (checkpoint.getDocuments() > 0) {
+            gate.util.Out.println("Resuming after " + checkpoint.getDocuments() + " documents, at " + checkpoint.getLastDocument());
+        }
+        // A document left in progress by the previous worker may be what stopped it
+        String stopped = readCurrent(currentFile);
+        if (stopped != null && !checkpoint.isDone(stopped)) {
+            if (checkpoint.stoppedOn(stopped)) {
+                gate.util.Err.println("Quarantining " + stopped + ": worker stopped twice while processing it");
+            }
+            checkpoint.write(checkpointFile);
+        }
+
+        Gate.init();
+        Gate.getCreoleRegister().registerDirectories(new File(Gate.getPluginsHome(), "ANNIE").toURI().toURL());
+
+        Map<String, String> workerSettings = new HashMap<String, String>(settings);
+        if (!workerSettings.containsKey("createAnnotations")) {
+            workerSettings.put("createAnnotations", "false");
+        }
+        BiomedicalAbbreviationExpander expander = AbbreviationExtractor.createExpander(workerSettings, null);
+        if (!expander.getExpanderConfig().isLoaded()) {
+            // Fail rather than write an empty shard that would be taken as complete
+            throw new IllegalStateException("Unable to load configuration from " + expander.getConfigFileURL());
+        }
+        AbbreviationExtractor extractor = new AbbreviationExtractor(expander);
+        int numDocs = 0;
+        int sinceCheckpoint = 0;
+        long lastCheckpoint = System.currentTimeMillis();
+        try {
+            for (String documentId : listDocuments()) {
+                if (shardOf(documentId, shards) != shard || checkpoint.isDone(documentId)) {
+                    continue;
+                }
+                writeCurrent(currentFile, documentId);
+                // Pairs are only added to the shard once the whole document has been processed
+                PairStatistics documentStats = new PairStatistics();
+                String failure = null;
+                try {
+                    processDocument(extractor, documentId, documentStats);
+                } catch (Exception e) {
+                    failure = e.toString();
+                } catch (StackOverflowError se) {
+                    failure = se.toString();
+                }
+                if (failure != null) {
+                    gate.util.Err.println("Quarantining " + documentId + ": " + failure);
+                    checkpoint.quarantine(documentId, failure);
+                    documentStats = null;
+                }
+                checkpoint.advance(documentId, documentStats);
+                numDocs++;
+                sinceCheckpoint++;
+                if (sinceCheckpoint >= checkpointEvery || System.currentTimeMillis() - lastCheckpoint >= CHECKPOINT_INTERVAL_MS) {
+                    checkpoint.write(checkpointFile);
+                    sinceCheckpoint = 0;
+                    lastCheckpoint = System.currentTimeMillis();
+                }
+            }
+        } finally {
+            extractor.cleanup();
+        }
+        // The shard file marks the shard as done, so it is written last
+        if (checkpoint.getQuarantined().isEmpty()) {
+            getQuarantinedFile(shard).delete();
+        } else {
+            checkpoint.writeQuarantined(getQuarantinedFile(shard));
+        }
+        PairStatistics stats = checkpoint.getStatistics();
+        stats.write(getShardFile(shard));
+        checkpointFile.delete();
+        currentFile.delete();
+        gate.util.Out.println(numDocs + " documents, " + stats.size() + " distinct pairs in " + (System.currentTimeMillis() - start) + " ms"
+                + (checkpoint.getQuarantined().isEmpty() ? "" : ", " + checkpoint.getQuarantined().size() + " quarantined"));
+    }
+
+    private void processDocument(AbbreviationExtractor extractor, String documentId, PairSink sink) throws Exception {
+        Document doc = Factory.newDocument(new File(inputDir, documentId).toURI().toURL(), "UTF-8");
+        try {
+            doc.setName(documentId);
+            extractor.process(doc, sink);
+        } finally {
+            Factory.deleteResource(doc);
+        }
+    }
+
+    private static void writeCurrent(File file, String documentId) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write(documentId);
+            out.write('\n');
+        } finally {
+            out.close();
+        }
+    }
+
+    /**
+     * @return the document id in the file, or null if there is none
+     */
+    private static String readCurrent(File file) throws IOException {
+        if (!file.exists()) {
+            return null;
+        }
+        BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+        try {
+            String line = in.readLine();
+            return (line == null || line.length() == 0) ? null : line;
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * @return paths of the documents relative to the input directory, with / as the separator
+     */
+    private List<String> listDocuments() {
+        List<String> documentIds = new ArrayList<String>();
+        listDocuments(inputDir, "", documentIds);
+        Collections.sort(documentIds);
+        return documentIds;
+    }
+
+    private void listDocuments(File dir, String prefix, List<String> documentIds) {
+        File[] files = dir.listFiles();
+        if (files == null) {
+            return;
+        }
+        for (File file : files) {
+            if (file.isDirectory()) {
+                listDocuments(file, prefix + file.getName() + "/", documentIds);
+            } else if (!file.isHidden()) {
+                documentIds.add(prefix + file.getName());
+            }
+        }
+    }
+
+    /**
+     *
+     * @param files     pair statistics files
+     * @return merged statistics
+     * @throws IOException
+     */
+    public static PairStatistics merge(List<File> files) throws IOException {
+        PairStatistics merged = new PairStatistics();
+        for (File file : files) {
+            merged.merge(PairStatistics.read(file));
+        }
+        return merged;
+    }
+
+    /**
+     * Copy the lines of several files into one
+     * @return number of lines written
+     */
+    private static int concatenate(List<File> files, File target) throws IOException {
+        File tmpFile = new File(target.getPath() + ".tmp");
+        Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(tmpFile), "UTF-8"));
+        int numLines = 0;
+        try {
+            for (File file : files) {
+                BufferedReader in = new BufferedReader(new InputStreamReader(new FileInputStream(file), "UTF-8"));
+                try {
+                    String line;
+                    while ((line = in.readLine()) != null) {
+                        out.write(line);
+                        out.write('\n');
+                        numLines++;
+                    }
+                } finally {
+                    in.close();
+                }
+            }
+        } finally {
+            out.close();
+        }
+        PairStatistics.replace(tmpFile, target);
+        return numLines;
+    }
+
+    private static void usage() {
+        System.err.println("Usage: ShardRunner -input dir -output dir [-shards n] [-retries n] [-workerHeap size] [-checkpointEvery n] [name=value ...]");
+        System.err.println("       ShardRunner -merge merged.tsv shard.tsv ...");
+        System.exit(1);
+    }
+
+    public static void main(String[] args) throws Exception {
+        File inputDir = null;
+        File outputDir = null;
+        int shards = Runtime.getRuntime().availableProcessors();
+        int retries = 2;
+        int worker = -1;
+        String workerHeap = null;
+        int checkpointEvery = DEFAULT_CHECKPOINT_EVERY;
+        Map<String, String> settings = new LinkedHashMap<String, String>();
+
+        if (args.length > 0 && args[0].equals("-merge")) {
+            if (args.length < 3) {
+                usage();
+            }
+            List<File> files = new ArrayList<File>();
+            for (int i = 2; i < args.length; i++) {
+                files.add(new File(args[i]));
+            }
+            PairStatistics merged = merge(files);
+            merged.write(new File(args[1]));
+            gate.util.Out.println("Merged " + files.size() + " files: " + merged.size() + " distinct pairs");
+            return;
+        }
+
+        for (int i = 0; i < args.length; i++) {
+            if (args[i].equals("-input") && i + 1 < args.length) {
+                inputDir = new File(args[++i]);
+            } else if (args[i].equals("-output") && i + 1 < args.length) {
+                outputDir = new File(args[++i]);
+            } else if (args[i].equals("-shards") && i + 1 < args.length) {
+                shards = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-retries") && i + 1 < args.length) {
+                retries = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-workerHeap") && i + 1 < args.length) {
+                workerHeap = args[++i];
+            } else if (args[i].equals("-checkpointEvery") && i + 1 < args.length) {
+                checkpointEvery = Integer.parseInt(args[++i]);
+            } else if (args[i].equals("-worker") && i + 1 < args.length) {
+                worker = Integer.parseInt(args[++i]);
+            } else if (args[i].indexOf('=') > 0) {
+                int idx = args[i].indexOf('=');
+                settings.put(args[i].substring(0, idx), args[i].substring(idx + 1));
+            } else {
+                usage();
+            }
+        }
+        if (inputDir == null || outputDir == null) {
+            usage();
+        }
+
+        ShardRunner runner = new ShardRunner(inputDir, outputDir, shards, retries, workerHeap, settings);
+        runner.setCheckpointEvery(checkpointEvery);
+        if (worker >= 0) {
+            runner.runWorker(worker);
+            System.exit(0);
+        }
+        List<Integer> failed = runner.run();
+        if (!failed.isEmpty()) {
+            gate.util.Err.println("Shards " + failed + " failed; run again to retry them");
+            System.exit(2);
+        }
+    }
+}
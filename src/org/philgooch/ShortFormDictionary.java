@@ -0,0 +1,420 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+import java.io.*;
+
+/**
+ * Short forms and the long forms to expand them to, matched against whole documents in a single
+ * pass with an Aho-Corasick automaton, for expanding short forms that are used without being
+ * defined. Entries come from the lookup lists that give a long form, e.g. AAA;term=abdominal aortic
+ * aneurysm, and from pair files written by the expander's pair sink.
+ *
+ * Matching is case sensitive, treats any white space character as a space, and uses the word
+ * boundaries of LookupIndex: a short form may not be preceded or followed by a letter or combining
+ * mark, so digits and punctuation are boundaries. Where matches overlap, the one that starts first
+ * is kept, and of those the longest.
+ *
+ * Add the entries, then compile() before matching. A compiled dictionary is not changed by matching,
+ * so it may be shared between threads.
+ *
+ * @author philipgooch
+ */
+public class ShortFormDictionary {
+
+    /**
+     * A short form and its long form
+     */
+    public static class Expansion {
+        private String shortForm;
+        private String longForm;
+        private String category;
+
+        public Expansion(String shortForm, String longForm, String category) {
+            this.shortForm = shortForm;
+            this.longForm = longForm;
+            this.category = category;
+        }
+
+        public String getShortForm() {
+            return shortForm;
+        }
+
+        public String getLongForm() {
+            return longForm;
+        }
+
+        /**
+         * @return annotation type of the list or pair the expansion came from, e.g. DiseaseOrSyndrome, or null
+         */
+        public String getCategory() {
+            return category;
+        }
+    }
+
+    /**
+     * A short form found in a text
+     */
+    public static class Match {
+        private int start;
+        private int end;
+        private Expansion expansion;
+
+        public Match(int start, int end, Expansion expansion) {
+            this.start = start;
+            this.end = end;
+            this.expansion = expansion;
+        }
+
+        public int getStart() {
+            return start;
+        }
+
+        public int getEnd() {
+            return end;
+        }
+
+        public Expansion getExpansion() {
+            return expansion;
+        }
+    }
+
+    private Map<String, Expansion> expansions = new LinkedHashMap<String, Expansion>();
+
+    // The compiled automaton. State 0 is the root, whose transitions are held in a table by character
+    private int[] rootNext;
+    private char[][] labels;            // characters with a transition from each state, sorted
+    private int[][] next;               // the state each of those characters goes to
+    private int[] fail;                 // state for the longest proper suffix that is also a prefix of a short form
+    private int[] depth;                // length of the prefix each state stands for
+    private Expansion[] output;         // short form that ends at each state, or null
+    private int[] outputLink;           // nearest state along the fail links with an output, or -1
+
+    /**
+     * Add a short form, unless it is already in the dictionary
+     * @param shortForm
+     * @param longForm
+     * @param category  e.g. DiseaseOrSyndrome, or null
+     * @return true if it was added
+     */
+    public boolean add(String shortForm, String longForm, String category) {
+        return add(shortForm, longForm, category, false);
+    }
+
+    /**
+     *
+     * @param shortForm
+     * @param longForm
+     * @param category  e.g. DiseaseOrSyndrome, or null
+     * @param replace   replace the long form of a short form that is already in the dictionary
+     * @return true if it was added
+     */
+    public synchronized boolean add(String shortForm, String longForm, String category, boolean replace) {
+        String key = LookupIndex.normalize(shortForm);
+        String value = LookupIndex.normalize(longForm);
+        if (key.length() == 0 || value.length() == 0 || (!replace && expansions.containsKey(key))) {
+            return false;
+        }
+        expansions.put(key, new Expansion(key, value, category));
+        rootNext = null;
+        return true;
+    }
+
+    /**
+     * Add the entries of a loaded lookup index that have a long form. Where a short form is in
+     * more than one list, the first list in the definition file, then the first long form, is kept
+     * @param lookupIndex
+     */
+    public void addEntries(LookupIndex lookupIndex) {
+        List<LookupIndex.Entry> entries = lookupIndex.getEntries();
+        // The trie returns entries in no fixed order; sort them so that duplicates resolve the same way every time
+        Collections.sort(entries, new Comparator<LookupIndex.Entry>() {
+
+            public int compare(LookupIndex.Entry e1, LookupIndex.Entry e2) {
+                int cmp = e1.getText().compareTo(e2.getText());
+                return (cmp != 0) ? cmp : e1.getAnnotationType().compareTo(e2.getAnnotationType());
+            }
+        });
+        for (LookupIndex.Entry entry : entries) {
+            String longForm = entry.getFeatures().get(KnownPairIndex.LONG_FORM_FEATURE);
+            if (longForm != null) {
+                add(entry.getText(), longForm, entry.getAnnotationType());
+            }
+        }
+    }
+
+    /**
+     * Add the pairs in a file written by the pair sink, in TSV or BINARY format, replacing any
+     * long forms from the lookup lists. A short form defined more than once takes the long form it
+     * was given most often, and of those the first
+     * @param in
+     * @return number of short forms added
+     * @throws IOException
+     */
+    public int addPairs(InputStream in) throws IOException {
+        final Map<String, Map<String, int[]>> counts = new LinkedHashMap<String, Map<String, int[]>>();
+        final Map<String, String> categories = new HashMap<String, String>();
+        PairSink counter = new PairSink() {
+
+            public void pairFound(AbbreviationPair pair) {
+                Map<String, int[]> longForms = counts.get(pair.getShortForm());
+                if (longForms == null) {
+                    longForms = new LinkedHashMap<String, int[]>();
+                    counts.put(pair.getShortForm(), longForms);
+                }
+                int[] count = longForms.get(pair.getLongForm());
+                if (count == null) {
+                    count = new int[1];
+                    longForms.put(pair.getLongForm(), count);
+                    categories.put(pair.getShortForm() + '\t' + pair.getLongForm(), pair.getSemanticType());
+                }
+                count[0]++;
+            }
+
+            public void mentionFound(AbbreviationPair pair, int start, int end) {
+            }
+
+            public void flush() {
+            }
+
+            public void close() {
+            }
+        };
+
+        BufferedInputStream bin = new BufferedInputStream(in, 65536);
+        bin.mark(4);
+        DataInputStream din = new DataInputStream(bin);
+        int magic;
+        try {
+            magic = din.readInt();
+        } catch (EOFException ee) {
+            magic = 0;
+        }
+        bin.reset();
+        if (magic == BinaryPairWriter.MAGIC) {
+            new BinaryPairReader(bin).readAll(counter);
+        } else {
+            BufferedReader reader = new BufferedReader(new InputStreamReader(bin, "UTF-8"));
+            String line;
+            while ((line = reader.readLine()) != null) {
+                String[] fields = line.split("\t", -1);
+                if (fields.length >= 8 && fields[0].equals(TsvPairWriter.PAIR_RECORD)) {
+                    String semanticType = (fields.length > 8 && fields[8].length() > 0) ? fields[8] : null;
+                    counter.pairFound(new AbbreviationPair(fields[1], fields[2], fields[3], -1, -1, -1, -1, semanticType));
+                }
+            }
+        }
+
+        int numAdded = 0;
+        for (Map.Entry<String, Map<String, int[]>> entry : counts.entrySet()) {
+            String best = null;
+            int bestCount = 0;
+            for (Map.Entry<String, int[]> longForm : entry.getValue().entrySet()) {
+                if (longForm.getValue()[0] > bestCount) {
+                    best = longForm.getKey();
+                    bestCount = longForm.getValue()[0];
+                }
+            }
+            if (add(entry.getKey(), best, categories.get(entry.getKey() + '\t' + best), true)) {
+                numAdded++;
+            }
+        }
+        return numAdded;
+    }
+
+    /**
+     * Build the automaton for the short forms added so far
+     */
+    public synchronized void compile() {
+        // Trie of the short forms, with transitions in maps while it is built
+        List<Map<Character, Integer>> trie = new ArrayList<Map<Character, Integer>>();
+        List<Expansion> ends = new ArrayList<Expansion>();
+        List<Integer> depths = new ArrayList<Integer>();
+        trie.add(new TreeMap<Character, Integer>());
+        ends.add(null);
+        depths.add(0);
+        for (Expansion expansion : expansions.values()) {
+            String key = expansion.getShortForm();
+            int state = 0;
+            for (int i = 0; i < key.length(); i++) {
+                Integer target = trie.get(state).get(key.charAt(i));
+                if (target == null) {
+                    target = trie.size();
+                    trie.get(state).put(key.charAt(i), target);
+                    trie.add(new TreeMap<Character, Integer>());
+                    ends.add(null);
+                    depths.add(i + 1);
+                }
+                state = target;
+            }
+            ends.set(state, expansion);
+        }
+
+        int numStates = trie.size();
+        char[][] stateLabels = new char[numStates][];
+        int[][] stateNext = new int[numStates][];
+        for (int s = 0; s < numStates; s++) {
+            Map<Character, Integer> transitions = trie.get(s);
+            stateLabels[s] = new char[transitions.size()];
+            stateNext[s] = new int[transitions.size()];
+            int i = 0;
+            for (Map.Entry<Character, Integer> transition : transitions.entrySet()) {
+                stateLabels[s][i] = transition.getKey();
+                stateNext[s][i] = transition.getValue();
+                i++;
+            }
+        }
+        int[] root = new int[Character.MAX_VALUE + 1];
+        for (int i = 0; i < stateLabels[0].length; i++) {
+            root[stateLabels[0][i]] = stateNext[0][i];
+        }
+
+        // Fail and output links, breadth first so that each state's fail state is done before it
+        int[] stateFail = new int[numStates];
+        int[] stateDepth = new int[numStates];
+        Expansion[] stateOutput = ends.toArray(new Expansion[numStates]);
+        int[] stateOutputLink = new int[numStates];
+        Arrays.fill(stateOutputLink, -1);
+        int[] queue = new int[numStates];
+        int head = 0;
+        int tail = 0;
+        for (int target : stateNext[0]) {
+            queue[tail++] = target;
+        }
+        while (head < tail) {
+            int s = queue[head++];
+            stateDepth[s] = depths.get(s);
+            int f = stateFail[s];
+            stateOutputLink[s] = (stateOutput[f] != null) ? f : stateOutputLink[f];
+            for (int i = 0; i < stateLabels[s].length; i++) {
+                char c = stateLabels[s][i];
+                int target = stateNext[s][i];
+                int g = f;
+                int step = -1;
+                while (true) {
+                    step = (g == 0) ? root[c] : find(stateLabels[g], stateNext[g], c);
+                    if (step > 0 || g == 0) {
+                        break;
+                    }
+                    g = stateFail[g];
+                }
+                stateFail[target] = Math.max(step, 0);
+                queue[tail++] = target;
+            }
+        }
+
+        labels = stateLabels;
+        next = stateNext;
+        fail = stateFail;
+        depth = stateDepth;
+        output = stateOutput;
+        outputLink = stateOutputLink;
+        rootNext = root;
+    }
+
+    private static int find(char[] stateLabels, int[] stateNext, char c) {
+        int i = Arrays.binarySearch(stateLabels, c);
+        return (i >= 0) ? stateNext[i] : -1;
+    }
+
+    /**
+     * Find the short forms in a text
+     * @param text
+     * @return the short forms found, in order, without overlaps
+     * @throws IllegalStateException if the dictionary has changed since it was compiled
+     */
+    public List<Match> findMatches(CharSequence text) {
+        int[] root;
+        char[][] stateLabels;
+        int[][] stateNext;
+        int[] stateFail;
+        int[] stateDepth;
+        Expansion[] stateOutput;
+        int[] stateOutputLink;
+        synchronized (this) {
+            if (rootNext == null) {
+                throw new IllegalStateException("Short form dictionary has not been compiled");
+            }
+            root = rootNext;
+            stateLabels = labels;
+            stateNext = next;
+            stateFail = fail;
+            stateDepth = depth;
+            stateOutput = output;
+            stateOutputLink = outputLink;
+        }
+
+        // Every short form found on word boundaries, in order of end
+        List<Match> found = new ArrayList<Match>();
+        int len = text.length();
+        int state = 0;
+        for (int i = 0; i < len; i++) {
+            char c = text.charAt(i);
+            if (isSpace(c)) {
+                c = ' ';
+            }
+            int target;
+            while (true) {
+                target = (state == 0) ? root[c] : find(stateLabels[state], stateNext[state], c);
+                if (target > 0 || state == 0) {
+                    break;
+                }
+                state = stateFail[state];
+            }
+            state = target;
+            int end = i + 1;
+            for (int s = (stateOutput[state] != null) ? state : stateOutputLink[state]; s > 0; s = stateOutputLink[s]) {
+                int start = end - stateDepth[s];
+                if (LookupIndex.isWordStart(text, start) && LookupIndex.isWordEnd(text, end)) {
+                    found.add(new Match(start, end, stateOutput[s]));
+                }
+            }
+        }
+
+        // Keep the leftmost, then longest, of overlapping matches
+        Collections.sort(found, new Comparator<Match>() {
+
+            public int compare(Match m1, Match m2) {
+                return (m1.start != m2.start) ? m1.start - m2.start : m2.end - m1.end;
+            }
+        });
+        List<Match> matches = new ArrayList<Match>(found.size());
+        int lastEnd = 0;
+        for (Match match : found) {
+            if (match.start >= lastEnd) {
+                matches.add(match);
+                lastEnd = match.end;
+            }
+        }
+        return matches;
+    }
+
+    /**
+     * @return number of short forms
+     */
+    public synchronized int size() {
+        return expansions.size();
+    }
+
+    /**
+     *
+     * @param shortForm
+     * @return the expansion of the short form, or null
+     */
+    public synchronized Expansion get(String shortForm) {
+        return expansions.get(LookupIndex.normalize(shortForm));
+    }
+
+    // White space characters, as the expander replaces them before matching
+    private static boolean isSpace(char c) {
+        return Character.isWhitespace(c) || c == '\u00A0' || c == '\u2007' || c == '\u202F';
+    }
+}
@@ -0,0 +1,115 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import gate.Annotation;
+import gate.AnnotationSet;
+
+import java.util.*;
+
+/**
+ * Limits how far through a document a learned term-abbreviation definition is applied to later
+ * mentions of the short form: until the end of the scope annotation (e.g. Section or Paragraph)
+ * that contains the definition, and/or until the short form has not been defined or mentioned
+ * for a given number of sentences. Expired definitions are dropped, so the state kept for a
+ * document, and the work done for each sentence, depends on the definitions in scope rather
+ * than on the length of the document.
+ *
+ * @author philipgooch
+ */
+public class ShortFormScope {
+    private AnnotationSet scopeAS;      // scope annotations, or null
+    private int maxSentences;           // 0 for no limit
+
+    private static class Extent {
+        String abbrevNorm;
+        int lastSeen;                   // index of the sentence where the short form was last defined or mentioned
+        long scopeEnd;                  // end offset of the scope annotation containing the definition
+    }
+
+    private Map<String, Extent> extents;
+
+    /**
+     *
+     * @param scopeAS       scope annotations, or null to scope by sentence distance only
+     * @param maxSentences  number of sentences after its last definition or mention that a short form stays in scope, or 0 for no limit
+     */
+    public ShortFormScope(AnnotationSet scopeAS, int maxSentences) {
+        this.scopeAS = scopeAS;
+        this.maxSentences = Math.max(0, maxSentences);
+        this.extents = new HashMap<String, Extent>();
+    }
+
+    /**
+     * Record a definition, replacing any earlier definition of the same short form
+     * @param abbrev            short form, as the key of the expansion map
+     * @param abbrevNorm        normalised short form, as the key of the sentence and type maps
+     * @param sentenceIndex     index of the sentence in the document
+     * @param offset            document offset of the definition
+     */
+    public void defined(String abbrev, String abbrevNorm, int sentenceIndex, long offset) {
+        Extent extent = new Extent();
+        extent.abbrevNorm = abbrevNorm;
+        extent.lastSeen = sentenceIndex;
+        extent.scopeEnd = Long.MAX_VALUE;
+        if (scopeAS != null) {
+            // Innermost scope annotation around the definition; none means the definition applies to the rest of the document
+            for (Annotation scope : scopeAS.get(offset, offset + 1)) {
+                long start = scope.getStartNode().getOffset().longValue();
+                long end = scope.getEndNode().getOffset().longValue();
+                if (start <= offset && end > offset && end < extent.scopeEnd) {
+                    extent.scopeEnd = end;
+                }
+            }
+        }
+        extents.put(abbrev, extent);
+    }
+
+    /**
+     * Record a later mention of a defined short form
+     * @param abbrev
+     * @param sentenceIndex
+     */
+    public void mentioned(String abbrev, int sentenceIndex) {
+        Extent extent = extents.get(abbrev);
+        if (extent != null) {
+            extent.lastSeen = sentenceIndex;
+        }
+    }
+
+    /**
+     * Drop the definitions that are out of scope at the start of a sentence
+     * @param sentenceIndex     index of the sentence in the document
+     * @param sentenceStart     document start offset of the sentence
+     * @return normalised short form of each expired definition, by short form
+     */
+    public Map<String, String> expire(int sentenceIndex, long sentenceStart) {
+        Map<String, String> expired = null;
+        for (Iterator<Map.Entry<String, Extent>> itr = extents.entrySet().iterator(); itr.hasNext();) {
+            Map.Entry<String, Extent> entry = itr.next();
+            Extent extent = entry.getValue();
+            if (sentenceStart >= extent.scopeEnd || (maxSentences > 0 && sentenceIndex - extent.lastSeen > maxSentences)) {
+                if (expired == null) {
+                    expired = new HashMap<String, String>();
+                }
+                expired.put(entry.getKey(), extent.abbrevNorm);
+                itr.remove();
+            }
+        }
+        return (expired == null) ? Collections.<String, String>emptyMap() : expired;
+    }
+
+    /**
+     * @return number of definitions in scope
+     */
+    public int size() {
+        return extents.size();
+    }
+}
@@ -0,0 +1,73 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.*;
+
+/**
+ * Records how long each initialisation phase of the expander took, in the order the phases ran.
+ *
+ * @author philipgooch
+ */
+public class StartupProfile {
+    private Map<String, Long> phaseNanos;
+
+    public StartupProfile() {
+        this.phaseNanos = new LinkedHashMap<String, Long>();
+    }
+
+    /**
+     *
+     * @param phase         name of the initialisation phase
+     * @param startNanos    value of System.nanoTime() when the phase started
+     */
+    public synchronized void record(String phase, long startNanos) {
+        long elapsed = System.nanoTime() - startNanos;
+        Long previous = phaseNanos.get(phase);
+        phaseNanos.put(phase, (previous == null) ? elapsed : previous + elapsed);
+    }
+
+    public synchronized void clear() {
+        phaseNanos.clear();
+    }
+
+    /**
+     *
+     * @param phase
+     * @return milliseconds spent in the phase, or -1 if it has not run
+     */
+    public synchronized double getMillis(String phase) {
+        Long nanos = phaseNanos.get(phase);
+        return (nanos == null) ? -1 : nanos / 1000000.0;
+    }
+
+    public synchronized double getTotalMillis() {
+        long total = 0;
+        for (Long nanos : phaseNanos.values()) {
+            total += nanos;
+        }
+        return total / 1000000.0;
+    }
+
+    /**
+     * @return one line per phase with its time and share of the total
+     */
+    @Override
+    public synchronized String toString() {
+        double total = getTotalMillis();
+        StringBuilder sb = new StringBuilder();
+        for (Map.Entry<String, Long> entry : phaseNanos.entrySet()) {
+            double millis = entry.getValue() / 1000000.0;
+            sb.append(String.format("%-24s %10.1f ms %5.1f%%%n", entry.getKey(), millis, (total > 0) ? 100 * millis / total : 0.0));
+        }
+        sb.append(String.format("%-24s %10.1f ms%n", "total", total));
+        return sb.toString();
+    }
+}
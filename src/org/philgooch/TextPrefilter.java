@@ -0,0 +1,107 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+/**
+ * Cheap character-level tests run before the regular expressions, so that text which cannot
+ * produce a match is never handed to a Matcher. Each test is conservative: it may let through
+ * text that the pattern then rejects, but never rejects text that the pattern would match.
+ * The bracket and literal tests are built on String.indexOf and lastIndexOf, which the JIT
+ * compiles to wide-word scans of the string's backing array.
+ *
+ * @author philipgooch
+ */
+public final class TextPrefilter {
+
+    private TextPrefilter() {
+    }
+
+    /**
+     * Both candidate patterns need an opening bracket followed somewhere by a closing bracket
+     * @param text
+     * @param from  offset to start from
+     * @return true if text contains ( or [ at or after from, followed later by ) or ]
+     */
+    public static boolean hasBracketPair(String text, int from) {
+        int open = text.indexOf('(', from);
+        int square = text.indexOf('[', from);
+        if (open < 0 || (square >= 0 && square < open)) {
+            open = square;
+        }
+        if (open < 0) {
+            return false;
+        }
+        return Math.max(text.lastIndexOf(')'), text.lastIndexOf(']')) > open;
+    }
+
+    /**
+     * An abbreviation-like token has an upper case letter after its first character. Such a letter
+     * must follow a letter, digit or one of the token joiners &amp;/-. in the text.
+     * @param text
+     * @return false if text cannot contain an abbreviation-like token
+     */
+    public static boolean hasInnerCapital(String text) {
+        int len = text.length();
+        int prev = -1;
+        for (int i = 0; i < len;) {
+            int cp = text.codePointAt(i);
+            if (prev >= 0 && Character.getType(cp) == Character.UPPERCASE_LETTER && (isTokenChar(prev) || isJoiner(prev))) {
+                return true;
+            }
+            prev = cp;
+            i += Character.charCount(cp);
+        }
+        return false;
+    }
+
+    /**
+     * Scalar equivalent of matching .*\p{Lu}.*\p{Lu}.*|.+\p{Lu}.* against a token
+     * @param text
+     * @param start
+     * @param end
+     * @return true if the token has an upper case letter after its first character
+     */
+    public static boolean isShortFormLike(String text, int start, int end) {
+        if (start >= end) {
+            return false;
+        }
+        for (int i = start + Character.charCount(text.codePointAt(start)); i < end;) {
+            int cp = text.codePointAt(i);
+            if (Character.getType(cp) == Character.UPPERCASE_LETTER) {
+                return true;
+            }
+            i += Character.charCount(cp);
+        }
+        return false;
+    }
+
+    /**
+     * A mention of an abbreviation always contains the first word of its normalised form,
+     * e.g. 2D for 2D 1H NMRs, or NMR for NMRs
+     * @param abbrev
+     * @return literal text that every mention of abbrev contains; empty if there is none
+     */
+    public static String mentionLiteral(String abbrev) {
+        String[] words = abbrev.split("\\s+");
+        return (words.length == 0) ? "" : words[0].replaceAll("^([A-Z]+)s$", "$1");
+    }
+
+    private static boolean isTokenChar(int cp) {
+        if (Character.isLetterOrDigit(cp)) {
+            return true;
+        }
+        int type = Character.getType(cp);
+        return type == Character.LETTER_NUMBER || type == Character.OTHER_NUMBER;
+    }
+
+    private static boolean isJoiner(int cp) {
+        return cp == '&' || cp == '/' || cp == '-' || cp == '.';
+    }
+}
@@ -0,0 +1,133 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.util.Arrays;
+
+/**
+ * Start and end offsets of the words in a text, held in a single int array, in order and not
+ * overlapping. Built once per document from existing token annotations when tokenType is set, so
+ * that candidate windows can be measured in words, and the words of a candidate found, without
+ * tokenising the text again; slice() gives the words of one sentence.
+ *
+ * @author philipgooch
+ */
+public class TokenOffsets {
+    private int[] offsets;
+    private int size;
+
+    public TokenOffsets() {
+        this(8);
+    }
+
+    private TokenOffsets(int capacity) {
+        this.offsets = new int[Math.max(2, capacity * 2)];
+    }
+
+    /**
+     * Add a word after those already added
+     * @param start
+     * @param end
+     * @return false if the word overlaps or comes before the last word added, and was left out
+     */
+    public boolean add(int start, int end) {
+        if (end <= start || (size > 0 && start < offsets[size * 2 - 1])) {
+            return false;
+        }
+        if (size * 2 == offsets.length) {
+            offsets = Arrays.copyOf(offsets, offsets.length * 2);
+        }
+        offsets[size * 2] = start;
+        offsets[size * 2 + 1] = end;
+        size++;
+        return true;
+    }
+
+    /**
+     * @return number of words
+     */
+    public int size() {
+        return size;
+    }
+
+    public int getStart(int word) {
+        checkIndex(word);
+        return offsets[word * 2];
+    }
+
+    public int getEnd(int word) {
+        checkIndex(word);
+        return offsets[word * 2 + 1];
+    }
+
+    /**
+     *
+     * @param offset
+     * @return index of the first word that starts at or after the offset, or size() if there is none
+     */
+    public int indexAtOrAfter(int offset) {
+        int lo = 0;
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (offsets[mid * 2] < offset) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     *
+     * @param start
+     * @param end
+     * @return index after the last word that lies within start and end; the words within are those from indexAtOrAfter(start) up to this
+     */
+    public int indexAfter(int start, int end) {
+        // Words do not overlap, so their ends are in order too
+        int lo = indexAtOrAfter(start);
+        int hi = size;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (offsets[mid * 2 + 1] <= end) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     *
+     * @param start
+     * @param end
+     * @return the words that lie within start and end, with offsets relative to start
+     */
+    public TokenOffsets slice(int start, int end) {
+        int from = indexAtOrAfter(start);
+        int to = indexAfter(start, end);
+        TokenOffsets slice = new TokenOffsets(to - from);
+        for (int i = from; i < to; i++) {
+            slice.offsets[slice.size * 2] = offsets[i * 2] - start;
+            slice.offsets[slice.size * 2 + 1] = offsets[i * 2 + 1] - start;
+            slice.size++;
+        }
+        return slice;
+    }
+
+    private void checkIndex(int word) {
+        if (word < 0 || word >= size) {
+            throw new IndexOutOfBoundsException("Word " + word + " of " + size);
+        }
+    }
+}
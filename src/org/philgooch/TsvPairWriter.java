@@ -0,0 +1,84 @@
+/*
+ *  Copyright (c) 2012, Phil Gooch.
+ *
+ *  This software is licenced under the GNU Library General Public License,
+ *  http://www.gnu.org/copyleft/gpl.html Version 3, 29 June 2007
+ *
+ *  Phil Gooch 04/2012
+*/
+
+package org.philgooch;
+
+import java.io.*;
+
+/**
+ * Writes pairs and mentions as UTF-8 tab-separated lines:
+ *
+ * P  documentId  shortForm  longForm  shortStart  shortEnd  longStart  longEnd  semanticType
+ * M  documentId  shortForm  longForm  start  end
+ *
+ * Tabs and line breaks within fields are written as spaces; a missing value is written as an empty field.
+ *
+ * @author philipgooch
+ */
+public class TsvPairWriter implements PairSink {
+    public static final String PAIR_RECORD = "P";
+    public static final String MENTION_RECORD = "M";
+
+    private Writer out;
+
+    public TsvPairWriter(OutputStream out) throws IOException {
+        this.out = new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), 65536);
+    }
+
+    public synchronized void pairFound(AbbreviationPair pair) {
+        try {
+            out.write(PAIR_RECORD);
+            writeField(pair.getDocumentId());
+            writeField(pair.getShortForm());
+            writeField(pair.getLongForm());
+            writeField(pair.getShortStart());
+            writeField(pair.getShortEnd());
+            writeField(pair.getLongStart());
+            writeField(pair.getLongEnd());
+            writeField(pair.getSemanticType());
+            out.write('\n');
+        } catch (IOException ie) {
+            throw new IllegalStateException("Unable to write pair " + pair + ": " + ie);
+        }
+    }
+
+    public synchronized void mentionFound(AbbreviationPair pair, int start, int end) {
+        try {
+            out.write(MENTION_RECORD);
+            writeField(pair.getDocumentId());
+            writeField(pair.getShortForm());
+            writeField(pair.getLongForm());
+            writeField(start);
+            writeField(end);
+            out.write('\n');
+        } catch (IOException ie) {
+            throw new IllegalStateException("Unable to write mention of " + pair + ": " + ie);
+        }
+    }
+
+    private void writeField(String value) throws IOException {
+        out.write('\t');
+        if (value != null) {
+            out.write(value.replaceAll("[\\t\\r\\n]", " "));
+        }
+    }
+
+    private void writeField(int value) throws IOException {
+        out.write('\t');
+        out.write(Integer.toString(value));
+    }
+
+    public synchronized void flush() throws IOException {
+        out.flush();
+    }
+
+    public synchronized void close() throws IOException {
+        out.close();
+    }
+}
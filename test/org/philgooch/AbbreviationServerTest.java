@@ -0,0 +1,219 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import gate.*;
+import java.io.*;
+import java.net.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author philipgooch
+ */
+public class AbbreviationServerTest {
+
+    private static final String TEXT = "Wiskott-Aldrich syndrome (WAS) is an X-linked recessive disorder.";
+
+    public AbbreviationServerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        if (!Gate.isInitialised()) {
+            Gate.init();
+        }
+        Gate.getCreoleRegister().registerDirectories(new File(Gate.getPluginsHome(), "ANNIE").toURI().toURL());
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private Map<String, String> getSettings() {
+        Map<String, String> settings = new HashMap<String, String>();
+        settings.put("configFileURL", getClass().getResource("../../resources/config.txt").toString());
+        settings.put("gazetteerListsURL", getClass().getResource("../../resources/lookup/abbrevs.def").toString());
+        settings.put("underlyingAnnots", "Test");
+        settings.put("sentenceCacheSize", "100");
+        return settings;
+    }
+
+    /**
+     * Test of borrow and release methods, of class ExtractorPool.
+     */
+    @Test
+    public void testExtractorPool() throws Exception {
+        System.out.println("extractorPool");
+        ExtractorPool pool = new ExtractorPool(2, getSettings());
+        try {
+            assertEquals(2, pool.getSize());
+            assertEquals(2, pool.getIdleCount());
+            assertNotNull(pool.getConfig());
+            assertNotNull(pool.getCache());
+
+            AbbreviationExtractor first = pool.borrow();
+            AbbreviationExtractor second = pool.borrow();
+            assertNotSame(first, second);
+            assertEquals(0, pool.getIdleCount());
+            // Every extractor shares the configuration and the sentence cache
+            for (AbbreviationExtractor extractor : new AbbreviationExtractor[] {first, second}) {
+                assertSame(pool.getConfig(), extractor.getExpander().getExpanderConfig());
+                assertSame(pool.getCache(), extractor.getExpander().getSentenceCache());
+            }
+
+            // A sentence scanned by one extractor is a cache hit for the other
+            String text = "Patients were scanned by magnetic resonance imaging (MRI).";
+            List<int[]> sentences = new ArrayList<int[]>();
+            sentences.add(new int[]{0, text.length()});
+            long hits = pool.getCache().getHits();
+            List<AbbreviationPair> firstPairs = first.extract("d1", text, sentences);
+            assertEquals(hits, pool.getCache().getHits());
+            List<AbbreviationPair> secondPairs = second.extract("d2", text, sentences);
+            assertEquals(hits + 1, pool.getCache().getHits());
+            assertEquals(1, firstPairs.size());
+            assertEquals(1, secondPairs.size());
+            assertEquals("MRI", secondPairs.get(0).getShortForm());
+            assertEquals(firstPairs.get(0).getLongForm(), secondPairs.get(0).getLongForm());
+
+            pool.release(first);
+            pool.release(second);
+            assertEquals(2, pool.getIdleCount());
+        } finally {
+            pool.cleanup();
+        }
+    }
+
+    /**
+     * Test of the extract, health and metrics requests, of class AbbreviationServer.
+     */
+    @Test
+    public void testExtract() throws Exception {
+        System.out.println("extract");
+        ExtractorPool pool = new ExtractorPool(1, getSettings());
+        AbbreviationServer server = new AbbreviationServer(pool);
+        server.start(0);
+        try {
+            String[] response = post(server, "/extract", "{\"id\": \"doc1\", \"text\": " + Json.quote(TEXT) + ", \"sentences\": [[0, " + TEXT.length() + "]]}");
+            assertEquals("200", response[0]);
+            Map<?, ?> doc = (Map<?, ?>) Json.parse(response[1]);
+            assertEquals("doc1", doc.get("id"));
+            List<?> found = (List<?>) doc.get("pairs");
+            assertEquals(1, found.size());
+            Map<?, ?> pair = (Map<?, ?>) found.get(0);
+            assertEquals("WAS", pair.get("shortForm"));
+            assertEquals("Wiskott-Aldrich syndrome", pair.get("longForm"));
+            assertEquals(26, ((Number) pair.get("shortStart")).intValue());
+            assertEquals(0, ((Number) pair.get("longStart")).intValue());
+
+            // A batch, with one document left to the sentence splitter
+            response = post(server, "/extract", "{\"documents\": [{\"id\": \"d1\", \"text\": " + Json.quote(TEXT) + "}, {\"id\": \"d2\", \"text\": \"No pairs here.\", \"sentences\": [[0, 14]]}]}");
+            assertEquals("200", response[0]);
+            List<?> docs = (List<?>) ((Map<?, ?>) Json.parse(response[1])).get("documents");
+            assertEquals(2, docs.size());
+            assertEquals(1, ((List<?>) ((Map<?, ?>) docs.get(0)).get("pairs")).size());
+            assertEquals("d2", ((Map<?, ?>) docs.get(1)).get("id"));
+            assertEquals(0, ((List<?>) ((Map<?, ?>) docs.get(1)).get("pairs")).size());
+
+            response = get(server, "/health");
+            assertEquals("200", response[0]);
+            assertEquals(1, ((Number) ((Map<?, ?>) Json.parse(response[1])).get("idle")).intValue());
+            response = get(server, "/metrics");
+            Map<?, ?> metrics = (Map<?, ?>) Json.parse(response[1]);
+            assertEquals(3, ((Number) metrics.get("documents")).intValue());
+            assertEquals(2, ((Number) metrics.get("pairs")).intValue());
+            assertEquals(0, ((Number) metrics.get("errors")).intValue());
+        } finally {
+            server.stop();
+            pool.cleanup();
+        }
+    }
+
+    /**
+     * Test of bad requests, of class AbbreviationServer.
+     */
+    @Test
+    public void testBadRequest() throws Exception {
+        System.out.println("badRequest");
+        ExtractorPool pool = new ExtractorPool(1, getSettings());
+        AbbreviationServer server = new AbbreviationServer(pool);
+        server.start(0);
+        try {
+            String[] bad = {
+                "{\"text\": " + Json.quote(TEXT) + ", \"sentences\": [[0, " + (TEXT.length() + 1) + "]]}",
+                "{\"text\": " + Json.quote(TEXT) + ", \"sentences\": [[-1, 10]]}",
+                "{\"text\": " + Json.quote(TEXT) + ", \"sentences\": [[20, 10]]}",
+                "{\"text\": " + Json.quote(TEXT) + ", \"sentences\": [[0]]}",
+                "{\"text\": " + Json.quote(TEXT) + ", \"sentences\": [[\"0\", 10]]}",
+                "{\"documents\": [{\"text\": " + Json.quote(TEXT) + "}, {\"text\": \"Short.\", \"sentences\": [[0, 7]]}]}",
+                "{\"id\": \"doc1\"}",
+                "[1, 2]"
+            };
+            for (String body : bad) {
+                String[] response = post(server, "/extract", body);
+                assertEquals(body, "400", response[0]);
+                assertTrue(((Map<?, ?>) Json.parse(response[1])).get("error") instanceof String);
+            }
+            assertEquals("405", get(server, "/extract")[0]);
+
+            // The extractor is back in the pool and still works
+            assertEquals(1, pool.getIdleCount());
+            String[] response = post(server, "/extract", "{\"text\": " + Json.quote(TEXT) + ", \"sentences\": [[0, " + TEXT.length() + "]]}");
+            assertEquals("200", response[0]);
+            Map<?, ?> metrics = (Map<?, ?>) Json.parse(get(server, "/metrics")[1]);
+            assertEquals(bad.length, ((Number) metrics.get("errors")).intValue());
+        } finally {
+            server.stop();
+            pool.cleanup();
+        }
+    }
+
+    /**
+     * @return the response status and body
+     */
+    private static String[] post(AbbreviationServer server, String path, String body) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+        conn.setRequestMethod("POST");
+        conn.setDoOutput(true);
+        OutputStream out = conn.getOutputStream();
+        out.write(body.getBytes("UTF-8"));
+        out.close();
+        return read(conn);
+    }
+
+    private static String[] get(AbbreviationServer server, String path) throws IOException {
+        HttpURLConnection conn = (HttpURLConnection) new URL("http://127.0.0.1:" + server.getPort() + path).openConnection();
+        return read(conn);
+    }
+
+    private static String[] read(HttpURLConnection conn) throws IOException {
+        int status = conn.getResponseCode();
+        InputStream in = (status < 400) ? conn.getInputStream() : conn.getErrorStream();
+        ByteArrayOutputStream body = new ByteArrayOutputStream();
+        byte[] buf = new byte[8192];
+        int n;
+        while ((n = in.read(buf)) > 0) {
+            body.write(buf, 0, n);
+        }
+        in.close();
+        conn.disconnect();
+        return new String[]{String.valueOf(status), body.toString("UTF-8")};
+    }
+}
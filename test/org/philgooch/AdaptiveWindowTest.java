@@ -0,0 +1,119 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import java.net.URL;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author philipgooch
+ */
+public class AdaptiveWindowTest {
+
+    private static final String[] SENTENCES = {
+        "Wiskott-Aldrich syndrome (WAS) is an X-linked recessive disorder.",
+        "The abdominal aortic aneurysm (AAA) was repaired last year, and the AAA remains stable.",
+        "We measured tumor necrosis factor alpha (TNF-alpha) and interleukin 6 (IL-6) levels in serum.",
+        "Magnetic fields used in the imaging of the whole brain and spine by resonance (MRI) are strong.",
+        "A solution of sulfoquinovosyl diacylglycerol (SQDG) was used.",
+        "Patients with chronic obstructive pulmonary disease [COPD] were admitted (n = 12).",
+        "The values (p < 0.05) and the ratio (PR, Kaplan) were noted for the protein receptor (PR).",
+        "Nothing to find here.",
+        "Long inner text follows the term (Term with a very long bracketed explanation here) and more.",
+    };
+
+    public AdaptiveWindowTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of needsWiderWindow method, of class CandidateScanner.
+     */
+    @Test
+    public void testNeedsWiderWindow() {
+        System.out.println("needsWiderWindow");
+        String text = "Magnetic fields used in the imaging of the whole brain and spine by resonance (MRI) are strong.";
+        // "Magnetic" is 14 words back
+        assertTrue(CandidateScanner.needsWiderWindow(text, 3, 10, 15, 10));
+        assertFalse(CandidateScanner.needsWiderWindow(text, 3, 10, 10, 10));
+        assertFalse(CandidateScanner.needsWiderWindow(text, 14, 10, 15, 10));
+        // The chain of words stops at the comma, apart from a single character word before it
+        assertFalse(CandidateScanner.needsWiderWindow("Many more words, so far back of the receptor (MR)", 3, 10, 10, 10));
+        assertTrue(CandidateScanner.needsWiderWindow("Many more words m, so far back of the receptor (MR)", 3, 10, 10, 10));
+        // Inner runs longer than the tight window
+        assertTrue(CandidateScanner.needsWiderWindow("the term (Term with a long inner)", 10, 2, 10, 10));
+        assertFalse(CandidateScanner.needsWiderWindow("the term (Term with a long inner)", 10, 7, 10, 10));
+        assertFalse(CandidateScanner.needsWiderWindow("No brackets at all", 1, 1, 10, 10));
+    }
+
+    /**
+     * Test of scan method, of class AdaptiveWindow.
+     */
+    @Test
+    public void testScan() throws Exception {
+        System.out.println("scan");
+        URL configURL = getClass().getResource("../../resources/config.txt");
+        ExpanderConfig config = new ExpanderConfig(configURL);
+        assertFalse(config.load());
+        assertTrue(CandidateScanner.isStockPattern(config));
+        CandidateScanner wide = new CandidateScanner(config, 15, 10);
+
+        AdaptiveWindow window = new AdaptiveWindow(2, 0.5f);
+        assertNull(window.getTightWindow());
+        for (int pass = 0; pass < 2; pass++) {
+            for (String sentence : SENTENCES) {
+                for (boolean useBidirectionMatch : new boolean[] {false, true}) {
+                    List<Candidate> expected = wide.scan(sentence, useBidirectionMatch);
+                    List<Candidate> candidates = window.scan(wide, sentence, useBidirectionMatch);
+                    assertEquals(sentence, toString(expected), toString(candidates));
+                    if (pass == 0 && !useBidirectionMatch) {
+                        for (Candidate candidate : expected) {
+                            window.record(candidate);
+                        }
+                    }
+                }
+            }
+        }
+        int[] tight = window.getTightWindow();
+        assertNotNull(tight);
+        assertTrue(tight[0] < 15);
+        assertTrue(window.getNumScanned() > 0);
+        assertTrue(window.getNumWidened() > 0);
+        assertTrue(window.getNumWidened() < window.getNumScanned());
+        assertEquals(3, AdaptiveWindow.countWords("Wiskott-Aldrich syndrome "));
+    }
+
+    private static String toString(List<Candidate> candidates) {
+        StringBuilder sb = new StringBuilder();
+        for (Candidate candidate : candidates) {
+            sb.append(candidate.getOuter()).append(" | ").append(candidate.getInner()).append(" | ").append(candidate.getStart()).append('-').append(candidate.getEnd())
+                    .append(candidate.isSecondPass() ? " bidirectional" : "").append('\n');
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,204 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import gate.*;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryPoolMXBean;
+import java.lang.management.MemoryType;
+import java.util.ArrayList;
+import java.util.Arrays;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Assume;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ * Allocation and heap budgets for execute() on large synthetic documents with dense abbreviations.
+ * Document sizes in characters are set with -Dbadrex.test.docSizes=1000000,10000000,50000000
+ * (default 1000000), and the budgets with the badrex.test.max* properties below.
+ *
+ * @author philipgooch
+ */
+public class AllocationBudgetTest {
+
+    // Budgets are about 1.5 times what execute() used on the default 1 MB document when they were set;
+    // raise them deliberately if a change needs more memory
+    // Bytes allocated by execute() per character of document text, and per sentence
+    private static final double MAX_ALLOCATED_PER_CHAR = Double.parseDouble(System.getProperty("badrex.test.maxAllocatedPerChar", "450"));
+    private static final double MAX_ALLOCATED_PER_SENTENCE = Double.parseDouble(System.getProperty("badrex.test.maxAllocatedPerSentence", "30000"));
+    // Heap retained after execute(), i.e. the annotations added, and peak heap during execute(), per character of document text
+    private static final double MAX_RETAINED_PER_CHAR = Double.parseDouble(System.getProperty("badrex.test.maxRetainedPerChar", "25"));
+    private static final double MAX_PEAK_PER_CHAR = Double.parseDouble(System.getProperty("badrex.test.maxPeakPerChar", "100"));
+
+    private static final String[] DEFINITIONS = {
+        "Patients with chronic obstructive pulmonary disease (COPD) were enrolled in group %d.",
+        "All underwent magnetic resonance imaging (MRI) and computed tomography (CT) at visit %d.",
+        "Serum alanine aminotransferase (ALT) was raised in %d cases.",
+        "Wiskott-Aldrich syndrome (WAS) is an X-linked recessive disorder seen in %d families.",
+        "The abdominal aortic aneurysm (AAA) screening programme reached %d sites.",
+        "Tumor necrosis factor alpha (TNF-alpha) levels fell after %d weeks."
+    };
+    private static final String[] MENTIONS = {
+        "Follow-up of COPD and ALT continued for %d months without change.",
+        "A repeat MRI was compared with the CT from day %d.",
+        "No further AAA or WAS cases were reported in cohort %d.",
+        "TNF-alpha was measured again at %d hours."
+    };
+
+    private com.sun.management.ThreadMXBean threadBean;
+
+    public AllocationBudgetTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        if (!Gate.isInitialised()) {
+            Gate.init();
+        }
+        Gate.getCreoleRegister().registerDirectories(new File(Gate.getPluginsHome(), "ANNIE").toURI().toURL());
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+        java.lang.management.ThreadMXBean bean = ManagementFactory.getThreadMXBean();
+        Assume.assumeTrue(bean instanceof com.sun.management.ThreadMXBean);
+        threadBean = (com.sun.management.ThreadMXBean) bean;
+        Assume.assumeTrue(threadBean.isThreadAllocatedMemorySupported());
+        threadBean.setThreadAllocatedMemoryEnabled(true);
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Build a document of about size characters from alternating sections of definitions and mentions,
+     * with a Sentence annotation on each sentence
+     */
+    private Document createDocument(int size) throws Exception {
+        StringBuilder sb = new StringBuilder(size + 200);
+        ArrayList<long[]> sentences = new ArrayList<long[]>();
+        int n = 0;
+        while (sb.length() < size) {
+            String[] templates = (n / 12) % 2 == 0 ? DEFINITIONS : MENTIONS;
+            String sentence = String.format(templates[n % templates.length], n);
+            sentences.add(new long[]{sb.length(), sb.length() + sentence.length()});
+            sb.append(sentence).append(' ');
+            n++;
+        }
+        Document doc = Factory.newDocument(sb.toString());
+        AnnotationSet inputAS = doc.getAnnotations();
+        for (long[] sentence : sentences) {
+            inputAS.add(sentence[0], sentence[1], "Sentence", Factory.newFeatureMap());
+        }
+        return doc;
+    }
+
+    private BiomedicalAbbreviationExpander createExpander() throws Exception {
+        BiomedicalAbbreviationExpander badrex = new BiomedicalAbbreviationExpander();
+        badrex.setConfigFileURL(getClass().getResource("../../resources/config.txt"));
+        badrex.setGazetteerListsURL(getClass().getResource("../../resources/lookup/abbrevs.def"));
+        badrex.setExpandAllShortFormInstances(Boolean.TRUE);
+        badrex.setLongType("Long");
+        badrex.setLongTypeFeature("longForm");
+        badrex.setMaxInner(10);
+        badrex.setMaxOuter(10);
+        badrex.setSentenceType("Sentence");
+        badrex.setShortType("Short");
+        badrex.setShortTypeFeature("shortForm");
+        badrex.setSwapShortest(Boolean.TRUE);
+        badrex.setThreshold(0.8f);
+        badrex.setUseBidirectionMatch(Boolean.TRUE);
+        badrex.setUseLookups(Boolean.FALSE);
+        badrex.setUnderlyingAnnots(new ArrayList<String>(Arrays.asList("AnatomicalSite", "DiseaseOrSyndrome", "Procedure", "Test")));
+        badrex.init();
+        return badrex;
+    }
+
+    private static long usedHeap() {
+        System.gc();
+        System.gc();
+        Runtime rt = Runtime.getRuntime();
+        return rt.totalMemory() - rt.freeMemory();
+    }
+
+    private static long peakHeap() {
+        long peak = 0;
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP && pool.getPeakUsage() != null) {
+                peak += pool.getPeakUsage().getUsed();
+            }
+        }
+        return peak;
+    }
+
+    private static void resetPeakHeap() {
+        for (MemoryPoolMXBean pool : ManagementFactory.getMemoryPoolMXBeans()) {
+            if (pool.getType() == MemoryType.HEAP) {
+                pool.resetPeakUsage();
+            }
+        }
+    }
+
+    /**
+     * Test of allocation and heap use of execute method, of class BiomedicalAbbreviationExpander.
+     */
+    @Test
+    public void testExecuteBudget() throws Exception {
+        System.out.println("executeBudget");
+        BiomedicalAbbreviationExpander badrex = createExpander();
+        // Warm up on a small document so that one-off class loading and pattern compilation are not counted
+        Document warmUp = createDocument(20000);
+        badrex.setDocument(warmUp);
+        badrex.execute();
+        Factory.deleteResource(warmUp);
+
+        long threadId = Thread.currentThread().getId();
+        for (String docSize : System.getProperty("badrex.test.docSizes", "1000000").split(",")) {
+            int size = Integer.parseInt(docSize.trim());
+            Document doc = createDocument(size);
+            int numChars = doc.getContent().size().intValue();
+            int numSentences = doc.getAnnotations().get("Sentence").size();
+
+            long usedBefore = usedHeap();
+            resetPeakHeap();
+            long allocatedBefore = threadBean.getThreadAllocatedBytes(threadId);
+            badrex.setDocument(doc);
+            badrex.execute();
+            long allocated = threadBean.getThreadAllocatedBytes(threadId) - allocatedBefore;
+            long peak = peakHeap() - usedBefore;
+            long retained = usedHeap() - usedBefore;
+            int numPairs = doc.getAnnotations().get("Long").size();
+
+            double allocatedPerChar = (double) allocated / numChars;
+            double allocatedPerSentence = (double) allocated / numSentences;
+            double retainedPerChar = (double) retained / numChars;
+            double peakPerChar = (double) peak / numChars;
+            System.out.println(String.format("%d chars, %d sentences, %d long forms: allocated %.1f bytes/char, %.0f bytes/sentence; retained %.1f bytes/char; peak %.1f bytes/char",
+                    numChars, numSentences, numPairs, allocatedPerChar, allocatedPerSentence, retainedPerChar, peakPerChar));
+
+            assertTrue("No pairs found", numPairs > 0);
+            assertTrue("Allocated " + allocatedPerChar + " bytes/char", allocatedPerChar <= MAX_ALLOCATED_PER_CHAR);
+            assertTrue("Allocated " + allocatedPerSentence + " bytes/sentence", allocatedPerSentence <= MAX_ALLOCATED_PER_SENTENCE);
+            assertTrue("Retained " + retainedPerChar + " bytes/char", retainedPerChar <= MAX_RETAINED_PER_CHAR);
+            assertTrue("Peak heap " + peakPerChar + " bytes/char", peakPerChar <= MAX_PEAK_PER_CHAR);
+
+            badrex.setDocument(null);
+            Factory.deleteResource(doc);
+        }
+        Factory.deleteResource(badrex);
+    }
+}
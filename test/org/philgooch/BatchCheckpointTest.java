@@ -0,0 +1,114 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import java.io.File;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author philipgooch
+ */
+public class BatchCheckpointTest {
+
+    public BatchCheckpointTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static PairStatistics stats(String doc) {
+        PairStatistics stats = new PairStatistics();
+        AbbreviationPair pair = new AbbreviationPair(doc, "WAS", "Wiskott-Aldrich syndrome", 26, 29, 0, 24, null);
+        stats.pairFound(pair);
+        stats.mentionFound(pair, 80, 83);
+        return stats;
+    }
+
+    /**
+     * Test of advance, isDone and stoppedOn methods, of class BatchCheckpoint.
+     */
+    @Test
+    public void testAdvance() {
+        System.out.println("advance");
+        BatchCheckpoint checkpoint = new BatchCheckpoint();
+        assertFalse(checkpoint.isDone("doc1"));
+        checkpoint.advance("doc1", stats("doc1"));
+        checkpoint.advance("doc2", null);
+        assertTrue(checkpoint.isDone("doc1"));
+        assertTrue(checkpoint.isDone("doc2"));
+        assertFalse(checkpoint.isDone("doc3"));
+        assertEquals(2, checkpoint.getDocuments());
+        assertEquals(1, checkpoint.getStatistics().getEntry("WAS", "Wiskott-Aldrich syndrome").getCount());
+        try {
+            checkpoint.advance("doc1", null);
+            fail("Documents must be recorded in order");
+        } catch (IllegalArgumentException ie) {
+        }
+
+        // A worker stopping once on a document is not enough to quarantine it
+        assertFalse(checkpoint.stoppedOn("doc3"));
+        assertFalse(checkpoint.isDone("doc3"));
+        assertTrue(checkpoint.stoppedOn("doc3"));
+        assertTrue(checkpoint.isDone("doc3"));
+        assertTrue(checkpoint.getQuarantined().containsKey("doc3"));
+
+        // Processing a suspect successfully clears it
+        assertFalse(checkpoint.stoppedOn("doc4"));
+        checkpoint.advance("doc4", null);
+        assertFalse(checkpoint.stoppedOn("doc5"));
+        assertEquals(1, checkpoint.getQuarantined().size());
+    }
+
+    /**
+     * Test of write and read methods, of class BatchCheckpoint.
+     */
+    @Test
+    public void testWriteRead() throws Exception {
+        System.out.println("writeRead");
+        BatchCheckpoint checkpoint = new BatchCheckpoint();
+        checkpoint.advance("dir/doc1", stats("dir/doc1"));
+        checkpoint.quarantine("dir/doc2", "java.lang.StackOverflowError\n\tat somewhere");
+        checkpoint.advance("dir/doc2", null);
+        checkpoint.advance("dir/doc3", stats("dir/doc3"));
+        checkpoint.stoppedOn("dir/doc4");
+        File file = File.createTempFile("checkpoint", ".tsv");
+        try {
+            checkpoint.write(file);
+            BatchCheckpoint result = BatchCheckpoint.read(file);
+            assertEquals(3, result.getDocuments());
+            assertEquals("dir/doc3", result.getLastDocument());
+            assertEquals("java.lang.StackOverflowError  at somewhere", result.getQuarantined().get("dir/doc2"));
+            PairStatistics.Entry entry = result.getStatistics().getEntry("WAS", "Wiskott-Aldrich syndrome");
+            assertEquals(2, entry.getCount());
+            assertEquals(2, entry.getMentions());
+            assertEquals("dir/doc1", entry.getFirstDocument());
+            // The suspect is kept across the restart
+            assertTrue(result.stoppedOn("dir/doc4"));
+        } finally {
+            file.delete();
+        }
+        assertEquals(0, BatchCheckpoint.read(file).getDocuments());
+    }
+}
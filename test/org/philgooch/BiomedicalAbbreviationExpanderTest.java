@@ -26,6 +26,7 @@ import gate.event.StatusListener;
 import java.util.regex.Pattern;
 import java.util.regex.Matcher;
 import java.util.*;
+import java.util.concurrent.CountDownLatch;
 import java.io.*;
 
 import org.junit.After;
@@ -133,4 +134,673 @@ public class BiomedicalAbbreviationExpanderTest {
    
     }
 
-}
\ No newline at end of file
+    /**
+     * Create and initialise BADREX with the settings shared by the tests below: Short and Long
+     * annotations on Sentences, a window of ten words, a threshold of 0.9 and no lookups
+     * @param expandAll     value of expandAllShortFormInstances
+     */
+    private BiomedicalAbbreviationExpander newExpander(boolean expandAll) throws Exception {
+        if (!Gate.isInitialised()) {
+            Gate.init();
+        }
+        Gate.getCreoleRegister().registerDirectories(new File(Gate.getPluginsHome(), "ANNIE").toURI().toURL());
+
+        BiomedicalAbbreviationExpander badrex = new BiomedicalAbbreviationExpander();
+        badrex.setConfigFileURL(getClass().getResource("../../resources/config.txt"));
+        badrex.setGazetteerListsURL(getClass().getResource("../../resources/lookup/abbrevs.def"));
+        badrex.setExpandAllShortFormInstances(expandAll);
+        badrex.setLongType("Long");
+        badrex.setLongTypeFeature("longForm");
+        badrex.setMaxInner(10);
+        badrex.setMaxOuter(10);
+        badrex.setSentenceType("Sentence");
+        badrex.setShortType("Short");
+        badrex.setShortTypeFeature("shortForm");
+        badrex.setSwapShortest(Boolean.TRUE);
+        badrex.setThreshold(0.9f);
+        badrex.setUseBidirectionMatch(Boolean.FALSE);
+        badrex.setUseLookups(Boolean.FALSE);
+        badrex.init();
+        return badrex;
+    }
+
+    /**
+     * Run BADREX with expandAllShortFormInstances over text split into sentences, with a Section annotation ending at sectionEnd
+     */
+    private AnnotationSet expandMentions(String text, long sectionEnd, String scopeType, int scopeSentences) throws Exception {
+        BiomedicalAbbreviationExpander badrex = newExpander(true);
+        badrex.setScopeType(scopeType);
+        badrex.setScopeSentences(scopeSentences);
+
+        Document d = newDocument(text);
+        d.getAnnotations().add(0L, sectionEnd, "Section", Factory.newFeatureMap());
+        d.getAnnotations().add(sectionEnd, (long) text.length(), "Section", Factory.newFeatureMap());
+
+        badrex.setDocument(d);
+        badrex.execute();
+        AnnotationSet result = d.getAnnotations().get("Short");
+        Factory.deleteResource(badrex);
+        return result;
+    }
+
+    /**
+     * Test of scopeType and scopeSentences parameters, of class BiomedicalAbbreviationExpander.
+     */
+    @Test
+    public void testScope() throws Exception {
+        System.out.println("scope");
+        String section1 = "Magnetic resonance imaging (MRI) was performed. The MRI was normal. ";
+        String section2 = "Results were discussed. A repeat MRI was arranged.";
+        String text = section1 + section2;
+        long lastMention = text.lastIndexOf("MRI");
+
+        // No scoping - the short form in the definition and both later mentions
+        AnnotationSet mentions = expandMentions(text, section1.length(), null, 0);
+        assertEquals(3, mentions.size());
+        assertFalse(mentions.get(lastMention).isEmpty());
+
+        // Definition only applies within its section
+        mentions = expandMentions(text, section1.length(), "Section", 0);
+        assertEquals(2, mentions.size());
+        assertTrue(mentions.get(lastMention).isEmpty());
+
+        // Definition expires two sentences after its last mention
+        mentions = expandMentions(text, section1.length(), null, 1);
+        assertEquals(2, mentions.size());
+        mentions = expandMentions(text, section1.length(), null, 2);
+        assertEquals(3, mentions.size());
+    }
+
+    /**
+     * Test of useKnownPairs parameter, of class BiomedicalAbbreviationExpander.
+     */
+    @Test
+    public void testKnownPairs() throws Exception {
+        System.out.println("knownPairs");
+        BiomedicalAbbreviationExpander badrex = newExpander(false);
+        badrex.setUnderlyingAnnots(new ArrayList<String>(Arrays.asList("Test")));
+
+        String text = "On admission the patient was aware and oriented (A&O) and afebrile.";
+        for (boolean known : new boolean[]{false, true}) {
+            Document d = newDocument(text);
+            PairCollector collector = new PairCollector();
+            ExpanderParameters params = badrex.getParameters();
+            params.setUseKnownPairs(known);
+            params.setPairSink(collector);
+            badrex.execute(d, params);
+
+            assertEquals(1, collector.getPairs().size());
+            AbbreviationPair pair = collector.getPairs().get(0);
+            assertEquals("A&O", pair.getShortForm());
+            if (known) {
+                // Known pairs take the long form and the category of their list, without running the lookups
+                assertEquals("aware and oriented", pair.getLongForm());
+                assertEquals("Test", pair.getSemanticType());
+                assertEquals(2, d.getAnnotations().get("Test").size());
+            } else {
+                // The alignment check alone overshoots the start of the long form
+                assertEquals("admission the patient was aware and oriented", pair.getLongForm());
+                assertNull(pair.getSemanticType());
+                assertEquals(1, d.getAnnotations().get("Long").size());
+            }
+            Factory.deleteResource(d);
+        }
+        Factory.deleteResource(badrex);
+    }
+
+    /**
+     * Test of lookupMode TARGETED, which must give pairs the same semantic types as FULL where list entries touch digits.
+     */
+    @Test
+    public void testTargetedLookupParity() throws Exception {
+        System.out.println("targetedLookupParity");
+        File dir = File.createTempFile("lookup", "");
+        dir.delete();
+        dir.mkdirs();
+        File def = new File(dir, "abbrevs.def");
+        File list = new File(dir, "disease_abbrevs.lst");
+        try {
+            Writer out = new OutputStreamWriter(new FileOutputStream(def), "UTF-8");
+            out.write("disease_abbrevs.lst:abbrevs:disease:en:DiseaseOrSyndrome\n");
+            out.close();
+            out = new OutputStreamWriter(new FileOutputStream(list), "UTF-8");
+            out.write("CD;term=Crohn's disease\nIL;term=ileitis\n");
+            out.close();
+
+            BiomedicalAbbreviationExpander badrex = newExpander(false);
+            badrex.setGazetteerListsURL(def.toURI().toURL());
+            badrex.setUnderlyingAnnots(new ArrayList<String>(Arrays.asList("DiseaseOrSyndrome")));
+            badrex.setUseLookups(Boolean.TRUE);
+            badrex.init();
+
+            String text = "non-small CD3 Expressing T Cell Counts (CD-3s), and by which. "
+                    + "Serum interleukin two levels (IL2) rose. Many 3CD positive cells (3CD) were seen.";
+            List<String> expected = null;
+            for (LookupMode mode : new LookupMode[] {LookupMode.FULL, LookupMode.TARGETED}) {
+                Document d = newDocument(text);
+                PairCollector collector = new PairCollector();
+                ExpanderParameters params = badrex.getParameters();
+                params.setLookupMode(mode);
+                params.setPairSink(collector);
+                badrex.execute(d, params);
+
+                List<String> result = new ArrayList<String>();
+                for (AbbreviationPair pair : collector.getPairs()) {
+                    result.add(pair.getShortForm() + " " + pair.getShortStart() + " " + pair.getLongForm() + " " + pair.getLongStart() + " " + pair.getSemanticType());
+                }
+                for (Annotation ann : gate.Utils.inDocumentOrder(d.getAnnotations().get(new HashSet<String>(Arrays.asList("Short", "Long", "DiseaseOrSyndrome"))))) {
+                    if (ann.getFeatures().containsKey("longForm") || ann.getFeatures().containsKey("shortForm")) {
+                        result.add(ann.getType() + " " + ann.getStartNode().getOffset() + "-" + ann.getEndNode().getOffset());
+                    }
+                }
+                if (expected == null) {
+                    expected = result;
+                    assertEquals(3, collector.getPairs().size());
+                    assertEquals("DiseaseOrSyndrome", collector.getPairs().get(0).getSemanticType());
+                } else {
+                    assertEquals(expected, result);
+                }
+                Factory.deleteResource(d);
+            }
+            Factory.deleteResource(badrex);
+        } finally {
+            def.delete();
+            list.delete();
+            dir.delete();
+        }
+    }
+
+    /**
+     * Test of mentionMode COMPACT, of class BiomedicalAbbreviationExpander.
+     */
+    @Test
+    public void testCompactMentions() throws Exception {
+        System.out.println("compactMentions");
+        BiomedicalAbbreviationExpander badrex = newExpander(true);
+
+        String text = "Magnetic resonance imaging (MRI) was performed. The MRI was normal. A repeat MRI was arranged.";
+        Document d = newDocument(text);
+
+        ExpanderParameters params = badrex.getParameters();
+        params.setMentionMode(MentionMode.COMPACT);
+        badrex.execute(d, params);
+
+        // Only the short form in the definition is annotated
+        assertEquals(1, d.getAnnotations().get("Short").size());
+        AnnotationSet termAS = d.getAnnotations().get("Long");
+        assertEquals(1, termAS.size());
+        Object value = termAS.iterator().next().getFeatures().get(BiomedicalAbbreviationExpander.MENTIONS_FEATURE);
+        assertTrue(value instanceof String);
+
+        MentionOffsets mentions = new MentionOffsets((String) value);
+        assertEquals(2, mentions.size());
+        int second = text.indexOf("MRI", text.indexOf("MRI)") + 1);
+        int third = text.lastIndexOf("MRI");
+        assertEquals(second, mentions.getStart(0));
+        assertEquals(second + 3, mentions.getEnd(0));
+        assertEquals(third, mentions.getStart(1));
+        assertEquals(third + 3, mentions.getEnd(1));
+        assertEquals(value, mentions.toString());
+        assertEquals(mentions, new MentionOffsets(mentions.toString()));
+
+        // The feature is a plain string, so the document still serialises
+        assertTrue(d.toXml().contains((String) value));
+        Factory.deleteResource(d);
+        Factory.deleteResource(badrex);
+    }
+
+    /**
+     * Test of execute(Document, Map) with precision and recall profiles, against separate calls.
+     */
+    @Test
+    public void testProfiles() throws Exception {
+        System.out.println("profiles");
+        BiomedicalAbbreviationExpander badrex = newExpander(true);
+
+        String text = "Magnetic resonance imaging (MRI) was performed. "
+                + "Levels of the tumour necrosis factor alpha (TNFa) were raised. "
+                + "The patient was given low molecular weight heparin (LMWH) daily. "
+                + "There was a history of chronic obstructive pulmonary disease of the lung (COPDL). "
+                + "A repeat MRI showed the lesion had resolved.";
+        Map<String, ExpanderParameters> profiles = ExpanderParameters.parseProfiles(
+                "precision: maxInner=5, maxOuter=5, threshold=1.0; recall: maxInner=10, maxOuter=10, threshold=0.75", badrex.getParameters());
+        PairCollector precisionPairs = new PairCollector();
+        PairCollector recallPairs = new PairCollector();
+        profiles.get("precision").setPairSink(precisionPairs);
+        profiles.get("recall").setPairSink(recallPairs);
+
+        Document d = newDocument(text);
+        badrex.execute(d, profiles);
+
+        // Each profile has its own output set and sink, and gives the same pairs as a separate call
+        assertTrue(d.getAnnotations().get("Long").isEmpty());
+        for (Map.Entry<String, ExpanderParameters> profile : profiles.entrySet()) {
+            String name = profile.getKey();
+            AnnotationSet profileAS = d.getAnnotations(name);
+            assertFalse(profileAS.isEmpty());
+            for (Annotation ann : profileAS) {
+                assertEquals(name, ann.getFeatures().get(BiomedicalAbbreviationExpander.PROFILE_FEATURE));
+            }
+
+            ExpanderParameters params = profile.getValue().clone();
+            params.setOutputASName(name);
+            PairCollector separatePairs = new PairCollector();
+            params.setPairSink(separatePairs);
+            Document separate = newDocument(text);
+            badrex.execute(separate, params);
+            assertEquals(spans(separate.getAnnotations(name)), spans(profileAS));
+            PairCollector pairs = name.equals("precision") ? precisionPairs : recallPairs;
+            assertEquals(separatePairs.getPairs().toString(), pairs.getPairs().toString());
+            Factory.deleteResource(separate);
+        }
+        // Only the recall profile has a window wide enough for the last pair
+        assertEquals(3, precisionPairs.getPairs().size());
+        assertEquals(4, recallPairs.getPairs().size());
+
+        // Profiles that do not share the input set are refused
+        profiles.get("recall").setInputASName("Other");
+        try {
+            badrex.execute(d, profiles);
+            fail("Profiles with different input sets were accepted");
+        } catch (ExecutionException ee) {
+            // expected
+        }
+        Factory.deleteResource(d);
+        Factory.deleteResource(badrex);
+    }
+
+    /**
+     * Test of tokenType parameter, of class BiomedicalAbbreviationExpander.
+     */
+    @Test
+    public void testTokenType() throws Exception {
+        System.out.println("tokenType");
+        BiomedicalAbbreviationExpander badrex = newExpander(false);
+        badrex.setMaxInner(5);
+        badrex.setMaxOuter(5);
+        badrex.setUseBidirectionMatch(Boolean.TRUE);
+
+        String text = "Patients with Wiskott-Aldrich syndrome (WAS) were scanned by magnetic resonance imaging (MRI). "
+                + "Levels of the human homologue of yeast (hY) protein and of tumor necrosis factor alpha (TNF-alpha) were raised.";
+        List<String> expected = new ArrayList<String>();
+        for (int run = 0; run < 3; run++) {
+            Document d = newDocument(text);
+            if (run > 0) {
+                badrex.setTokenType("Token");
+            }
+            if (run == 1) {
+                // Words, numbers and punctuation, as an upstream tokeniser would give
+                Matcher m = Pattern.compile("\\p{L}+|\\p{N}+|[^\\p{L}\\p{N}\\s]").matcher(text);
+                while (m.find()) {
+                    d.getAnnotations().add((long) m.start(), (long) m.end(), "Token", Factory.newFeatureMap());
+                }
+            }
+            badrex.setDocument(d);
+            badrex.execute();
+            List<String> pairs = new ArrayList<String>();
+            for (Annotation shortForm : gate.Utils.inDocumentOrder(d.getAnnotations().get("Short"))) {
+                pairs.add(gate.Utils.stringFor(d, shortForm) + "=" + shortForm.getFeatures().get("longForm"));
+            }
+            if (run == 0) {
+                expected = pairs;
+                assertEquals(4, pairs.size());
+                assertTrue(pairs.contains("hY=human homologue of yeast"));
+            } else {
+                // With the tokens, and falling back to regular expressions without them
+                assertEquals(expected, pairs);
+            }
+            Factory.deleteResource(d);
+        }
+        Factory.deleteResource(badrex);
+    }
+
+    /**
+     * Test of tokenType with sentenceCacheSize set: a sentence tokenised differently must not reuse cached matches.
+     */
+    @Test
+    public void testTokenTypeCache() throws Exception {
+        System.out.println("tokenTypeCache");
+        BiomedicalAbbreviationExpander badrex = newExpander(false);
+        badrex.setMaxOuter(3);
+        badrex.setTokenType("Token");
+        badrex.setSentenceCacheSize(10);
+
+        String text = "Patients were scanned by magnetic resonance imaging (MRI).";
+        int[] expected = {1, 0};
+        for (int run = 0; run < 2; run++) {
+            Document d = newDocument(text);
+            // Words, then single characters, which leave the three token window short of the long form
+            Matcher m = Pattern.compile((run == 0) ? "\\p{L}+|[^\\p{L}\\s]" : "\\S").matcher(text);
+            while (m.find()) {
+                d.getAnnotations().add((long) m.start(), (long) m.end(), "Token", Factory.newFeatureMap());
+            }
+            badrex.setDocument(d);
+            badrex.execute();
+            assertEquals(expected[run], d.getAnnotations().get("Short").size());
+            Factory.deleteResource(d);
+        }
+        Factory.deleteResource(badrex);
+    }
+
+    /**
+     * Test of executeBatch method, of class BiomedicalAbbreviationExpander.
+     */
+    @Test
+    public void testExecuteBatch() throws Exception {
+        System.out.println("executeBatch");
+        BiomedicalAbbreviationExpander badrex = newExpander(true);
+        badrex.setThreshold(0.8f);
+        badrex.setUseLookups(Boolean.TRUE);
+        badrex.setLookupMode(LookupMode.FULL);
+        badrex.setUnderlyingAnnots(new ArrayList<String>(Arrays.asList("Test")));
+
+        // Lookups at the start and end of each text must be found as if the texts were run separately
+        String[] texts = {
+            "A&O on arrival, then abdominal aortic aneurysm (AAA) screening.",
+            "Magnetic resonance imaging (MRI) was performed. A repeat MRI was normal.",
+            "No abbreviations here.",
+            "The patient had chronic obstructive pulmonary disease (COPD) and was A&O"
+        };
+        List<Document> batch = new ArrayList<Document>();
+        List<PairCollector> collectors = new ArrayList<PairCollector>();
+        for (String text : texts) {
+            batch.add(newDocument(text));
+            collectors.add(new PairCollector());
+        }
+        ExpanderParameters params = badrex.getParameters();
+        badrex.executeBatch(batch, params, collectors);
+
+        for (int i = 0; i < texts.length; i++) {
+            Document separate = newDocument(texts[i]);
+            PairCollector separatePairs = new PairCollector();
+            params.setPairSink(separatePairs);
+            badrex.execute(separate, params);
+            assertEquals(spans(separate.getAnnotations()), spans(batch.get(i).getAnnotations()));
+            assertEquals(separatePairs.getPairs().toString(), collectors.get(i).getPairs().toString());
+            Factory.deleteResource(separate);
+        }
+        assertEquals(1, collectors.get(0).getPairs().size());
+        assertEquals(1, batch.get(0).getAnnotations().get("Test").size());
+        assertEquals(1, batch.get(3).getAnnotations().get("Test").size());
+        assertTrue(collectors.get(2).getPairs().isEmpty());
+
+        // One sink is needed for each document
+        try {
+            badrex.executeBatch(batch, params, collectors.subList(0, 2));
+            fail("Too few pair sinks were accepted");
+        } catch (ExecutionException ee) {
+            // expected
+        }
+        for (Document d : batch) {
+            Factory.deleteResource(d);
+        }
+        Factory.deleteResource(badrex);
+    }
+
+    private static Document newDocument(String text) throws Exception {
+        Document d = Factory.newDocument(text);
+        LanguageAnalyser sentenceSplitter = (LanguageAnalyser) Factory.createResource("gate.creole.splitter.RegexSentenceSplitter");
+        sentenceSplitter.setDocument(d);
+        sentenceSplitter.execute();
+        Factory.deleteResource(sentenceSplitter);
+        return d;
+    }
+
+    private static List<String> spans(AnnotationSet annots) {
+        List<String> spans = new ArrayList<String>();
+        for (Annotation ann : gate.Utils.inDocumentOrder(annots)) {
+            spans.add(ann.getType() + " " + ann.getStartNode().getOffset() + "-" + ann.getEndNode().getOffset());
+        }
+        return spans;
+    }
+
+    /**
+     * Test of execute(Document, ExpanderParameters) called from several threads on one instance.
+     */
+    @Test
+    public void testConcurrentExecute() throws Exception {
+        System.out.println("concurrentExecute");
+        final BiomedicalAbbreviationExpander badrex = newExpander(true);
+
+        // A one word window cannot reach the long form, so alternate calls find nothing
+        String text = "Magnetic resonance imaging (MRI) was performed. The MRI was normal.";
+        int numDocs = 16;
+        final List<Document> docs = new ArrayList<Document>();
+        for (int i = 0; i < numDocs; i++) {
+            Document d = newDocument(text);
+            d.setName("doc" + i);
+            docs.add(d);
+        }
+
+        final PairCollector[] collectors = new PairCollector[numDocs];
+        final Throwable[] failures = new Throwable[numDocs];
+        Thread[] threads = new Thread[numDocs];
+        for (int i = 0; i < numDocs; i++) {
+            final int n = i;
+            collectors[n] = new PairCollector();
+            threads[n] = new Thread() {
+
+                @Override
+                public void run() {
+                    ExpanderParameters params = badrex.getParameters();
+                    params.setMaxOuter((n % 2 == 0) ? 10 : 1);
+                    params.setPairSink(collectors[n]);
+                    try {
+                        badrex.execute(docs.get(n), params);
+                    } catch (Throwable t) {
+                        failures[n] = t;
+                    }
+                }
+            };
+            threads[n].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < numDocs; i++) {
+            assertNull(failures[i]);
+            List<AbbreviationPair> pairs = collectors[i].getPairs();
+            if (i % 2 == 0) {
+                assertEquals(1, pairs.size());
+                assertEquals("MRI", pairs.get(0).getShortForm());
+                assertEquals("doc" + i, pairs.get(0).getDocumentId());
+                assertEquals(1, collectors[i].getMentions(pairs.get(0)).size());
+                assertEquals(2, docs.get(i).getAnnotations().get("Short").size());
+            } else {
+                assertTrue(pairs.isEmpty());
+            }
+            Factory.deleteResource(docs.get(i));
+        }
+        // The instance's own parameters are unchanged
+        assertEquals(Integer.valueOf(10), badrex.getMaxOuter());
+        assertNull(badrex.getPairSink());
+        Factory.deleteResource(badrex);
+    }
+
+    /**
+     * Test of execute() without lookups while calls on other threads are running the gazetteer, which it must not release under them.
+     */
+    @Test
+    public void testReleaseDuringConcurrentExecute() throws Exception {
+        System.out.println("releaseDuringConcurrentExecute");
+        final BiomedicalAbbreviationExpander badrex = newExpander(false);
+        badrex.setUnderlyingAnnots(new ArrayList<String>(Arrays.asList("Test")));
+
+        String text = "The patient was A&O on arrival.";
+        int numThreads = 4;
+        final int numDocs = 5;
+        final List<List<Document>> docs = new ArrayList<List<Document>>();
+        for (int i = 0; i < numThreads; i++) {
+            List<Document> threadDocs = new ArrayList<Document>();
+            for (int j = 0; j < numDocs; j++) {
+                threadDocs.add(newDocument(text));
+            }
+            docs.add(threadDocs);
+        }
+        final Throwable[] failures = new Throwable[numThreads];
+        Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            final int n = i;
+            threads[n] = new Thread() {
+
+                @Override
+                public void run() {
+                    ExpanderParameters params = badrex.getParameters();
+                    params.setUseLookups(Boolean.TRUE);
+                    params.setLookupMode(LookupMode.FULL);
+                    params.setConcurrentLookups(n % 2 == 0);
+                    try {
+                        for (Document d : docs.get(n)) {
+                            badrex.execute(d, params);
+                        }
+                    } catch (Throwable t) {
+                        failures[n] = t;
+                    }
+                }
+            };
+            threads[n].start();
+        }
+
+        // The instance's own parameters do not use the gazetteer
+        Document own = newDocument(text);
+        badrex.setDocument(own);
+        boolean running = true;
+        while (running) {
+            badrex.execute();
+            running = false;
+            for (Thread thread : threads) {
+                running |= thread.isAlive();
+            }
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        for (int i = 0; i < numThreads; i++) {
+            assertNull(String.valueOf(failures[i]), failures[i]);
+            for (Document d : docs.get(i)) {
+                assertEquals(1, d.getAnnotations().get("Test").size());
+                Factory.deleteResource(d);
+            }
+        }
+        // Released once no other call is using it
+        badrex.execute();
+        assertNull(badrex.gazetteer);
+        Factory.deleteResource(own);
+        Factory.deleteResource(badrex);
+    }
+
+    /**
+     * Test of the concurrentLookups parameter, which must give the same annotations as running the gazetteer first.
+     */
+    @Test
+    public void testConcurrentLookups() throws Exception {
+        System.out.println("concurrentLookups");
+        BiomedicalAbbreviationExpander badrex = newExpander(true);
+        badrex.setUnderlyingAnnots(new ArrayList<String>(Arrays.asList("Test")));
+        badrex.setUseLookups(Boolean.TRUE);
+        badrex.setLookupMode(LookupMode.FULL);
+
+        String text = "The patient was A&O on arrival. Magnetic resonance imaging (MRI) was performed when A & O x3. The MRI was normal and the patient A&Ox4.";
+        for (String tokenType : new String[] {null, "Token"}) {
+            badrex.setTokenType(tokenType);
+            List<String> expected = null;
+            for (int run = 0; run < 6; run++) {
+                badrex.setConcurrentLookups(run > 0);
+                Document d = newDocument(text);
+                if (tokenType != null) {
+                    Matcher m = Pattern.compile("\\p{L}+|\\p{N}+|[^\\p{L}\\p{N}\\s]").matcher(text);
+                    while (m.find()) {
+                        d.getAnnotations().add((long) m.start(), (long) m.end(), tokenType, Factory.newFeatureMap());
+                    }
+                }
+                badrex.setDocument(d);
+                badrex.execute();
+                List<String> result = spans(d.getAnnotations());
+                for (Annotation ann : d.getAnnotations().get("Short")) {
+                    result.add(ann.getStartNode().getOffset() + " " + ann.getFeatures().get("longForm"));
+                }
+                if (expected == null) {
+                    expected = result;
+                    assertEquals(3, d.getAnnotations().get("Test").size());
+                    assertEquals(2, d.getAnnotations().get("Short").size());
+                } else {
+                    assertEquals(String.valueOf(tokenType), expected, result);
+                }
+                Factory.deleteResource(d);
+            }
+        }
+        Factory.deleteResource(badrex);
+    }
+
+    /**
+     * Test of loading the gazetteer on first use, by several calls to execute(Document, ExpanderParameters) at once.
+     */
+    @Test
+    public void testLazyGazetteer() throws Exception {
+        System.out.println("lazyGazetteer");
+        final BiomedicalAbbreviationExpander badrex = newExpander(false);
+        badrex.setUnderlyingAnnots(new ArrayList<String>(Arrays.asList("Test")));
+        // Not loaded until a call uses lookups
+        assertNull(badrex.gazetteer);
+        Document d = newDocument("The patient was A&O on arrival.");
+        badrex.setDocument(d);
+        badrex.execute();
+        assertNull(badrex.gazetteer);
+        Factory.deleteResource(d);
+
+        String gazetteerClass = "gate.creole.gazetteer.DefaultGazetteer";
+        int numGazetteers = Gate.getCreoleRegister().getPrInstances(gazetteerClass).size();
+        int numThreads = 8;
+        final List<Document> docs = new ArrayList<Document>();
+        for (int i = 0; i < numThreads; i++) {
+            docs.add(newDocument("The patient was A&O on arrival."));
+        }
+        final CountDownLatch ready = new CountDownLatch(numThreads);
+        final Object[] loaded = new Object[numThreads];
+        final Throwable[] failures = new Throwable[numThreads];
+        Thread[] threads = new Thread[numThreads];
+        for (int i = 0; i < numThreads; i++) {
+            final int n = i;
+            threads[n] = new Thread() {
+
+                @Override
+                public void run() {
+                    ExpanderParameters params = badrex.getParameters();
+                    params.setUseLookups(Boolean.TRUE);
+                    params.setLookupMode(LookupMode.FULL);
+                    params.setConcurrentLookups(n % 2 == 0);
+                    try {
+                        ready.countDown();
+                        ready.await();
+                        badrex.execute(docs.get(n), params);
+                        loaded[n] = badrex.gazetteer;
+                    } catch (Throwable t) {
+                        failures[n] = t;
+                    }
+                }
+            };
+            threads[n].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        // Every call waited for, and used, the one gazetteer loaded by the first
+        assertEquals(numGazetteers + 1, Gate.getCreoleRegister().getPrInstances(gazetteerClass).size());
+        for (int i = 0; i < numThreads; i++) {
+            assertNull(String.valueOf(failures[i]), failures[i]);
+            assertNotNull(loaded[i]);
+            assertSame(loaded[0], loaded[i]);
+            assertEquals(1, docs.get(i).getAnnotations().get("Test").size());
+            Factory.deleteResource(docs.get(i));
+        }
+        // Not created through Factory, so deleteResource() would not clean it up
+        badrex.cleanup();
+        assertNull(badrex.gazetteer);
+        assertEquals(numGazetteers, Gate.getCreoleRegister().getPrInstances(gazetteerClass).size());
+        Factory.deleteResource(badrex);
+    }
+
+}
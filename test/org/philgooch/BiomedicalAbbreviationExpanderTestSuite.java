@@ -17,7 +17,7 @@ import org.junit.runners.Suite;
  * @author philipgooch
  */
 @RunWith(Suite.class)
-@Suite.SuiteClasses({org.philgooch.ConfigReaderTest.class, org.philgooch.BiomedicalAbbreviationExpanderTest.class})
+@Suite.SuiteClasses({org.philgooch.ConfigReaderTest.class, org.philgooch.BiomedicalAbbreviationExpanderTest.class, org.philgooch.JsonTest.class, org.philgooch.LookupIndexTest.class, org.philgooch.PairWriterTest.class, org.philgooch.SentenceCacheTest.class, org.philgooch.PairStatisticsTest.class, org.philgooch.AllocationBudgetTest.class, org.philgooch.TextPrefilterTest.class, org.philgooch.BatchCheckpointTest.class, org.philgooch.KnownPairIndexTest.class, org.philgooch.ParameterSweepTest.class, org.philgooch.DataStoreRunnerTest.class, org.philgooch.PatternAnalyserTest.class, org.philgooch.MentionIndexTest.class, org.philgooch.AdaptiveWindowTest.class, org.philgooch.ShortFormDictionaryTest.class, org.philgooch.CandidateScannerTest.class, org.philgooch.AbbreviationServerTest.class, org.philgooch.ShardRunnerTest.class})
 public class BiomedicalAbbreviationExpanderTestSuite {
 
     @BeforeClass
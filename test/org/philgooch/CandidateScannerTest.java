@@ -0,0 +1,226 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author philipgooch
+ */
+public class CandidateScannerTest {
+
+    // Nested brackets, several pairs in a sentence, and pairs only the bidirectional pattern finds, before and after primary pairs
+    private static final String[] SENTENCES = {
+        "Wiskott-Aldrich syndrome (WAS) is an X-linked recessive disorder.",
+        "Magnetic resonance imaging (MRI) and computed tomography (CT) were performed.",
+        "Levels of tumor necrosis factor alpha (TNF-alpha (TNFa)) were raised.",
+        "The patients (n = 12) with chronic obstructive pulmonary disease (COPD [GOLD stage 3]) were enrolled.",
+        "Binding of the ATP-binding cassette transporter (ABC) and of the human homologue of yeast (hY) protein.",
+        "The receptor protein kinase (RPK), the ligand of cell growth (GL) and the phosphatase (PTP) were studied.",
+        "An enzyme linked immunosorbent assay (ELISA; Sigma) and gas chromatography [GC] were used.",
+        "The mean arterial pressure (MAP) fell, then the human homologue of yeast (hY) rose, then low molecular weight heparin (LMWH) was given.",
+        "Expression of the transcription factor (TF) and of the growth hormone (hormone GH) receptor.",
+        "No brackets here at all.",
+        "Unbalanced (brackets here and [there.",
+        "(Bracketed) at the start, and closing ones ) ] without openers ( [ after.",
+        ""
+    };
+
+    public CandidateScannerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of scan method, of class CandidateScanner, against the candidate loop it replaced.
+     */
+    @Test
+    public void testScan() throws Exception {
+        System.out.println("scan");
+        URL configURL = getClass().getResource("../../resources/config.txt");
+        ExpanderConfig config = new ExpanderConfig(configURL);
+        assertFalse(config.load());
+
+        int numCandidates = 0;
+        int numSecondPass = 0;
+        for (int[] window : new int[][] {{10, 10}, {5, 5}, {2, 1}}) {
+            CandidateScanner scanner = new CandidateScanner(config, window[0], window[1]);
+            for (String sentence : SENTENCES) {
+                for (boolean useBidirectionMatch : new boolean[] {false, true}) {
+                    List<String> expected = baselineScan(config, window[0], window[1], sentence, useBidirectionMatch);
+                    List<Candidate> candidates = scanner.scan(sentence, useBidirectionMatch);
+                    assertEquals(sentence + " " + Arrays.toString(window) + " " + useBidirectionMatch, expected, toStrings(candidates));
+                    numCandidates += candidates.size();
+                    for (Candidate candidate : candidates) {
+                        if (candidate.isSecondPass()) {
+                            numSecondPass++;
+                        }
+                    }
+                }
+            }
+        }
+        // The sentences exercise both patterns
+        assertTrue(numCandidates > numSecondPass);
+        assertTrue(numSecondPass > 0);
+    }
+
+    /**
+     * Test of scan method, of class CandidateScanner, with configured patterns that match without brackets.
+     */
+    @Test
+    public void testScanConfiguredPattern() throws Exception {
+        System.out.println("scanConfiguredPattern");
+        URL configURL = getClass().getResource("../../resources/config.txt");
+        ExpanderConfig config = new ExpanderConfig(configURL);
+        assertFalse(config.load());
+        assertTrue(CandidateScanner.isStockPattern(config));
+        assertTrue(CandidateScanner.isStockPattern2(config));
+
+        // The same configuration with angle brackets around the inner
+        File dir = new File(System.getProperty("java.io.tmpdir"), "badrex-config-" + System.nanoTime());
+        copy(new File(configURL.toURI()).getParentFile(), dir);
+        write(new File(dir, "regex/inner_pre.txt"), config.getInnerPre().replace("[\\(\\[]", "<"));
+        write(new File(dir, "regex/inner_post.txt"), config.getInnerPost().replace("[\\)\\]]", ">"));
+        write(new File(dir, "regex/inner_pre_2.txt"), config.getInnerPre2().replace("[\\(\\[]", "<"));
+        write(new File(dir, "regex/inner_post_2.txt"), config.getInnerPost2().replace("[\\)\\]]", ">"));
+        try {
+            ExpanderConfig angled = new ExpanderConfig(new File(dir, "config.txt").toURI().toURL());
+            assertFalse(angled.load());
+            assertFalse(CandidateScanner.isStockPattern(angled));
+            assertFalse(CandidateScanner.isStockPattern2(angled));
+
+            CandidateScanner scanner = new CandidateScanner(angled, 10, 10);
+            String sentence = "Magnetic resonance imaging <MRI> and the human homologue of yeast <hY> were used.";
+            for (boolean useBidirectionMatch : new boolean[] {false, true}) {
+                List<String> expected = baselineScan(angled, 10, 10, sentence, useBidirectionMatch);
+                assertFalse(expected.isEmpty());
+                assertEquals(expected, toStrings(scanner.scan(sentence, useBidirectionMatch)));
+            }
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        if (from.isDirectory()) {
+            to.mkdirs();
+            for (File f : from.listFiles()) {
+                copy(f, new File(to, f.getName()));
+            }
+        } else {
+            InputStream in = new FileInputStream(from);
+            OutputStream out = new FileOutputStream(to);
+            try {
+                byte[] buf = new byte[8192];
+                int n;
+                while ((n = in.read(buf)) > 0) {
+                    out.write(buf, 0, n);
+                }
+            } finally {
+                in.close();
+                out.close();
+            }
+        }
+    }
+
+    private static void write(File file, String content) throws IOException {
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write(content);
+        } finally {
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] children = file.listFiles();
+        if (children != null) {
+            for (File f : children) {
+                delete(f);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * The candidate loop as it was in BiomedicalAbbreviationExpander.execute(): with the
+     * bidirectional pattern, pattern 1 is tried again from the end of each candidate, and pattern 2
+     * only where pattern 1 finds nothing
+     */
+    private static List<String> baselineScan(ExpanderConfig config, int maxOuter, int maxInner, String sentenceContent, boolean useBidirectionMatch) {
+        int maxInnerChars = maxInner * 4;
+        int maxOuterChars = maxOuter * 4;
+        Pattern abbrevExpansionPairPattern = Pattern.compile(config.getOuterPre() + maxOuter + config.getInnerPre() + maxInnerChars + config.getInnerPost(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+        Pattern abbrevExpansionPairPattern2 = Pattern.compile(config.getOuterPre2() + maxOuterChars + config.getInnerPre2() + maxInnerChars + config.getInnerPost2(), Pattern.CASE_INSENSITIVE | Pattern.UNICODE_CASE);
+
+        List<String> candidates = new ArrayList<String>();
+        Matcher m1 = abbrevExpansionPairPattern.matcher(sentenceContent);
+        if (useBidirectionMatch) {
+            Matcher m2 = abbrevExpansionPairPattern2.matcher(sentenceContent);
+            boolean m1Found;
+            boolean m2Found;
+            int startPoint = 0;
+            do {
+                m1Found = false;
+                m2Found = false;
+                m1Found = m1.find(startPoint);
+                if (!m1Found) {
+                    m2Found = m2.find(startPoint);
+                }
+                if (m1Found) {
+                    candidates.add(toString(m1, false));
+                    startPoint = m1.end();
+                }
+                if (m2Found) {
+                    candidates.add(toString(m2, true));
+                    startPoint = m2.end();
+                }
+            } while (m1Found || m2Found);
+        } else {
+            while (m1.find()) {
+                candidates.add(toString(m1, false));
+            }
+        }
+        return candidates;
+    }
+
+    private static String toString(Matcher m, boolean secondPass) {
+        return m.start() + "-" + m.end() + " [" + m.group(1) + "] " + m.start(1) + "-" + m.end(1) + " [" + m.group(4) + "] " + m.start(4) + "-" + m.end(4) + (secondPass ? " 2" : "");
+    }
+
+    private static List<String> toStrings(List<Candidate> candidates) {
+        List<String> strings = new ArrayList<String>();
+        for (Candidate c : candidates) {
+            strings.add(c.getStart() + "-" + c.getEnd() + " [" + c.getOuter() + "] " + c.getOuterStart() + "-" + c.getOuterEnd() + " [" + c.getInner() + "] " + c.getInnerStart() + "-" + c.getInnerEnd() + (c.isSecondPass() ? " 2" : ""));
+        }
+        return strings;
+    }
+}
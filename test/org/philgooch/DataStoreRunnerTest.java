@@ -0,0 +1,109 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import gate.*;
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author philipgooch
+ */
+public class DataStoreRunnerTest {
+
+    public DataStoreRunnerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        if (!Gate.isInitialised()) {
+            Gate.init();
+        }
+        Gate.getCreoleRegister().registerDirectories(new File(Gate.getPluginsHome(), "ANNIE").toURI().toURL());
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Test of run method, of class DataStoreRunner.
+     */
+    @Test
+    public void testRun() throws Exception {
+        System.out.println("run");
+        File dir = File.createTempFile("datastore", "");
+        dir.delete();
+        String storageUrl = dir.toURI().toURL().toString();
+        DataStore dataStore = Factory.createDataStore("gate.persist.SerialDataStore", storageUrl);
+        ExtractorPool pool = null;
+        try {
+            int numDocs = 12;
+            for (int i = 0; i < numDocs; i++) {
+                Document doc = Factory.newDocument("Document " + i + " reports magnetic resonance imaging (MRI) findings. The MRI was normal.");
+                doc.setName("doc" + i);
+                Document persistent = (Document) dataStore.adopt(doc);
+                dataStore.sync(persistent);
+                Factory.deleteResource(persistent);
+            }
+
+            Map<String, String> settings = new HashMap<String, String>();
+            settings.put("configFileURL", getClass().getResource("../../resources/config.txt").toString());
+            settings.put("gazetteerListsURL", getClass().getResource("../../resources/lookup/abbrevs.def").toString());
+            settings.put("expandAllShortFormInstances", "true");
+            pool = new ExtractorPool(2, settings);
+            DataStoreRunner runner = new DataStoreRunner(dataStore, pool, 3, 2);
+            PairStatistics stats = runner.run();
+            assertEquals(numDocs, runner.getDocumentCount());
+            assertEquals(0, runner.getFailedCount());
+            assertTrue(runner.getPeakResident() <= 3);
+            assertEquals(numDocs, stats.getEntry("MRI", "magnetic resonance imaging").getCount());
+            assertEquals(pool.getSize(), pool.getIdleCount());
+
+            // The annotations were written back
+            for (String lrId : dataStore.getLrIds(DataStoreRunner.DOCUMENT_CLASS)) {
+                FeatureMap params = Factory.newFeatureMap();
+                params.put(DataStore.DATASTORE_FEATURE_NAME, dataStore);
+                params.put(DataStore.LR_ID_FEATURE_NAME, lrId);
+                Document doc = (Document) Factory.createResource(DataStoreRunner.DOCUMENT_CLASS, params);
+                assertEquals(2, doc.getAnnotations().get("Abbrev").size());
+                assertEquals(1, doc.getAnnotations().get("Term").size());
+                Factory.deleteResource(doc);
+            }
+        } finally {
+            if (pool != null) {
+                pool.cleanup();
+            }
+            dataStore.close();
+            delete(dir);
+        }
+    }
+}
@@ -0,0 +1,83 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import java.util.List;
+import java.util.Map;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author philipgooch
+ */
+public class JsonTest {
+
+    public JsonTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of parse method, of class Json.
+     */
+    @Test
+    public void testParse() {
+        System.out.println("parse");
+        Object result = Json.parse("{\"id\": \"doc1\", \"text\": \"a \\\"b\\\"\\n\", \"sentences\": [[0, 12], [13, 20]], \"ok\": true, \"none\": null}");
+
+        assertTrue(result instanceof Map);
+        Map<?, ?> obj = (Map<?, ?>) result;
+        assertEquals("doc1", obj.get("id"));
+        assertEquals("a \"b\"\n", obj.get("text"));
+        assertEquals(Boolean.TRUE, obj.get("ok"));
+        assertNull(obj.get("none"));
+        List<?> sentences = (List<?>) obj.get("sentences");
+        assertEquals(2, sentences.size());
+        assertEquals(13, ((Number) ((List<?>) sentences.get(1)).get(0)).intValue());
+    }
+
+    /**
+     * Test of parse method with malformed input, of class Json.
+     */
+    @Test(expected = IllegalArgumentException.class)
+    public void testParseMalformed() {
+        System.out.println("parseMalformed");
+        Json.parse("{\"id\": ");
+    }
+
+    /**
+     * Test of quote method, of class Json.
+     */
+    @Test
+    public void testQuote() {
+        System.out.println("quote");
+        String quoted = Json.quote("tab\there \"quoted\"");
+
+        assertEquals("\"tab\\there \\\"quoted\\\"\"", quoted);
+        assertEquals("tab\there \"quoted\"", Json.parse(quoted));
+        assertEquals("null", Json.quote(null));
+    }
+
+}
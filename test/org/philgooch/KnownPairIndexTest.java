@@ -0,0 +1,85 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import java.net.URL;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author philipgooch
+ */
+public class KnownPairIndexTest {
+
+    private KnownPairIndex instance;
+
+    public KnownPairIndexTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        URL url = getClass().getResource("../../resources/lookup/abbrevs.def");
+        LookupIndex lists = new LookupIndex(url, "UTF-8", ";");
+        lists.load();
+        instance = new KnownPairIndex(lists);
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of find method, of class KnownPairIndex.
+     */
+    @Test
+    public void testFind() {
+        System.out.println("find");
+        assertEquals(6, instance.size());
+        KnownPairIndex.KnownPair pair = instance.find("A&O", "The patient was Aware and  oriented ");
+        assertNotNull(pair);
+        assertEquals("aware and oriented", pair.getLongForm());
+        assertEquals("Test", pair.getCategory());
+        // Long form must end the text, and start on a word boundary
+        assertNull(instance.find("A&O", "aware and oriented today"));
+        assertNull(instance.find("A&O", "unaware and oriented"));
+        assertNull(instance.find("A&o", "aware and oriented"));
+
+        // The longest known long form wins; a repeated pair keeps its first category
+        instance.add("MI", "infarction", "DiseaseOrSyndrome");
+        instance.add("MI", "myocardial infarction", "DiseaseOrSyndrome");
+        instance.add("MI", "Myocardial  infarction", "Other");
+        assertEquals(8, instance.size());
+        pair = instance.find("MI", "acute myocardial infarction");
+        assertEquals("myocardial infarction", pair.getLongForm());
+        assertEquals("DiseaseOrSyndrome", pair.getCategory());
+    }
+
+    /**
+     * Test of suffixStart method, of class KnownPairIndex.
+     */
+    @Test
+    public void testSuffixStart() {
+        System.out.println("suffixStart");
+        assertEquals(14, KnownPairIndex.suffixStart("Patients with abdominal aortic aneurysm", "abdominal aortic aneurysm"));
+        assertEquals(0, KnownPairIndex.suffixStart("Abdominal\taortic aneurysm ", "abdominal aortic aneurysm"));
+        assertEquals(5, KnownPairIndex.suffixStart("anti-C-reactive protein", "c-reactive protein"));
+        assertEquals(-1, KnownPairIndex.suffixStart("abdominalaortic aneurysm", "abdominal aortic aneurysm"));
+        assertEquals(-1, KnownPairIndex.suffixStart("aortic aneurysm", "abdominal aortic aneurysm"));
+    }
+}
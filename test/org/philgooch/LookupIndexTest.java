@@ -0,0 +1,102 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import java.net.URL;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author philipgooch
+ */
+public class LookupIndexTest {
+
+    private LookupIndex instance;
+
+    public LookupIndexTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() throws Exception {
+        URL url = getClass().getResource("../../resources/lookup/abbrevs.def");
+        instance = new LookupIndex(url, "UTF-8", ";");
+        instance.load();
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of lookup method, of class LookupIndex.
+     */
+    @Test
+    public void testLookup() {
+        System.out.println("lookup");
+        List<LookupIndex.Entry> entries = instance.lookup("A  &  O");
+
+        assertEquals(6, instance.size());
+        assertNotNull(entries);
+        assertEquals("Test", entries.get(0).getAnnotationType());
+        assertEquals("aware and oriented", entries.get(0).getFeatures().get("term"));
+        assertEquals("abbrevs", entries.get(0).getFeatures().get("majorType"));
+        assertNull(instance.lookup("A & P"));
+    }
+
+    /**
+     * Test of findMatches method, of class LookupIndex.
+     */
+    @Test
+    public void testFindMatches() {
+        System.out.println("findMatches");
+        String text = "Patient was A&Ox3 and A & O x4 on review, not XA&O.";
+        List<LookupIndex.Match> matches = instance.findMatches(text, 0, text.length());
+
+        assertEquals(2, matches.size());
+        assertEquals("A&Ox3", text.substring(matches.get(0).getStart(), matches.get(0).getEnd()));
+        assertEquals("A & O x4", text.substring(matches.get(1).getStart(), matches.get(1).getEnd()));
+        assertEquals("alert and oriented to person, place, time, and circumstances", matches.get(1).getEntries().get(0).getFeatures().get("term"));
+    }
+
+    /**
+     * Test of the word boundaries of findMatches, which are those of the gazetteer: only letters and combining marks are word-internal.
+     */
+    @Test
+    public void testWordBoundaries() {
+        System.out.println("wordBoundaries");
+        String text = "A&O3 and 2A&O, not A&Os, xA&O or A&O\u0301 but (A&O).";
+        List<LookupIndex.Match> matches = instance.findMatches(text, 0, text.length());
+
+        assertEquals(3, matches.size());
+        assertEquals(0, matches.get(0).getStart());
+        assertEquals(3, matches.get(0).getEnd());
+        assertEquals(10, matches.get(1).getStart());
+        assertEquals("A&O", text.substring(matches.get(2).getStart(), matches.get(2).getEnd()));
+        assertEquals(text.indexOf("(A&O)") + 1, matches.get(2).getStart());
+
+        assertTrue(LookupIndex.isWordStart("3CD", 1));
+        assertFalse(LookupIndex.isWordStart("xCD", 1));
+        assertTrue(LookupIndex.isWordEnd("CD3", 2));
+        assertFalse(LookupIndex.isWordEnd("CDs", 2));
+        assertFalse(LookupIndex.isWordStart("a CD", 1));
+        assertEquals("A & O", LookupIndex.normalize(" A  &\tO "));
+    }
+
+}
@@ -0,0 +1,179 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author philipgooch
+ */
+public class MentionIndexTest {
+
+    public MentionIndexTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of MentionIndexWriter and MentionIndex, across several segments and merges.
+     */
+    @Test
+    public void testIndexRoundTrip() throws Exception {
+        System.out.println("indexRoundTrip");
+        File dir = File.createTempFile("index", "");
+        dir.delete();
+        try {
+            MentionIndexWriter writer = new MentionIndexWriter(dir, 3, 2);
+            for (int i = 0; i < 20; i++) {
+                String longForm = (i % 2 == 0) ? "hepatocellular carcinoma" : "hepatitis C\tcore";
+                AbbreviationPair pair = new AbbreviationPair("doc" + i, "HCC", longForm, 40, 43, 10, 38, null);
+                writer.pairFound(pair);
+                writer.mentionFound(pair, 100000 + i, 100003 + i);
+                writer.pairFound(new AbbreviationPair("doc" + i, "MRI  scan", "magnetic resonance imaging scan", 200, 209, 170, 198, null));
+                writer.flush();
+            }
+            writer.close();
+            assertTrue(writer.getSegmentCount() < 10);
+
+            MentionIndex index = new MentionIndex(dir);
+            assertEquals(writer.getSegmentCount(), index.getSegmentCount());
+            List<MentionIndex.Mention> mentions = index.lookup("HCC");
+            assertEquals(40, mentions.size());
+            for (int i = 0; i < 20; i++) {
+                MentionIndex.Mention definition = mentions.get(i * 2);
+                MentionIndex.Mention mention = mentions.get(i * 2 + 1);
+                assertEquals("doc" + i, definition.getDocumentId());
+                assertTrue(definition.isDefinition());
+                assertEquals(40, definition.getStart());
+                assertEquals(43, definition.getEnd());
+                assertEquals("doc" + i, mention.getDocumentId());
+                assertFalse(mention.isDefinition());
+                assertEquals(100000 + i, mention.getStart());
+                assertEquals(100003 + i, mention.getEnd());
+                assertEquals((i % 2 == 0) ? "hepatocellular carcinoma" : "hepatitis C\tcore", mention.getLongForm());
+            }
+
+            // White space in short forms is collapsed
+            assertEquals(20, index.lookup(" MRI scan").size());
+            assertEquals(0, index.lookup("CT").size());
+            Map<String, Set<String>> expansions = index.getExpansions("MRI scan");
+            assertEquals(20, expansions.size());
+            assertTrue(expansions.get("doc7").contains("magnetic resonance imaging scan"));
+            index.close();
+
+            // A new writer replaces the index
+            writer = new MentionIndexWriter(dir);
+            writer.pairFound(new AbbreviationPair("doc0", "CT", "computed tomography", 20, 22, 0, 19, null));
+            writer.close();
+            index = new MentionIndex(dir);
+            assertEquals(1, index.getSegmentCount());
+            assertEquals(0, index.lookup("HCC").size());
+            assertEquals(1, index.lookup("CT").size());
+            index.close();
+            assertEquals(2, dir.list().length);
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * Test of opening and reading a MentionIndex while its writer is writing and merging segments.
+     */
+    @Test
+    public void testReadDuringMerge() throws Exception {
+        System.out.println("readDuringMerge");
+        File dir = File.createTempFile("index", "");
+        dir.delete();
+        try {
+            final MentionIndexWriter writer = new MentionIndexWriter(dir, 2, 2);
+            final int numDocs = 2000;
+            final Throwable[] failure = new Throwable[1];
+            Thread thread = new Thread() {
+
+                @Override
+                public void run() {
+                    try {
+                        for (int i = 0; i < numDocs; i++) {
+                            writer.pairFound(new AbbreviationPair("doc" + i, "HCC", "hepatocellular carcinoma", 40, 43, 10, 38, null));
+                        }
+                        writer.close();
+                    } catch (Throwable t) {
+                        failure[0] = t;
+                    }
+                }
+            };
+            thread.start();
+
+            // Each index opened sees whole segments only, and no fewer mentions than the one before
+            List<Integer> counts = new ArrayList<Integer>();
+            int previous = 0;
+            while (thread.isAlive()) {
+                MentionIndex index = new MentionIndex(dir);
+                int count = index.lookup("HCC").size();
+                index.close();
+                assertEquals(0, count % 2);
+                assertTrue(count >= previous);
+                previous = count;
+                counts.add(count);
+            }
+            thread.join();
+            assertNull(String.valueOf(failure[0]), failure[0]);
+            assertFalse(counts.isEmpty());
+
+            MentionIndex index = new MentionIndex(dir);
+            List<MentionIndex.Mention> mentions = index.lookup("HCC");
+            assertEquals(numDocs, mentions.size());
+            assertEquals("doc0", mentions.get(0).getDocumentId());
+            assertEquals("doc" + (numDocs - 1), mentions.get(numDocs - 1).getDocumentId());
+            index.close();
+        } finally {
+            for (File file : dir.listFiles()) {
+                file.delete();
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * Test of encodePostings and decodePostings, of class MentionIndex.
+     */
+    @Test
+    public void testPostings() throws Exception {
+        System.out.println("postings");
+        int[] postings = {0, 1, 5, 8, 0, 0, 90, 93, 3, 2, 7, 10, 300, 5, 1000000, 1000004};
+        byte[] encoded = MentionIndex.encodePostings(postings, postings.length);
+        assertArrayEquals(postings, MentionIndex.decodePostings(encoded));
+        assertTrue(encoded.length < 24);
+    }
+}
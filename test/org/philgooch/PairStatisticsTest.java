@@ -0,0 +1,103 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import java.io.File;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author philipgooch
+ */
+public class PairStatisticsTest {
+
+    public PairStatisticsTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static PairStatistics stats(String doc, int offset, String type) {
+        PairStatistics stats = new PairStatistics();
+        AbbreviationPair pair = new AbbreviationPair(doc, "WAS", "Wiskott-Aldrich syndrome", offset + 26, offset + 29, offset, offset + 24, type);
+        stats.pairFound(pair);
+        stats.mentionFound(pair, offset + 80, offset + 83);
+        stats.pairFound(new AbbreviationPair(doc, "CT", "computed tomography", offset + 100, offset + 102, offset + 80, offset + 99, null));
+        return stats;
+    }
+
+    /**
+     * Test of merge method, of class PairStatistics.
+     */
+    @Test
+    public void testMerge() {
+        System.out.println("merge");
+        PairStatistics a = stats("doc2", 0, null);
+        a.merge(stats("doc3", 10, "DiseaseOrSyndrome"));
+        a.merge(stats("doc1", 50, "Other"));
+
+        PairStatistics b = stats("doc1", 50, "Other");
+        PairStatistics c = stats("doc3", 10, "DiseaseOrSyndrome");
+        c.merge(stats("doc2", 0, null));
+        b.merge(c);
+
+        for (PairStatistics merged : new PairStatistics[]{a, b}) {
+            PairStatistics.Entry entry = merged.getEntry("WAS", "Wiskott-Aldrich syndrome");
+            assertEquals(3, entry.getCount());
+            assertEquals(3, entry.getMentions());
+            assertEquals("doc1", entry.getFirstDocument());
+            assertEquals(50, entry.getFirstOffset());
+            assertEquals("Other", entry.getSemanticType());
+            assertEquals(2, merged.size());
+        }
+    }
+
+    /**
+     * Test of write and read methods, of class PairStatistics.
+     */
+    @Test
+    public void testWriteRead() throws Exception {
+        System.out.println("writeRead");
+        PairStatistics stats = stats("doc2", 0, null);
+        stats.merge(stats("doc3", 10, "DiseaseOrSyndrome"));
+        File file = File.createTempFile("pairstats", ".tsv");
+        try {
+            stats.write(file);
+            PairStatistics result = PairStatistics.read(file);
+            List<PairStatistics.Entry> entries = result.getEntries();
+            assertEquals(2, entries.size());
+            assertEquals("CT", entries.get(0).getShortForm());
+            assertNull(entries.get(0).getSemanticType());
+            PairStatistics.Entry entry = entries.get(1);
+            assertEquals("WAS", entry.getShortForm());
+            assertEquals(2, entry.getCount());
+            assertEquals("doc2", entry.getFirstDocument());
+            assertEquals(0, entry.getFirstOffset());
+            assertEquals("DiseaseOrSyndrome", entry.getSemanticType());
+        } finally {
+            file.delete();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author philipgooch
+ */
+public class PairWriterTest {
+
+    public PairWriterTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of TsvPairWriter.
+     */
+    @Test
+    public void testTsv() throws Exception {
+        System.out.println("tsv");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PairSink writer = PairFormat.TSV.createWriter(out);
+        AbbreviationPair pair = new AbbreviationPair("doc1", "WAS", "Wiskott-Aldrich\tsyndrome", 26, 29, 0, 24, null);
+        writer.pairFound(pair);
+        writer.mentionFound(pair, 80, 83);
+        writer.close();
+
+        String[] lines = out.toString("UTF-8").split("\n");
+        assertEquals(2, lines.length);
+        assertEquals("P\tdoc1\tWAS\tWiskott-Aldrich syndrome\t26\t29\t0\t24\t", lines[0]);
+        assertEquals("M\tdoc1\tWAS\tWiskott-Aldrich syndrome\t80\t83", lines[1]);
+    }
+
+    /**
+     * Test of BinaryPairWriter and BinaryPairReader.
+     */
+    @Test
+    public void testBinaryRoundTrip() throws Exception {
+        System.out.println("binaryRoundTrip");
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        PairSink writer = PairFormat.BINARY.createWriter(out);
+        AbbreviationPair pair1 = new AbbreviationPair("doc1", "WAS", "Wiskott-Aldrich syndrome", 26, 29, 0, 24, "DiseaseOrSyndrome");
+        AbbreviationPair pair2 = new AbbreviationPair("doc1", "MRI", "magnetic resonance imaging", 100, 103, 105, 131, null);
+        AbbreviationPair pair3 = new AbbreviationPair("doc2", "CT", "computed tomography", 200000, 200002, 199980, 199999, null);
+        writer.pairFound(pair1);
+        writer.pairFound(pair2);
+        writer.mentionFound(pair1, 300, 303);
+        writer.pairFound(pair3);
+        writer.mentionFound(pair3, 250000, 250002);
+        writer.close();
+
+        PairCollector collector = new PairCollector();
+        BinaryPairReader reader = new BinaryPairReader(new ByteArrayInputStream(out.toByteArray()));
+        assertEquals(3, reader.readAll(collector));
+        reader.close();
+
+        List<AbbreviationPair> pairs = collector.getPairs();
+        assertEquals(3, pairs.size());
+        assertEquals(pair1.toString(), pairs.get(0).toString());
+        assertEquals(pair2.toString(), pairs.get(1).toString());
+        assertEquals(pair3.toString(), pairs.get(2).toString());
+        assertEquals("DiseaseOrSyndrome", pairs.get(0).getSemanticType());
+        assertNull(pairs.get(1).getSemanticType());
+        assertEquals("doc2", pairs.get(2).getDocumentId());
+
+        List<int[]> mentions = collector.getMentions(pairs.get(0));
+        assertEquals(1, mentions.size());
+        assertEquals(300, mentions.get(0)[0]);
+        assertEquals(303, mentions.get(0)[1]);
+        assertEquals(0, collector.getMentions(pairs.get(1)).size());
+        assertEquals(250000, collector.getMentions(pairs.get(2)).get(0)[0]);
+    }
+}
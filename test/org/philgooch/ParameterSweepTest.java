@@ -0,0 +1,146 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import gate.*;
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author philipgooch
+ */
+public class ParameterSweepTest {
+
+    public ParameterSweepTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        if (!Gate.isInitialised()) {
+            Gate.init();
+        }
+        Gate.getCreoleRegister().registerDirectories(new File(Gate.getPluginsHome(), "ANNIE").toURI().toURL());
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static final String GOLD = "doc1\n"
+            + "Magnetic resonance imaging (MRI) was performed.\n"
+            + "  MRI|Magnetic resonance imaging\n"
+            + "\n"
+            + "doc2\n"
+            + "There was a history of chronic obstructive pulmonary disease of the lung (COPDL).\n"
+            + "It was treated.\n"
+            + "  COPDL|chronic  obstructive pulmonary disease of the lung|0.9\n"
+            + "\n\n"
+            + "doc3\n"
+            + "No abbreviations here.\n";
+
+    private static GoldStandard readGold() throws IOException {
+        File file = File.createTempFile("gold", ".txt");
+        file.deleteOnExit();
+        Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            out.write(GOLD);
+        } finally {
+            out.close();
+        }
+        return GoldStandard.read(file);
+    }
+
+    /**
+     * Test of read and score methods, of class GoldStandard.
+     */
+    @Test
+    public void testGoldStandard() throws Exception {
+        System.out.println("goldStandard");
+        GoldStandard gold = readGold();
+        List<GoldStandard.GoldDocument> documents = gold.getDocuments();
+        assertEquals(3, documents.size());
+        assertEquals(2, gold.getPairCount());
+        assertEquals("doc2", documents.get(1).getId());
+        assertEquals("There was a history of chronic obstructive pulmonary disease of the lung (COPDL).\nIt was treated.", documents.get(1).getText());
+        assertTrue(documents.get(1).getPairs().contains(GoldStandard.pairKey("COPDL", "chronic obstructive pulmonary disease of the lung")));
+        assertTrue(documents.get(2).getPairs().isEmpty());
+
+        // Case and white space are ignored, and a pair found twice counts once
+        List<AbbreviationPair> found = new ArrayList<AbbreviationPair>();
+        found.add(new AbbreviationPair("doc1", "MRI", "magnetic resonance  imaging", 28, 31, 0, 26, null));
+        found.add(new AbbreviationPair("doc1", "MRI", "Magnetic resonance imaging", 60, 63, 40, 58, null));
+        found.add(new AbbreviationPair("doc1", "MR", "Magnetic resonance", 28, 30, 0, 18, null));
+        assertArrayEquals(new int[] {1, 1, 0}, GoldStandard.score(documents.get(0), found));
+        assertArrayEquals(new int[] {0, 0, 1}, GoldStandard.score(documents.get(1), new ArrayList<AbbreviationPair>()));
+    }
+
+    /**
+     * Test of frontier and fastest methods, of class ParameterSweep.
+     */
+    @Test
+    public void testFrontier() {
+        System.out.println("frontier");
+        ParameterSweep.Setting setting = new ParameterSweep.Setting(5, 5, 1.0f, true, false);
+        // 10 documents in 1s, 2 of 4 gold pairs found
+        ParameterSweep.Result fastLowRecall = new ParameterSweep.Result(setting, 10, 1000000000L, 1000, 2, 0, 2);
+        // Slower, with all pairs found
+        ParameterSweep.Result slowAccurate = new ParameterSweep.Result(setting, 10, 2000000000L, 2000, 4, 0, 0);
+        // Slower and less accurate than the first
+        ParameterSweep.Result dominated = new ParameterSweep.Result(setting, 10, 1500000000L, 1000, 1, 1, 3);
+        assertEquals(10.0, fastLowRecall.getDocumentsPerSecond(), 1e-9);
+        assertEquals(0.5, fastLowRecall.getRecall(), 1e-9);
+        assertEquals(2.0 / 3.0, fastLowRecall.getF1(), 1e-9);
+        assertTrue(fastLowRecall.dominates(dominated));
+        assertFalse(fastLowRecall.dominates(slowAccurate));
+        assertFalse(fastLowRecall.dominates(fastLowRecall));
+
+        List<ParameterSweep.Result> frontier = ParameterSweep.frontier(Arrays.asList(fastLowRecall, dominated, slowAccurate));
+        assertEquals(Arrays.asList(slowAccurate, fastLowRecall), frontier);
+        assertSame(fastLowRecall, ParameterSweep.fastest(frontier, 0.6));
+        assertSame(slowAccurate, ParameterSweep.fastest(frontier, 0.9));
+        assertNull(ParameterSweep.fastest(frontier, 1.1));
+        assertEquals(8, ParameterSweep.grid(new int[] {5, 10}, new int[] {5, 10}, new float[] {0.8f, 1.0f}, new boolean[] {true}, new boolean[] {false}).size());
+    }
+
+    /**
+     * Test of run method, of class ParameterSweep.
+     */
+    @Test
+    public void testRun() throws Exception {
+        System.out.println("run");
+        Map<String, String> settings = new HashMap<String, String>();
+        settings.put("configFileURL", getClass().getResource("../../resources/config.txt").toString());
+        settings.put("gazetteerListsURL", getClass().getResource("../../resources/lookup/abbrevs.def").toString());
+        settings.put("createAnnotations", "false");
+        BiomedicalAbbreviationExpander expander = AbbreviationExtractor.createExpander(settings, null);
+        ParameterSweep sweep = new ParameterSweep(expander, readGold());
+
+        // Only the wider window finds the second pair
+        ParameterSweep.Result narrow = sweep.run(new ParameterSweep.Setting(5, 5, 1.0f, true, false), 2);
+        ParameterSweep.Result wide = sweep.run(new ParameterSweep.Setting(10, 10, 0.75f, true, false));
+        assertEquals(1.0, narrow.getPrecision(), 1e-9);
+        assertEquals(0.5, narrow.getRecall(), 1e-9);
+        assertEquals(1.0, wide.getF1(), 1e-9);
+        assertTrue(wide.getDocumentsPerSecond() > 0);
+        assertTrue(wide.getP99SentenceMillis() > 0);
+        Factory.deleteResource(expander);
+    }
+}
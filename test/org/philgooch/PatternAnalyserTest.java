@@ -0,0 +1,172 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import gate.*;
+import gate.creole.ResourceInstantiationException;
+import java.io.*;
+import java.net.URL;
+import java.util.*;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author philipgooch
+ */
+public class PatternAnalyserTest {
+
+    public PatternAnalyserTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        if (!Gate.isInitialised()) {
+            Gate.init();
+        }
+        Gate.getCreoleRegister().registerDirectories(new File(Gate.getPluginsHome(), "ANNIE").toURI().toURL());
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of analyse method, of class PatternAnalyser.
+     */
+    @Test
+    public void testAnalyse() {
+        System.out.println("analyse");
+        assertEquals(1, PatternAnalyser.analyse("(a+)+b", 0).size());
+        assertEquals(1, PatternAnalyser.analyse("(\\w+\\s?)+$", 0).size());
+        assertEquals(1, PatternAnalyser.analyse("(a*)*", 0).size());
+        assertEquals(1, PatternAnalyser.analyse("(\\w+\\s?){1,10}", 0).size());
+        assertEquals(1, PatternAnalyser.analyse("(\\w|\\d)+x", 0).size());
+        assertEquals(1, PatternAnalyser.analyse("((?i)A+a)+", 0).size());
+
+        // Each iteration ends with a character it cannot start with
+        assertTrue(PatternAnalyser.analyse("^(\\w+[\\-\\s]{1,2}){1,10}\\(", 0).isEmpty());
+        assertTrue(PatternAnalyser.analyse("(?:x+y)+", 0).isEmpty());
+        assertTrue(PatternAnalyser.analyse("(a|b)+", 0).isEmpty());
+        // No backtracking into possessive quantifiers and atomic groups
+        assertTrue(PatternAnalyser.analyse("(a++)+", 0).isEmpty());
+        assertTrue(PatternAnalyser.analyse("(?>a+)+", 0).isEmpty());
+        // Only the case of the pattern makes these overlap
+        assertTrue(PatternAnalyser.analyse("(A+a)+", 0).isEmpty());
+        assertEquals(1, PatternAnalyser.analyse("(A+a)+", Pattern.CASE_INSENSITIVE).size());
+    }
+
+    /**
+     * Test of optimiseAlternation method, of class PatternAnalyser.
+     */
+    @Test
+    public void testOptimiseAlternation() {
+        System.out.println("optimiseAlternation");
+        assertEquals("a(?:nd?|s|t)?", PatternAnalyser.optimiseAlternation("a|an|and|as|at"));
+        // Regexes are kept, after the words
+        String special = "iii|ii|i|iv|p\\d+|(x|y)z";
+        String optimised = PatternAnalyser.optimiseAlternation(special);
+        assertEquals("i(?:ii?|v)?|p\\d+|(x|y)z", optimised);
+        Pattern before = Pattern.compile("^(" + special + ")$");
+        Pattern after = Pattern.compile("^(" + optimised + ")$");
+        for (String text : new String[] {"i", "ii", "iii", "iiii", "iv", "v", "p12", "xz", "yz", "z", ""}) {
+            assertEquals(text, before.matcher(text).matches(), after.matcher(text).matches());
+        }
+        assertEquals("single", PatternAnalyser.optimiseAlternation("single"));
+    }
+
+    /**
+     * Test of checkPatterns method, of class ExpanderConfig, and of the regexCheck parameter of class BiomedicalAbbreviationExpander.
+     */
+    @Test
+    public void testCheckPatterns() throws Exception {
+        System.out.println("checkPatterns");
+        URL configURL = getClass().getResource("../../resources/config.txt");
+        ExpanderConfig config = new ExpanderConfig(configURL);
+        assertFalse(config.load());
+        assertTrue(config.checkPatterns(10, 10).isEmpty());
+
+        config = new ExpanderConfig(configURL);
+        config.setOptimiseAlternations(true);
+        assertFalse(config.load());
+        assertTrue(config.checkPatterns(10, 10).isEmpty());
+
+        // A copy of the configuration where each word of the outer may or may not be followed by a separator
+        File dir = File.createTempFile("config", "");
+        dir.delete();
+        File source = new File(configURL.toURI()).getParentFile();
+        copy(source, dir);
+        Writer out = new OutputStreamWriter(new FileOutputStream(new File(dir, "regex/outer_pre.txt")), "UTF-8");
+        out.write("\\b((\\w)\\W{0,2}(\\w+[\\-\\&'\\/\\+\\s]{0,2}){1,\n");
+        out.close();
+        URL unsafeURL = new File(dir, "config.txt").toURI().toURL();
+        try {
+            config = new ExpanderConfig(unsafeURL);
+            assertFalse(config.load());
+            List<String> problems = config.checkPatterns(10, 10);
+            assertEquals(1, problems.size());
+            assertTrue(problems.get(0).startsWith("candidate pattern: Ambiguous nested repetition"));
+
+            BiomedicalAbbreviationExpander badrex = new BiomedicalAbbreviationExpander();
+            badrex.setConfigFileURL(unsafeURL);
+            badrex.setGazetteerListsURL(getClass().getResource("../../resources/lookup/abbrevs.def"));
+            badrex.setRegexCheck(RegexCheck.WARN);
+            badrex.init();
+            badrex.setRegexCheck(RegexCheck.REFUSE);
+            try {
+                badrex.init();
+                fail("Expected the unsafe pattern to be refused");
+            } catch (ResourceInstantiationException re) {
+                // expected
+            }
+            Factory.deleteResource(badrex);
+        } finally {
+            delete(dir);
+        }
+    }
+
+    private static void copy(File from, File to) throws IOException {
+        if (from.isDirectory()) {
+            to.mkdirs();
+            for (File child : from.listFiles()) {
+                copy(child, new File(to, child.getName()));
+            }
+        } else {
+            InputStream in = new FileInputStream(from);
+            OutputStream out = new FileOutputStream(to);
+            byte[] buffer = new byte[8192];
+            int n;
+            while ((n = in.read(buffer)) > 0) {
+                out.write(buffer, 0, n);
+            }
+            in.close();
+            out.close();
+        }
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+}
@@ -0,0 +1,89 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author philipgooch
+ */
+public class SentenceCacheTest {
+
+    public SentenceCacheTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of get and put methods, of class SentenceCache.
+     */
+    @Test
+    public void testGetPut() {
+        System.out.println("getPut");
+        SentenceCache cache = new SentenceCache(10);
+        long params = SentenceCache.hash("10|10|0.8|true|false|1");
+        String sentence = "Wiskott-Aldrich syndrome (WAS) is an X-linked recessive disorder.";
+        List<CandidateMatch> matches = new ArrayList<CandidateMatch>();
+        matches.add(new CandidateMatch("WAS", "WAS", "Wiskott-Aldrich syndrome", 26, 29, 0, 24, false, 0, 30));
+
+        assertNull(cache.get(params, sentence));
+        cache.put(params, sentence, matches);
+        List<CandidateMatch> result = cache.get(params, sentence);
+        assertEquals(1, result.size());
+        assertEquals("Wiskott-Aldrich syndrome", result.get(0).getTermNorm());
+        // Different parameters are a miss
+        assertNull(cache.get(SentenceCache.hash("5|5|1.0|true|false|1"), sentence));
+        assertEquals(1, cache.getHits());
+        assertEquals(2, cache.getMisses());
+
+        // Sentences without matches are cached too
+        cache.put(params, "No abbreviations here.", Collections.<CandidateMatch>emptyList());
+        assertEquals(0, cache.get(params, "No abbreviations here.").size());
+    }
+
+    /**
+     * Test of eviction, of class SentenceCache.
+     */
+    @Test
+    public void testEviction() {
+        System.out.println("eviction");
+        SentenceCache cache = new SentenceCache(2);
+        long params = SentenceCache.hash("params");
+        List<CandidateMatch> none = Collections.<CandidateMatch>emptyList();
+        cache.put(params, "one", none);
+        cache.put(params, "two", none);
+        cache.get(params, "one");
+        cache.put(params, "three", none);
+
+        assertEquals(2, cache.size());
+        assertNotNull(cache.get(params, "one"));
+        assertNull(cache.get(params, "two"));
+        assertNotNull(cache.get(params, "three"));
+    }
+}
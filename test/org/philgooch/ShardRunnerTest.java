@@ -0,0 +1,160 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import gate.*;
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author philipgooch
+ */
+public class ShardRunnerTest {
+
+    private static final String[][] DOCUMENTS = {
+        {"doc1.txt", "Wiskott-Aldrich syndrome (WAS) is an X-linked recessive disorder."},
+        {"doc2.txt", "Patients were scanned by magnetic resonance imaging (MRI). The MRI was normal."},
+        {"a/doc3.txt", "Wiskott-Aldrich syndrome (WAS) was confirmed. Computed tomography (CT) was normal."},
+        {"a/doc4.txt", "No abbreviations here."},
+        {"a/b/doc5.txt", "A second magnetic resonance imaging (MRI) scan was done."},
+        {"doc6.txt", "The patient had Wiskott-Aldrich syndrome (WAS)."},
+        {"doc7.txt", "Computed tomography (CT) of the chest was clear."}
+    };
+
+    public ShardRunnerTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        if (!Gate.isInitialised()) {
+            Gate.init();
+        }
+        Gate.getCreoleRegister().registerDirectories(new File(Gate.getPluginsHome(), "ANNIE").toURI().toURL());
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    private static File createTempDir(String prefix) throws IOException {
+        File dir = File.createTempFile(prefix, "");
+        dir.delete();
+        dir.mkdirs();
+        return dir;
+    }
+
+    private static void delete(File file) {
+        File[] files = file.listFiles();
+        if (files != null) {
+            for (File child : files) {
+                delete(child);
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Test of shardOf method, of class ShardRunner.
+     */
+    @Test
+    public void testShardOf() {
+        System.out.println("shardOf");
+        int shards = 4;
+        int[] counts = new int[shards];
+        for (int i = 0; i < 400; i++) {
+            String documentId = "dir/doc" + i + ".txt";
+            int shard = ShardRunner.shardOf(documentId, shards);
+            assertTrue(shard >= 0 && shard < shards);
+            assertEquals(shard, ShardRunner.shardOf(documentId, shards));
+            counts[shard]++;
+        }
+        // Similar names are spread over all shards
+        for (int count : counts) {
+            assertTrue(Arrays.toString(counts), count > 50);
+        }
+        assertEquals(0, ShardRunner.shardOf("doc1.txt", 1));
+    }
+
+    /**
+     * Test of runWorker and run methods, of class ShardRunner.
+     */
+    @Test
+    public void testRunWorker() throws Exception {
+        System.out.println("runWorker");
+        File inputDir = createTempDir("shardinput");
+        File outputDir = createTempDir("shardoutput");
+        File singleDir = createTempDir("shardsingle");
+        try {
+            for (String[] document : DOCUMENTS) {
+                File file = new File(inputDir, document[0]);
+                file.getParentFile().mkdirs();
+                Writer out = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+                out.write(document[1]);
+                out.close();
+            }
+            Map<String, String> settings = new HashMap<String, String>();
+            settings.put("configFileURL", getClass().getResource("../../resources/config.txt").toString());
+            settings.put("gazetteerListsURL", getClass().getResource("../../resources/lookup/abbrevs.def").toString());
+
+            // Each worker takes only the documents of its own shard
+            int shards = 3;
+            ShardRunner runner = new ShardRunner(inputDir, outputDir, shards, 0, null, settings);
+            int numEntries = 0;
+            for (int shard = 0; shard < shards; shard++) {
+                runner.runWorker(shard);
+                assertTrue(runner.getShardFile(shard).exists());
+                assertFalse(runner.getCheckpointFile(shard).exists());
+                assertFalse(runner.getQuarantinedFile(shard).exists());
+                for (PairStatistics.Entry entry : PairStatistics.read(runner.getShardFile(shard)).getEntries()) {
+                    assertEquals(shard, ShardRunner.shardOf(entry.getFirstDocument(), shards));
+                    numEntries++;
+                }
+            }
+
+            // Shards that are already done are merged without starting workers
+            assertTrue(runner.run().isEmpty());
+            PairStatistics merged = PairStatistics.read(new File(outputDir, ShardRunner.MERGED_FILE_NAME));
+            assertTrue(merged.size() <= numEntries);
+            assertEquals(3, merged.getEntry("WAS", "Wiskott-Aldrich syndrome").getCount());
+            assertEquals("a/doc3.txt", merged.getEntry("WAS", "Wiskott-Aldrich syndrome").getFirstDocument());
+            assertEquals(2, merged.getEntry("MRI", "magnetic resonance imaging").getCount());
+            assertEquals(2, merged.getEntry("CT", "Computed tomography").getCount());
+
+            // The merged shards give the same statistics as a single shard
+            ShardRunner single = new ShardRunner(inputDir, singleDir, 1, 0, null, settings);
+            single.runWorker(0);
+            PairStatistics whole = PairStatistics.read(single.getShardFile(0));
+            assertEquals(whole.size(), merged.size());
+            for (PairStatistics.Entry entry : whole.getEntries()) {
+                PairStatistics.Entry mergedEntry = merged.getEntry(entry.getShortForm(), entry.getLongForm());
+                assertNotNull(entry.getShortForm(), mergedEntry);
+                assertEquals(entry.getCount(), mergedEntry.getCount());
+                assertEquals(entry.getMentions(), mergedEntry.getMentions());
+                assertEquals(entry.getFirstDocument(), mergedEntry.getFirstDocument());
+                assertEquals(entry.getFirstOffset(), mergedEntry.getFirstOffset());
+            }
+        } finally {
+            delete(inputDir);
+            delete(outputDir);
+            delete(singleDir);
+        }
+    }
+}
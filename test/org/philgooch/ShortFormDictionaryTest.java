@@ -0,0 +1,190 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import gate.*;
+import java.io.*;
+import java.util.*;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author philipgooch
+ */
+public class ShortFormDictionaryTest {
+
+    public ShortFormDictionaryTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+        if (!Gate.isInitialised()) {
+            Gate.init();
+        }
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of findMatches method, of class ShortFormDictionary.
+     */
+    @Test
+    public void testFindMatches() {
+        System.out.println("findMatches");
+        ShortFormDictionary instance = new ShortFormDictionary();
+        instance.add("MI", "myocardial infarction", "DiseaseOrSyndrome");
+        instance.add("AMI", "acute myocardial infarction", "DiseaseOrSyndrome");
+        instance.add("CT", "computed tomography", "Test");
+        instance.add("CT  scan", "computed tomography scan", "Test");
+        instance.add("A&O", "aware and oriented", "Test");
+        instance.add("A&Ox3", "alert and oriented to person, place, and time", "Test");
+        assertFalse(instance.add("MI", "mitral insufficiency", null));
+        try {
+            instance.findMatches("MI");
+            fail("Expected the dictionary to need compiling");
+        } catch (IllegalStateException ie) {
+            // expected
+        }
+        instance.compile();
+
+        String text = "AMI, not MI or MIs, on CT\u00A0scan and xCT; A&Ox3 but not A&O.";
+        List<ShortFormDictionary.Match> matches = instance.findMatches(text);
+        assertEquals(5, matches.size());
+        String[] expected = {"AMI", "MI", "CT\u00A0scan", "A&Ox3", "A&O"};
+        for (int i = 0; i < expected.length; i++) {
+            ShortFormDictionary.Match match = matches.get(i);
+            assertEquals(expected[i], text.substring(match.getStart(), match.getEnd()));
+        }
+        assertEquals("computed tomography scan", matches.get(2).getExpansion().getLongForm());
+        assertEquals("CT scan", matches.get(2).getExpansion().getShortForm());
+        assertEquals("myocardial infarction", matches.get(1).getExpansion().getLongForm());
+
+        // Of overlapping matches the leftmost is kept, and a longer one still being matched does not hide later ones
+        instance = new ShortFormDictionary();
+        instance.add("A B", "a", null);
+        instance.add("B C", "b", null);
+        instance.add("X", "x", null);
+        instance.add("Z", "z", null);
+        instance.add("Q X Y Z W", "q", null);
+        instance.compile();
+        text = "A B C, Q X Y Z";
+        matches = instance.findMatches(text);
+        assertEquals(3, matches.size());
+        assertEquals("A B", text.substring(matches.get(0).getStart(), matches.get(0).getEnd()));
+        assertEquals("X", text.substring(matches.get(1).getStart(), matches.get(1).getEnd()));
+        assertEquals("Z", text.substring(matches.get(2).getStart(), matches.get(2).getEnd()));
+        assertTrue(instance.findMatches("").isEmpty());
+
+        // Word boundaries are those of the gazetteer: digits and punctuation are boundaries, letters are not
+        text = "2X, X3, XY, Z\u0301 and -Z-";
+        matches = instance.findMatches(text);
+        assertEquals(3, matches.size());
+        assertEquals(1, matches.get(0).getStart());
+        assertEquals(4, matches.get(1).getStart());
+        assertEquals(text.length() - 2, matches.get(2).getStart());
+    }
+
+    /**
+     * Test of addEntries and addPairs methods, of class ShortFormDictionary.
+     */
+    @Test
+    public void testAddPairs() throws Exception {
+        System.out.println("addPairs");
+        LookupIndex lists = new LookupIndex(getClass().getResource("../../resources/lookup/abbrevs.def"), "UTF-8", ";");
+        lists.load();
+        ShortFormDictionary instance = new ShortFormDictionary();
+        instance.addEntries(lists);
+        assertEquals(6, instance.size());
+        assertEquals("aware and oriented", instance.get("A&O").getLongForm());
+        assertEquals("Test", instance.get("A&O").getCategory());
+
+        // The long form a short form is given most often replaces the one in the lists, in either format
+        for (PairFormat format : new PairFormat[] {PairFormat.TSV, PairFormat.BINARY}) {
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            PairSink writer = (format == PairFormat.TSV) ? new TsvPairWriter(bytes) : new BinaryPairWriter(bytes);
+            writer.pairFound(new AbbreviationPair("d1", "A&O", "aware and oriented", 30, 33, 7, 25, "Test"));
+            writer.pairFound(new AbbreviationPair("d2", "A&O", "alert and oriented", 22, 25, 0, 18, null));
+            writer.pairFound(new AbbreviationPair("d3", "A&O", "alert and oriented", 22, 25, 0, 18, null));
+            writer.pairFound(new AbbreviationPair("d3", "WAS", "Wiskott-Aldrich syndrome", 26, 29, 0, 24, "DiseaseOrSyndrome"));
+            writer.close();
+
+            ShortFormDictionary learned = new ShortFormDictionary();
+            learned.addEntries(lists);
+            assertEquals(format.toString(), 2, learned.addPairs(new ByteArrayInputStream(bytes.toByteArray())));
+            assertEquals(7, learned.size());
+            assertEquals("alert and oriented", learned.get("A&O").getLongForm());
+            assertNull(learned.get("A&O").getCategory());
+            assertEquals("DiseaseOrSyndrome", learned.get("WAS").getCategory());
+        }
+    }
+
+    /**
+     * Test of the dictionaryMode and learnedPairsURL parameters, of class BiomedicalAbbreviationExpander.
+     */
+    @Test
+    public void testDictionaryMode() throws Exception {
+        System.out.println("dictionaryMode");
+        File pairs = File.createTempFile("pairs", ".tsv");
+        PairSink writer = new TsvPairWriter(new FileOutputStream(pairs));
+        writer.pairFound(new AbbreviationPair("d1", "WAS", "Wiskott-Aldrich syndrome", 26, 29, 0, 24, null));
+        writer.close();
+
+        BiomedicalAbbreviationExpander badrex = new BiomedicalAbbreviationExpander();
+        badrex.setConfigFileURL(getClass().getResource("../../resources/config.txt"));
+        badrex.setGazetteerListsURL(getClass().getResource("../../resources/lookup/abbrevs.def"));
+        badrex.setLearnedPairsURL(pairs.toURI().toURL());
+        badrex.setLongTypeFeature("longForm");
+        badrex.setShortType("Short");
+        badrex.setShortTypeFeature("shortForm");
+        badrex.setUnderlyingAnnots(new ArrayList<String>(Arrays.asList("Test")));
+        badrex.setDictionaryMode(Boolean.TRUE);
+        badrex.init();
+
+        try {
+            // No sentences are needed, and short forms need not be defined in the document
+            Document d = Factory.newDocument("On admission the patient was A&O, with WAS. Next day A&Ox3 and still A&O.");
+            PairCollector collector = new PairCollector();
+            ExpanderParameters params = badrex.getParameters();
+            params.setPairSink(collector);
+            badrex.execute(d, params);
+
+            AnnotationSet tests = d.getAnnotations().get("Test");
+            assertEquals(3, tests.size());
+            // Short forms whose category is not an underlying annotation type take the short type
+            AnnotationSet shortForms = d.getAnnotations().get("Short");
+            assertEquals(1, shortForms.size());
+            assertEquals("Wiskott-Aldrich syndrome", shortForms.iterator().next().getFeatures().get("longForm"));
+
+            assertEquals(3, collector.getPairs().size());
+            AbbreviationPair pair = collector.getPairs().get(0);
+            assertEquals("A&O", pair.getShortForm());
+            assertEquals("aware and oriented", pair.getLongForm());
+            assertEquals("Test", pair.getSemanticType());
+            assertEquals(29, pair.getShortStart());
+            assertEquals(-1, pair.getLongStart());
+            assertEquals(1, collector.getMentions(pair).size());
+            Factory.deleteResource(d);
+        } finally {
+            Factory.deleteResource(badrex);
+            pairs.delete();
+        }
+    }
+}
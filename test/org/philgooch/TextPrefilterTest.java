@@ -0,0 +1,89 @@
+/*
+ * To change this template, choose Tools | Templates
+ * and open the template in the editor.
+ */
+
+package org.philgooch;
+
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import org.junit.After;
+import org.junit.AfterClass;
+import org.junit.Before;
+import org.junit.BeforeClass;
+import org.junit.Test;
+import static org.junit.Assert.*;
+
+/**
+ *
+ * @author philipgooch
+ */
+public class TextPrefilterTest {
+
+    public TextPrefilterTest() {
+    }
+
+    @BeforeClass
+    public static void setUpClass() throws Exception {
+    }
+
+    @AfterClass
+    public static void tearDownClass() throws Exception {
+    }
+
+    @Before
+    public void setUp() {
+    }
+
+    @After
+    public void tearDown() {
+    }
+
+    /**
+     * Test of hasBracketPair method, of class TextPrefilter.
+     */
+    @Test
+    public void testHasBracketPair() {
+        System.out.println("hasBracketPair");
+        assertTrue(TextPrefilter.hasBracketPair("magnetic resonance imaging (MRI) was used", 0));
+        assertTrue(TextPrefilter.hasBracketPair("a [b) c", 0));
+        assertFalse(TextPrefilter.hasBracketPair("no brackets here", 0));
+        assertFalse(TextPrefilter.hasBracketPair("closed) before (opened", 0));
+        assertFalse(TextPrefilter.hasBracketPair("(MRI) was used", 1));
+    }
+
+    /**
+     * Test of hasInnerCapital and isShortFormLike, against the token patterns they stand in for.
+     */
+    @Test
+    public void testShortFormLike() {
+        System.out.println("shortFormLike");
+        Pattern token = Pattern.compile("[\\p{L}\\p{N}]+(?:[&/\\-\\.][\\p{L}\\p{N}]+)*");
+        Pattern like = Pattern.compile(".*\\p{Lu}.*\\p{Lu}.*|.+\\p{Lu}.*");
+        String[] texts = {"The patient was seen.", "Levels of IL-6 rose", "a b-C d", "x.A", "mRNA and DNA", "\u00DCber \u00C4rzte", "T cells", "2D NMR", "..A"};
+        for (String text : texts) {
+            boolean expected = false;
+            Matcher m = token.matcher(text);
+            while (m.find()) {
+                boolean isLike = like.matcher(m.group()).matches();
+                assertEquals(text, isLike, TextPrefilter.isShortFormLike(text, m.start(), m.end()));
+                expected |= isLike;
+            }
+            if (expected) {
+                assertTrue(text, TextPrefilter.hasInnerCapital(text));
+            }
+        }
+        assertFalse(TextPrefilter.hasInnerCapital("The patient was seen by Dr Smith."));
+    }
+
+    /**
+     * Test of mentionLiteral method, of class TextPrefilter.
+     */
+    @Test
+    public void testMentionLiteral() {
+        System.out.println("mentionLiteral");
+        assertEquals("NMR", TextPrefilter.mentionLiteral("NMRs"));
+        assertEquals("2D", TextPrefilter.mentionLiteral("2D 1H NMR"));
+        assertEquals("mRNAs", TextPrefilter.mentionLiteral("mRNAs"));
+    }
+}